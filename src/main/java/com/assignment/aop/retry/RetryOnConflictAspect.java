@@ -0,0 +1,77 @@
+package com.assignment.aop.retry;
+
+import com.assignment.config.ApplicationProperties;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Aspect retrying the methods annotated with {@link RetryOnConflict} on optimistic locking conflicts.
+ * <p>
+ * It runs outside of the transaction, so every attempt gets a fresh transaction. Each attempt sleeps
+ * a random time up to an exponentially growing bound before retrying. When the attempts are
+ * exhausted the last conflict is rethrown and handled as a concurrency failure by the
+ * {@link com.assignment.web.rest.errors.ExceptionTranslator}.
+ * <p>
+ * Per method, the "calls", "conflicts", "retries" and "failures" meters are registered.
+ */
+@Aspect
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RetryOnConflictAspect {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final ApplicationProperties.Retry retryProperties;
+
+    private final MetricRegistry metricRegistry;
+
+    public RetryOnConflictAspect(ApplicationProperties applicationProperties, MetricRegistry metricRegistry) {
+        this.retryProperties = applicationProperties.getRetry();
+        this.metricRegistry = metricRegistry;
+    }
+
+    @Around("@annotation(com.assignment.aop.retry.RetryOnConflict)")
+    public Object retryOnConflict(ProceedingJoinPoint joinPoint) throws Throwable {
+        // inside a running transaction a retry would reuse the failed persistence context
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return joinPoint.proceed();
+        }
+        String name = MetricRegistry.name(joinPoint.getSignature().getDeclaringType(), joinPoint.getSignature().getName());
+        metricRegistry.meter(MetricRegistry.name(name, "calls")).mark();
+        Meter conflicts = metricRegistry.meter(MetricRegistry.name(name, "conflicts"));
+        int attempt = 1;
+        while (true) {
+            try {
+                return joinPoint.proceed();
+            } catch (ObjectOptimisticLockingFailureException e) {
+                conflicts.mark();
+                if (attempt >= retryProperties.getMaxAttempts()) {
+                    metricRegistry.meter(MetricRegistry.name(name, "failures")).mark();
+                    log.warn("Conflict on {} after {} attempts", name, attempt);
+                    throw e;
+                }
+                metricRegistry.meter(MetricRegistry.name(name, "retries")).mark();
+                log.debug("Conflict on {}, attempt {} : {}", name, attempt, e.getMessage());
+                Thread.sleep(backoff(attempt));
+                attempt++;
+            }
+        }
+    }
+
+    private long backoff(int attempt) {
+        long bound = Math.min(retryProperties.getMaxBackoff(), retryProperties.getInitialBackoff() << (attempt - 1));
+        return ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+}
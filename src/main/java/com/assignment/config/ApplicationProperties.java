@@ -11,4 +11,648 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 @ConfigurationProperties(prefix = "application", ignoreUnknownFields = false)
 public class ApplicationProperties {
 
+    private final Stock stock = new Stock();
+
+    private final Retry retry = new Retry();
+
+    private final Cart cart = new Cart();
+
+    private final JdbcExecutor jdbcExecutor = new JdbcExecutor();
+
+    public Stock getStock() {
+        return stock;
+    }
+
+    public Retry getRetry() {
+        return retry;
+    }
+
+    public Cart getCart() {
+        return cart;
+    }
+
+    public JdbcExecutor getJdbcExecutor() {
+        return jdbcExecutor;
+    }
+
+    public static class Stock {
+
+        private final Ledger ledger = new Ledger();
+
+        private final Hold hold = new Hold();
+
+        private final Sharding sharding = new Sharding();
+
+        private final Grid grid = new Grid();
+
+        public Ledger getLedger() {
+            return ledger;
+        }
+
+        public Sharding getSharding() {
+            return sharding;
+        }
+
+        public Hold getHold() {
+            return hold;
+        }
+
+        public Grid getGrid() {
+            return grid;
+        }
+
+        public static class Ledger {
+
+            private boolean enabled = false;
+
+            private long flushInterval = 1000;
+
+            private long reconcileInterval = 60000;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public long getFlushInterval() {
+                return flushInterval;
+            }
+
+            public void setFlushInterval(long flushInterval) {
+                this.flushInterval = flushInterval;
+            }
+
+            public long getReconcileInterval() {
+                return reconcileInterval;
+            }
+
+            public void setReconcileInterval(long reconcileInterval) {
+                this.reconcileInterval = reconcileInterval;
+            }
+        }
+
+        public static class Hold {
+
+            private long timeToLiveSeconds = 1800;
+
+            private long reaperInterval = 60000;
+
+            private int reaperBatchSize = 500;
+
+            public long getTimeToLiveSeconds() {
+                return timeToLiveSeconds;
+            }
+
+            public void setTimeToLiveSeconds(long timeToLiveSeconds) {
+                this.timeToLiveSeconds = timeToLiveSeconds;
+            }
+
+            public long getReaperInterval() {
+                return reaperInterval;
+            }
+
+            public void setReaperInterval(long reaperInterval) {
+                this.reaperInterval = reaperInterval;
+            }
+
+            public int getReaperBatchSize() {
+                return reaperBatchSize;
+            }
+
+            public void setReaperBatchSize(int reaperBatchSize) {
+                this.reaperBatchSize = reaperBatchSize;
+            }
+        }
+
+        public static class Sharding {
+
+            private boolean enabled = false;
+
+            private int shardCount = 16;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public int getShardCount() {
+                return shardCount;
+            }
+
+            public void setShardCount(int shardCount) {
+                this.shardCount = shardCount;
+            }
+        }
+
+        public static class Grid {
+
+            private boolean enabled = false;
+
+            private int writeDelaySeconds = 1;
+
+            private int backupCount = 1;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public int getWriteDelaySeconds() {
+                return writeDelaySeconds;
+            }
+
+            public void setWriteDelaySeconds(int writeDelaySeconds) {
+                this.writeDelaySeconds = writeDelaySeconds;
+            }
+
+            public int getBackupCount() {
+                return backupCount;
+            }
+
+            public void setBackupCount(int backupCount) {
+                this.backupCount = backupCount;
+            }
+        }
+    }
+
+    public static class Retry {
+
+        private int maxAttempts = 3;
+
+        private long initialBackoff = 20;
+
+        private long maxBackoff = 500;
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+
+        public long getInitialBackoff() {
+            return initialBackoff;
+        }
+
+        public void setInitialBackoff(long initialBackoff) {
+            this.initialBackoff = initialBackoff;
+        }
+
+        public long getMaxBackoff() {
+            return maxBackoff;
+        }
+
+        public void setMaxBackoff(long maxBackoff) {
+            this.maxBackoff = maxBackoff;
+        }
+    }
+
+    public static class JdbcExecutor {
+
+        private int poolSize = 10;
+
+        private int queueCapacity = 100;
+
+        public int getPoolSize() {
+            return poolSize;
+        }
+
+        public void setPoolSize(int poolSize) {
+            this.poolSize = poolSize;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+    }
+
+    public static class Cart {
+
+        private int purgeBatchSize = 1000;
+
+        private final Grid grid = new Grid();
+
+        private final EventLog eventLog = new EventLog();
+
+        private final Idempotency idempotency = new Idempotency();
+
+        private final Abandoned abandoned = new Abandoned();
+
+        private final Totals totals = new Totals();
+
+        private final ReadModel readModel = new ReadModel();
+
+        private final Mailbox mailbox = new Mailbox();
+
+        public int getPurgeBatchSize() {
+            return purgeBatchSize;
+        }
+
+        public void setPurgeBatchSize(int purgeBatchSize) {
+            this.purgeBatchSize = purgeBatchSize;
+        }
+
+        public Grid getGrid() {
+            return grid;
+        }
+
+        public EventLog getEventLog() {
+            return eventLog;
+        }
+
+        public Idempotency getIdempotency() {
+            return idempotency;
+        }
+
+        public Abandoned getAbandoned() {
+            return abandoned;
+        }
+
+        public Totals getTotals() {
+            return totals;
+        }
+
+        public ReadModel getReadModel() {
+            return readModel;
+        }
+
+        public Mailbox getMailbox() {
+            return mailbox;
+        }
+
+        public static class Grid {
+
+            private boolean enabled = false;
+
+            private int writeDelaySeconds = 5;
+
+            private int writeBatchSize = 100;
+
+            private int backupCount = 1;
+
+            private boolean routeToOwner = false;
+
+            private int ownerPoolSize = 16;
+
+            private long lockWaitMillis = 500;
+
+            private int lockLeaseSeconds = 30;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public int getWriteDelaySeconds() {
+                return writeDelaySeconds;
+            }
+
+            public void setWriteDelaySeconds(int writeDelaySeconds) {
+                this.writeDelaySeconds = writeDelaySeconds;
+            }
+
+            public int getWriteBatchSize() {
+                return writeBatchSize;
+            }
+
+            public void setWriteBatchSize(int writeBatchSize) {
+                this.writeBatchSize = writeBatchSize;
+            }
+
+            public int getBackupCount() {
+                return backupCount;
+            }
+
+            public void setBackupCount(int backupCount) {
+                this.backupCount = backupCount;
+            }
+
+            public boolean isRouteToOwner() {
+                return routeToOwner;
+            }
+
+            public void setRouteToOwner(boolean routeToOwner) {
+                this.routeToOwner = routeToOwner;
+            }
+
+            public int getOwnerPoolSize() {
+                return ownerPoolSize;
+            }
+
+            public void setOwnerPoolSize(int ownerPoolSize) {
+                this.ownerPoolSize = ownerPoolSize;
+            }
+
+            public long getLockWaitMillis() {
+                return lockWaitMillis;
+            }
+
+            public void setLockWaitMillis(long lockWaitMillis) {
+                this.lockWaitMillis = lockWaitMillis;
+            }
+
+            public int getLockLeaseSeconds() {
+                return lockLeaseSeconds;
+            }
+
+            public void setLockLeaseSeconds(int lockLeaseSeconds) {
+                this.lockLeaseSeconds = lockLeaseSeconds;
+            }
+        }
+
+        public static class EventLog {
+
+            private boolean enabled = false;
+
+            private int snapshotInterval = 50;
+
+            private int retentionDays = 30;
+
+            private long compactionInterval = 3600000;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public int getSnapshotInterval() {
+                return snapshotInterval;
+            }
+
+            public void setSnapshotInterval(int snapshotInterval) {
+                this.snapshotInterval = snapshotInterval;
+            }
+
+            public int getRetentionDays() {
+                return retentionDays;
+            }
+
+            public void setRetentionDays(int retentionDays) {
+                this.retentionDays = retentionDays;
+            }
+
+            public long getCompactionInterval() {
+                return compactionInterval;
+            }
+
+            public void setCompactionInterval(long compactionInterval) {
+                this.compactionInterval = compactionInterval;
+            }
+        }
+
+        public static class Idempotency {
+
+            private int timeToLiveSeconds = 86400;
+
+            private int waitSeconds = 10;
+
+            private int lockLeaseSeconds = 60;
+
+            private int backupCount = 1;
+
+            public int getTimeToLiveSeconds() {
+                return timeToLiveSeconds;
+            }
+
+            public void setTimeToLiveSeconds(int timeToLiveSeconds) {
+                this.timeToLiveSeconds = timeToLiveSeconds;
+            }
+
+            public int getWaitSeconds() {
+                return waitSeconds;
+            }
+
+            public void setWaitSeconds(int waitSeconds) {
+                this.waitSeconds = waitSeconds;
+            }
+
+            public int getLockLeaseSeconds() {
+                return lockLeaseSeconds;
+            }
+
+            public void setLockLeaseSeconds(int lockLeaseSeconds) {
+                this.lockLeaseSeconds = lockLeaseSeconds;
+            }
+
+            public int getBackupCount() {
+                return backupCount;
+            }
+
+            public void setBackupCount(int backupCount) {
+                this.backupCount = backupCount;
+            }
+        }
+
+        public static class Abandoned {
+
+            private long idleSeconds = 604800;
+
+            private long sweeperInterval = 300000;
+
+            private int sweeperBatchSize = 500;
+
+            private double maxPoolUsage = 0.75;
+
+            public long getIdleSeconds() {
+                return idleSeconds;
+            }
+
+            public void setIdleSeconds(long idleSeconds) {
+                this.idleSeconds = idleSeconds;
+            }
+
+            public long getSweeperInterval() {
+                return sweeperInterval;
+            }
+
+            public void setSweeperInterval(long sweeperInterval) {
+                this.sweeperInterval = sweeperInterval;
+            }
+
+            public int getSweeperBatchSize() {
+                return sweeperBatchSize;
+            }
+
+            public void setSweeperBatchSize(int sweeperBatchSize) {
+                this.sweeperBatchSize = sweeperBatchSize;
+            }
+
+            public double getMaxPoolUsage() {
+                return maxPoolUsage;
+            }
+
+            public void setMaxPoolUsage(double maxPoolUsage) {
+                this.maxPoolUsage = maxPoolUsage;
+            }
+        }
+
+        public static class Totals {
+
+            private long checkerInterval = 3600000;
+
+            private int checkerSampleSize = 100;
+
+            public long getCheckerInterval() {
+                return checkerInterval;
+            }
+
+            public void setCheckerInterval(long checkerInterval) {
+                this.checkerInterval = checkerInterval;
+            }
+
+            public int getCheckerSampleSize() {
+                return checkerSampleSize;
+            }
+
+            public void setCheckerSampleSize(int checkerSampleSize) {
+                this.checkerSampleSize = checkerSampleSize;
+            }
+        }
+
+        public static class ReadModel {
+
+            private boolean enabled = false;
+
+            private int maxIdleSeconds = 3600;
+
+            private int maxSizePerNode = 100000;
+
+            private int backupCount = 0;
+
+            private int rebuildBatchSize = 500;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public int getMaxIdleSeconds() {
+                return maxIdleSeconds;
+            }
+
+            public void setMaxIdleSeconds(int maxIdleSeconds) {
+                this.maxIdleSeconds = maxIdleSeconds;
+            }
+
+            public int getMaxSizePerNode() {
+                return maxSizePerNode;
+            }
+
+            public void setMaxSizePerNode(int maxSizePerNode) {
+                this.maxSizePerNode = maxSizePerNode;
+            }
+
+            public int getBackupCount() {
+                return backupCount;
+            }
+
+            public void setBackupCount(int backupCount) {
+                this.backupCount = backupCount;
+            }
+
+            public int getRebuildBatchSize() {
+                return rebuildBatchSize;
+            }
+
+            public void setRebuildBatchSize(int rebuildBatchSize) {
+                this.rebuildBatchSize = rebuildBatchSize;
+            }
+        }
+
+        public static class Mailbox {
+
+            private boolean enabled = false;
+
+            private int capacity = 32;
+
+            private int batchSize = 16;
+
+            private int workers = 8;
+
+            private int idleSeconds = 60;
+
+            private long evictionInterval = 30000;
+
+            private int timeoutSeconds = 30;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public int getCapacity() {
+                return capacity;
+            }
+
+            public void setCapacity(int capacity) {
+                this.capacity = capacity;
+            }
+
+            public int getBatchSize() {
+                return batchSize;
+            }
+
+            public void setBatchSize(int batchSize) {
+                this.batchSize = batchSize;
+            }
+
+            public int getWorkers() {
+                return workers;
+            }
+
+            public void setWorkers(int workers) {
+                this.workers = workers;
+            }
+
+            public int getIdleSeconds() {
+                return idleSeconds;
+            }
+
+            public void setIdleSeconds(int idleSeconds) {
+                this.idleSeconds = idleSeconds;
+            }
+
+            public long getEvictionInterval() {
+                return evictionInterval;
+            }
+
+            public void setEvictionInterval(long evictionInterval) {
+                this.evictionInterval = evictionInterval;
+            }
+
+            public int getTimeoutSeconds() {
+                return timeoutSeconds;
+            }
+
+            public void setTimeoutSeconds(int timeoutSeconds) {
+                this.timeoutSeconds = timeoutSeconds;
+            }
+        }
+    }
 }
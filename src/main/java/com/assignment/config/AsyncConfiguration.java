@@ -1,5 +1,8 @@
 package com.assignment.config;
 
+import com.codahale.metrics.InstrumentedExecutorService;
+import com.codahale.metrics.MetricRegistry;
+
 import io.github.jhipster.async.ExceptionHandlingAsyncTaskExecutor;
 import io.github.jhipster.config.JHipsterProperties;
 
@@ -10,9 +13,14 @@ import org.springframework.aop.interceptor.SimpleAsyncUncaughtExceptionHandler;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.*;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 @EnableAsync
@@ -39,6 +47,30 @@ public class AsyncConfiguration implements AsyncConfigurer {
         return new ExceptionHandlingAsyncTaskExecutor(executor);
     }
 
+    /**
+     * The executor of the database work of the asynchronous endpoints, apart from the task executor
+     * so the slow queries of one do not hold the threads of the other. It is bounded: a request which
+     * finds the queue full is rejected instead of waiting for a connection.
+     * <p>
+     * The "submitted", "running", "completed", "duration", "queued" and "active" metrics are registered
+     * under "jdbc-executor".
+     *
+     * @param applicationProperties the application properties
+     * @param metricRegistry the metric registry
+     * @return the executor
+     */
+    @Bean(name = "jdbcExecutor")
+    public ExecutorService jdbcExecutor(ApplicationProperties applicationProperties, MetricRegistry metricRegistry) {
+        log.debug("Creating JDBC Executor");
+        ApplicationProperties.JdbcExecutor properties = applicationProperties.getJdbcExecutor();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(properties.getPoolSize(), properties.getPoolSize(),
+            0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(properties.getQueueCapacity()),
+            new CustomizableThreadFactory("assignment-Jdbc-"), new ThreadPoolExecutor.AbortPolicy());
+        metricRegistry.gauge(MetricRegistry.name("jdbc-executor", "queued"), () -> () -> executor.getQueue().size());
+        metricRegistry.gauge(MetricRegistry.name("jdbc-executor", "active"), () -> executor::getActiveCount);
+        return new InstrumentedExecutorService(executor, metricRegistry, "jdbc-executor");
+    }
+
     @Override
     public AsyncUncaughtExceptionHandler getAsyncUncaughtExceptionHandler() {
         return new SimpleAsyncUncaughtExceptionHandler();
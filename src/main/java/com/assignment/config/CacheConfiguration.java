@@ -3,12 +3,21 @@ package com.assignment.config;
 import io.github.jhipster.config.JHipsterConstants;
 import io.github.jhipster.config.JHipsterProperties;
 
+import com.assignment.service.CartGrid;
+import com.assignment.service.CartOwners;
+import com.assignment.service.CartStateMapStore;
+import com.assignment.service.CartViews;
+import com.assignment.service.IdempotentRequests;
+import com.assignment.service.ProductStockMapStore;
+import com.assignment.service.StockGrid;
+
 import com.hazelcast.config.*;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.Hazelcast;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.AutoConfigureBefore;
 
@@ -47,7 +56,8 @@ public class CacheConfiguration {
     }
 
     @Bean
-    public HazelcastInstance hazelcastInstance(JHipsterProperties jHipsterProperties) {
+    public HazelcastInstance hazelcastInstance(JHipsterProperties jHipsterProperties, ApplicationProperties applicationProperties,
+            ObjectProvider<ProductStockMapStore> productStockMapStore, ObjectProvider<CartStateMapStore> cartStateMapStore) {
         log.debug("Configuring Hazelcast");
         HazelcastInstance hazelCastInstance = Hazelcast.getHazelcastInstanceByName("assignment");
         if (hazelCastInstance != null) {
@@ -72,6 +82,24 @@ public class CacheConfiguration {
         // Full reference is available at: http://docs.hazelcast.org/docs/management-center/3.9/manual/html/Deploying_and_Starting.html
         config.setManagementCenterConfig(initializeDefaultManagementCenterConfig(jHipsterProperties));
         config.getMapConfigs().put("com.assignment.domain.*", initializeDomainMapConfig(jHipsterProperties));
+
+        // The map stores are resolved when their map is first used, after the JPA repositories are ready
+        ApplicationProperties.Stock.Grid grid = applicationProperties.getStock().getGrid();
+        if (grid.isEnabled()) {
+            config.addMapConfig(StockGrid.mapConfig(grid, (mapName, properties) -> productStockMapStore.getObject()));
+        }
+        config.addMapConfig(IdempotentRequests.mapConfig(applicationProperties.getCart().getIdempotency()));
+        ApplicationProperties.Cart.Grid cartGrid = applicationProperties.getCart().getGrid();
+        if (cartGrid.isEnabled()) {
+            config.addMapConfig(CartGrid.mapConfig(cartGrid, (mapName, properties) -> cartStateMapStore.getObject()));
+            if (cartGrid.isRouteToOwner()) {
+                config.addExecutorConfig(CartOwners.executorConfig(cartGrid));
+            }
+        }
+        ApplicationProperties.Cart.ReadModel readModel = applicationProperties.getCart().getReadModel();
+        if (readModel.isEnabled()) {
+            config.addMapConfig(CartViews.mapConfig(readModel));
+        }
         return Hazelcast.newHazelcastInstance(config);
     }
 
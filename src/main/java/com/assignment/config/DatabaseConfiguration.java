@@ -1,5 +1,7 @@
 package com.assignment.config;
 
+import java.util.Collections;
+
 import javax.sql.DataSource;
 
 import org.slf4j.Logger;
@@ -13,6 +15,8 @@ import org.springframework.core.task.TaskExecutor;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
+import com.assignment.domain.util.PooledSequenceGenerator;
+
 import io.github.jhipster.config.JHipsterConstants;
 import io.github.jhipster.config.liquibase.AsyncSpringLiquibase;
 import liquibase.integration.spring.SpringLiquibase;
@@ -41,6 +45,10 @@ public class DatabaseConfiguration {
         liquibase.setContexts(liquibaseProperties.getContexts());
         liquibase.setDefaultSchema(liquibaseProperties.getDefaultSchema());
         liquibase.setDropFirst(liquibaseProperties.isDropFirst());
+        // the id sequence increments by the allocation size of the id generator
+        liquibase.setChangeLogParameters(Collections.singletonMap("idIncrementSize",
+            env.getProperty("spring.jpa.properties." + PooledSequenceGenerator.INCREMENT_SIZE_SETTING,
+                String.valueOf(PooledSequenceGenerator.DEFAULT_ALLOCATION_SIZE))));
         if (env.acceptsProfiles(JHipsterConstants.SPRING_PROFILE_NO_LIQUIBASE)) {
             liquibase.setShouldRun(false);
         } else {
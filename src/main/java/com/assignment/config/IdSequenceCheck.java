@@ -0,0 +1,83 @@
+package com.assignment.config;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.id.enhanced.DatabaseStructure;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.persister.entity.EntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Checks at startup that the id sequences increment by at least the allocation size of the id generators.
+ * <p>
+ * A pooled generator hands out the block of ids below the value it gets from the sequence, so a sequence
+ * incrementing by less than the allocation size would give the same ids to several nodes.
+ */
+@Component
+public class IdSequenceCheck {
+
+    private static final String SEQUENCE_INCREMENT_QUERY =
+        "select increment from information_schema.sequences where lower(sequence_name) = lower(?)";
+
+    private final Logger log = LoggerFactory.getLogger(IdSequenceCheck.class);
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public IdSequenceCheck(EntityManagerFactory entityManagerFactory, JdbcTemplate jdbcTemplate) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void checkSequences() {
+        getAllocationSizes().forEach(this::checkSequence);
+    }
+
+    /**
+     * Gets the allocation size of the sequence based id generators, by sequence name.
+     */
+    public Map<String, Integer> getAllocationSizes() {
+        Map<String, Integer> allocationSizes = new TreeMap<>();
+        SessionFactoryImplementor sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        for (EntityPersister persister : sessionFactory.getMetamodel().entityPersisters().values()) {
+            IdentifierGenerator generator = persister.getIdentifierGenerator();
+            if (generator instanceof SequenceStyleGenerator) {
+                DatabaseStructure sequence = ((SequenceStyleGenerator) generator).getDatabaseStructure();
+                allocationSizes.merge(sequence.getName(), sequence.getIncrementSize(), Math::max);
+            }
+        }
+        return allocationSizes;
+    }
+
+    private void checkSequence(String sequenceName, int allocationSize) {
+        List<String> increments = jdbcTemplate.queryForList(SEQUENCE_INCREMENT_QUERY, String.class, sequenceName);
+        if (increments.isEmpty()) {
+            log.warn("Cannot check the increment of the sequence {}, it was not found", sequenceName);
+            return;
+        }
+        long increment = Long.parseLong(increments.get(0));
+        if (increment < allocationSize) {
+            throw new IllegalStateException("The sequence " + sequenceName + " increments by " + increment
+                + ", less than the allocation size " + allocationSize + " of the id generator");
+        }
+        if (increment > allocationSize) {
+            log.warn("The sequence {} increments by {}, more than the allocation size {} of the id generator, ids are wasted",
+                sequenceName, increment, allocationSize);
+        } else {
+            log.debug("The sequence {} increments by the allocation size {}", sequenceName, allocationSize);
+        }
+    }
+}
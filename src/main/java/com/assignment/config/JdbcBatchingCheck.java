@@ -0,0 +1,84 @@
+package com.assignment.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.boot.spi.SessionFactoryOptions;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.id.PostInsertIdentifierGenerator;
+import org.hibernate.persister.entity.EntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+/**
+ * Checks at startup that the settings of the JDBC batching are consistent.
+ * <p>
+ * Batching is enabled by a {@code hibernate.jdbc.batch_size} above 1, and only pays off together with
+ * the ordering of inserts and updates, the batching of versioned updates, ids generated before the
+ * insert, and the rewriting of batched inserts by the PostgreSQL driver.
+ */
+@Component
+public class JdbcBatchingCheck {
+
+    private static final String POSTGRESQL_URL_PREFIX = "jdbc:postgresql:";
+
+    private static final String REWRITE_BATCHED_INSERTS = "reWriteBatchedInserts=true";
+
+    private final Logger log = LoggerFactory.getLogger(JdbcBatchingCheck.class);
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    private final Environment env;
+
+    public JdbcBatchingCheck(EntityManagerFactory entityManagerFactory, Environment env) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.env = env;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void checkBatching() {
+        List<String> problems = getProblems();
+        if (!problems.isEmpty()) {
+            throw new IllegalStateException("Inconsistent JDBC batching settings: " + String.join(", ", problems));
+        }
+    }
+
+    /**
+     * Gets what defeats the JDBC batching, empty when batching is disabled.
+     */
+    public List<String> getProblems() {
+        List<String> problems = new ArrayList<>();
+        SessionFactoryImplementor sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        SessionFactoryOptions options = sessionFactory.getSessionFactoryOptions();
+        if (options.getJdbcBatchSize() <= 1) {
+            log.warn("JDBC batching is disabled, set hibernate.jdbc.batch_size to send the writes by batches");
+            return problems;
+        }
+        if (!options.isOrderInsertsEnabled()) {
+            problems.add("hibernate.order_inserts is disabled");
+        }
+        if (!options.isOrderUpdatesEnabled()) {
+            problems.add("hibernate.order_updates is disabled");
+        }
+        if (!options.isJdbcBatchVersionedData()) {
+            problems.add("hibernate.jdbc.batch_versioned_data is disabled");
+        }
+        for (EntityPersister persister : sessionFactory.getMetamodel().entityPersisters().values()) {
+            // Hibernate sends the inserts one by one when the id is generated by the insert
+            if (persister.getIdentifierGenerator() instanceof PostInsertIdentifierGenerator) {
+                problems.add(persister.getEntityName() + " has its id generated by the database on insert");
+            }
+        }
+        String url = env.getProperty("spring.datasource.url", "");
+        if (url.startsWith(POSTGRESQL_URL_PREFIX) && !url.contains(REWRITE_BATCHED_INSERTS)) {
+            log.warn("The datasource url does not set {}, batched inserts are executed one statement per row", REWRITE_BATCHED_INSERTS);
+        }
+        return problems;
+    }
+}
@@ -0,0 +1,17 @@
+package com.assignment.config;
+
+import com.assignment.aop.retry.RetryOnConflictAspect;
+
+import com.codahale.metrics.MetricRegistry;
+
+import org.springframework.context.annotation.*;
+
+@Configuration
+@EnableAspectJAutoProxy
+public class RetryAspectConfiguration {
+
+    @Bean
+    public RetryOnConflictAspect retryOnConflictAspect(ApplicationProperties applicationProperties, MetricRegistry metricRegistry) {
+        return new RetryOnConflictAspect(applicationProperties, metricRegistry);
+    }
+}
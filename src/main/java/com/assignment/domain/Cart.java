@@ -2,12 +2,20 @@ package com.assignment.domain;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
 
+import com.assignment.domain.util.MoneyConverter;
+import com.assignment.domain.util.PooledSequenceGenerator;
+
 import javax.persistence.*;
+import javax.validation.constraints.*;
 
 import java.io.Serializable;
+import java.time.Instant;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.Objects;
 
@@ -16,21 +24,54 @@ import java.util.Objects;
  */
 @Entity
 @Table(name = "cart")
-@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 public class Cart implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
     @Id
-    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sequenceGenerator")
-    @SequenceGenerator(name = "sequenceGenerator")
+    @GeneratedValue(generator = "sequenceGenerator")
+    @GenericGenerator(name = "sequenceGenerator", strategy = PooledSequenceGenerator.NAME)
     private Long id;
 
+    @Version
+    @Column(name = "version", nullable = false)
+    private long version;
+
+    @NotNull
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt = Instant.now();
+
+    /** Touched by every change of the items, which bumps the version. */
+    @NotNull
+    @Column(name = "last_modified_at", nullable = false)
+    private Instant lastModifiedAt = createdAt;
+
+    /** The number of items, the sum of the quantities of the lines, kept with them. */
+    @NotNull
+    @Column(name = "item_count", nullable = false)
+    private int itemCount;
+
+    /** The price of the items, at the prices of their products when the lines were changed. */
+    @NotNull
+    @Column(name = "subtotal", precision = 12, scale = 2, nullable = false)
+    @Convert(converter = MoneyConverter.class)
+    private Money subtotal = Money.ZERO;
+
     @OneToMany(mappedBy = "cart", cascade = CascadeType.ALL)
     @JsonIgnore
-    @Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     private Set<CartItem> cartItems = new HashSet<>();
 
+    /** The cart items by id, indexed on first lookup. */
+    private transient Map<Long, CartItem> cartItemsById;
+
+    /** The cart items by product id, indexed on first lookup. */
+    private transient Map<Long, CartItem> cartItemsByProduct;
+
+    /** The collection the indexes were built from, Hibernate replaces it on load and refresh. */
+    private transient Set<CartItem> indexedCartItems;
+
     // jhipster-needle-entity-add-field - JHipster will add fields here, do not remove
     public Long getId() {
         return id;
@@ -40,6 +81,79 @@ public class Cart implements Serializable {
         this.id = id;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Cart createdAt(Instant createdAt) {
+        this.createdAt = createdAt;
+        return this;
+    }
+
+    public void setCreatedAt(Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public Instant getLastModifiedAt() {
+        return lastModifiedAt;
+    }
+
+    public Cart lastModifiedAt(Instant lastModifiedAt) {
+        this.lastModifiedAt = lastModifiedAt;
+        return this;
+    }
+
+    public void setLastModifiedAt(Instant lastModifiedAt) {
+        this.lastModifiedAt = lastModifiedAt;
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    public Cart itemCount(int itemCount) {
+        this.itemCount = itemCount;
+        return this;
+    }
+
+    public void setItemCount(int itemCount) {
+        this.itemCount = itemCount;
+    }
+
+    public Money getSubtotal() {
+        return subtotal;
+    }
+
+    public Cart subtotal(Money subtotal) {
+        this.subtotal = subtotal;
+        return this;
+    }
+
+    public void setSubtotal(Money subtotal) {
+        this.subtotal = subtotal;
+    }
+
+    /**
+     * Add a change of the items to the totals.
+     *
+     * @param itemCount the change of the number of items, negative for removed items
+     * @param amount the change of the price of the items
+     * @return the cart
+     */
+    public Cart addToTotals(int itemCount, Money amount) {
+        this.itemCount += itemCount;
+        this.subtotal = this.subtotal.plus(amount);
+        return this;
+    }
+
     public Set<CartItem> getCartItems() {
         return cartItems;
     }
@@ -52,15 +166,83 @@ public class Cart implements Serializable {
     public Cart addCartItem(CartItem cartItem) {
         this.cartItems.add(cartItem);
         cartItem.setCart(this);
+        if (isIndexed()) {
+            index(cartItem);
+        }
         return this;
     }
 
     public Cart removeCartItem(CartItem cartItem) {
         this.cartItems.remove(cartItem);
         cartItem.setCart(null);
+        if (isIndexed()) {
+            unindex(cartItem);
+        }
         return this;
     }
 
+    /**
+     * Gets a cart item by id, the items must be changed through addCartItem and removeCartItem.
+     *
+     * @param id the cart item id
+     * @return the cart item, or null if the cart has none with this id
+     */
+    public CartItem getCartItem(Long id) {
+        if (!isIndexed()) {
+            reindex();
+        }
+        CartItem cartItem = cartItemsById.get(id);
+        if (cartItem == null) {
+            // items added before their id was assigned are only indexed by product
+            reindex();
+            cartItem = cartItemsById.get(id);
+        }
+        return cartItem;
+    }
+
+    /**
+     * Gets the cart item of a product, the items must be changed through addCartItem and removeCartItem.
+     *
+     * @param productId the product id
+     * @return the cart item, or null if the product is not in the cart
+     */
+    public CartItem getCartItemByProduct(Long productId) {
+        if (!isIndexed()) {
+            reindex();
+        }
+        return cartItemsByProduct.get(productId);
+    }
+
+    private boolean isIndexed() {
+        return indexedCartItems == cartItems;
+    }
+
+    private void reindex() {
+        cartItemsById = new HashMap<>();
+        cartItemsByProduct = new HashMap<>();
+        indexedCartItems = cartItems;
+        cartItems.forEach(this::index);
+    }
+
+    private void index(CartItem cartItem) {
+        if (cartItem.getId() != null) {
+            cartItemsById.put(cartItem.getId(), cartItem);
+        }
+        if (cartItem.getProduct() != null) {
+            cartItemsByProduct.put(cartItem.getProduct().getId(), cartItem);
+        }
+    }
+
+    // removed by key, only if the key still maps to this item
+    private void unindex(CartItem cartItem) {
+        if (cartItem.getId() != null) {
+            cartItemsById.remove(cartItem.getId(), cartItem);
+        }
+        if (cartItem.getProduct() != null) {
+            cartItemsByProduct.remove(cartItem.getProduct().getId(), cartItem);
+        }
+    }
+
     public void setCartItems(Set<CartItem> cartItems) {
         this.cartItems = cartItems;
     }
@@ -90,6 +272,10 @@ public class Cart implements Serializable {
     public String toString() {
         return "Cart{" +
             "id=" + getId() +
+            ", createdAt='" + getCreatedAt() + "'" +
+            ", lastModifiedAt='" + getLastModifiedAt() + "'" +
+            ", itemCount=" + getItemCount() +
+            ", subtotal=" + getSubtotal() +
             "}";
     }
 }
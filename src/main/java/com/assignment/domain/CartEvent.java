@@ -0,0 +1,223 @@
+package com.assignment.domain;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Immutable;
+
+import com.assignment.domain.enumeration.CartEventType;
+import com.assignment.domain.util.MoneyConverter;
+import com.assignment.domain.util.PooledSequenceGenerator;
+
+import javax.persistence.*;
+import javax.validation.constraints.*;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * A CartEvent, one change of a cart appended to the cart log. The events of a cart are numbered
+ * without gaps, two changes made from the same revision cannot both be appended.
+ */
+@Entity
+@Immutable
+@Table(name = "cart_event")
+public class CartEvent implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(generator = "sequenceGenerator")
+    @GenericGenerator(name = "sequenceGenerator", strategy = PooledSequenceGenerator.NAME)
+    private Long id;
+
+    @NotNull
+    @Column(name = "cart_id", nullable = false)
+    private Long cartId;
+
+    @NotNull
+    @Column(name = "seq", nullable = false)
+    private Long sequence;
+
+    @NotNull
+    @Enumerated(EnumType.STRING)
+    @Column(name = "event_type", nullable = false)
+    private CartEventType type;
+
+    @Column(name = "line_id")
+    private Long lineId;
+
+    @Column(name = "product_id")
+    private Long productId;
+
+    @Column(name = "quantity")
+    private Integer quantity;
+
+    @Column(name = "expires_at")
+    private Instant expiresAt;
+
+    @Column(name = "line_total", precision = 12, scale = 2)
+    @Convert(converter = MoneyConverter.class)
+    private Money lineTotal;
+
+    @NotNull
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getCartId() {
+        return cartId;
+    }
+
+    public CartEvent cartId(Long cartId) {
+        this.cartId = cartId;
+        return this;
+    }
+
+    public void setCartId(Long cartId) {
+        this.cartId = cartId;
+    }
+
+    public Long getSequence() {
+        return sequence;
+    }
+
+    public CartEvent sequence(Long sequence) {
+        this.sequence = sequence;
+        return this;
+    }
+
+    public void setSequence(Long sequence) {
+        this.sequence = sequence;
+    }
+
+    public CartEventType getType() {
+        return type;
+    }
+
+    public CartEvent type(CartEventType type) {
+        this.type = type;
+        return this;
+    }
+
+    public void setType(CartEventType type) {
+        this.type = type;
+    }
+
+    public Long getLineId() {
+        return lineId;
+    }
+
+    public CartEvent lineId(Long lineId) {
+        this.lineId = lineId;
+        return this;
+    }
+
+    public void setLineId(Long lineId) {
+        this.lineId = lineId;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public CartEvent productId(Long productId) {
+        this.productId = productId;
+        return this;
+    }
+
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    public CartEvent quantity(Integer quantity) {
+        this.quantity = quantity;
+        return this;
+    }
+
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    public CartEvent expiresAt(Instant expiresAt) {
+        this.expiresAt = expiresAt;
+        return this;
+    }
+
+    public void setExpiresAt(Instant expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public Money getLineTotal() {
+        return lineTotal;
+    }
+
+    public CartEvent lineTotal(Money lineTotal) {
+        this.lineTotal = lineTotal;
+        return this;
+    }
+
+    public void setLineTotal(Money lineTotal) {
+        this.lineTotal = lineTotal;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public CartEvent createdAt(Instant createdAt) {
+        this.createdAt = createdAt;
+        return this;
+    }
+
+    public void setCreatedAt(Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        CartEvent cartEvent = (CartEvent) o;
+        if (cartEvent.getId() == null || getId() == null) {
+            return false;
+        }
+        return Objects.equals(getId(), cartEvent.getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(getId());
+    }
+
+    @Override
+    public String toString() {
+        return "CartEvent{" +
+            "id=" + getId() +
+            ", cartId=" + getCartId() +
+            ", sequence=" + getSequence() +
+            ", type='" + getType() + "'" +
+            ", lineId=" + getLineId() +
+            ", productId=" + getProductId() +
+            ", quantity=" + getQuantity() +
+            "}";
+    }
+}
@@ -1,13 +1,18 @@
 package com.assignment.domain;
 
 import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.DynamicUpdate;
 
+import com.assignment.domain.util.MoneyConverter;
+import com.assignment.domain.util.PooledSequenceGenerator;
+
 import javax.persistence.*;
 import javax.validation.constraints.*;
 
 import java.io.Serializable;
+import java.time.Instant;
 import java.util.Objects;
 
 /**
@@ -15,21 +20,36 @@ import java.util.Objects;
  */
 @Entity
 @Table(name = "cart_item")
-@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @DynamicUpdate
 public class CartItem implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
     @Id
-    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sequenceGenerator")
-    @SequenceGenerator(name = "sequenceGenerator")
+    @GeneratedValue(generator = "sequenceGenerator")
+    @GenericGenerator(name = "sequenceGenerator", strategy = PooledSequenceGenerator.NAME)
     private Long id;
 
+    @Version
+    @Column(name = "version", nullable = false)
+    private long version;
+
     @NotNull
     @Column(name = "quantity", nullable = false)
     private Integer quantity;
 
+    @Column(name = "expires_at")
+    private Instant expiresAt;
+
+    /**
+     * The price of the quantity, at the prices it was added at.
+     */
+    @NotNull
+    @Column(name = "line_total", precision = 12, scale = 2, nullable = false)
+    @Convert(converter = MoneyConverter.class)
+    private Money lineTotal = Money.ZERO;
+
     @ManyToOne(optional = false)
     @NotNull
     private Product product;
@@ -47,6 +67,14 @@ public class CartItem implements Serializable {
         this.id = id;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     public Integer getQuantity() {
         return quantity;
     }
@@ -60,6 +88,32 @@ public class CartItem implements Serializable {
         this.quantity = quantity;
     }
 
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    public CartItem expiresAt(Instant expiresAt) {
+        this.expiresAt = expiresAt;
+        return this;
+    }
+
+    public void setExpiresAt(Instant expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public Money getLineTotal() {
+        return lineTotal;
+    }
+
+    public CartItem lineTotal(Money lineTotal) {
+        this.lineTotal = lineTotal;
+        return this;
+    }
+
+    public void setLineTotal(Money lineTotal) {
+        this.lineTotal = lineTotal;
+    }
+
     public Product getProduct() {
         return product;
     }
@@ -112,6 +166,8 @@ public class CartItem implements Serializable {
         return "CartItem{" +
             "id=" + getId() +
             ", quantity=" + getQuantity() +
+            ", expiresAt='" + getExpiresAt() + "'" +
+            ", lineTotal=" + getLineTotal() +
             "}";
     }
 }
@@ -0,0 +1,112 @@
+package com.assignment.domain;
+
+import javax.persistence.*;
+import javax.validation.constraints.*;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A CartSnapshot, the lines of a cart as of an event of the cart log. A cart is rebuilt from its
+ * snapshot and the events which follow it.
+ */
+@Entity
+@Table(name = "cart_snapshot")
+public class CartSnapshot implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @Column(name = "cart_id")
+    private Long cartId;
+
+    @NotNull
+    @Column(name = "seq", nullable = false)
+    private Long sequence;
+
+    @NotNull
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @ElementCollection
+    @CollectionTable(name = "cart_snapshot_line", joinColumns = @JoinColumn(name = "cart_id"))
+    private List<CartSnapshotLine> lines = new ArrayList<>();
+
+    public Long getCartId() {
+        return cartId;
+    }
+
+    public CartSnapshot cartId(Long cartId) {
+        this.cartId = cartId;
+        return this;
+    }
+
+    public void setCartId(Long cartId) {
+        this.cartId = cartId;
+    }
+
+    public Long getSequence() {
+        return sequence;
+    }
+
+    public CartSnapshot sequence(Long sequence) {
+        this.sequence = sequence;
+        return this;
+    }
+
+    public void setSequence(Long sequence) {
+        this.sequence = sequence;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public CartSnapshot createdAt(Instant createdAt) {
+        this.createdAt = createdAt;
+        return this;
+    }
+
+    public void setCreatedAt(Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public List<CartSnapshotLine> getLines() {
+        return lines;
+    }
+
+    public void setLines(List<CartSnapshotLine> lines) {
+        this.lines = lines;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        CartSnapshot cartSnapshot = (CartSnapshot) o;
+        if (cartSnapshot.getCartId() == null || getCartId() == null) {
+            return false;
+        }
+        return Objects.equals(getCartId(), cartSnapshot.getCartId());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(getCartId());
+    }
+
+    @Override
+    public String toString() {
+        return "CartSnapshot{" +
+            "cartId=" + getCartId() +
+            ", sequence=" + getSequence() +
+            "}";
+    }
+}
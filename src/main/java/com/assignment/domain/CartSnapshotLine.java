@@ -0,0 +1,98 @@
+package com.assignment.domain;
+
+import javax.persistence.*;
+import javax.validation.constraints.*;
+
+import com.assignment.domain.util.MoneyConverter;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * A CartSnapshotLine, a line of a cart in a snapshot.
+ */
+@Embeddable
+public class CartSnapshotLine implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @NotNull
+    @Column(name = "line_id", nullable = false)
+    private Long lineId;
+
+    @NotNull
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    @NotNull
+    @Column(name = "quantity", nullable = false)
+    private Integer quantity;
+
+    @Column(name = "expires_at")
+    private Instant expiresAt;
+
+    @NotNull
+    @Column(name = "line_total", precision = 12, scale = 2, nullable = false)
+    @Convert(converter = MoneyConverter.class)
+    private Money lineTotal;
+
+    public CartSnapshotLine() {
+    }
+
+    public CartSnapshotLine(Long lineId, Long productId, Integer quantity, Instant expiresAt, Money lineTotal) {
+        this.lineId = lineId;
+        this.productId = productId;
+        this.quantity = quantity;
+        this.expiresAt = expiresAt;
+        this.lineTotal = lineTotal;
+    }
+
+    public Long getLineId() {
+        return lineId;
+    }
+
+    public void setLineId(Long lineId) {
+        this.lineId = lineId;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Instant expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public Money getLineTotal() {
+        return lineTotal;
+    }
+
+    public void setLineTotal(Money lineTotal) {
+        this.lineTotal = lineTotal;
+    }
+
+    @Override
+    public String toString() {
+        return "CartSnapshotLine{" +
+            "lineId=" + getLineId() +
+            ", productId=" + getProductId() +
+            ", quantity=" + getQuantity() +
+            "}";
+    }
+}
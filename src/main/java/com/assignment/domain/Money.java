@@ -0,0 +1,144 @@
+package com.assignment.domain;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * An amount of money, in minor units (cents) of the single currency of the shop.
+ * <p>
+ * The arithmetic is done on a {@code long}: it allocates no more than the result and fails with an
+ * {@link ArithmeticException} on overflow instead of wrapping. Every conversion which may lose
+ * precision takes an explicit rounding mode. The amounts are converted to {@link BigDecimal} at the
+ * boundaries only, the database columns and the JSON of the DTOs.
+ */
+public final class Money implements Comparable<Money>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The number of decimal digits of the minor units. */
+    public static final int SCALE = 2;
+
+    public static final Money ZERO = new Money(0);
+
+    private final long minorUnits;
+
+    private Money(long minorUnits) {
+        this.minorUnits = minorUnits;
+    }
+
+    /**
+     * Gets an amount of minor units.
+     *
+     * @param minorUnits the minor units
+     * @return the money
+     */
+    public static Money ofMinor(long minorUnits) {
+        return minorUnits == 0 ? ZERO : new Money(minorUnits);
+    }
+
+    /**
+     * Gets an amount which has no more decimal digits than the minor units.
+     *
+     * @param amount the amount
+     * @return the money
+     * @throws ArithmeticException if the amount needs rounding or is out of range
+     */
+    public static Money of(BigDecimal amount) {
+        return of(amount, RoundingMode.UNNECESSARY);
+    }
+
+    /**
+     * Gets an amount, rounded to the minor units.
+     *
+     * @param amount the amount
+     * @param rounding the rounding of the digits below the minor units
+     * @return the money
+     * @throws ArithmeticException if the amount is out of range
+     */
+    public static Money of(BigDecimal amount, RoundingMode rounding) {
+        return ofMinor(amount.setScale(SCALE, rounding).unscaledValue().longValueExact());
+    }
+
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    public Money plus(Money other) {
+        return other.minorUnits == 0 ? this : ofMinor(Math.addExact(minorUnits, other.minorUnits));
+    }
+
+    public Money minus(Money other) {
+        return other.minorUnits == 0 ? this : ofMinor(Math.subtractExact(minorUnits, other.minorUnits));
+    }
+
+    public Money negate() {
+        return ofMinor(Math.negateExact(minorUnits));
+    }
+
+    /**
+     * Multiply by a quantity, exactly.
+     *
+     * @param quantity the quantity
+     * @return the money
+     * @throws ArithmeticException on overflow
+     */
+    public Money times(long quantity) {
+        return quantity == 1 ? this : ofMinor(Math.multiplyExact(minorUnits, quantity));
+    }
+
+    /**
+     * Multiply by a factor, such as a discount rate, rounded to the minor units.
+     *
+     * @param factor the factor
+     * @param rounding the rounding of the digits below the minor units
+     * @return the money
+     * @throws ArithmeticException if the result is out of range
+     */
+    public Money times(BigDecimal factor, RoundingMode rounding) {
+        return of(toBigDecimal().multiply(factor), rounding);
+    }
+
+    public boolean isZero() {
+        return minorUnits == 0;
+    }
+
+    public boolean isNegative() {
+        return minorUnits < 0;
+    }
+
+    /**
+     * Convert to a decimal with the scale of the minor units.
+     *
+     * @return the amount
+     */
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return minorUnits == ((Money) o).minorUnits;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minorUnits);
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+}
@@ -1,11 +1,14 @@
 package com.assignment.domain;
 
 import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.DynamicUpdate;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
+import com.assignment.domain.util.PooledSequenceGenerator;
+
 import javax.persistence.*;
 import javax.validation.constraints.*;
 
@@ -18,17 +21,21 @@ import java.util.Objects;
  */
 @Entity
 @Table(name = "product")
-@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @DynamicUpdate
 public class Product implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
     @Id
-    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sequenceGenerator")
-    @SequenceGenerator(name = "sequenceGenerator")
+    @GeneratedValue(generator = "sequenceGenerator")
+    @GenericGenerator(name = "sequenceGenerator", strategy = PooledSequenceGenerator.NAME)
     private Long id;
 
+    @Version
+    @Column(name = "version", nullable = false)
+    private long version;
+
     @NotNull
     @Size(min = 1, max = 256)
     @Column(name = "name", length = 256, nullable = false)
@@ -38,6 +45,12 @@ public class Product implements Serializable {
     @Column(name = "price", precision=10, scale=2, nullable = false)
     private BigDecimal price;
 
+    /** The price in minor units, converted on first use. */
+    private transient Money unitPrice;
+
+    /** The price the unit price was converted from, Hibernate sets the field on load and refresh. */
+    private transient BigDecimal convertedPrice;
+
     @NotNull
     @Column(name = "quantity", nullable = false)
     private Integer quantity;
@@ -55,6 +68,14 @@ public class Product implements Serializable {
         this.id = id;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     public String getName() {
         return name;
     }
@@ -81,6 +102,19 @@ public class Product implements Serializable {
         this.price = price;
     }
 
+    /**
+     * Gets the price as money, for the arithmetic of the cart totals.
+     *
+     * @return the unit price
+     */
+    public Money getUnitPrice() {
+        if (convertedPrice != price) {
+            unitPrice = price == null ? null : Money.of(price);
+            convertedPrice = price;
+        }
+        return unitPrice;
+    }
+
     public Integer getQuantity() {
         return quantity;
     }
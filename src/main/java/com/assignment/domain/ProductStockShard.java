@@ -0,0 +1,114 @@
+package com.assignment.domain;
+
+import org.hibernate.annotations.GenericGenerator;
+
+import com.assignment.domain.util.PooledSequenceGenerator;
+
+import javax.persistence.*;
+import javax.validation.constraints.*;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * A ProductStockShard, one part of the available quantity of a sharded product.
+ */
+@Entity
+@Table(name = "product_stock_shard")
+public class ProductStockShard implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(generator = "sequenceGenerator")
+    @GenericGenerator(name = "sequenceGenerator", strategy = PooledSequenceGenerator.NAME)
+    private Long id;
+
+    @NotNull
+    @Column(name = "shard", nullable = false)
+    private Integer shard;
+
+    @NotNull
+    @Column(name = "quantity", nullable = false)
+    private Integer quantity;
+
+    @ManyToOne(optional = false)
+    @NotNull
+    private Product product;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Integer getShard() {
+        return shard;
+    }
+
+    public ProductStockShard shard(Integer shard) {
+        this.shard = shard;
+        return this;
+    }
+
+    public void setShard(Integer shard) {
+        this.shard = shard;
+    }
+
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    public ProductStockShard quantity(Integer quantity) {
+        this.quantity = quantity;
+        return this;
+    }
+
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+
+    public Product getProduct() {
+        return product;
+    }
+
+    public ProductStockShard product(Product product) {
+        this.product = product;
+        return this;
+    }
+
+    public void setProduct(Product product) {
+        this.product = product;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ProductStockShard productStockShard = (ProductStockShard) o;
+        if (productStockShard.getId() == null || getId() == null) {
+            return false;
+        }
+        return Objects.equals(getId(), productStockShard.getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(getId());
+    }
+
+    @Override
+    public String toString() {
+        return "ProductStockShard{" +
+            "id=" + getId() +
+            ", shard=" + getShard() +
+            ", quantity=" + getQuantity() +
+            "}";
+    }
+}
@@ -0,0 +1,8 @@
+package com.assignment.domain.enumeration;
+
+/**
+ * The CartEventType enumeration.
+ */
+public enum CartEventType {
+    ITEM_ADDED, QUANTITY_CHANGED, ITEM_REMOVED, CART_DELETED
+}
@@ -0,0 +1,25 @@
+package com.assignment.domain.util;
+
+import java.math.BigDecimal;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+
+import com.assignment.domain.Money;
+
+/**
+ * Stores a {@link Money} in a decimal column with the scale of the minor units.
+ */
+@Converter
+public class MoneyConverter implements AttributeConverter<Money, BigDecimal> {
+
+    @Override
+    public BigDecimal convertToDatabaseColumn(Money money) {
+        return money == null ? null : money.toBigDecimal();
+    }
+
+    @Override
+    public Money convertToEntityAttribute(BigDecimal amount) {
+        return amount == null ? null : Money.of(amount);
+    }
+}
@@ -0,0 +1,37 @@
+package com.assignment.domain.util;
+
+import java.util.Properties;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+/**
+ * The identifier generator of the entities.
+ * <p>
+ * Takes the ids from the shared sequence by blocks, one sequence call allocating a block of
+ * {@code hibernate.id.sequence.increment_size} ids, so bulk inserts do not pay a round-trip per row. The blocks
+ * are handed out by the optimizer set with {@code hibernate.id.optimizer.pooled.preferred}. The block
+ * size must not exceed the increment of the database sequence, which is checked at startup.
+ */
+public class PooledSequenceGenerator extends SequenceStyleGenerator {
+
+    public static final String NAME = "com.assignment.domain.util.PooledSequenceGenerator";
+
+    public static final String SEQUENCE_NAME = "hibernate_sequence";
+
+    public static final String INCREMENT_SIZE_SETTING = "hibernate.id.sequence.increment_size";
+
+    public static final int DEFAULT_ALLOCATION_SIZE = 50;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        Object incrementSize = serviceRegistry.getService(ConfigurationService.class).getSettings().get(INCREMENT_SIZE_SETTING);
+        params.setProperty(SEQUENCE_PARAM, SEQUENCE_NAME);
+        params.setProperty(INCREMENT_PARAM, incrementSize != null ? incrementSize.toString()
+            : String.valueOf(DEFAULT_ALLOCATION_SIZE));
+        super.configure(type, params, serviceRegistry);
+    }
+}
@@ -0,0 +1,58 @@
+package com.assignment.repository;
+
+import com.assignment.domain.CartEvent;
+import org.springframework.stereotype.Repository;
+
+import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+
+/**
+ * Spring Data JPA repository for the CartEvent entity.
+ */
+@SuppressWarnings("unused")
+@Repository
+public interface CartEventRepository extends JpaRepository<CartEvent, Long> {
+
+	@Query("select e from CartEvent e where e.cartId = :cartId and e.sequence > :sequence order by e.sequence")
+	List<CartEvent> findTail(@Param("cartId") Long cartId, @Param("sequence") long sequence);
+
+	@Query("select e.cartId from CartEvent e where e.lineId = :lineId")
+	List<Long> findCartIdsByLineId(@Param("lineId") Long lineId);
+
+	/**
+	 * Find the carts whose latest event on a product, following their snapshot, gave the line an expired hold.
+	 *
+	 * @param now the current time
+	 * @return the cart ids
+	 */
+	@Query("select distinct e.cartId from CartEvent e where e.expiresAt < :now"
+			+ " and e.type <> com.assignment.domain.enumeration.CartEventType.ITEM_REMOVED"
+			+ " and not exists (select s from CartSnapshot s where s.cartId = e.cartId and s.sequence >= e.sequence)"
+			+ " and not exists (select l from CartEvent l where l.cartId = e.cartId and l.sequence > e.sequence"
+			+ " and (l.productId = e.productId or l.type = com.assignment.domain.enumeration.CartEventType.CART_DELETED))")
+	List<Long> findCartIdsWithExpiredLines(@Param("now") Instant now);
+
+	@Query("select e.cartId from CartEvent e where e.type = com.assignment.domain.enumeration.CartEventType.CART_DELETED"
+			+ " and e.createdAt < :before")
+	List<Long> findCartIdsDeletedBefore(@Param("before") Instant before);
+
+	/**
+	 * Delete the events older than a time which are folded into the snapshot of their cart.
+	 *
+	 * @param before the time
+	 * @return the number of deleted events
+	 */
+	@Modifying
+	@Query("delete from CartEvent e where e.createdAt < :before"
+			+ " and exists (select s from CartSnapshot s where s.cartId = e.cartId and s.sequence >= e.sequence)")
+	int deleteSnapshottedBefore(@Param("before") Instant before);
+
+	@Modifying
+	@Query("delete from CartEvent e where e.cartId in :cartIds")
+	int deleteByCartIds(@Param("cartIds") Collection<Long> cartIds);
+}
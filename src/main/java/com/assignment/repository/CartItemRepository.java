@@ -1,16 +1,67 @@
 package com.assignment.repository;
 
 import com.assignment.domain.CartItem;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import org.springframework.data.jpa.repository.*;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+
 
 /**
  * Spring Data JPA repository for the CartItem entity.
  */
 @SuppressWarnings("unused")
 @Repository
-public interface CartItemRepository extends JpaRepository<CartItem, Long> {
+public interface CartItemRepository extends JpaRepository<CartItem, Long>, CartItemRepositoryCustom {
+
+	@Query("select c from CartItem c join fetch c.product where c.id = :id and c.cart.id = :cartId")
+	CartItem findByIdAndCartId(@Param("id") Long id, @Param("cartId") Long cartId);
+
+	@Query("select c.cart.id from CartItem c where c.id = :id")
+	Long findCartIdById(@Param("id") Long id);
+
+	/**
+	 * Lock the expired cart items, until the end of the transaction. The items locked by another
+	 * transaction are skipped where the database can, and waited for otherwise: an item changed in the
+	 * meantime is checked again and left out when its hold was renewed.
+	 *
+	 * @param now the current time
+	 * @param pageable the batch
+	 * @return the ids of the expired cart items
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@QueryHints(@QueryHint(name = "javax.persistence.lock.timeout", value = "-2"))
+	@Query("select c.id from CartItem c where c.expiresAt < :now order by c.expiresAt")
+	List<Long> findExpiredIds(@Param("now") Instant now, Pageable pageable);
+
+	@Query("select c.product.id, sum(c.quantity) from CartItem c where c.id in :ids group by c.product.id")
+	List<Object[]> sumQuantityByProduct(@Param("ids") Collection<Long> ids);
+
+	@Query("select c.product.id, sum(c.quantity) from CartItem c where c.cart.id in :cartIds group by c.product.id")
+	List<Object[]> sumQuantityByProductOfCarts(@Param("cartIds") Collection<Long> cartIds);
+
+	@Query("select c.cart.id, c.id, c.product.id, c.quantity, c.expiresAt, c.lineTotal from CartItem c where c.cart.id in :cartIds")
+	List<Object[]> findLinesOfCarts(@Param("cartIds") Collection<Long> cartIds);
+
+	@Query("select c.cart.id, sum(c.quantity), sum(c.lineTotal) from CartItem c"
+			+ " where c.cart.id in :cartIds group by c.cart.id")
+	List<Object[]> sumTotalsOfCarts(@Param("cartIds") Collection<Long> cartIds);
+
+	long countByExpiresAtAfter(Instant now);
+
+	@Modifying
+	@Query("delete from CartItem c where c.id in :ids")
+	int deleteByIds(@Param("ids") Collection<Long> ids);
 
+	@Modifying
+	@Query("delete from CartItem c where c.cart.id in :cartIds")
+	int deleteByCartIds(@Param("cartIds") Collection<Long> cartIds);
 }
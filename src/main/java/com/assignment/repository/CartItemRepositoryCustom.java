@@ -0,0 +1,35 @@
+package com.assignment.repository;
+
+import java.time.Instant;
+import java.util.Collection;
+
+import com.assignment.domain.CartItem;
+import com.assignment.domain.Money;
+
+
+/**
+ * Custom queries of the CartItem repository, which Spring Data cannot derive.
+ */
+public interface CartItemRepositoryCustom {
+
+	/**
+	 * Add the quantity to the line of the product in the cart, or insert the line if the cart has none,
+	 * with one statement relying on the unique (cart_id, product_id) constraint.
+	 *
+	 * @param cartId the cart id
+	 * @param productId the product id
+	 * @param quantity the quantity to add
+	 * @param amount the price of the quantity, added to the total of the line
+	 * @param expiresAt the new expiry of the stock held by the line
+	 * @return the number of inserted or updated rows
+	 */
+	int upsert(Long cartId, Long productId, int quantity, Money amount, Instant expiresAt);
+
+	/**
+	 * Insert cart items which already have their id, with JDBC batches and without loading them in the
+	 * persistence context.
+	 *
+	 * @param cartItems the cart items, referencing their cart and product by id
+	 */
+	void insertAll(Collection<CartItem> cartItems);
+}
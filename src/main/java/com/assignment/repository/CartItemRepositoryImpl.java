@@ -0,0 +1,98 @@
+package com.assignment.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.Collection;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.Session;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.StandardBasicTypes;
+
+import com.assignment.domain.CartItem;
+import com.assignment.domain.Money;
+
+
+/**
+ * Implementation of the custom queries of the CartItem repository.
+ */
+public class CartItemRepositoryImpl implements CartItemRepositoryCustom {
+
+	private static final String POSTGRESQL_UPSERT = "insert into cart_item (id, quantity, line_total, expires_at, version, cart_id, product_id)"
+			+ " values (nextval('hibernate_sequence'), :quantity, :amount, :expiresAt, 0, :cartId, :productId)"
+			+ " on conflict (cart_id, product_id) do update set quantity = cart_item.quantity + excluded.quantity,"
+			+ " line_total = cart_item.line_total + excluded.line_total,"
+			+ " expires_at = excluded.expires_at, version = cart_item.version + 1";
+
+	// H2 has no on conflict clause, its merge by key replaces the row built from the current one
+	private static final String H2_UPSERT = "merge into cart_item (id, quantity, line_total, expires_at, version, cart_id, product_id)"
+			+ " key (cart_id, product_id)"
+			+ " select coalesce(c.id, nextval('hibernate_sequence')), coalesce(c.quantity, 0) + :quantity,"
+			+ " coalesce(c.line_total, 0) + :amount, :expiresAt,"
+			+ " coalesce(c.version + 1, 0), :cartId, :productId"
+			+ " from dual left join cart_item c on c.cart_id = :cartId and c.product_id = :productId";
+
+	private static final String INSERT = "insert into cart_item (id, quantity, expires_at, version, cart_id, product_id, line_total)"
+			+ " values (?, ?, ?, 0, ?, ?, ?)";
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Override
+	public int upsert(Long cartId, Long productId, int quantity, Money amount, Instant expiresAt) {
+		Dialect dialect = entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+			.getJdbcServices().getDialect();
+		NativeQuery<?> query = entityManager.createNativeQuery(dialect instanceof H2Dialect ? H2_UPSERT : POSTGRESQL_UPSERT)
+			.unwrap(NativeQuery.class);
+		// only the cart item cache regions are invalidated by the statement
+		query.addSynchronizedEntityClass(CartItem.class);
+		return query.setParameter("cartId", cartId)
+			.setParameter("productId", productId)
+			.setParameter("quantity", quantity)
+			.setParameter("amount", amount.toBigDecimal(), StandardBasicTypes.BIG_DECIMAL)
+			.setParameter("expiresAt", expiresAt == null ? null : Timestamp.from(expiresAt), StandardBasicTypes.TIMESTAMP)
+			.executeUpdate();
+	}
+
+	@Override
+	public void insertAll(Collection<CartItem> cartItems) {
+		if (cartItems.isEmpty()) {
+			return;
+		}
+		// the statements bypass Hibernate, so they are batched by the configured batch size here
+		int batchSize = Math.max(1, entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+			.getSessionFactoryOptions().getJdbcBatchSize());
+		entityManager.unwrap(Session.class).doWork(connection -> {
+			try (PreparedStatement statement = connection.prepareStatement(INSERT)) {
+				int pending = 0;
+				for (CartItem cartItem : cartItems) {
+					statement.setLong(1, cartItem.getId());
+					statement.setInt(2, cartItem.getQuantity());
+					if (cartItem.getExpiresAt() == null) {
+						statement.setNull(3, Types.TIMESTAMP);
+					} else {
+						statement.setTimestamp(3, Timestamp.from(cartItem.getExpiresAt()));
+					}
+					statement.setLong(4, cartItem.getCart().getId());
+					statement.setLong(5, cartItem.getProduct().getId());
+					statement.setBigDecimal(6, cartItem.getLineTotal().toBigDecimal());
+					statement.addBatch();
+					if (++pending == batchSize) {
+						statement.executeBatch();
+						pending = 0;
+					}
+				}
+				if (pending > 0) {
+					statement.executeBatch();
+				}
+			}
+		});
+	}
+}
@@ -1,9 +1,18 @@
 package com.assignment.repository;
 
 import com.assignment.domain.Cart;
+import com.assignment.domain.Money;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Repository;
 
 import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+import javax.persistence.LockModeType;
 
 
 /**
@@ -13,4 +22,100 @@ import org.springframework.data.jpa.repository.*;
 @Repository
 public interface CartRepository extends JpaRepository<Cart, Long> {
 
+	/**
+	 * Find a cart with its items and their products, in one query.
+	 *
+	 * @param id the cart id
+	 * @return the cart, or null if it does not exist
+	 */
+	@Query("select distinct cart from Cart cart left join fetch cart.cartItems cartItem left join fetch cartItem.product"
+			+ " where cart.id = :id")
+	Cart findOneWithEagerRelationships(@Param("id") Long id);
+
+	@Query("select distinct cart from Cart cart left join fetch cart.cartItems cartItem left join fetch cartItem.product"
+			+ " where cart.id in :ids")
+	List<Cart> findAllWithEagerRelationships(@Param("ids") Collection<Long> ids);
+
+	/**
+	 * Lock carts against concurrent changes of their items, until the end of the transaction.
+	 *
+	 * @param ids the cart ids
+	 * @return the existing carts
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("select cart from Cart cart where cart.id in :ids")
+	List<Cart> findAllForUpdate(@Param("ids") Collection<Long> ids);
+
+	/**
+	 * Lock the carts not modified since a time, until the end of the transaction.
+	 *
+	 * @param ids the cart ids
+	 * @param before the time
+	 * @return the idle carts
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("select cart from Cart cart where cart.id in :ids and cart.lastModifiedAt < :before")
+	List<Cart> findIdleForUpdate(@Param("ids") Collection<Long> ids, @Param("before") Instant before);
+
+	@Query("select cart.id from Cart cart where cart.lastModifiedAt < :before order by cart.lastModifiedAt")
+	List<Long> findIdleIds(@Param("before") Instant before, Pageable pageable);
+
+	@Query("select cart.id from Cart cart where cart.id in :ids and cart.lastModifiedAt < :before")
+	List<Long> findIdleIdsByIdIn(@Param("ids") Collection<Long> ids, @Param("before") Instant before);
+
+	/**
+	 * Add a change of the items of a cart kept in a {@link com.assignment.service.CartStateStore} to its
+	 * totals, touching it.
+	 *
+	 * @param id the cart id
+	 * @param itemCount the change of the number of items
+	 * @param amount the change of the price of the items
+	 * @param now the modification time
+	 * @return the number of changed carts
+	 */
+	@Modifying
+	@Query("update Cart cart set cart.itemCount = cart.itemCount + :itemCount, cart.subtotal = cart.subtotal + :amount,"
+			+ " cart.lastModifiedAt = :now where cart.id = :id")
+	int addToTotals(@Param("id") Long id, @Param("itemCount") int itemCount, @Param("amount") Money amount,
+			@Param("now") Instant now);
+
+	/**
+	 * Recompute the totals of carts from the totals of their items, touching them.
+	 *
+	 * @param ids the cart ids
+	 * @param now the modification time
+	 * @return the number of changed carts
+	 */
+	@Modifying
+	@Query("update Cart cart set"
+			+ " cart.itemCount = coalesce((select sum(c.quantity) from CartItem c where c.cart.id = cart.id), 0),"
+			+ " cart.subtotal = coalesce((select sum(c.lineTotal) from CartItem c where c.cart.id = cart.id), 0),"
+			+ " cart.lastModifiedAt = :now where cart.id in :ids")
+	int recomputeTotals(@Param("ids") Collection<Long> ids, @Param("now") Instant now);
+
+	/**
+	 * Subtract cart items from the totals of their carts, before they are deleted.
+	 *
+	 * @param cartItemIds the cart item ids
+	 * @return the number of changed carts
+	 */
+	@Modifying
+	@Query("update versioned Cart cart set"
+			+ " cart.itemCount = cart.itemCount - (select sum(c.quantity) from CartItem c where c.cart.id = cart.id and c.id in :ids),"
+			+ " cart.subtotal = cart.subtotal - (select sum(c.lineTotal) from CartItem c where c.cart.id = cart.id and c.id in :ids)"
+			+ " where cart.id in (select c.cart.id from CartItem c where c.id in :ids)")
+	int subtractCartItems(@Param("ids") Collection<Long> cartItemIds);
+
+	@Modifying
+	@Query("delete from Cart cart where cart.id in :ids")
+	int deleteByIds(@Param("ids") Collection<Long> ids);
+
+	@Query("select cart.id from Cart cart")
+	List<Long> findAllIds();
+
+	@Query("select cart.id from Cart cart where cart.id > :after order by cart.id")
+	List<Long> findIdsAfter(@Param("after") Long after, Pageable pageable);
+
+	@Query("select cart.id, cart.lastModifiedAt from Cart cart where cart.id in :ids")
+	List<Object[]> findModificationTimes(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,36 @@
+package com.assignment.repository;
+
+import com.assignment.domain.CartSnapshot;
+import org.springframework.stereotype.Repository;
+
+import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+
+
+/**
+ * Spring Data JPA repository for the CartSnapshot entity.
+ */
+@SuppressWarnings("unused")
+@Repository
+public interface CartSnapshotRepository extends JpaRepository<CartSnapshot, Long> {
+
+	@Query("select distinct s from CartSnapshot s left join fetch s.lines where s.cartId = :cartId")
+	CartSnapshot findOneWithLines(@Param("cartId") Long cartId);
+
+	@Query("select s.cartId from CartSnapshot s join s.lines line where line.lineId = :lineId")
+	List<Long> findCartIdsByLineId(@Param("lineId") Long lineId);
+
+	/**
+	 * Find the carts whose snapshot has a line with an expired hold, not changed by a later event.
+	 *
+	 * @param now the current time
+	 * @return the cart ids
+	 */
+	@Query("select distinct s.cartId from CartSnapshot s join s.lines line where line.expiresAt < :now"
+			+ " and not exists (select e from CartEvent e where e.cartId = s.cartId and e.sequence > s.sequence"
+			+ " and e.productId = line.productId)")
+	List<Long> findCartIdsWithExpiredLines(@Param("now") Instant now);
+}
@@ -6,6 +6,10 @@ import org.springframework.stereotype.Repository;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
 
 
 /**
@@ -15,9 +19,106 @@ import org.springframework.data.jpa.repository.*;
 public interface ProductRepository extends JpaRepository<Product, Long> {
 	Product findOneByIdAndVisible(Long id, Boolean visible);
 
+	List<Product> findByIdInAndVisibleTrue(Collection<Long> ids);
+
 	@Query("select p from Product p where p.visible = true and p.name like %?1%")
 	Page<Product> searchForUser(String keyword, Pageable pageable);
 
 	@Query("select p from Product p where p.name like %?1%")
 	Page<Product> searchForAdmin(String keyword, Pageable pageable);
+
+	/**
+	 * Find the version of a product.
+	 *
+	 * @param id the product id
+	 * @return the version, or null if the product does not exist
+	 */
+	@Query("select p.version from Product p where p.id = :id")
+	Long findVersion(@Param("id") Long id);
+
+	// the stock statements below leave the version alone: it guards the edits of a product, which a
+	// reservation made meanwhile does not make stale
+
+	/**
+	 * Decrease the product quantity only if enough stock is left.
+	 *
+	 * @param id the product id
+	 * @param quantity the quantity to take
+	 * @return the number of updated rows, 0 when the stock is not enough
+	 */
+	@Modifying
+	@Query("update Product p set p.quantity = p.quantity - :quantity where p.id = :id and p.quantity >= :quantity")
+	int decreaseQuantity(@Param("id") Long id, @Param("quantity") Integer quantity);
+
+	/**
+	 * Increase the product quantity.
+	 *
+	 * @param id the product id
+	 * @param quantity the quantity to give back
+	 * @return the number of updated rows
+	 */
+	@Modifying
+	@Query("update Product p set p.quantity = p.quantity + :quantity where p.id = :id")
+	int increaseQuantity(@Param("id") Long id, @Param("quantity") Integer quantity);
+
+	/**
+	 * Give back the quantity held by cart items, with one statement for all their products.
+	 *
+	 * @param cartItemIds the cart item ids
+	 * @return the number of updated products
+	 */
+	@Modifying
+	@Query("update Product p set p.quantity = p.quantity"
+			+ " + (select sum(c.quantity) from CartItem c where c.product.id = p.id and c.id in :ids)"
+			+ " where p.id in (select c.product.id from CartItem c where c.id in :ids)")
+	int increaseQuantityOfCartItems(@Param("ids") Collection<Long> cartItemIds);
+
+	/**
+	 * Give back the quantity held by the items of carts, with one statement for all their products.
+	 *
+	 * @param cartIds the cart ids
+	 * @return the number of updated products
+	 */
+	@Modifying
+	@Query("update Product p set p.quantity = p.quantity"
+			+ " + (select sum(c.quantity) from CartItem c where c.product.id = p.id and c.cart.id in :cartIds)"
+			+ " where p.id in (select c.product.id from CartItem c where c.cart.id in :cartIds)")
+	int increaseQuantityOfCarts(@Param("cartIds") Collection<Long> cartIds);
+
+	/**
+	 * Find the quantity of a product.
+	 *
+	 * @param id the product id
+	 * @return the quantity, or null if the product does not exist
+	 */
+	@Query("select p.quantity from Product p where p.id = :id")
+	Integer findQuantity(@Param("id") Long id);
+
+	/**
+	 * Find the quantity of products.
+	 *
+	 * @param ids the product ids
+	 * @return the [product id, quantity] rows
+	 */
+	@Query("select p.id, p.quantity from Product p where p.id in :ids")
+	List<Object[]> findQuantities(@Param("ids") Collection<Long> ids);
+
+	/**
+	 * Find the quantity of all the products, without loading the entities.
+	 *
+	 * @return the [product id, quantity] rows
+	 */
+	@Query("select p.id, p.quantity from Product p")
+	List<Object[]> findAllQuantities();
+
+	/**
+	 * Overwrite the product quantity.
+	 *
+	 * @param id the product id
+	 * @param quantity the quantity
+	 * @return the number of updated rows
+	 */
+	@Modifying
+	@Query("update Product p set p.quantity = :quantity where p.id = :id")
+	int updateQuantity(@Param("id") Long id, @Param("quantity") Integer quantity);
 }
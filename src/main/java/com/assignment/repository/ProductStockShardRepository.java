@@ -0,0 +1,52 @@
+package com.assignment.repository;
+
+import com.assignment.domain.ProductStockShard;
+
+import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+import javax.persistence.LockModeType;
+
+
+/**
+ * Spring Data JPA repository for the ProductStockShard entity.
+ */
+@Repository
+public interface ProductStockShardRepository extends JpaRepository<ProductStockShard, Long> {
+
+	@Query("select s.id, s.quantity from ProductStockShard s where s.product.id = :productId")
+	List<Object[]> findQuantities(@Param("productId") Long productId);
+
+	@Query("select s.product.id, sum(s.quantity) from ProductStockShard s where s.product.id in :productIds group by s.product.id")
+	List<Object[]> sumQuantityByProduct(@Param("productIds") Collection<Long> productIds);
+
+	@Modifying
+	@Query("update ProductStockShard s set s.quantity = s.quantity - :quantity where s.id = :id and s.quantity >= :quantity")
+	int decreaseQuantity(@Param("id") Long id, @Param("quantity") Integer quantity);
+
+	@Modifying
+	@Query("update ProductStockShard s set s.quantity = s.quantity + :quantity where s.product.id = :productId and s.shard = :shard")
+	int increaseQuantity(@Param("productId") Long productId, @Param("shard") Integer shard, @Param("quantity") Integer quantity);
+
+	@Modifying
+	@Query("update ProductStockShard s set s.quantity = s.quantity + :quantity where s.id = :id")
+	int increaseQuantityOfShard(@Param("id") Long id, @Param("quantity") Integer quantity);
+
+	/**
+	 * Lock the shards of a product, until the end of the transaction.
+	 *
+	 * @param productId the product id
+	 * @return the shards, in shard order
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("select s from ProductStockShard s where s.product.id = :productId order by s.shard")
+	List<ProductStockShard> findAllForUpdate(@Param("productId") Long productId);
+
+	@Modifying
+	@Query("delete from ProductStockShard s where s.product.id = :productId")
+	int deleteByProductId(@Param("productId") Long productId);
+}
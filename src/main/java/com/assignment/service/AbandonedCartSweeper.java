@@ -0,0 +1,125 @@
+package com.assignment.service;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.assignment.config.ApplicationProperties;
+import com.assignment.repository.CartRepository;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+
+/**
+ * The Class AbandonedCartSweeper.
+ * <p>
+ * Deletes the carts whose items were not changed for the idle time and gives their stock back. Each
+ * batch of idle carts is found through the last modification index and deleted in its own
+ * transaction with the set-based statements of the cart deletion. The sweep gives way to the
+ * requests: it stops, until the next one, while the database connection pool is busier than the
+ * maximum usage.
+ */
+@Service
+public class AbandonedCartSweeper {
+
+	private final Logger log = LoggerFactory.getLogger(AbandonedCartSweeper.class);
+
+	private final CartRepository cartRepository;
+
+	private final ShoppingCartService shoppingCartService;
+
+	private final ApplicationProperties.Cart.Abandoned abandonedProperties;
+
+	private final HikariDataSource hikariDataSource;
+
+	private final MetricRegistry metricRegistry;
+
+	private Meter swept;
+
+	private Meter throttled;
+
+	/**
+	 * Instantiates a new abandoned cart sweeper.
+	 *
+	 * @param cartRepository the cart repository
+	 * @param shoppingCartService the shopping cart service
+	 * @param applicationProperties the application properties
+	 * @param dataSource the data source, its usage is only known for a Hikari pool
+	 * @param metricRegistry the metric registry
+	 */
+	public AbandonedCartSweeper(CartRepository cartRepository, ShoppingCartService shoppingCartService,
+			ApplicationProperties applicationProperties, DataSource dataSource, MetricRegistry metricRegistry) {
+		this.cartRepository = cartRepository;
+		this.shoppingCartService = shoppingCartService;
+		this.abandonedProperties = applicationProperties.getCart().getAbandoned();
+		this.hikariDataSource = unwrapHikari(dataSource);
+		this.metricRegistry = metricRegistry;
+	}
+
+	private static HikariDataSource unwrapHikari(DataSource dataSource) {
+		try {
+			return dataSource.isWrapperFor(HikariDataSource.class) ? dataSource.unwrap(HikariDataSource.class) : null;
+		} catch (SQLException e) {
+			return null;
+		}
+	}
+
+	@PostConstruct
+	public void registerMetrics() {
+		swept = metricRegistry.meter(MetricRegistry.name(AbandonedCartSweeper.class, "swept"));
+		throttled = metricRegistry.meter(MetricRegistry.name(AbandonedCartSweeper.class, "throttled"));
+	}
+
+	/**
+	 * Sweep the idle carts, batch after batch.
+	 *
+	 * @return the number of deleted carts
+	 */
+	@Scheduled(fixedDelayString = "${application.cart.abandoned.sweeper-interval:300000}")
+	public int sweep() {
+		if (abandonedProperties.getIdleSeconds() <= 0) {
+			return 0;
+		}
+		Instant before = Instant.now().minusSeconds(abandonedProperties.getIdleSeconds());
+		int batchSize = abandonedProperties.getSweeperBatchSize();
+		int total = 0;
+		List<Long> ids;
+		int deleted;
+		do {
+			if (isPoolBusy()) {
+				throttled.mark();
+				log.debug("Database pool busy, sweep stopped after {} carts", total);
+				break;
+			}
+			ids = cartRepository.findIdleIds(before, new PageRequest(0, batchSize));
+			deleted = ids.isEmpty() ? 0 : shoppingCartService.deleteIdle(ids, before);
+			total += deleted;
+			// a batch whose carts were all changed meanwhile would be found again
+		} while (ids.size() == batchSize && deleted > 0);
+		swept.mark(total);
+		if (total > 0) {
+			log.info("Swept {} carts idle since {}", total, before);
+		}
+		return total;
+	}
+
+	private boolean isPoolBusy() {
+		HikariPoolMXBean pool = hikariDataSource == null ? null : hikariDataSource.getHikariPoolMXBean();
+		if (pool == null) {
+			return false;
+		}
+		return pool.getActiveConnections() > abandonedProperties.getMaxPoolUsage() * hikariDataSource.getMaximumPoolSize();
+	}
+
+}
@@ -0,0 +1,297 @@
+package com.assignment.service;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.assignment.config.ApplicationProperties;
+import com.assignment.domain.Cart;
+import com.assignment.domain.CartEvent;
+import com.assignment.domain.CartSnapshot;
+import com.assignment.domain.CartSnapshotLine;
+import com.assignment.domain.enumeration.CartEventType;
+import com.assignment.repository.CartEventRepository;
+import com.assignment.repository.CartRepository;
+import com.assignment.repository.CartSnapshotRepository;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+
+/**
+ * The Class CartEventLog.
+ * <p>
+ * Keeps the carts as an append-only log of their changes in the cart_event table: a change of a cart
+ * only inserts rows, the cart is rebuilt from its latest snapshot and the events which follow it. The
+ * events of a cart are numbered from its revision, so of two changes made from the same revision the
+ * unique constraint lets only the first one be appended, the other being retried like an optimistic
+ * locking conflict.
+ * <p>
+ * A cart is snapshotted every {@code snapshot-interval} events, which bounds the events read with it,
+ * and the snapshotted events are compacted once older than the retention. The cart row is kept, as
+ * the identity of the cart and with its totals, changed with the events; the cart_item table is not
+ * used.
+ * <p>
+ * Enabled with {@code application.cart.event-log.enabled}, not together with the {@link CartGrid}.
+ */
+@Component
+@ConditionalOnProperty(prefix = "application.cart.event-log", name = "enabled", havingValue = "true")
+public class CartEventLog implements CartStateStore {
+
+	private final Logger log = LoggerFactory.getLogger(CartEventLog.class);
+
+	private final CartRepository cartRepository;
+
+	private final CartEventRepository cartEventRepository;
+
+	private final CartSnapshotRepository cartSnapshotRepository;
+
+	private final ApplicationProperties.Cart.EventLog eventLogProperties;
+
+	private final MetricRegistry metricRegistry;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private Meter appended;
+
+	private Histogram replayed;
+
+	/**
+	 * Instantiates a new cart event log.
+	 *
+	 * @param cartRepository the cart repository
+	 * @param cartEventRepository the cart event repository
+	 * @param cartSnapshotRepository the cart snapshot repository
+	 * @param applicationProperties the application properties
+	 * @param metricRegistry the metric registry
+	 * @param transactionManager the transaction manager
+	 */
+	public CartEventLog(CartRepository cartRepository, CartEventRepository cartEventRepository,
+			CartSnapshotRepository cartSnapshotRepository, ApplicationProperties applicationProperties,
+			MetricRegistry metricRegistry,
+			PlatformTransactionManager transactionManager) {
+		this.cartRepository = cartRepository;
+		this.cartEventRepository = cartEventRepository;
+		this.cartSnapshotRepository = cartSnapshotRepository;
+		this.eventLogProperties = applicationProperties.getCart().getEventLog();
+		this.metricRegistry = metricRegistry;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+
+	@PostConstruct
+	public void registerMetrics() {
+		appended = metricRegistry.meter(MetricRegistry.name(CartEventLog.class, "appended"));
+		replayed = metricRegistry.histogram(MetricRegistry.name(CartEventLog.class, "replayed"));
+	}
+
+	@Override
+	public CartState get(Long cartId) {
+		CartSnapshot snapshot = cartSnapshotRepository.findOneWithLines(cartId);
+		long revision = snapshot == null ? 0 : snapshot.getSequence();
+		Instant modifiedAt = snapshot == null ? null : snapshot.getCreatedAt();
+		List<CartEvent> tail = cartEventRepository.findTail(cartId, revision);
+		replayed.update(tail.size());
+		if (snapshot == null && tail.isEmpty()) {
+			// a cart without changes, or whose log was compacted after its deletion
+			Cart cart = cartRepository.findOne(cartId);
+			return cart == null ? null : new CartState(cartId, 0, cart.getCreatedAt().toEpochMilli(), Collections.emptyList());
+		}
+		// by product id
+		Map<Long, CartState.Line> lines = new LinkedHashMap<>();
+		if (snapshot != null) {
+			for (CartSnapshotLine line : snapshot.getLines()) {
+				lines.put(line.getProductId(),
+					new CartState.Line(line.getLineId(), line.getProductId(), line.getQuantity(), line.getExpiresAt(),
+						line.getLineTotal()));
+			}
+		}
+		for (CartEvent event : tail) {
+			switch (event.getType()) {
+			case ITEM_ADDED:
+			case QUANTITY_CHANGED:
+				lines.put(event.getProductId(),
+					new CartState.Line(event.getLineId(), event.getProductId(), event.getQuantity(), event.getExpiresAt(),
+						event.getLineTotal()));
+				break;
+			case ITEM_REMOVED:
+				lines.remove(event.getProductId());
+				break;
+			case CART_DELETED:
+				return null;
+			}
+			revision = event.getSequence();
+			modifiedAt = event.getCreatedAt();
+		}
+		return new CartState(cartId, revision, modifiedAt.toEpochMilli(), lines.values());
+	}
+
+	/**
+	 * Add a new cart, nothing is appended: the cart row inserted by the running transaction is the
+	 * cart until its first change.
+	 *
+	 * @param cartState the cart state
+	 */
+	@Override
+	public void add(CartState cartState) {
+		// the cart row is enough
+	}
+
+	@Override
+	public boolean replace(CartState current, CartState next) {
+		List<CartEvent> events = diff(current, next);
+		if (events.isEmpty()) {
+			return true;
+		}
+		if (!append(events)) {
+			return false;
+		}
+		long sequence = events.get(events.size() - 1).getSequence();
+		int interval = eventLogProperties.getSnapshotInterval();
+		if (sequence / interval > current.getRevision() / interval) {
+			snapshot(next, sequence);
+		}
+		// touched after the snapshot, the row is not older than the state read back
+		addToTotals(current, next);
+		return true;
+	}
+
+	@Override
+	public CartState remove(Long cartId) {
+		CartState removed = get(cartId);
+		if (removed == null) {
+			return null;
+		}
+		CartEvent deleted = event(cartId, removed.getRevision() + 1, CartEventType.CART_DELETED, null, Instant.now());
+		if (!append(Collections.singletonList(deleted))) {
+			throw new ObjectOptimisticLockingFailureException(Cart.class, cartId);
+		}
+		if (cartSnapshotRepository.exists(cartId)) {
+			cartSnapshotRepository.delete(cartId);
+		}
+		cartRepository.deleteByIds(Collections.singleton(cartId));
+		return removed;
+	}
+
+	@Override
+	public Long findCartIdOfLine(Long lineId) {
+		List<Long> cartIds = cartEventRepository.findCartIdsByLineId(lineId);
+		if (cartIds.isEmpty()) {
+			// the events of the line may be compacted into the snapshot
+			cartIds = cartSnapshotRepository.findCartIdsByLineId(lineId);
+		}
+		return cartIds.isEmpty() ? null : cartIds.get(0);
+	}
+
+	@Override
+	public Set<Long> findCartIdsWithExpiredLines(Instant now) {
+		Set<Long> cartIds = new HashSet<>(cartSnapshotRepository.findCartIdsWithExpiredLines(now));
+		cartIds.addAll(cartEventRepository.findCartIdsWithExpiredLines(now));
+		return cartIds;
+	}
+
+	/**
+	 * Compact the log, deleting the events older than the retention which are folded into a snapshot
+	 * and all the events of the carts deleted before the retention.
+	 *
+	 * @return the number of deleted events
+	 */
+	@Scheduled(fixedDelayString = "${application.cart.event-log.compaction-interval:3600000}")
+	public int compact() {
+		Instant before = Instant.now().minus(eventLogProperties.getRetentionDays(), ChronoUnit.DAYS);
+		int deleted = transactionTemplate.execute(status -> {
+			int snapshotted = cartEventRepository.deleteSnapshottedBefore(before);
+			List<Long> deletedCartIds = cartEventRepository.findCartIdsDeletedBefore(before);
+			return snapshotted + (deletedCartIds.isEmpty() ? 0 : cartEventRepository.deleteByCartIds(deletedCartIds));
+		});
+		log.info("Compacted {} cart events older than {}", deleted, before);
+		return deleted;
+	}
+
+	// the removed lines first, a product changing line is removed then added; the events are made at
+	// the time of the next state, which the state read back has
+	private List<CartEvent> diff(CartState current, CartState next) {
+		List<CartEvent> events = new ArrayList<>();
+		long sequence = current.getRevision();
+		Instant createdAt = Instant.ofEpochMilli(next.getModifiedAt());
+		for (CartState.Line line : current.getLines()) {
+			CartState.Line nextLine = next.getLineOfProduct(line.getProductId());
+			if (nextLine == null || !nextLine.getId().equals(line.getId())) {
+				events.add(event(current.getId(), ++sequence, CartEventType.ITEM_REMOVED, line, createdAt));
+			}
+		}
+		for (CartState.Line line : next.getLines()) {
+			CartState.Line currentLine = current.getLineOfProduct(line.getProductId());
+			if (currentLine == null || !currentLine.getId().equals(line.getId())) {
+				events.add(event(current.getId(), ++sequence, CartEventType.ITEM_ADDED, line, createdAt));
+			} else if (currentLine.getQuantity() != line.getQuantity()
+					|| !Objects.equals(currentLine.getExpiresAt(), line.getExpiresAt())
+					|| !currentLine.getLineTotal().equals(line.getLineTotal())) {
+				events.add(event(current.getId(), ++sequence, CartEventType.QUANTITY_CHANGED, line, createdAt));
+			}
+		}
+		return events;
+	}
+
+	private CartEvent event(Long cartId, long sequence, CartEventType type, CartState.Line line, Instant createdAt) {
+		CartEvent event = new CartEvent().cartId(cartId).sequence(sequence).type(type).createdAt(createdAt);
+		if (line != null) {
+			event.lineId(line.getId()).productId(line.getProductId()).quantity(line.getQuantity())
+				.expiresAt(line.getExpiresAt()).lineTotal(line.getLineTotal());
+		}
+		return event;
+	}
+
+	// the lines keep their totals, a removed line takes off what it added
+	private void addToTotals(CartState current, CartState next) {
+		cartRepository.addToTotals(current.getId(), next.getItemCount() - current.getItemCount(),
+			next.getSubtotal().minus(current.getSubtotal()), Instant.now());
+	}
+
+	// flushed at once, so a conflicting change is known before the caller goes on
+	private boolean append(List<CartEvent> events) {
+		try {
+			cartEventRepository.save(events);
+			cartEventRepository.flush();
+		} catch (DataIntegrityViolationException e) {
+			log.debug("Cart {} was changed concurrently: {}", events.get(0).getCartId(), e.getMessage());
+			return false;
+		}
+		appended.mark(events.size());
+		return true;
+	}
+
+	private void snapshot(CartState cartState, long sequence) {
+		CartSnapshot snapshot = cartSnapshotRepository.findOne(cartState.getId());
+		if (snapshot == null) {
+			snapshot = new CartSnapshot().cartId(cartState.getId());
+		}
+		snapshot.sequence(sequence).createdAt(Instant.ofEpochMilli(cartState.getModifiedAt()));
+		snapshot.setLines(cartState.getLines().stream()
+			.map(line -> new CartSnapshotLine(line.getId(), line.getProductId(), line.getQuantity(), line.getExpiresAt(),
+				line.getLineTotal()))
+			.collect(Collectors.toList()));
+		cartSnapshotRepository.save(snapshot);
+		log.debug("Snapshotted cart {} at event {}", cartState.getId(), sequence);
+	}
+
+}
@@ -0,0 +1,336 @@
+package com.assignment.service;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.assignment.config.ApplicationProperties;
+import com.assignment.domain.Cart;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.hazelcast.config.InMemoryFormat;
+import com.hazelcast.config.MapConfig;
+import com.hazelcast.config.MapIndexConfig;
+import com.hazelcast.config.MapStoreConfig;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.MapStoreFactory;
+import com.hazelcast.query.Predicate;
+import com.hazelcast.query.Predicates;
+
+
+/**
+ * The Class CartGrid.
+ * <p>
+ * Keeps the carts in a Hazelcast map shared by all the members of the cluster, so adding and
+ * changing items does not commit to the database. The {@link CartStateMapStore} writes the carts
+ * behind to the cart and cart_item tables, all the changes of a cart within the write delay being
+ * written once. The pending writes are backed up with the entries, so they survive the loss of
+ * fewer members than the backup count; they are lost if the whole cluster stops abruptly.
+ * <p>
+ * The map is not transactional: a cart is added when the transaction inserting its row commits.
+ * A transaction replacing or removing a cart locks its entry, and keeps its changes to itself until
+ * it commits, when they are published and the entry unlocked; the other transactions do not build on
+ * changes which may be rolled back, and a rollback has nothing to undo in the map. The locks are
+ * leased for {@code lock-lease-seconds}: before committing, a transaction checks that it still holds
+ * the lock of each of its carts, renewing the lease, and that nobody changed them meanwhile, or it is
+ * rolled back as a conflict with its stock reservations. A change still failing to publish after the
+ * commit is metered as "lost-changes".
+ * <p>
+ * Enabled with {@code application.cart.grid.enabled}.
+ */
+@Component
+@ConditionalOnProperty(prefix = "application.cart.grid", name = "enabled", havingValue = "true")
+@DependsOn("cartStateMapStore") // flushed before the map store is destroyed
+public class CartGrid implements CartStateStore {
+
+	/** The name of the cart map. */
+	public static final String MAP_NAME = "carts";
+
+	/** The attribute of the ids of the lines of a cart, indexed. */
+	static final String LINE_ID_ATTRIBUTE = "lines[any].id";
+
+	private final Logger log = LoggerFactory.getLogger(CartGrid.class);
+
+	private final IMap<Long, CartState> carts;
+
+	private final ApplicationProperties.Cart.Grid gridProperties;
+
+	private final MetricRegistry metricRegistry;
+
+	private final Meter lostChanges;
+
+	/**
+	 * Instantiates a new cart grid.
+	 *
+	 * @param hazelcastInstance the hazelcast instance, configured with {@link #mapConfig}
+	 * @param applicationProperties the application properties
+	 * @param metricRegistry the metric registry
+	 */
+	public CartGrid(HazelcastInstance hazelcastInstance, ApplicationProperties applicationProperties,
+			MetricRegistry metricRegistry) {
+		this.carts = hazelcastInstance.getMap(MAP_NAME);
+		this.gridProperties = applicationProperties.getCart().getGrid();
+		this.metricRegistry = metricRegistry;
+		this.lostChanges = metricRegistry.meter(MetricRegistry.name(CartGrid.class, "lost-changes"));
+	}
+
+	@PostConstruct
+	public void registerMetrics() {
+		metricRegistry.register(MetricRegistry.name(CartGrid.class, "pending-writes"),
+				(Gauge<Long>) () -> carts.getLocalMapStats().getDirtyEntryCount());
+	}
+
+	/**
+	 * Build the configuration of the cart map.
+	 *
+	 * @param grid the cart grid properties
+	 * @param mapStoreFactory the factory of the map store, called when the map is first used
+	 * @return the map config
+	 */
+	public static MapConfig mapConfig(ApplicationProperties.Cart.Grid grid, MapStoreFactory<Long, CartState> mapStoreFactory) {
+		MapConfig mapConfig = new MapConfig(MAP_NAME);
+		mapConfig.setBackupCount(grid.getBackupCount());
+		// states are compared by revision when replaced
+		mapConfig.setInMemoryFormat(InMemoryFormat.OBJECT);
+		mapConfig.addMapIndexConfig(new MapIndexConfig(LINE_ID_ATTRIBUTE, false));
+		mapConfig.setMapStoreConfig(new MapStoreConfig()
+			.setEnabled(true)
+			.setFactoryImplementation(mapStoreFactory)
+			.setWriteDelaySeconds(grid.getWriteDelaySeconds())
+			.setWriteBatchSize(grid.getWriteBatchSize())
+			.setWriteCoalescing(true)
+			// all the carts are loaded, the map is then the reference for every cart
+			.setInitialLoadMode(MapStoreConfig.InitialLoadMode.EAGER));
+		return mapConfig;
+	}
+
+	@Override
+	public CartState get(Long cartId) {
+		Changes changes = (Changes) TransactionSynchronizationManager.getResource(this);
+		if (changes != null && changes.latest.containsKey(cartId)) {
+			return changes.latest.get(cartId);
+		}
+		return carts.get(cartId);
+	}
+
+	@Override
+	public void add(CartState cartState) {
+		// the map store writes the lines of the cart, its row must be committed first
+		afterCompletion(TransactionSynchronization.STATUS_COMMITTED, () -> carts.set(cartState.getId(), cartState));
+	}
+
+	@Override
+	public boolean replace(CartState current, CartState next) {
+		Changes changes = currentChanges();
+		if (changes == null) {
+			return carts.replace(current.getId(), current, next);
+		}
+		if (!changes.lock(current.getId()) || !current.equals(get(current.getId()))) {
+			return false;
+		}
+		changes.latest.put(current.getId(), next);
+		return true;
+	}
+
+	@Override
+	public CartState remove(Long cartId) {
+		Changes changes = currentChanges();
+		if (changes == null) {
+			return carts.remove(cartId);
+		}
+		if (!changes.lock(cartId)) {
+			// retried like the optimistic locking conflicts of the cart tables
+			throw new ObjectOptimisticLockingFailureException(Cart.class, cartId);
+		}
+		CartState removed = get(cartId);
+		if (removed != null) {
+			changes.latest.put(cartId, null);
+		}
+		return removed;
+	}
+
+	@Override
+	public Long findCartIdOfLine(Long lineId) {
+		Changes changes = (Changes) TransactionSynchronizationManager.getResource(this);
+		if (changes != null) {
+			for (CartState cartState : changes.latest.values()) {
+				if (cartState != null && cartState.getLine(lineId) != null) {
+					return cartState.getId();
+				}
+			}
+		}
+		// on the index of the line ids, not a scan of the entries
+		Set<Long> cartIds = carts.keySet(Predicates.equal(LINE_ID_ATTRIBUTE, lineId));
+		return cartIds.isEmpty() ? null : cartIds.iterator().next();
+	}
+
+	@Override
+	public Set<Long> findCartIdsWithExpiredLines(Instant now) {
+		// each member reaps the carts it owns
+		return carts.localKeySet(new HasExpiredLine(now));
+	}
+
+	/**
+	 * Write the pending changes to the cart tables.
+	 */
+	@PreDestroy
+	public void flush() {
+		log.debug("Flushing the cart grid");
+		carts.flush();
+	}
+
+	private void afterCompletion(int status, Runnable action) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			if (status == TransactionSynchronization.STATUS_COMMITTED) {
+				action.run();
+			}
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCompletion(int completionStatus) {
+				if (completionStatus == status) {
+					action.run();
+				}
+			}
+		});
+	}
+
+	// the changes of the running transaction, null outside of one
+	private Changes currentChanges() {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			return null;
+		}
+		Changes changes = (Changes) TransactionSynchronizationManager.getResource(this);
+		if (changes == null) {
+			changes = new Changes();
+			TransactionSynchronizationManager.bindResource(this, changes);
+			TransactionSynchronizationManager.registerSynchronization(changes);
+		}
+		return changes;
+	}
+
+	/**
+	 * The carts changed by a transaction, published when it commits.
+	 */
+	private final class Changes extends TransactionSynchronizationAdapter {
+
+		// the states read when the carts were locked
+		private final Map<Long, CartState> original = new HashMap<>();
+
+		// the changed states, null for a removed cart
+		private final Map<Long, CartState> latest = new HashMap<>();
+
+		// the times each cart was locked, as many unlocks are due
+		private final Map<Long, Integer> locks = new HashMap<>();
+
+		boolean lock(Long cartId) {
+			if (original.containsKey(cartId)) {
+				return true;
+			}
+			try {
+				if (!carts.tryLock(cartId, gridProperties.getLockWaitMillis(), TimeUnit.MILLISECONDS,
+						gridProperties.getLockLeaseSeconds(), TimeUnit.SECONDS)) {
+					return false;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			original.put(cartId, carts.get(cartId));
+			locks.merge(cartId, 1, Integer::sum);
+			return true;
+		}
+
+		// the database work commits only if the carts can still be published
+		@Override
+		public void beforeCommit(boolean readOnly) {
+			original.forEach((cartId, current) -> {
+				if (!stillLocked(cartId) || !Objects.equals(current, carts.get(cartId))) {
+					log.warn("Lease of the lock of Cart {} expired before its transaction committed", cartId);
+					throw new ObjectOptimisticLockingFailureException(Cart.class, cartId);
+				}
+			});
+		}
+
+		// a lock held by this thread is entered again, which renews its lease until the changes are published
+		private boolean stillLocked(Long cartId) {
+			try {
+				if (!carts.isLocked(cartId)
+						|| !carts.tryLock(cartId, 0, TimeUnit.MILLISECONDS, gridProperties.getLockLeaseSeconds(), TimeUnit.SECONDS)) {
+					return false;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			locks.merge(cartId, 1, Integer::sum);
+			return true;
+		}
+
+		@Override
+		public void afterCommit() {
+			latest.forEach((cartId, next) -> {
+				CartState current = original.get(cartId);
+				// replaced or removed only if nobody changed the cart after the lease expired
+				boolean published = next == null ? carts.remove(cartId, current) : carts.replace(cartId, current, next);
+				if (!published) {
+					lostChanges.mark();
+					log.error("Changes of Cart {} lost, the cart was changed while locked: {}", cartId, next);
+				}
+			});
+		}
+
+		@Override
+		public void afterCompletion(int status) {
+			TransactionSynchronizationManager.unbindResourceIfPossible(CartGrid.this);
+			locks.forEach((cartId, count) -> {
+				try {
+					for (int i = 0; i < count; i++) {
+						carts.unlock(cartId);
+					}
+				} catch (IllegalMonitorStateException e) {
+					log.warn("Lease of the lock of Cart {} expired before its transaction completed", cartId);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Matches the carts having a line whose stock hold expired.
+	 */
+	static final class HasExpiredLine implements Predicate<Long, CartState> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Instant now;
+
+		HasExpiredLine(Instant now) {
+			this.now = now;
+		}
+
+		@Override
+		public boolean apply(Map.Entry<Long, CartState> entry) {
+			return entry.getValue().getLines().stream().anyMatch(line -> line.isExpired(now));
+		}
+	}
+
+}
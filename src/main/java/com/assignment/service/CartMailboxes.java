@@ -0,0 +1,335 @@
+package com.assignment.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.assignment.config.ApplicationProperties;
+import com.assignment.service.dto.CartDTO;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+
+/**
+ * The Class CartMailboxes.
+ * <p>
+ * Queues the changes of each cart in a mailbox of its own, applied by one worker at a time, so the
+ * concurrent changes of a cart neither wait on its row locks nor conflict and retry. The waiting
+ * changes of a cart are taken as a batch and applied in one transaction, flushed after each change so
+ * the next one is checked against the stamp it bumped; the carts are changed in parallel by the
+ * workers. A batch failing on one of its changes, or on a conflict with a change made elsewhere, is
+ * rolled back and its changes applied one by one, each in its own transaction retried on conflict.
+ * The rollback restores the state from before the batch: the stock taken is given back, and the
+ * {@link CartGrid} publishes the changes of a transaction only when it commits.
+ * <p>
+ * A full mailbox rejects the change, answered with 503 Service Unavailable, and a mailbox left empty
+ * for {@code idle-seconds} is evicted.
+ * <p>
+ * Enabled with {@code application.cart.mailbox.enabled}. With the {@link CartOwners}, the changes are
+ * serialized on the owners instead.
+ */
+@Component
+@ConditionalOnProperty(prefix = "application.cart.mailbox", name = "enabled", havingValue = "true")
+public class CartMailboxes {
+
+	private final Logger log = LoggerFactory.getLogger(CartMailboxes.class);
+
+	private final ShoppingCartService shoppingCartService;
+
+	private final EntityManager entityManager;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final ApplicationProperties.Cart.Mailbox mailboxProperties;
+
+	private final MetricRegistry metricRegistry;
+
+	private final ConcurrentMap<Long, Mailbox> mailboxes = new ConcurrentHashMap<>();
+
+	private final AtomicInteger queued = new AtomicInteger();
+
+	private final ExecutorService workers;
+
+	private Meter changes;
+
+	private Meter rejected;
+
+	private Meter fallbacks;
+
+	private Meter timeouts;
+
+	private Histogram batchSizes;
+
+	private Histogram queueDepths;
+
+	/**
+	 * Instantiates new cart mailboxes.
+	 *
+	 * @param shoppingCartService the shopping cart service
+	 * @param entityManager the entity manager
+	 * @param transactionManager the transaction manager
+	 * @param applicationProperties the application properties
+	 * @param metricRegistry the metric registry
+	 */
+	public CartMailboxes(ShoppingCartService shoppingCartService, EntityManager entityManager,
+			PlatformTransactionManager transactionManager, ApplicationProperties applicationProperties,
+			MetricRegistry metricRegistry) {
+		this.shoppingCartService = shoppingCartService;
+		this.entityManager = entityManager;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.mailboxProperties = applicationProperties.getCart().getMailbox();
+		this.metricRegistry = metricRegistry;
+		this.workers = new ThreadPoolExecutor(mailboxProperties.getWorkers(), mailboxProperties.getWorkers(),
+				0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), new CustomizableThreadFactory("assignment-Mailbox-"));
+	}
+
+	@PostConstruct
+	public void registerMetrics() {
+		changes = metricRegistry.meter(MetricRegistry.name(CartMailboxes.class, "changes"));
+		rejected = metricRegistry.meter(MetricRegistry.name(CartMailboxes.class, "rejected"));
+		fallbacks = metricRegistry.meter(MetricRegistry.name(CartMailboxes.class, "fallbacks"));
+		timeouts = metricRegistry.meter(MetricRegistry.name(CartMailboxes.class, "timeouts"));
+		batchSizes = metricRegistry.histogram(MetricRegistry.name(CartMailboxes.class, "batch-size"));
+		queueDepths = metricRegistry.histogram(MetricRegistry.name(CartMailboxes.class, "queue-depth"));
+		metricRegistry.gauge(MetricRegistry.name(CartMailboxes.class, "mailboxes"), () -> mailboxes::size);
+		metricRegistry.gauge(MetricRegistry.name(CartMailboxes.class, "queued"), () -> queued::get);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		workers.shutdown();
+	}
+
+	/**
+	 * Apply a change of a cart after the changes queued before it, waiting for it.
+	 * <p>
+	 * A change not started within the timeout is dropped; one started meanwhile is still applied, the
+	 * caller is answered with the conflict either way.
+	 *
+	 * @param cartId the cart id
+	 * @param change the change
+	 * @return the changed cart
+	 * @throws RejectedExecutionException if the mailbox of the cart is full
+	 * @throws ConcurrencyFailureException if the change is not applied within the timeout
+	 */
+	public CartDTO execute(Long cartId, CartOwners.Change change) {
+		Pending pending = enqueue(cartId, change);
+		try {
+			return pending.future.get(mailboxProperties.getTimeoutSeconds(), TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			pending.claim();
+			throw new ConcurrencyFailureException("Interrupted while changing cart " + cartId, e);
+		} catch (TimeoutException e) {
+			timeouts.mark();
+			String outcome = pending.claim() ? "dropped" : "still being applied";
+			throw new ConcurrencyFailureException("Change of cart " + cartId + " not applied within "
+					+ mailboxProperties.getTimeoutSeconds() + " seconds, " + outcome, e);
+		} catch (ExecutionException e) {
+			// the exceptions of the change, such as the alerts, are rethrown as when applied directly
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new ConcurrencyFailureException("Cannot change cart " + cartId, cause);
+		}
+	}
+
+	/**
+	 * Queue a change of a cart, after the changes queued before it.
+	 *
+	 * @param cartId the cart id
+	 * @param change the change
+	 * @return the future of the changed cart
+	 * @throws RejectedExecutionException if the mailbox of the cart is full
+	 */
+	public CompletableFuture<CartDTO> submit(Long cartId, CartOwners.Change change) {
+		return enqueue(cartId, change).future;
+	}
+
+	private Pending enqueue(Long cartId, CartOwners.Change change) {
+		Pending pending = new Pending(change);
+		Mailbox[] toSchedule = new Mailbox[1];
+		// the mailbox is scheduled, drained and evicted under the lock of its key
+		mailboxes.compute(cartId, (id, mailbox) -> {
+			Mailbox current = mailbox == null ? new Mailbox(id, mailboxProperties.getCapacity()) : mailbox;
+			if (!current.queue.offer(pending)) {
+				rejected.mark();
+				throw new RejectedExecutionException("The mailbox of cart " + id + " is full");
+			}
+			queued.incrementAndGet();
+			queueDepths.update(current.queue.size());
+			current.lastActive = System.currentTimeMillis();
+			if (!current.scheduled) {
+				current.scheduled = true;
+				toSchedule[0] = current;
+			}
+			return current;
+		});
+		changes.mark();
+		if (toSchedule[0] != null) {
+			workers.execute(() -> drain(toSchedule[0]));
+		}
+		return pending;
+	}
+
+	/**
+	 * Evict the mailboxes left empty for the idle time.
+	 *
+	 * @return the number of evicted mailboxes
+	 */
+	@Scheduled(fixedDelayString = "${application.cart.mailbox.eviction-interval:30000}")
+	public int evictIdle() {
+		long idleSince = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(mailboxProperties.getIdleSeconds());
+		int evicted = 0;
+		for (Long cartId : mailboxes.keySet()) {
+			Mailbox[] removed = new Mailbox[1];
+			mailboxes.computeIfPresent(cartId, (id, mailbox) -> {
+				if (mailbox.scheduled || !mailbox.queue.isEmpty() || mailbox.lastActive > idleSince) {
+					return mailbox;
+				}
+				removed[0] = mailbox;
+				return null;
+			});
+			if (removed[0] != null) {
+				evicted++;
+			}
+		}
+		if (evicted > 0) {
+			log.debug("Evicted {} idle cart mailboxes", evicted);
+		}
+		return evicted;
+	}
+
+	// one batch per run, the mailbox is run again while it has changes, after the other carts queued meanwhile
+	private void drain(Mailbox mailbox) {
+		List<Pending> batch = new ArrayList<>(mailboxProperties.getBatchSize());
+		mailbox.queue.drainTo(batch, mailboxProperties.getBatchSize());
+		queued.addAndGet(-batch.size());
+		try {
+			apply(mailbox.cartId, batch);
+		} finally {
+			boolean[] again = new boolean[1];
+			mailboxes.compute(mailbox.cartId, (id, current) -> {
+				mailbox.lastActive = System.currentTimeMillis();
+				again[0] = !mailbox.queue.isEmpty();
+				mailbox.scheduled = again[0];
+				return mailbox;
+			});
+			if (again[0]) {
+				workers.execute(() -> drain(mailbox));
+			}
+		}
+	}
+
+	private void apply(Long cartId, List<Pending> queuedBatch) {
+		// the changes whose callers gave up waiting are dropped
+		List<Pending> batch = queuedBatch.stream().filter(Pending::claim).collect(Collectors.toList());
+		if (batch.isEmpty()) {
+			return;
+		}
+		batchSizes.update(batch.size());
+		if (batch.size() > 1) {
+			try {
+				List<CartDTO> results = transactionTemplate.execute(status -> {
+					List<CartDTO> changed = new ArrayList<>(batch.size());
+					for (Pending pending : batch) {
+						changed.add(pending.change.apply(shoppingCartService));
+						entityManager.flush();
+					}
+					return changed;
+				});
+				for (int i = 0; i < batch.size(); i++) {
+					batch.get(i).future.complete(results.get(i));
+				}
+				return;
+			} catch (Throwable e) {
+				// errors too, every future of the batch is completed by the fallback
+				fallbacks.mark();
+				log.debug("Batch of {} changes of Cart {} rolled back, applying them one by one : {}",
+						batch.size(), cartId, e.getMessage());
+			}
+		}
+		for (Pending pending : batch) {
+			try {
+				pending.future.complete(pending.change.apply(shoppingCartService));
+			} catch (Throwable e) {
+				pending.future.completeExceptionally(e);
+			}
+		}
+	}
+
+	/**
+	 * The changes waiting for a cart.
+	 */
+	private static final class Mailbox {
+
+		private final Long cartId;
+
+		private final BlockingQueue<Pending> queue;
+
+		// changed under the lock of the key in the mailboxes
+		private boolean scheduled;
+
+		private long lastActive;
+
+		Mailbox(Long cartId, int capacity) {
+			this.cartId = cartId;
+			this.queue = new ArrayBlockingQueue<>(capacity);
+		}
+	}
+
+	/**
+	 * A queued change, with the future of the changed cart.
+	 */
+	private static final class Pending {
+
+		private final CartOwners.Change change;
+
+		private final CompletableFuture<CartDTO> future = new CompletableFuture<>();
+
+		private final AtomicBoolean claimed = new AtomicBoolean();
+
+		Pending(CartOwners.Change change) {
+			this.change = change;
+		}
+
+		// by the worker applying the change or by the caller giving up, whichever comes first
+		boolean claim() {
+			return claimed.compareAndSet(false, true);
+		}
+	}
+
+}
@@ -0,0 +1,207 @@
+package com.assignment.service;
+
+import java.io.Serializable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Component;
+
+import com.assignment.config.ApplicationProperties;
+import com.assignment.service.dto.CartDTO;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.hazelcast.config.ExecutorConfig;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.HazelcastInstanceAware;
+import com.hazelcast.core.IExecutorService;
+import com.hazelcast.core.Member;
+import com.hazelcast.core.PartitionService;
+
+
+/**
+ * The Class CartOwners.
+ * <p>
+ * Runs the changes of a cart on the member owning its partition in the {@link CartGrid}, one change
+ * of a cart at a time, so the members do not all read the same cart and conflict replacing it. The
+ * change reads and replaces the cart in the local entry, and is sent to the owner with
+ * {@link IExecutorService#submitToKeyOwner} when the cart is owned by another member.
+ * <p>
+ * A cart whose partition migrates meanwhile may be changed on two members for a while, the
+ * replacements of the grid still compare the revisions then.
+ * <p>
+ * Enabled with {@code application.cart.grid.route-to-owner}, along with the grid.
+ */
+@Component
+@ConditionalOnProperty(prefix = "application.cart.grid", name = { "enabled", "route-to-owner" }, havingValue = "true")
+public class CartOwners {
+
+	/** The name of the executor running the changes. */
+	public static final String EXECUTOR_NAME = "cart-owners";
+
+	/** The key of the cart owners of a member in its user context. */
+	static final String USER_CONTEXT_KEY = CartOwners.class.getName();
+
+	private static final int LOCK_STRIPES = 256;
+
+	private final Logger log = LoggerFactory.getLogger(CartOwners.class);
+
+	private final HazelcastInstance hazelcastInstance;
+
+	private final PartitionService partitionService;
+
+	private final IExecutorService executor;
+
+	private final ShoppingCartService shoppingCartService;
+
+	private final MetricRegistry metricRegistry;
+
+	private final Lock[] locks = new Lock[LOCK_STRIPES];
+
+	private Meter local;
+
+	private Meter routed;
+
+	/**
+	 * Instantiates new cart owners.
+	 *
+	 * @param hazelcastInstance the hazelcast instance, configured with {@link #executorConfig}
+	 * @param shoppingCartService the shopping cart service, changing the carts of the grid
+	 * @param metricRegistry the metric registry
+	 */
+	public CartOwners(HazelcastInstance hazelcastInstance, ShoppingCartService shoppingCartService,
+			MetricRegistry metricRegistry) {
+		this.hazelcastInstance = hazelcastInstance;
+		this.partitionService = hazelcastInstance.getPartitionService();
+		this.executor = hazelcastInstance.getExecutorService(EXECUTOR_NAME);
+		this.shoppingCartService = shoppingCartService;
+		this.metricRegistry = metricRegistry;
+		for (int i = 0; i < locks.length; i++) {
+			locks[i] = new ReentrantLock();
+		}
+	}
+
+	@PostConstruct
+	public void register() {
+		local = metricRegistry.meter(MetricRegistry.name(CartOwners.class, "local"));
+		routed = metricRegistry.meter(MetricRegistry.name(CartOwners.class, "routed"));
+		// the changes sent by the other members find the service through the member
+		hazelcastInstance.getUserContext().put(USER_CONTEXT_KEY, this);
+	}
+
+	@PreDestroy
+	public void unregister() {
+		hazelcastInstance.getUserContext().remove(USER_CONTEXT_KEY, this);
+	}
+
+	/**
+	 * Build the configuration of the executor running the changes.
+	 *
+	 * @param grid the cart grid properties
+	 * @return the executor config
+	 */
+	public static ExecutorConfig executorConfig(ApplicationProperties.Cart.Grid grid) {
+		return new ExecutorConfig(EXECUTOR_NAME, grid.getOwnerPoolSize());
+	}
+
+	/**
+	 * Run a change of a cart on the member owning it.
+	 *
+	 * @param cartId the cart id
+	 * @param change the change
+	 * @return the changed cart
+	 */
+	public CartDTO execute(Long cartId, Change change) {
+		Member owner = partitionService.getPartition(cartId).getOwner();
+		if (owner == null || owner.localMember()) {
+			local.mark();
+			return executeLocally(cartId, change);
+		}
+		routed.mark();
+		log.debug("Changing Cart {} on its owner {}", cartId, owner);
+		try {
+			return executor.submitToKeyOwner(new OnOwner(cartId, change), cartId).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ConcurrencyFailureException("Interrupted while changing cart " + cartId + " on its owner", e);
+		} catch (ExecutionException e) {
+			// the exceptions of the change, such as the alerts, are rethrown as on the owner
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new ConcurrencyFailureException("Cannot change cart " + cartId + " on its owner", cause);
+		}
+	}
+
+	CartDTO executeLocally(Long cartId, Change change) {
+		Lock lock = locks[Math.floorMod(Long.hashCode(cartId), locks.length)];
+		lock.lock();
+		try {
+			return change.apply(shoppingCartService);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * A change of a cart, sent to the member owning it. It captures only serializable values, such as
+	 * the DTOs of the request.
+	 */
+	@FunctionalInterface
+	public interface Change extends Serializable {
+
+		/**
+		 * Apply the change.
+		 *
+		 * @param shoppingCartService the shopping cart service of the owner
+		 * @return the changed cart
+		 */
+		CartDTO apply(ShoppingCartService shoppingCartService);
+	}
+
+	/**
+	 * Runs a change on the member it is sent to.
+	 */
+	static final class OnOwner implements Callable<CartDTO>, Serializable, HazelcastInstanceAware {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Long cartId;
+
+		private final Change change;
+
+		private transient HazelcastInstance hazelcastInstance;
+
+		OnOwner(Long cartId, Change change) {
+			this.cartId = cartId;
+			this.change = change;
+		}
+
+		@Override
+		public void setHazelcastInstance(HazelcastInstance hazelcastInstance) {
+			this.hazelcastInstance = hazelcastInstance;
+		}
+
+		@Override
+		public CartDTO call() {
+			CartOwners cartOwners = (CartOwners) hazelcastInstance.getUserContext().get(USER_CONTEXT_KEY);
+			if (cartOwners == null) {
+				throw new IllegalStateException("The member does not change the carts it owns");
+			}
+			return cartOwners.executeLocally(cartId, change);
+		}
+	}
+
+}
@@ -0,0 +1,278 @@
+package com.assignment.service;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import com.assignment.domain.Money;
+
+
+/**
+ * The Class CartState.
+ * <p>
+ * An immutable copy of a cart and its lines, as kept by a {@link CartStateStore}. Every change gives a
+ * new state of the next revision, so a state replaces the one it was made from only if nobody
+ * changed the cart in between.
+ */
+public final class CartState implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Long id;
+
+	private final long revision;
+
+	private final long modifiedAt;
+
+	// by product id
+	private final Map<Long, Line> lines;
+
+	/**
+	 * Instantiates the state of a new cart.
+	 *
+	 * @param id the cart id
+	 */
+	public CartState(Long id) {
+		this(id, 0, System.currentTimeMillis(), Collections.emptyMap());
+	}
+
+	/**
+	 * Instantiates the state of a stored cart.
+	 *
+	 * @param id the cart id
+	 * @param lines the lines
+	 */
+	public CartState(Long id, Collection<Line> lines) {
+		this(id, 0, lines);
+	}
+
+	/**
+	 * Instantiates the state of a stored cart at a revision.
+	 *
+	 * @param id the cart id
+	 * @param revision the revision
+	 * @param lines the lines
+	 */
+	public CartState(Long id, long revision, Collection<Line> lines) {
+		this(id, revision, System.currentTimeMillis(), lines);
+	}
+
+	/**
+	 * Instantiates the state of a stored cart at a revision made at a time.
+	 *
+	 * @param id the cart id
+	 * @param revision the revision
+	 * @param modifiedAt the time of the change which made the revision, in milliseconds since the epoch
+	 * @param lines the lines
+	 */
+	public CartState(Long id, long revision, long modifiedAt, Collection<Line> lines) {
+		this(id, revision, modifiedAt, index(lines));
+	}
+
+	private CartState(Long id, long revision, long modifiedAt, Map<Long, Line> lines) {
+		this.id = id;
+		this.revision = revision;
+		this.modifiedAt = modifiedAt;
+		this.lines = lines;
+	}
+
+	private static Map<Long, Line> index(Collection<Line> lines) {
+		Map<Long, Line> index = new LinkedHashMap<>();
+		lines.forEach(line -> index.put(line.getProductId(), line));
+		return Collections.unmodifiableMap(index);
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public long getRevision() {
+		return revision;
+	}
+
+	/**
+	 * Gets the time of the change which made this state, in milliseconds since the epoch.
+	 *
+	 * @return the modification time
+	 */
+	public long getModifiedAt() {
+		return modifiedAt;
+	}
+
+	public Collection<Line> getLines() {
+		return lines.values();
+	}
+
+	/**
+	 * Gets the number of items of the lines.
+	 *
+	 * @return the item count
+	 */
+	public int getItemCount() {
+		return lines.values().stream().mapToInt(Line::getQuantity).sum();
+	}
+
+	/**
+	 * Gets the price of the lines, at the prices their quantities were added at.
+	 *
+	 * @return the subtotal
+	 */
+	public Money getSubtotal() {
+		return lines.values().stream().map(Line::getLineTotal).reduce(Money.ZERO, Money::plus);
+	}
+
+	/**
+	 * Gets the line of a product.
+	 *
+	 * @param productId the product id
+	 * @return the line, or null if the cart has none
+	 */
+	public Line getLineOfProduct(Long productId) {
+		return lines.get(productId);
+	}
+
+	/**
+	 * Gets a line.
+	 *
+	 * @param lineId the line id
+	 * @return the line, or null if the cart has none
+	 */
+	public Line getLine(Long lineId) {
+		return lines.values().stream().filter(line -> line.getId().equals(lineId)).findFirst().orElse(null);
+	}
+
+	/**
+	 * Gives the next state with the line, replacing the line of the same product.
+	 *
+	 * @param line the line
+	 * @return the next state
+	 */
+	public CartState withLine(Line line) {
+		Map<Long, Line> next = new LinkedHashMap<>(lines);
+		next.put(line.getProductId(), line);
+		return new CartState(id, revision + 1, System.currentTimeMillis(), Collections.unmodifiableMap(next));
+	}
+
+	/**
+	 * Gives the next state without the lines of the products.
+	 *
+	 * @param productIds the product ids
+	 * @return the next state
+	 */
+	public CartState withoutLines(Collection<Long> productIds) {
+		Map<Long, Line> next = new LinkedHashMap<>(lines);
+		next.keySet().removeAll(productIds);
+		return new CartState(id, revision + 1, System.currentTimeMillis(), Collections.unmodifiableMap(next));
+	}
+
+	/**
+	 * Gives the changes of the quantities of the products from this state to the next one.
+	 *
+	 * @param next the next state
+	 * @return the changes by product id, the unchanged products left out
+	 */
+	public Map<Long, Integer> quantityChangesTo(CartState next) {
+		Map<Long, Integer> changes = new LinkedHashMap<>();
+		lines.values().forEach(line -> changes.put(line.getProductId(), -line.getQuantity()));
+		next.getLines().forEach(line -> changes.merge(line.getProductId(), line.getQuantity(), Integer::sum));
+		changes.values().removeIf(change -> change == 0);
+		return changes;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (o == null || getClass() != o.getClass()) {
+			return false;
+		}
+		CartState cartState = (CartState) o;
+		return Objects.equals(id, cartState.id) && revision == cartState.revision;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(id, revision);
+	}
+
+	@Override
+	public String toString() {
+		return "CartState{id=" + id + ", revision=" + revision + ", lines=" + lines.values() + "}";
+	}
+
+	/**
+	 * A line of a cart, its id is allocated when the line is added. Its total is the price of its quantity
+	 * when it was added, what a change of the line takes off the totals of the cart.
+	 */
+	public static final class Line implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Long id;
+
+		private final Long productId;
+
+		private final int quantity;
+
+		private final Instant expiresAt;
+
+		private final Money lineTotal;
+
+		/**
+		 * Instantiates a new line.
+		 *
+		 * @param id the line id
+		 * @param productId the product id
+		 * @param quantity the quantity
+		 * @param expiresAt the expiry of the stock held by the line, null for none
+		 * @param lineTotal the price of the quantity
+		 */
+		public Line(Long id, Long productId, int quantity, Instant expiresAt, Money lineTotal) {
+			this.id = id;
+			this.productId = productId;
+			this.quantity = quantity;
+			this.expiresAt = expiresAt;
+			this.lineTotal = lineTotal;
+		}
+
+		public Long getId() {
+			return id;
+		}
+
+		public Long getProductId() {
+			return productId;
+		}
+
+		public int getQuantity() {
+			return quantity;
+		}
+
+		public Instant getExpiresAt() {
+			return expiresAt;
+		}
+
+		public Money getLineTotal() {
+			return lineTotal;
+		}
+
+		/**
+		 * Checks if the stock held by the line expired.
+		 *
+		 * @param now the current time
+		 * @return true, if expired
+		 */
+		public boolean isExpired(Instant now) {
+			return expiresAt != null && expiresAt.isBefore(now);
+		}
+
+		@Override
+		public String toString() {
+			return "Line{id=" + id + ", productId=" + productId + ", quantity=" + quantity + ", lineTotal=" + lineTotal + "}";
+		}
+	}
+}
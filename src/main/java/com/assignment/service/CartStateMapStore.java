@@ -0,0 +1,169 @@
+package com.assignment.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.assignment.domain.Cart;
+import com.assignment.domain.CartItem;
+import com.assignment.domain.Money;
+import com.assignment.domain.Product;
+import com.assignment.repository.CartItemRepository;
+import com.assignment.repository.CartRepository;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.hazelcast.core.MapStore;
+
+
+/**
+ * The Class CartStateMapStore.
+ * <p>
+ * Loads the cart map of the {@link CartGrid} from the cart and cart_item tables and writes the carts
+ * back. The lines of the written carts are replaced with one bulk delete and batched inserts, their
+ * totals recomputed from the written lines, and the time their changes waited to be written is
+ * reported as the flush lag.
+ */
+@Component
+@ConditionalOnProperty(prefix = "application.cart.grid", name = "enabled", havingValue = "true")
+public class CartStateMapStore implements MapStore<Long, CartState> {
+
+	private final Logger log = LoggerFactory.getLogger(CartStateMapStore.class);
+
+	private final CartRepository cartRepository;
+
+	private final CartItemRepository cartItemRepository;
+
+	private final MetricRegistry metricRegistry;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private Histogram flushLag;
+
+	private Meter stored;
+
+	private Meter storeFailures;
+
+	/**
+	 * Instantiates a new cart state map store.
+	 *
+	 * @param cartRepository the cart repository
+	 * @param cartItemRepository the cart item repository
+	 * @param metricRegistry the metric registry
+	 * @param transactionManager the transaction manager
+	 */
+	public CartStateMapStore(CartRepository cartRepository, CartItemRepository cartItemRepository,
+			MetricRegistry metricRegistry, PlatformTransactionManager transactionManager) {
+		this.cartRepository = cartRepository;
+		this.cartItemRepository = cartItemRepository;
+		this.metricRegistry = metricRegistry;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+
+	@PostConstruct
+	public void registerMetrics() {
+		flushLag = metricRegistry.histogram(MetricRegistry.name(CartStateMapStore.class, "flush-lag"));
+		stored = metricRegistry.meter(MetricRegistry.name(CartStateMapStore.class, "stored"));
+		storeFailures = metricRegistry.meter(MetricRegistry.name(CartStateMapStore.class, "store-failures"));
+	}
+
+	@Override
+	public CartState load(Long cartId) {
+		return loadAll(Collections.singleton(cartId)).get(cartId);
+	}
+
+	@Override
+	public Map<Long, CartState> loadAll(Collection<Long> cartIds) {
+		Map<Long, List<CartState.Line>> lines = new HashMap<>();
+		Map<Long, Instant> modifiedAt = new HashMap<>();
+		for (Object[] cart : cartRepository.findModificationTimes(cartIds)) {
+			lines.put((Long) cart[0], new ArrayList<>());
+			modifiedAt.put((Long) cart[0], (Instant) cart[1]);
+		}
+		if (lines.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		for (Object[] line : cartItemRepository.findLinesOfCarts(lines.keySet())) {
+			lines.get(line[0]).add(
+				new CartState.Line((Long) line[1], (Long) line[2], (Integer) line[3], (Instant) line[4], (Money) line[5]));
+		}
+		Map<Long, CartState> cartStates = new HashMap<>();
+		// modified when last written, so a loaded cart keeps its stamp
+		lines.forEach((cartId, cartLines) ->
+			cartStates.put(cartId, new CartState(cartId, 0, modifiedAt.get(cartId).toEpochMilli(), cartLines)));
+		return cartStates;
+	}
+
+	@Override
+	public Iterable<Long> loadAllKeys() {
+		return cartRepository.findAllIds();
+	}
+
+	@Override
+	public void store(Long cartId, CartState cartState) {
+		storeAll(Collections.singletonMap(cartId, cartState));
+	}
+
+	@Override
+	public void storeAll(Map<Long, CartState> cartStates) {
+		List<CartItem> cartItems = new ArrayList<>();
+		for (CartState cartState : cartStates.values()) {
+			Cart cart = new Cart();
+			cart.setId(cartState.getId());
+			for (CartState.Line line : cartState.getLines()) {
+				Product product = new Product();
+				product.setId(line.getProductId());
+				CartItem cartItem = new CartItem().quantity(line.getQuantity()).lineTotal(line.getLineTotal()).product(product)
+					.cart(cart);
+				cartItem.setId(line.getId());
+				cartItem.setExpiresAt(line.getExpiresAt());
+				cartItems.add(cartItem);
+			}
+		}
+		try {
+			transactionTemplate.execute(status -> {
+				cartItemRepository.deleteByCartIds(cartStates.keySet());
+				cartItemRepository.insertAll(cartItems);
+				// touched when written, at most the write delay after their changes
+				cartRepository.recomputeTotals(cartStates.keySet(), Instant.now());
+				return null;
+			});
+		} catch (RuntimeException e) {
+			// the map store is called again with the same carts
+			storeFailures.mark();
+			log.warn("Cannot store {} carts, retrying: {}", cartStates.size(), e.getMessage());
+			throw e;
+		}
+		long now = System.currentTimeMillis();
+		cartStates.values().forEach(cartState -> flushLag.update(now - cartState.getModifiedAt()));
+		stored.mark(cartStates.size());
+		log.debug("Stored {} carts with {} items", cartStates.size(), cartItems.size());
+	}
+
+	@Override
+	public void delete(Long cartId) {
+		deleteAll(Collections.singleton(cartId));
+	}
+
+	@Override
+	public void deleteAll(Collection<Long> cartIds) {
+		transactionTemplate.execute(status -> {
+			cartItemRepository.deleteByCartIds(cartIds);
+			return cartRepository.deleteByIds(cartIds);
+		});
+	}
+
+}
@@ -0,0 +1,63 @@
+package com.assignment.service;
+
+import java.time.Instant;
+import java.util.Set;
+
+
+/**
+ * A storage of the carts as {@link CartState}, replacing the cart and cart_item tables when enabled.
+ * Only one of its implementations can be enabled.
+ *
+ * @see CartGrid
+ * @see CartEventLog
+ */
+public interface CartStateStore {
+
+	/**
+	 * Gets a cart.
+	 *
+	 * @param cartId the cart id
+	 * @return the cart state, or null if the cart does not exist
+	 */
+	CartState get(Long cartId);
+
+	/**
+	 * Add a new cart, whose row is inserted by the running transaction.
+	 *
+	 * @param cartState the cart state
+	 */
+	void add(CartState cartState);
+
+	/**
+	 * Replace the state of a cart, if it was not changed since the state was read.
+	 *
+	 * @param current the state the change was made from
+	 * @param next the changed state
+	 * @return true, if replaced
+	 */
+	boolean replace(CartState current, CartState next);
+
+	/**
+	 * Remove a cart.
+	 *
+	 * @param cartId the cart id
+	 * @return the removed state, or null if the cart does not exist
+	 */
+	CartState remove(Long cartId);
+
+	/**
+	 * Find the cart of a line.
+	 *
+	 * @param lineId the line id
+	 * @return the cart id, or null if no cart has the line
+	 */
+	Long findCartIdOfLine(Long lineId);
+
+	/**
+	 * Find the carts which may have lines whose stock hold expired, for this node to reap.
+	 *
+	 * @param now the current time
+	 * @return the cart ids
+	 */
+	Set<Long> findCartIdsWithExpiredLines(Instant now);
+}
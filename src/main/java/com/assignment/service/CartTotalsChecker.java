@@ -0,0 +1,165 @@
+package com.assignment.service;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.assignment.config.ApplicationProperties;
+import com.assignment.domain.Cart;
+import com.assignment.domain.Money;
+import com.assignment.repository.CartItemRepository;
+import com.assignment.repository.CartRepository;
+import com.assignment.service.dto.CartSummaryDTO;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+
+/**
+ * The Class CartTotalsChecker.
+ * <p>
+ * Recomputes the totals of a sample of carts from the totals kept on their items and reports the carts
+ * whose kept totals differ.
+ * Each check takes the carts following the last one checked, so the checks go through all the carts
+ * in turn. The totals are reported, not repaired.
+ * <p>
+ * With a {@link CartStateStore}, the items are read from the store, and a cart whose changes are not
+ * written to its row yet is left to the next turn.
+ */
+@Service
+public class CartTotalsChecker {
+
+	private final Logger log = LoggerFactory.getLogger(CartTotalsChecker.class);
+
+	private final CartRepository cartRepository;
+
+	private final CartItemRepository cartItemRepository;
+
+	private final ApplicationProperties.Cart.Totals totalsProperties;
+
+	private final MetricRegistry metricRegistry;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private CartStateStore cartStateStore;
+
+	private volatile long lastCheckedId;
+
+	private Meter checked;
+
+	private Meter drifted;
+
+	/**
+	 * Instantiates a new cart totals checker.
+	 *
+	 * @param cartRepository the cart repository
+	 * @param cartItemRepository the cart item repository
+	 * @param applicationProperties the application properties
+	 * @param metricRegistry the metric registry
+	 * @param transactionManager the transaction manager
+	 */
+	public CartTotalsChecker(CartRepository cartRepository, CartItemRepository cartItemRepository,
+			ApplicationProperties applicationProperties, MetricRegistry metricRegistry,
+			PlatformTransactionManager transactionManager) {
+		this.cartRepository = cartRepository;
+		this.cartItemRepository = cartItemRepository;
+		this.totalsProperties = applicationProperties.getCart().getTotals();
+		this.metricRegistry = metricRegistry;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.transactionTemplate.setReadOnly(true);
+	}
+
+	@Autowired(required = false)
+	public void setCartStateStore(CartStateStore cartStateStore) {
+		this.cartStateStore = cartStateStore;
+	}
+
+	@PostConstruct
+	public void registerMetrics() {
+		checked = metricRegistry.meter(MetricRegistry.name(CartTotalsChecker.class, "checked"));
+		drifted = metricRegistry.meter(MetricRegistry.name(CartTotalsChecker.class, "drifted"));
+	}
+
+	/**
+	 * Check the totals of the next carts.
+	 *
+	 * @return the number of carts whose totals drifted
+	 */
+	@Scheduled(fixedDelayString = "${application.cart.totals.checker-interval:3600000}")
+	public int check() {
+		int sampleSize = totalsProperties.getCheckerSampleSize();
+		List<Long> ids = cartRepository.findIdsAfter(lastCheckedId, new PageRequest(0, sampleSize));
+		// the next turn starts over after the last cart
+		lastCheckedId = ids.size() < sampleSize ? 0 : ids.get(ids.size() - 1);
+		if (ids.isEmpty()) {
+			return 0;
+		}
+		int driftedCarts = transactionTemplate.execute(status -> checkCarts(ids));
+		checked.mark(ids.size());
+		drifted.mark(driftedCarts);
+		if (driftedCarts > 0) {
+			log.warn("The totals of {} of {} checked carts drifted", driftedCarts, ids.size());
+		}
+		return driftedCarts;
+	}
+
+	private int checkCarts(List<Long> ids) {
+		List<Cart> carts = cartRepository.findAll(ids);
+		Map<Long, CartSummaryDTO> recomputed = cartStateStore == null ? sumItems(ids) : sumStates(carts);
+		int driftedCarts = 0;
+		for (Cart cart : carts) {
+			CartSummaryDTO totals = recomputed.get(cart.getId());
+			if (totals == null) {
+				continue;
+			}
+			if (cart.getItemCount() != totals.getItemCount() || !cart.getSubtotal().equals(Money.of(totals.getSubtotal()))) {
+				log.warn("Cart {} keeps {} items for {}, recomputed {} items for {}", cart.getId(), cart.getItemCount(),
+						cart.getSubtotal(), totals.getItemCount(), totals.getSubtotal());
+				driftedCarts++;
+			}
+		}
+		return driftedCarts;
+	}
+
+	// a cart without items has no sum
+	private Map<Long, CartSummaryDTO> sumItems(List<Long> ids) {
+		Map<Long, CartSummaryDTO> totals = new HashMap<>();
+		ids.forEach(id -> totals.put(id, totals(id, 0, Money.ZERO)));
+		for (Object[] sum : cartItemRepository.sumTotalsOfCarts(ids)) {
+			totals.put((Long) sum[0], totals((Long) sum[0], ((Long) sum[1]).intValue(), (Money) sum[2]));
+		}
+		return totals;
+	}
+
+	private Map<Long, CartSummaryDTO> sumStates(List<Cart> carts) {
+		Map<Long, CartSummaryDTO> totals = new HashMap<>();
+		for (Cart cart : carts) {
+			CartState cartState = cartStateStore.get(cart.getId());
+			if (cartState == null || cartState.getModifiedAt() > cart.getLastModifiedAt().toEpochMilli()) {
+				continue;
+			}
+			totals.put(cart.getId(), totals(cart.getId(), cartState.getItemCount(), cartState.getSubtotal()));
+		}
+		return totals;
+	}
+
+	private CartSummaryDTO totals(Long id, int itemCount, Money subtotal) {
+		CartSummaryDTO totals = new CartSummaryDTO();
+		totals.setId(id);
+		totals.setItemCount(itemCount);
+		totals.setSubtotal(subtotal.toBigDecimal());
+		return totals;
+	}
+
+}
@@ -0,0 +1,187 @@
+package com.assignment.service;
+
+import java.io.Serializable;
+import java.util.Collection;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.assignment.config.ApplicationProperties;
+import com.assignment.service.dto.CartDTO;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.hazelcast.config.EvictionPolicy;
+import com.hazelcast.config.MapConfig;
+import com.hazelcast.config.MaxSizeConfig;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+
+
+/**
+ * The Class CartViews.
+ * <p>
+ * The read model of the carts: each cart as it is returned, with its lines and the products they
+ * show, kept in a Hazelcast map under the stamp of the cart it was made from. A cart is read with one
+ * lookup of its view, which is served only if its stamp is the current one, so a view missed by a
+ * change, or lost, is made again from the cart tables by the next read.
+ * <p>
+ * The {@link ShoppingCartService} puts the view of a cart when the transaction changing it commits,
+ * and rebuilds the views on demand. The products are shown as they were at the last change of the
+ * cart.
+ * <p>
+ * Enabled with {@code application.cart.read-model.enabled}.
+ */
+@Component
+@ConditionalOnProperty(prefix = "application.cart.read-model", name = "enabled", havingValue = "true")
+public class CartViews {
+
+	/** The name of the view map. */
+	public static final String MAP_NAME = "cart-views";
+
+	private final Logger log = LoggerFactory.getLogger(CartViews.class);
+
+	private final IMap<Long, Entry> views;
+
+	private final MetricRegistry metricRegistry;
+
+	private Meter hits;
+
+	private Meter misses;
+
+	/**
+	 * Instantiates new cart views.
+	 *
+	 * @param hazelcastInstance the hazelcast instance, configured with {@link #mapConfig}
+	 * @param metricRegistry the metric registry
+	 */
+	public CartViews(HazelcastInstance hazelcastInstance, MetricRegistry metricRegistry) {
+		this.views = hazelcastInstance.getMap(MAP_NAME);
+		this.metricRegistry = metricRegistry;
+	}
+
+	@PostConstruct
+	public void registerMetrics() {
+		hits = metricRegistry.meter(MetricRegistry.name(CartViews.class, "hits"));
+		misses = metricRegistry.meter(MetricRegistry.name(CartViews.class, "misses"));
+	}
+
+	/**
+	 * Build the configuration of the view map.
+	 *
+	 * @param readModel the read model properties
+	 * @return the map config
+	 */
+	public static MapConfig mapConfig(ApplicationProperties.Cart.ReadModel readModel) {
+		MapConfig mapConfig = new MapConfig(MAP_NAME);
+		mapConfig.setBackupCount(readModel.getBackupCount());
+		mapConfig.setMaxIdleSeconds(readModel.getMaxIdleSeconds());
+		mapConfig.setEvictionPolicy(EvictionPolicy.LRU);
+		mapConfig.setMaxSizeConfig(new MaxSizeConfig(readModel.getMaxSizePerNode(), MaxSizeConfig.MaxSizePolicy.PER_NODE));
+		return mapConfig;
+	}
+
+	/**
+	 * Gets the view of a cart.
+	 *
+	 * @param cartId the cart id
+	 * @param stamp the current stamp of the cart
+	 * @return the cart, or null if it has no view of this stamp
+	 */
+	public CartDTO get(Long cartId, String stamp) {
+		Entry entry = views.get(cartId);
+		if (entry == null || !entry.stamp.equals(stamp)) {
+			misses.mark();
+			return null;
+		}
+		hits.mark();
+		return entry.cart;
+	}
+
+	/**
+	 * Put the view of a cart.
+	 *
+	 * @param cartId the cart id
+	 * @param stamp the stamp of the cart the view was made from
+	 * @param cart the cart
+	 */
+	public void put(Long cartId, String stamp, CartDTO cart) {
+		views.set(cartId, new Entry(stamp, view(cart)));
+	}
+
+	/**
+	 * Put the view of a cart changed by the running transaction, when it commits.
+	 *
+	 * @param cartId the cart id
+	 * @param stamp the stamp of the changed cart
+	 * @param cart the changed cart
+	 */
+	public void putAfterCommit(Long cartId, String stamp, CartDTO cart) {
+		CartDTO view = view(cart);
+		afterCommit(() -> views.set(cartId, new Entry(stamp, view)));
+	}
+
+	/**
+	 * Remove the views of carts deleted by the running transaction, when it commits.
+	 *
+	 * @param cartIds the cart ids
+	 */
+	public void removeAfterCommit(Collection<Long> cartIds) {
+		afterCommit(() -> cartIds.forEach(views::delete));
+	}
+
+	public void clear() {
+		views.clear();
+	}
+
+	// without what the change reported besides the cart
+	private static CartDTO view(CartDTO cart) {
+		CartDTO view = new CartDTO();
+		view.setId(cart.getId());
+		view.setCartItems(cart.getCartItems());
+		view.setItemCount(cart.getItemCount());
+		view.setSubtotal(cart.getSubtotal());
+		return view;
+	}
+
+	// a view not put is made again by the next read
+	private void afterCommit(Runnable action) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			action.run();
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCommit() {
+				try {
+					action.run();
+				} catch (RuntimeException e) {
+					log.warn("Cannot update the cart views: {}", e.getMessage());
+				}
+			}
+		});
+	}
+
+	/**
+	 * A cart as returned, with the stamp of the cart it was made from.
+	 */
+	static final class Entry implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String stamp;
+
+		private final CartDTO cart;
+
+		Entry(String stamp, CartDTO cart) {
+			this.stamp = stamp;
+			this.cart = cart;
+		}
+	}
+
+}
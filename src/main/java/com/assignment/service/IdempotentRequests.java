@@ -0,0 +1,187 @@
+package com.assignment.service;
+
+import java.io.Serializable;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Service;
+
+import com.assignment.config.ApplicationProperties;
+import com.assignment.web.rest.errors.BadRequestAlertException;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.hazelcast.config.MapConfig;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+
+
+/**
+ * The Class IdempotentRequests.
+ * <p>
+ * Remembers the results of the requests sent with an idempotency key in a Hazelcast map, for their
+ * time to live, so a retried request is answered with the first result instead of being executed
+ * again. The key is locked cluster-wide while its request executes: a duplicate sent meanwhile waits
+ * for it and is answered with its result. A request which fails is not remembered.
+ * <p>
+ * The lock is leased for {@code lock-lease-seconds}, so a crashed node does not keep the key locked.
+ * A request which outlives the lease is no longer protected: a duplicate sent meanwhile executes it
+ * again. The lease must be longer than the longest request.
+ */
+@Service
+public class IdempotentRequests {
+
+	/** The name of the request map. */
+	public static final String MAP_NAME = "idempotent-requests";
+
+	private final Logger log = LoggerFactory.getLogger(IdempotentRequests.class);
+
+	private final IMap<String, Entry> requests;
+
+	private final ApplicationProperties.Cart.Idempotency idempotencyProperties;
+
+	private final MetricRegistry metricRegistry;
+
+	private Meter replayed;
+
+	/**
+	 * Instantiates new idempotent requests.
+	 *
+	 * @param hazelcastInstance the hazelcast instance, configured with {@link #mapConfig}
+	 * @param applicationProperties the application properties
+	 * @param metricRegistry the metric registry
+	 */
+	public IdempotentRequests(HazelcastInstance hazelcastInstance, ApplicationProperties applicationProperties,
+			MetricRegistry metricRegistry) {
+		this.requests = hazelcastInstance.getMap(MAP_NAME);
+		this.idempotencyProperties = applicationProperties.getCart().getIdempotency();
+		this.metricRegistry = metricRegistry;
+	}
+
+	@PostConstruct
+	public void registerMetrics() {
+		replayed = metricRegistry.meter(MetricRegistry.name(IdempotentRequests.class, "replayed"));
+	}
+
+	/**
+	 * Build the configuration of the request map.
+	 *
+	 * @param idempotency the idempotency properties
+	 * @return the map config
+	 */
+	public static MapConfig mapConfig(ApplicationProperties.Cart.Idempotency idempotency) {
+		MapConfig mapConfig = new MapConfig(MAP_NAME);
+		mapConfig.setBackupCount(idempotency.getBackupCount());
+		mapConfig.setTimeToLiveSeconds(idempotency.getTimeToLiveSeconds());
+		return mapConfig;
+	}
+
+	/**
+	 * Execute a request once per key.
+	 *
+	 * @param <T> the type of the result
+	 * @param key the idempotency key, scoped by the caller to the operation
+	 * @param fingerprint what identifies the request, a key sent again with another request is rejected
+	 * @param request the request
+	 * @return the result, replayed or not
+	 */
+	public <T extends Serializable> Result<T> execute(String key, String fingerprint, Supplier<T> request) {
+		Entry entry = requests.get(key);
+		if (entry != null) {
+			return replay(key, entry, fingerprint);
+		}
+		lock(key);
+		try {
+			entry = requests.get(key);
+			if (entry != null) {
+				return replay(key, entry, fingerprint);
+			}
+			T result = request.get();
+			requests.set(key, new Entry(fingerprint, result));
+			return new Result<>(result, false);
+		} finally {
+			unlock(key);
+		}
+	}
+
+	// once the lease expired the lock is released, or held by a duplicate, and unlocking fails
+	private void unlock(String key) {
+		try {
+			requests.unlock(key);
+		} catch (IllegalMonitorStateException e) {
+			log.warn("The request of idempotency key {} outlived its lock lease of {} seconds,"
+					+ " a duplicate may have executed it again", key, idempotencyProperties.getLockLeaseSeconds());
+		}
+	}
+
+	private void lock(String key) {
+		try {
+			if (requests.tryLock(key, idempotencyProperties.getWaitSeconds(), TimeUnit.SECONDS,
+					idempotencyProperties.getLockLeaseSeconds(), TimeUnit.SECONDS)) {
+				return;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		throw new ConcurrencyFailureException("The request of idempotency key " + key + " is still in flight");
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T extends Serializable> Result<T> replay(String key, Entry entry, String fingerprint) {
+		if (!Objects.equals(entry.fingerprint, fingerprint)) {
+			throw new BadRequestAlertException("Idempotency key already used by another request", "idempotencyKey",
+					"idempotencykeyreused");
+		}
+		log.debug("Replaying the request of idempotency key {}", key);
+		replayed.mark();
+		return new Result<>((T) entry.result, true);
+	}
+
+	/**
+	 * The result of a request, remembered with what identifies the request.
+	 */
+	static final class Entry implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String fingerprint;
+
+		private final Serializable result;
+
+		Entry(String fingerprint, Serializable result) {
+			this.fingerprint = fingerprint;
+			this.result = result;
+		}
+	}
+
+	/**
+	 * The result of a request, and whether it is replayed from a previous execution.
+	 *
+	 * @param <T> the type of the result
+	 */
+	public static final class Result<T> {
+
+		private final T value;
+
+		private final boolean replayed;
+
+		Result(T value, boolean replayed) {
+			this.value = value;
+			this.replayed = replayed;
+		}
+
+		public T getValue() {
+			return value;
+		}
+
+		public boolean isReplayed() {
+			return replayed;
+		}
+	}
+
+}
@@ -1,16 +1,28 @@
 package com.assignment.service;
 
+import com.assignment.config.ApplicationProperties;
 import com.assignment.domain.Product;
 import com.assignment.repository.ProductRepository;
 import com.assignment.service.dto.ProductDTO;
 import com.assignment.service.mapper.ProductMapper;
+import com.assignment.service.util.SecondLevelCacheUtil;
+import com.assignment.web.rest.errors.BadRequestAlertException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
 
 /**
  * Service Implementation for managing Product.
@@ -28,15 +40,42 @@ public class ProductService {
     /** The product mapper. */
     private final ProductMapper productMapper;
 
+    /** The application properties. */
+    private final ApplicationProperties applicationProperties;
+
+    /** The entity manager. */
+    private final EntityManager entityManager;
+
+    /** The stock grid, when enabled. */
+    private StockGrid stockGrid;
+
+    /** The product stock shard service, when stock sharding is enabled. */
+    private ProductStockShardService productStockShardService;
+
     /**
      * Instantiates a new product service.
      *
      * @param productRepository the product repository
      * @param productMapper the product mapper
+     * @param applicationProperties the application properties
+     * @param entityManager the entity manager
      */
-    public ProductService(ProductRepository productRepository, ProductMapper productMapper) {
+    public ProductService(ProductRepository productRepository, ProductMapper productMapper,
+            ApplicationProperties applicationProperties, EntityManager entityManager) {
         this.productRepository = productRepository;
         this.productMapper = productMapper;
+        this.applicationProperties = applicationProperties;
+        this.entityManager = entityManager;
+    }
+
+    @Autowired(required = false)
+    public void setStockGrid(StockGrid stockGrid) {
+        this.stockGrid = stockGrid;
+    }
+
+    @Autowired(required = false)
+    public void setProductStockShardService(ProductStockShardService productStockShardService) {
+        this.productStockShardService = productStockShardService;
     }
 
     /**
@@ -48,8 +87,50 @@ public class ProductService {
     public ProductDTO save(ProductDTO productDTO) {
         log.debug("Request to save Product : {}", productDTO);
         Product product = productMapper.toEntity(productDTO);
-        product = productRepository.save(product);
-        return productMapper.toDto(product);
+        if (product.getId() != null && productDTO.getVersion() == null) {
+            // an update sent without the version it was made from is made from the current product
+            Long version = productRepository.findVersion(product.getId());
+            if (version != null) {
+                product.setVersion(version);
+            }
+        }
+        // the quantity sent is the total one, spread over the shards in place when the product has some
+        int quantity = product.getQuantity();
+        if (productStockShardService != null && product.getId() != null
+                && productStockShardService.resetShards(product.getId(), quantity)) {
+            product.setQuantity(0);
+        }
+        if (stockGrid != null && product.getId() != null) {
+            // the grid writes the change of quantity behind to the row, the row keeps its quantity until then
+            Integer rowQuantity = productRepository.findQuantity(product.getId());
+            if (rowQuantity != null) {
+                product.setQuantity(rowQuantity);
+            }
+        }
+        product = productRepository.saveAndFlush(product);
+        ProductDTO result = productMapper.toDto(product);
+        result.setQuantity(quantity);
+        if (stockGrid != null) {
+            stockGrid.set(product.getId(), quantity);
+        }
+        return result;
+    }
+
+    /**
+     * Split the quantity of a product over stock shards.
+     *
+     * @param id the id of the entity
+     * @param shardCount the number of shards, the configured one if null
+     * @return the entity
+     */
+    public ProductDTO shardStock(Long id, Integer shardCount) {
+        log.debug("Request to shard the stock of Product : {}", id);
+        if (productStockShardService == null) {
+            throw new BadRequestAlertException("Stock sharding is disabled", Product.class.getName(), "stockShardingDisabled");
+        }
+        productStockShardService.shard(id, shardCount != null ? shardCount
+            : applicationProperties.getStock().getSharding().getShardCount());
+        return findOne(id);
     }
 
     /**
@@ -61,8 +142,8 @@ public class ProductService {
     @Transactional(readOnly = true)
     public Page<ProductDTO> findAll(Pageable pageable) {
         log.debug("Request to get all Products");
-        return productRepository.findAll(pageable)
-            .map(productMapper::toDto);
+        return withAvailableQuantity(productRepository.findAll(pageable)
+            .map(productMapper::toDto));
     }
 
     /**
@@ -75,7 +156,29 @@ public class ProductService {
     public ProductDTO findOne(Long id) {
         log.debug("Request to get Product : {}", id);
         Product product = productRepository.findOne(id);
-        return productMapper.toDto(product);
+        ProductDTO productDTO = productMapper.toDto(product);
+        if (productDTO != null) {
+            setAvailableQuantity(Collections.singletonList(productDTO));
+        }
+        return productDTO;
+    }
+
+    /**
+     * Get one product from the second-level cache only, without a database connection.
+     *
+     * @param id the id of the entity
+     * @return the entity, or null if it is not cached or its quantity is sharded in the database
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public ProductDTO findCachedOne(Long id) {
+        if (productStockShardService != null) {
+            return null;
+        }
+        ProductDTO productDTO = productMapper.toDto(SecondLevelCacheUtil.findCached(entityManager.getEntityManagerFactory(), Product.class, id));
+        if (productDTO != null) {
+            setAvailableQuantity(Collections.singletonList(productDTO));
+        }
+        return productDTO;
     }
 
     /**
@@ -85,7 +188,13 @@ public class ProductService {
      */
     public void delete(Long id) {
         log.debug("Request to delete Product : {}", id);
+        if (productStockShardService != null) {
+            productStockShardService.dropShards(id);
+        }
         productRepository.delete(id);
+        if (stockGrid != null) {
+            stockGrid.remove(id);
+        }
     }
 
 	/**
@@ -97,8 +206,8 @@ public class ProductService {
 	 */
 	public Page<ProductDTO> searchForUser(String keyword, Pageable pageable) {
 		log.debug("Request to search product for user");
-        return productRepository.searchForUser(keyword, pageable)
-            .map(productMapper::toDto);
+        return withAvailableQuantity(productRepository.searchForUser(keyword, pageable)
+            .map(productMapper::toDto));
 	}
 
 	/**
@@ -110,7 +219,35 @@ public class ProductService {
 	 */
 	public Page<ProductDTO> searchForAdmin(String keyword, Pageable pageable) {
 		log.debug("Request to search product for admin");
-        return productRepository.searchForAdmin(keyword, pageable)
-            .map(productMapper::toDto);
+        return withAvailableQuantity(productRepository.searchForAdmin(keyword, pageable)
+            .map(productMapper::toDto));
 	}
+
+    private Page<ProductDTO> withAvailableQuantity(Page<ProductDTO> page) {
+        setAvailableQuantity(page.getContent());
+        return page;
+    }
+
+    // the stock grid holds the quantity not yet written behind to the product row, the quantity
+    // of a sharded product is the one of its row plus the one of its shards
+    private void setAvailableQuantity(List<ProductDTO> productDTOs) {
+        if (stockGrid != null) {
+            Map<Long, Integer> available = stockGrid.getAvailable(
+                productDTOs.stream().map(ProductDTO::getId).collect(Collectors.toList()));
+            productDTOs.forEach(productDTO -> productDTO.setQuantity(
+                available.getOrDefault(productDTO.getId(), productDTO.getQuantity())));
+            return;
+        }
+        if (productStockShardService == null) {
+            return;
+        }
+        Map<Long, Long> shardedQuantities = productStockShardService.sumQuantities(
+            productDTOs.stream().map(ProductDTO::getId).collect(Collectors.toList()));
+        for (ProductDTO productDTO : productDTOs) {
+            Long shardedQuantity = shardedQuantities.get(productDTO.getId());
+            if (shardedQuantity != null) {
+                productDTO.setQuantity(productDTO.getQuantity() + shardedQuantity.intValue());
+            }
+        }
+    }
 }
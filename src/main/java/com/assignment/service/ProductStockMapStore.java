@@ -0,0 +1,162 @@
+package com.assignment.service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.assignment.domain.Product;
+import com.assignment.repository.ProductRepository;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.MapLoaderLifecycleSupport;
+import com.hazelcast.core.MapStore;
+import com.hazelcast.core.MigrationEvent;
+import com.hazelcast.core.MigrationListener;
+
+
+/**
+ * The Class ProductStockMapStore.
+ * <p>
+ * Loads the stock map of the {@link StockGrid} from the product table and writes its quantities back.
+ * Products are loaded on first use, and product rows are never deleted through the map.
+ * <p>
+ * The quantities are written as the change since the quantity this member last loaded or wrote, so
+ * the product row is never overwritten. Those quantities are forgotten when partitions migrate, the
+ * quantity of the product row is then read again, the grid being the only writer of the row.
+ */
+@Component
+@ConditionalOnProperty(prefix = "application.stock.grid", name = "enabled", havingValue = "true")
+public class ProductStockMapStore implements MapStore<Long, Integer>, MapLoaderLifecycleSupport {
+
+	private final Logger log = LoggerFactory.getLogger(ProductStockMapStore.class);
+
+	private final ProductRepository productRepository;
+
+	private final EntityManagerFactory entityManagerFactory;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final ConcurrentMap<Long, Integer> written = new ConcurrentHashMap<>();
+
+	private String migrationListenerId;
+
+	private HazelcastInstance hazelcastInstance;
+
+	/**
+	 * Instantiates a new product stock map store.
+	 *
+	 * @param productRepository the product repository
+	 * @param entityManagerFactory the entity manager factory
+	 * @param transactionManager the transaction manager
+	 */
+	public ProductStockMapStore(ProductRepository productRepository, EntityManagerFactory entityManagerFactory,
+			PlatformTransactionManager transactionManager) {
+		this.productRepository = productRepository;
+		this.entityManagerFactory = entityManagerFactory;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+
+	@Override
+	public void init(HazelcastInstance hazelcastInstance, Properties properties, String mapName) {
+		this.hazelcastInstance = hazelcastInstance;
+		migrationListenerId = hazelcastInstance.getPartitionService().addMigrationListener(new MigrationListener() {
+			@Override
+			public void migrationStarted(MigrationEvent migrationEvent) {
+				written.clear();
+			}
+
+			@Override
+			public void migrationCompleted(MigrationEvent migrationEvent) {
+				written.clear();
+			}
+
+			@Override
+			public void migrationFailed(MigrationEvent migrationEvent) {
+				written.clear();
+			}
+		});
+	}
+
+	@Override
+	public void destroy() {
+		if (hazelcastInstance != null && hazelcastInstance.getLifecycleService().isRunning()) {
+			hazelcastInstance.getPartitionService().removeMigrationListener(migrationListenerId);
+		}
+	}
+
+	@Override
+	public Integer load(Long productId) {
+		Integer quantity = productRepository.findQuantity(productId);
+		if (quantity != null) {
+			written.put(productId, quantity);
+		}
+		return quantity;
+	}
+
+	@Override
+	public Map<Long, Integer> loadAll(Collection<Long> productIds) {
+		Map<Long, Integer> quantities = new HashMap<>();
+		for (Object[] productQuantity : productRepository.findQuantities(productIds)) {
+			quantities.put((Long) productQuantity[0], (Integer) productQuantity[1]);
+		}
+		written.putAll(quantities);
+		return quantities;
+	}
+
+	@Override
+	public Iterable<Long> loadAllKeys() {
+		return Collections.emptySet();
+	}
+
+	@Override
+	public void store(Long productId, Integer quantity) {
+		storeAll(Collections.singletonMap(productId, quantity));
+	}
+
+	@Override
+	public void storeAll(Map<Long, Integer> quantities) {
+		// product id order keeps the row locks in a deterministic order
+		Map<Long, Integer> sorted = new TreeMap<>(quantities);
+		transactionTemplate.execute(status -> {
+			sorted.forEach((productId, quantity) -> {
+				Integer previous = written.get(productId);
+				if (previous == null) {
+					previous = productRepository.findQuantity(productId);
+				}
+				if (previous != null && !previous.equals(quantity)) {
+					productRepository.increaseQuantity(productId, quantity - previous);
+				}
+			});
+			return null;
+		});
+		written.putAll(sorted);
+		sorted.keySet().forEach(productId -> entityManagerFactory.getCache().evict(Product.class, productId));
+		log.debug("Stored the stock of {} products", sorted.size());
+	}
+
+	@Override
+	public void delete(Long productId) {
+		// the product row is deleted by the product service
+		written.remove(productId);
+	}
+
+	@Override
+	public void deleteAll(Collection<Long> productIds) {
+		// the product rows are deleted by the product service
+		written.keySet().removeAll(productIds);
+	}
+
+}
@@ -0,0 +1,187 @@
+package com.assignment.service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.assignment.domain.Product;
+import com.assignment.domain.ProductStockShard;
+import com.assignment.repository.ProductRepository;
+import com.assignment.repository.ProductStockShardRepository;
+import com.assignment.web.rest.errors.ProductNotExistException;
+
+
+/**
+ * The Class ProductStockShardService.
+ * <p>
+ * Splits the available quantity of hot products over several product_stock_shard rows, so
+ * concurrent reservations of one product update different rows. The quantity of a product is the
+ * quantity of its row plus the quantity of its shards; stock given back in bulk lands on the product
+ * row and is still served by the {@link StockService} fallback.
+ * <p>
+ * Enabled with {@code application.stock.sharding.enabled}.
+ */
+@Service
+@Transactional
+@ConditionalOnProperty(prefix = "application.stock.sharding", name = "enabled", havingValue = "true")
+public class ProductStockShardService {
+
+	private final Logger log = LoggerFactory.getLogger(ProductStockShardService.class);
+
+	private final ProductStockShardRepository productStockShardRepository;
+
+	private final ProductRepository productRepository;
+
+	private final EntityManagerFactory entityManagerFactory;
+
+	/**
+	 * Instantiates a new product stock shard service.
+	 *
+	 * @param productStockShardRepository the product stock shard repository
+	 * @param productRepository the product repository
+	 * @param entityManagerFactory the entity manager factory
+	 */
+	public ProductStockShardService(ProductStockShardRepository productStockShardRepository,
+			ProductRepository productRepository, EntityManagerFactory entityManagerFactory) {
+		this.productStockShardRepository = productStockShardRepository;
+		this.productRepository = productRepository;
+		this.entityManagerFactory = entityManagerFactory;
+	}
+
+	/**
+	 * Reserve from the shards, starting from a random one and taking what it lacks from the next ones.
+	 * What was taken is given back if the shards together do not have enough stock.
+	 *
+	 * @param productId the product id
+	 * @param quantity the quantity
+	 * @return true, if the shards had enough stock
+	 */
+	public boolean reserve(Long productId, int quantity) {
+		List<Object[]> shards = productStockShardRepository.findQuantities(productId);
+		if (shards.isEmpty()) {
+			return false;
+		}
+		Map<Long, Integer> taken = new LinkedHashMap<>();
+		int remaining = quantity;
+		int start = ThreadLocalRandom.current().nextInt(shards.size());
+		for (int i = 0; i < shards.size() && remaining > 0; i++) {
+			Object[] shard = shards.get((start + i) % shards.size());
+			// the quantity read may be taken meanwhile, the shard is then skipped
+			int take = Math.min(remaining, (Integer) shard[1]);
+			if (take > 0 && productStockShardRepository.decreaseQuantity((Long) shard[0], take) == 1) {
+				taken.put((Long) shard[0], take);
+				remaining -= take;
+			}
+		}
+		if (remaining > 0) {
+			taken.forEach(productStockShardRepository::increaseQuantityOfShard);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Release to a random shard of the product.
+	 *
+	 * @param productId the product id
+	 * @param quantity the quantity
+	 * @return true, if the product has shards
+	 */
+	public boolean release(Long productId, int quantity) {
+		List<Object[]> shards = productStockShardRepository.findQuantities(productId);
+		if (shards.isEmpty()) {
+			return false;
+		}
+		Object[] shard = shards.get(ThreadLocalRandom.current().nextInt(shards.size()));
+		return productStockShardRepository.increaseQuantityOfShard((Long) shard[0], quantity) == 1;
+	}
+
+	/**
+	 * Spread a new quantity of a product over its shards, in place of theirs. The shards are locked
+	 * first: a reservation running meanwhile waits, then takes from the new quantities.
+	 *
+	 * @param productId the product id
+	 * @param quantity the new quantity
+	 * @return true, if the product has shards
+	 */
+	public boolean resetShards(Long productId, int quantity) {
+		List<ProductStockShard> shards = productStockShardRepository.findAllForUpdate(productId);
+		for (int i = 0; i < shards.size(); i++) {
+			shards.get(i).setQuantity(quantity / shards.size() + (i < quantity % shards.size() ? 1 : 0));
+		}
+		return !shards.isEmpty();
+	}
+
+	/**
+	 * Move the quantity of the product row into its shards, creating them if needed.
+	 *
+	 * @param productId the product id
+	 * @param shardCount the number of shards to create, if the product has none yet
+	 * @return the moved quantity
+	 */
+	public int shard(Long productId, int shardCount) {
+		log.debug("Request to shard the stock of Product : {}", productId);
+		Product product = productRepository.findOne(productId);
+		if (product == null) {
+			throw new ProductNotExistException();
+		}
+		int quantity = product.getQuantity();
+		if (quantity > 0 && productRepository.decreaseQuantity(productId, quantity) == 0) {
+			throw new ConcurrencyFailureException("The quantity of product " + productId + " changed while sharding it");
+		}
+		entityManagerFactory.getCache().evict(Product.class, productId);
+
+		int existingShards = productStockShardRepository.findQuantities(productId).size();
+		int shards = existingShards > 0 ? existingShards : shardCount;
+		for (int shard = 0; shard < shards; shard++) {
+			int shardQuantity = quantity / shards + (shard < quantity % shards ? 1 : 0);
+			if (existingShards > 0) {
+				productStockShardRepository.increaseQuantity(productId, shard, shardQuantity);
+			} else {
+				productStockShardRepository.save(new ProductStockShard().product(product).shard(shard).quantity(shardQuantity));
+			}
+		}
+		return quantity;
+	}
+
+	/**
+	 * Drop the shards of the product, discarding their quantity.
+	 *
+	 * @param productId the product id
+	 * @return the number of dropped shards
+	 */
+	public int dropShards(Long productId) {
+		return productStockShardRepository.deleteByProductId(productId);
+	}
+
+	/**
+	 * Sum the quantity of the shards per product.
+	 *
+	 * @param productIds the product ids
+	 * @return the quantity per product id, for the sharded products only
+	 */
+	@Transactional(readOnly = true)
+	public Map<Long, Long> sumQuantities(Collection<Long> productIds) {
+		Map<Long, Long> quantities = new HashMap<>();
+		if (productIds.isEmpty()) {
+			return quantities;
+		}
+		for (Object[] productQuantity : productStockShardRepository.sumQuantityByProduct(productIds)) {
+			quantities.put((Long) productQuantity[0], (Long) productQuantity[1]);
+		}
+		return quantities;
+	}
+
+}
@@ -1,23 +1,51 @@
 package com.assignment.service;
 
-import java.util.Iterator;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
+import javax.persistence.EntityManager;
+
+import org.hibernate.engine.spi.SessionImplementor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import com.assignment.aop.retry.RetryOnConflict;
+import com.assignment.config.ApplicationProperties;
 import com.assignment.domain.Cart;
 import com.assignment.domain.CartItem;
+import com.assignment.domain.Money;
 import com.assignment.domain.Product;
 import com.assignment.repository.CartItemRepository;
 import com.assignment.repository.CartRepository;
 import com.assignment.repository.ProductRepository;
 import com.assignment.service.dto.CartDTO;
 import com.assignment.service.dto.CartItemDTO;
+import com.assignment.service.dto.CartItemFailureDTO;
+import com.assignment.service.dto.CartSummaryDTO;
 import com.assignment.service.mapper.CartItemMapper;
 import com.assignment.service.mapper.CartMapper;
+import com.assignment.service.util.SecondLevelCacheUtil;
+import com.assignment.web.rest.errors.BadRequestAlertException;
 import com.assignment.web.rest.errors.CartItemNotExistException;
+import com.assignment.web.rest.errors.CartModifiedException;
 import com.assignment.web.rest.errors.CartNotExistException;
 import com.assignment.web.rest.errors.NotEnoughProductQuantityException;
 import com.assignment.web.rest.errors.ProductNotExistException;
@@ -25,6 +53,21 @@ import com.assignment.web.rest.errors.ProductNotExistException;
 
 /**
  * The Class ShoppingCartService.
+ * <p>
+ * When a {@link CartStateStore} is enabled, the carts are read and changed in it instead of the
+ * cart and cart_item tables, only the creation of a cart inserting its row.
+ * <p>
+ * Every change of the items of a cart touches its last modification time, which the
+ * {@link AbandonedCartSweeper} deletes the idle carts by; the stores touch the rows themselves. It
+ * bumps the version of the cart, or the revision of its state, which stamps the cart for the HTTP
+ * conditional requests.
+ * <p>
+ * The number of items and their price are kept with the cart, changed by the quantity and the price
+ * of each changed line, so the totals are read without the items; the stores keep the totals of the
+ * rows themselves too.
+ * <p>
+ * When the {@link CartViews} are enabled, a changed cart has its view put when the change commits,
+ * and a cart is read from its view when it has one of the current stamp.
  */
 @Service
 @Transactional
@@ -42,6 +85,24 @@ public class ShoppingCartService {
 	
 	private final ProductRepository productRepository;
 
+	private final StockService stockService;
+
+	private final ApplicationProperties.Stock.Hold holdProperties;
+
+	private final EntityManager entityManager;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final TransactionTemplate readOnlyTransactionTemplate;
+
+	private final int purgeBatchSize;
+
+	private final int rebuildBatchSize;
+
+	private CartStateStore cartStateStore;
+
+	private CartViews cartViews;
+
 	/**
 	 * Instantiates a new shopping cart service.
 	 *
@@ -50,15 +111,39 @@ public class ShoppingCartService {
 	 * @param cartItemRepository the cart item repository
 	 * @param cartItemMapper the cart item mapper
 	 * @param productRepository the product repository
+	 * @param stockService the stock service
+	 * @param applicationProperties the application properties
+	 * @param entityManager the entity manager
+	 * @param transactionManager the transaction manager
 	 */
 	public ShoppingCartService(CartRepository cartRepository, CartMapper cartMapper,
-			CartItemRepository cartItemRepository, CartItemMapper cartItemMapper, ProductRepository productRepository) {
+			CartItemRepository cartItemRepository, CartItemMapper cartItemMapper, ProductRepository productRepository,
+			StockService stockService, ApplicationProperties applicationProperties, EntityManager entityManager,
+			PlatformTransactionManager transactionManager) {
 		super();
 		this.cartRepository = cartRepository;
 		this.cartMapper = cartMapper;
 		this.cartItemRepository = cartItemRepository;
 		this.cartItemMapper = cartItemMapper;
 		this.productRepository = productRepository;
+		this.stockService = stockService;
+		this.holdProperties = applicationProperties.getStock().getHold();
+		this.entityManager = entityManager;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+		this.readOnlyTransactionTemplate.setReadOnly(true);
+		this.purgeBatchSize = applicationProperties.getCart().getPurgeBatchSize();
+		this.rebuildBatchSize = applicationProperties.getCart().getReadModel().getRebuildBatchSize();
+	}
+
+	@Autowired(required = false)
+	public void setCartStateStore(CartStateStore cartStateStore) {
+		this.cartStateStore = cartStateStore;
+	}
+
+	@Autowired(required = false)
+	public void setCartViews(CartViews cartViews) {
+		this.cartViews = cartViews;
 	}
 
 	/**
@@ -70,7 +155,24 @@ public class ShoppingCartService {
 	public CartDTO save(CartDTO cartDTO) {
 		log.debug("Request to save Cart : {}", cartDTO);
 		Cart cart = cartMapper.toEntity(cartDTO);
-		return doSaveAndMap(cart);
+		CartDTO result = doSaveAndMap(cart);
+		if (cartStateStore != null && cartDTO.getId() == null) {
+			cartStateStore.add(new CartState(result.getId()));
+		}
+		return result;
+	}
+
+	// a change of the items, the idle carts are swept; the new time always bumps the version of the
+	// cart, the stamp of its ETag
+	private void touch(Cart cart) {
+		Instant now = Instant.now();
+		cart.setLastModifiedAt(now.isAfter(cart.getLastModifiedAt()) ? now : cart.getLastModifiedAt().plusMillis(1));
+	}
+
+	// a quantity is priced when it is added to a line, the line keeps the amount so that a change of the
+	// line takes off the totals what was added to them, whatever the price is then
+	private Money priceOf(Product product, int quantity) {
+		return product.getUnitPrice().times(quantity);
 	}
 
 	private CartDTO doSaveAndMap(Cart cart) {
@@ -79,7 +181,7 @@ public class ShoppingCartService {
 	}
 
 	/**
-	 * Find one.
+	 * Find one, with the stamp of the loaded cart.
 	 *
 	 * @param id the id
 	 * @return the cart DTO
@@ -87,25 +189,269 @@ public class ShoppingCartService {
 	@Transactional(readOnly = true)
 	public CartDTO findOne(Long id) {
 		log.debug("Request to get Cart : {}", id);
-		Cart cart = cartRepository.findOne(id);
-		return cartMapper.toDto(cart);
+		return loadCart(id);
+	}
+
+	/**
+	 * Find one, from its view when it has one of the stamp, without starting a transaction.
+	 *
+	 * @param id the id
+	 * @param stamp the current stamp of the cart
+	 * @return the cart DTO
+	 */
+	@Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+	public CartDTO findOne(Long id, String stamp) {
+		log.debug("Request to get Cart : {} of stamp {}", id, stamp);
+		CartDTO view = cartViews == null ? null : cartViews.get(id, stamp);
+		if (view != null) {
+			return view;
+		}
+		return readOnlyTransactionTemplate.execute(status -> loadCart(id));
+	}
+
+	// the view is put under the stamp of the loaded cart, which may be newer than the one asked for, and
+	// the cart is answered with it
+	private CartDTO loadCart(Long id) {
+		if (cartStateStore != null) {
+			CartState cartState = cartStateStore.get(id);
+			return cartState == null ? null : putView(stamp(cartState), toDto(cartState));
+		}
+		Cart cart = cartRepository.findOneWithEagerRelationships(id);
+		return cart == null ? null : putView(stamp(cart), cartMapper.toDto(cart));
+	}
+
+	private CartDTO putView(String stamp, CartDTO cartDTO) {
+		cartDTO.setStamp(stamp);
+		if (cartViews != null) {
+			cartViews.put(cartDTO.getId(), stamp, cartDTO);
+		}
+		return cartDTO;
+	}
+
+	// the version of a changed cart is bumped at flush, the stamp of the change is taken after it and
+	// answered with the cart, a later read may already see the next change; flushed through the
+	// repository, a conflict is translated and retried
+	private CartDTO putViewAfterCommit(Supplier<String> stamp, CartDTO cartDTO) {
+		if (cartStateStore == null) {
+			cartRepository.flush();
+		}
+		cartDTO.setStamp(stamp.get());
+		if (cartViews != null) {
+			cartViews.putAfterCommit(cartDTO.getId(), cartDTO.getStamp(), cartDTO);
+		}
+		return cartDTO;
+	}
+
+	/**
+	 * Rebuild the views of all the carts, batch after batch, each batch in its own transaction.
+	 *
+	 * @return the number of rebuilt views, 0 when the views are not enabled
+	 */
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public int rebuildViews() {
+		if (cartViews == null) {
+			return 0;
+		}
+		log.debug("Request to rebuild the Cart views");
+		int total = 0;
+		List<Long> ids = cartRepository.findIdsAfter(0L, new PageRequest(0, rebuildBatchSize));
+		while (!ids.isEmpty()) {
+			List<Long> batch = ids;
+			total += readOnlyTransactionTemplate.execute(status -> rebuildViews(batch));
+			ids = ids.size() < rebuildBatchSize ? Collections.emptyList()
+				: cartRepository.findIdsAfter(ids.get(ids.size() - 1), new PageRequest(0, rebuildBatchSize));
+		}
+		log.info("Rebuilt {} Cart views", total);
+		return total;
+	}
+
+	private int rebuildViews(List<Long> ids) {
+		if (cartStateStore != null) {
+			return (int) ids.stream().map(this::loadCart).filter(cartDTO -> cartDTO != null).count();
+		}
+		List<Cart> carts = cartRepository.findAllWithEagerRelationships(ids);
+		carts.forEach(cart -> putView(stamp(cart), cartMapper.toDto(cart)));
+		return carts.size();
 	}
 	
+	/**
+	 * Find the totals of a cart, without its items.
+	 *
+	 * @param id the id
+	 * @return the cart summary DTO, or null if the cart does not exist
+	 */
+	@Transactional(readOnly = true)
+	public CartSummaryDTO findSummary(Long id) {
+		log.debug("Request to get the summary of Cart : {}", id);
+		// from the second-level cache
+		return cartMapper.toSummaryDto(cartRepository.findOne(id));
+	}
+
+	/**
+	 * Find the stamp of a cart, changed by every change of its items, without loading them.
+	 *
+	 * @param id the id
+	 * @return the stamp, or null if the cart does not exist
+	 */
+	@Transactional(readOnly = true)
+	public String findStamp(Long id) {
+		if (cartStateStore != null) {
+			CartState cartState = cartStateStore.get(id);
+			return cartState == null ? null : stamp(cartState);
+		}
+		// from the second-level cache
+		Cart cart = cartRepository.findOne(id);
+		return cart == null ? null : stamp(cart);
+	}
+
+	/**
+	 * Find the stamp of a cart from the second-level cache only, without a database connection.
+	 *
+	 * @param id the id
+	 * @return the stamp, or null if the cart is not cached or is kept in a store
+	 */
+	@Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+	public String findCachedStamp(Long id) {
+		Cart cart = cartStateStore == null ? findCachedCart(id) : null;
+		return cart == null ? null : stamp(cart);
+	}
+
+	/**
+	 * Find the totals of a cart from the second-level cache only, without a database connection.
+	 *
+	 * @param id the id
+	 * @return the cart summary DTO, or null if the cart is not cached
+	 */
+	@Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+	public CartSummaryDTO findCachedSummary(Long id) {
+		Cart cart = findCachedCart(id);
+		return cart == null ? null : cartMapper.toSummaryDto(cart);
+	}
+
+	/**
+	 * Find the view of a cart only, without a database connection.
+	 *
+	 * @param id the id
+	 * @param stamp the current stamp of the cart
+	 * @return the cart DTO, or null if the views are not enabled or have none of the stamp
+	 */
+	@Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+	public CartDTO findView(Long id, String stamp) {
+		return cartViews == null ? null : cartViews.get(id, stamp);
+	}
+
+	// a cached cart is found without a statement, the others are left to the callers which may query
+	private Cart findCachedCart(Long id) {
+		return SecondLevelCacheUtil.findCached(entityManager.getEntityManagerFactory(), Cart.class, id);
+	}
+
+	private String stamp(Cart cart) {
+		return String.valueOf(cart.getVersion());
+	}
+
+	private String stamp(CartState cartState) {
+		return cartState.getRevision() + "-" + cartState.getModifiedAt();
+	}
+
+	// the change bumps the stamp it was checked against, a concurrent change makes it conflict and
+	// be retried, checking again
+	private void checkStamp(Collection<String> expectedStamps, String stamp) {
+		if (expectedStamps != null && !expectedStamps.contains(stamp)) {
+			throw new CartModifiedException(stamp);
+		}
+	}
+
 	/**
 	 * Delete.
 	 *
 	 * @param id the id
 	 */
+	@RetryOnConflict
 	public void delete(Long id) {
-		log.debug("Request to get Cart : {}", id);
-		Cart cart = getCartOrThrow(id);
-		// delete all cart item before delete cart
-		Iterator<CartItem> iterator = cart.getCartItems().iterator();
-		while (iterator.hasNext()) {
-			doDeleteCartItem(iterator.next());
-			iterator.remove();
+		log.debug("Request to delete Cart : {}", id);
+		if (deleteCarts(Collections.singletonList(id)) == 0) {
+			throw new CartNotExistException();
+		}
+	}
+
+	/**
+	 * Purge carts, deleting them batch after batch, each batch in its own transaction.
+	 *
+	 * @param ids the cart ids
+	 * @return the number of deleted carts
+	 */
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public int purge(List<Long> ids) {
+		log.debug("Request to purge {} Carts", ids.size());
+		int total = 0;
+		for (int from = 0; from < ids.size(); from += purgeBatchSize) {
+			List<Long> batch = ids.subList(from, Math.min(from + purgeBatchSize, ids.size()));
+			total += transactionTemplate.execute(status -> deleteCarts(batch));
+		}
+		log.info("Purged {} Carts", total);
+		return total;
+	}
+
+	/**
+	 * Delete the carts not modified since a time, in one transaction. A cart changed since it was
+	 * found idle is kept.
+	 *
+	 * @param ids the cart ids
+	 * @param before the time
+	 * @return the number of deleted carts
+	 */
+	public int deleteIdle(List<Long> ids, Instant before) {
+		log.debug("Request to delete {} Carts idle since {}", ids.size(), before);
+		if (cartStateStore != null) {
+			return deleteStoredCarts(cartRepository.findIdleIdsByIdIn(ids, before));
+		}
+		return deleteLockedCarts(cartRepository.findIdleForUpdate(ids, before));
+	}
+
+	private int deleteCarts(Collection<Long> ids) {
+		if (cartStateStore != null) {
+			return deleteStoredCarts(ids);
+		}
+		// the lock keeps items from being added to the carts between the stock release and the delete
+		return deleteLockedCarts(cartRepository.findAllForUpdate(ids));
+	}
+
+	// a few set-based statements whatever the number of items, the bulk statements also evict
+	// the cart, cart item and product regions of the second-level cache
+	private int deleteLockedCarts(List<Cart> carts) {
+		if (carts.isEmpty()) {
+			return 0;
+		}
+		List<Long> lockedIds = carts.stream().map(Cart::getId).collect(Collectors.toList());
+		stockService.releaseCarts(lockedIds);
+		cartItemRepository.deleteByCartIds(lockedIds);
+		int deleted = cartRepository.deleteByIds(lockedIds);
+		// the deleted carts and their loaded items must not be flushed again
+		carts.forEach(entityManager::detach);
+		removeViews(lockedIds);
+		return deleted;
+	}
+
+	// removing a cart from the store is atomic, only the remover gives its stock back
+	private int deleteStoredCarts(Collection<Long> ids) {
+		Map<Long, Integer> released = new HashMap<>();
+		int deleted = 0;
+		for (Long id : ids) {
+			CartState removed = cartStateStore.remove(id);
+			if (removed != null) {
+				removed.getLines().forEach(line -> released.merge(line.getProductId(), line.getQuantity(), Integer::sum));
+				deleted++;
+			}
+		}
+		released.forEach(stockService::release);
+		removeViews(ids);
+		return deleted;
+	}
+
+	private void removeViews(Collection<Long> ids) {
+		if (cartViews != null) {
+			cartViews.removeAfterCommit(new ArrayList<>(ids));
 		}
-		cartRepository.delete(cart);
 	}
 	
 	/**
@@ -114,9 +460,106 @@ public class ShoppingCartService {
 	 * @param cartItemDTO the cart item DTO
 	 * @return the cart DTO
 	 */
+	@RetryOnConflict
 	public CartDTO addItem(CartItemDTO cartItemDTO) {
 		log.debug("Request to add cart item : {}", cartItemDTO);
-		return updateCartItem(cartItemDTO);
+		return updateCartItem(cartItemDTO, null);
+	}
+
+	/**
+	 * Adds items in one transaction, a line of a product already in the cart gets the quantity added.
+	 * <p>
+	 * The products are loaded with one query and their stock is reserved in product id order, so
+	 * concurrent batches lock the product rows in the same order. The new lines are inserted together
+	 * at flush, in JDBC batches.
+	 *
+	 * @param cartId the cart id
+	 * @param cartItemDTOs the cart item DTOs
+	 * @param partial whether the lines which cannot be added are reported instead of failing the batch
+	 * @return the cart DTO, with the failed lines when partial
+	 */
+	@RetryOnConflict
+	public CartDTO addItems(Long cartId, List<CartItemDTO> cartItemDTOs, boolean partial) {
+		log.debug("Request to add {} cart items to Cart : {}", cartItemDTOs.size(), cartId);
+		CartState currentState = cartStateStore == null ? null : getCartStateOrThrow(cartId);
+		CartState cartState = currentState;
+		Cart cart = cartStateStore == null ? getCartWithItemsOrThrow(cartId) : null;
+		Set<Long> productIds = cartItemDTOs.stream()
+			.filter(this::isValidBatchItem)
+			.map(this::batchProductId)
+			.collect(Collectors.toSet());
+		Map<Long, Product> products = productIds.isEmpty() ? new HashMap<>()
+			: productRepository.findByIdInAndVisibleTrue(productIds).stream()
+				.collect(Collectors.toMap(Product::getId, Function.identity()));
+		// validate all the lines before taking any stock
+		List<CartItemFailureDTO> failures = new ArrayList<>();
+		List<Integer> indexes = new ArrayList<>();
+		for (int index = 0; index < cartItemDTOs.size(); index++) {
+			CartItemDTO cartItemDTO = cartItemDTOs.get(index);
+			if (!isValidBatchItem(cartItemDTO)) {
+				addBatchFailure(failures, index, cartItemDTO,
+						new BadRequestAlertException("Invalid cart item", "cartItem", "invalidCartItem"), partial);
+			} else if (!products.containsKey(cartItemDTO.getProduct().getId())) {
+				addBatchFailure(failures, index, cartItemDTO, new ProductNotExistException(), partial);
+			} else {
+				indexes.add(index);
+			}
+		}
+
+		List<CartItem> newCartItems = new ArrayList<>();
+		indexes.sort(Comparator.comparing(index -> cartItemDTOs.get(index).getProduct().getId()));
+		for (int index : indexes) {
+			CartItemDTO cartItemDTO = cartItemDTOs.get(index);
+			Product product = products.get(cartItemDTO.getProduct().getId());
+			if (!stockService.tryReserve(product.getId(), cartItemDTO.getQuantity())) {
+				addBatchFailure(failures, index, cartItemDTO, new NotEnoughProductQuantityException(), partial);
+				continue;
+			}
+			if (cartState != null) {
+				cartState = withAddedQuantity(cartState, product, cartItemDTO.getQuantity());
+				continue;
+			}
+			Money amount = priceOf(product, cartItemDTO.getQuantity());
+			cart.addToTotals(cartItemDTO.getQuantity(), amount);
+			CartItem cartItem = cart.getCartItemByProduct(product.getId());
+			if (cartItem == null) {
+				cartItem = new CartItem().quantity(cartItemDTO.getQuantity()).lineTotal(amount).product(product);
+				cart.addCartItem(cartItem);
+				newCartItems.add(cartItem);
+			} else {
+				cartItem.setQuantity(cartItem.getQuantity() + cartItemDTO.getQuantity());
+				cartItem.setLineTotal(cartItem.getLineTotal().plus(amount));
+			}
+			cartItem.setExpiresAt(holdExpiry());
+		}
+		CartDTO result;
+		if (cartState != null) {
+			result = replaceCartState(currentState, cartState);
+		} else {
+			cartItemRepository.save(newCartItems);
+			touch(cart);
+			result = putViewAfterCommit(() -> stamp(cart), doSaveAndMap(cart));
+		}
+		failures.sort(Comparator.comparingInt(CartItemFailureDTO::getIndex));
+		result.setFailedItems(failures);
+		return result;
+	}
+
+	private void addBatchFailure(List<CartItemFailureDTO> failures, int index, CartItemDTO cartItemDTO,
+			BadRequestAlertException failure, boolean partial) {
+		if (!partial) {
+			throw failure;
+		}
+		failures.add(new CartItemFailureDTO(index, batchProductId(cartItemDTO), cartItemDTO.getQuantity(),
+				failure.getErrorKey()));
+	}
+
+	private boolean isValidBatchItem(CartItemDTO cartItemDTO) {
+		return cartItemDTO.getQuantity() != null && cartItemDTO.getQuantity() > 0 && batchProductId(cartItemDTO) != null;
+	}
+
+	private Long batchProductId(CartItemDTO cartItemDTO) {
+		return cartItemDTO.getProduct() == null ? null : cartItemDTO.getProduct().getId();
 	}
 
 	/**
@@ -125,53 +568,163 @@ public class ShoppingCartService {
 	 * @param cartItemDTO the cart item DTO
 	 * @return the cart DTO
 	 */
+	@RetryOnConflict
 	public CartDTO updateItem(CartItemDTO cartItemDTO) {
+		return updateItem(cartItemDTO, null);
+	}
+
+	/**
+	 * Update item, if the cart still has one of the stamps.
+	 *
+	 * @param cartItemDTO the cart item DTO
+	 * @param expectedStamps the stamps of the cart the update may be made from, null for any
+	 * @return the cart DTO
+	 * @throws CartModifiedException if the cart has another stamp
+	 */
+	@RetryOnConflict
+	public CartDTO updateItem(CartItemDTO cartItemDTO, Collection<String> expectedStamps) {
 		log.debug("Request to update cart item : {}", cartItemDTO);
-		return updateCartItem(cartItemDTO);
+		return updateCartItem(cartItemDTO, expectedStamps);
 	}
 	
-	private CartDTO updateCartItem(CartItemDTO cartItemDTO) {
-		// validate if cart and product correct
+	private CartDTO updateCartItem(CartItemDTO cartItemDTO, Collection<String> expectedStamps) {
+		if (cartStateStore != null) {
+			return updateStoredCartItem(cartItemDTO, expectedStamps);
+		}
+		// validate if cart and product correct, changing one line does not need the others
 		Cart cart = getCartOrThrow(cartItemDTO.getCartId());
+		checkStamp(expectedStamps, stamp(cart));
 		Product product = getProductOrThrow(cartItemDTO.getProduct().getId());
 		
 		// update product quantity
-		CartItem cartItem = cartItemMapper.toEntity(cartItemDTO);
-		if(cartItem.getId() == null) { 
-			updateProductQuantity(product, cartItem.getQuantity());
+		if(cartItemDTO.getId() == null) { 
+			// merge into the line of the product when the cart already has one
+			stockService.reserve(product.getId(), cartItemDTO.getQuantity());
+			Money amount = priceOf(product, cartItemDTO.getQuantity());
+			cartItemRepository.upsert(cart.getId(), product.getId(), cartItemDTO.getQuantity(), amount, holdExpiry());
+			// the statement bypassed the persistence context, reload the lines and the merged one
+			entityManager.refresh(cart);
+			entityManager.refresh(cart.getCartItemByProduct(product.getId()));
+			cart.addToTotals(cartItemDTO.getQuantity(), amount);
+			touch(cart);
+			return putViewAfterCommit(() -> stamp(cart), cartMapper.toDto(cart));
+		}
+
+		// update the managed line, a copy mapped from the DTO carries no version to merge with
+		CartItem cartItem = getExistedCartItemOrThrow(cart.getId(), cartItemDTO.getId());
+		Money lineTotal = priceOf(product, cartItemDTO.getQuantity());
+		cart.addToTotals(-cartItem.getQuantity(), cartItem.getLineTotal().negate());
+		cart.addToTotals(cartItemDTO.getQuantity(), lineTotal);
+		if (product.getId().equals(cartItem.getProduct().getId())) {
+			stockService.adjust(product.getId(), cartItemDTO.getQuantity() - cartItem.getQuantity());
+			cartItem.setQuantity(cartItemDTO.getQuantity());
+			cartItem.setLineTotal(lineTotal);
 		} else {
-			CartItem existedCartItem  = getExistedCartItemOrThrow(cart, cartItem.getId());
-			Integer requestQuantity =  cartItem.getQuantity() - existedCartItem.getQuantity();
-			updateProductQuantity(product, requestQuantity);
+			// the line changes product: the stock of the former one is given back, the new quantity is
+			// reserved and merged into the line the cart may already have for the new product
+			stockService.release(cartItem.getProduct().getId(), cartItem.getQuantity());
+			stockService.reserve(product.getId(), cartItemDTO.getQuantity());
+			CartItem productItem = cart.getCartItemByProduct(product.getId());
+			if (productItem != null) {
+				productItem.setQuantity(productItem.getQuantity() + cartItemDTO.getQuantity());
+				productItem.setLineTotal(productItem.getLineTotal().plus(lineTotal));
+				productItem.setExpiresAt(holdExpiry());
+				cart.removeCartItem(cartItem);
+				cartItemRepository.delete(cartItem);
+				touch(cart);
+				return putViewAfterCommit(() -> stamp(cart), cartMapper.toDto(cart));
+			}
+			cart.removeCartItem(cartItem);
+			cartItem.setQuantity(cartItemDTO.getQuantity());
+			cartItem.setLineTotal(lineTotal);
+			cartItem.setProduct(product);
+			cart.addCartItem(cartItem);
+		}
+		cartItem.setExpiresAt(holdExpiry());
+		touch(cart);
+		return putViewAfterCommit(() -> stamp(cart), cartMapper.toDto(cartRepository.findOneWithEagerRelationships(cart.getId())));
+	}
+
+	private CartDTO updateStoredCartItem(CartItemDTO cartItemDTO, Collection<String> expectedStamps) {
+		CartState cartState = getCartStateOrThrow(cartItemDTO.getCartId());
+		checkStamp(expectedStamps, stamp(cartState));
+		Product product = getProductOrThrow(cartItemDTO.getProduct().getId());
+
+		if (cartItemDTO.getId() == null) {
+			stockService.reserve(product.getId(), cartItemDTO.getQuantity());
+			return replaceCartState(cartState, withAddedQuantity(cartState, product, cartItemDTO.getQuantity()));
 		}
 
-		return doUpdate(cart, cartItem, product);
+		CartState.Line line = cartState.getLine(cartItemDTO.getId());
+		if (line == null) {
+			throw new CartItemNotExistException();
+		}
+		if (product.getId().equals(line.getProductId())) {
+			stockService.adjust(product.getId(), cartItemDTO.getQuantity() - line.getQuantity());
+			return replaceCartState(cartState, cartState.withLine(new CartState.Line(line.getId(), product.getId(),
+				cartItemDTO.getQuantity(), holdExpiry(), priceOf(product, cartItemDTO.getQuantity()))));
+		}
+		// the line changes product: the stock of the former one is given back, the new quantity is
+		// reserved and merged into the line the cart may already have for the new product
+		stockService.release(line.getProductId(), line.getQuantity());
+		stockService.reserve(product.getId(), cartItemDTO.getQuantity());
+		CartState withoutLine = cartState.withoutLines(Collections.singleton(line.getProductId()));
+		CartState.Line productLine = cartState.getLineOfProduct(product.getId());
+		Money amount = priceOf(product, cartItemDTO.getQuantity());
+		return replaceCartState(cartState, withoutLine.withLine(productLine == null
+			? new CartState.Line(line.getId(), product.getId(), cartItemDTO.getQuantity(), holdExpiry(), amount)
+			: new CartState.Line(productLine.getId(), product.getId(), productLine.getQuantity() + cartItemDTO.getQuantity(),
+				holdExpiry(), productLine.getLineTotal().plus(amount))));
 	}
 
-	private void updateProductQuantity(Product product, Integer requestQuantity) {
-		if(product.getQuantity() >= requestQuantity) {
-			product.setQuantity(product.getQuantity() - requestQuantity);
-		} else {
-			throw new NotEnoughProductQuantityException();
+	private CartState withAddedQuantity(CartState cartState, Product product, int quantity) {
+		CartState.Line line = cartState.getLineOfProduct(product.getId());
+		Money amount = priceOf(product, quantity);
+		if (line == null) {
+			return cartState.withLine(new CartState.Line(nextCartItemId(), product.getId(), quantity, holdExpiry(), amount));
 		}
+		return cartState.withLine(new CartState.Line(line.getId(), product.getId(), line.getQuantity() + quantity,
+			holdExpiry(), line.getLineTotal().plus(amount)));
 	}
 
-	private CartItem getExistedCartItemOrThrow(Cart cart, Long cartItemId) {
-		for(CartItem cartItemEl : cart.getCartItems()) {
-			if(cartItemEl.getId().equals(cartItemId)) {
-				return cartItemEl;
-			}
+	// the line ids come from the sequence of the cart item table, as the map store inserts the lines with them
+	private Long nextCartItemId() {
+		SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+		return (Long) session.getFactory().getMetamodel().entityPersister(CartItem.class)
+			.getIdentifierGenerator().generate(session, null);
+	}
+
+	private CartDTO replaceCartState(CartState current, CartState next) {
+		if (!cartStateStore.replace(current, next)) {
+			// retried like the optimistic locking conflicts of the cart tables
+			throw new ObjectOptimisticLockingFailureException(Cart.class, current.getId());
 		}
-		
-		throw new CartItemNotExistException();
+		return putViewAfterCommit(() -> stamp(next), toDto(next));
+	}
+
+	private CartDTO toDto(CartState cartState) {
+		Set<Long> productIds = cartState.getLines().stream().map(CartState.Line::getProductId).collect(Collectors.toSet());
+		Map<Long, Product> products = productIds.isEmpty() ? new HashMap<>()
+			: productRepository.findAll(productIds).stream().collect(Collectors.toMap(Product::getId, Function.identity()));
+		Cart cart = new Cart();
+		cart.setId(cartState.getId());
+		for (CartState.Line line : cartState.getLines()) {
+			Product product = products.get(line.getProductId());
+			CartItem cartItem = new CartItem().quantity(line.getQuantity()).lineTotal(line.getLineTotal()).product(product)
+				.expiresAt(line.getExpiresAt());
+			cartItem.setId(line.getId());
+			cart.addCartItem(cartItem);
+			cart.addToTotals(line.getQuantity(), line.getLineTotal());
+		}
+		return cartMapper.toDto(cart);
 	}
 
-	private CartDTO doUpdate(Cart cart, CartItem cartItem, Product product) {
-		cartItem.setProduct(product);
-		cart.addCartItem(cartItem);
-		productRepository.save(product);
-	    cartItem = cartItemRepository.save(cartItem);
-	    return doSaveAndMap(cart);
+	private CartItem getExistedCartItemOrThrow(Long cartId, Long cartItemId) {
+		CartItem cartItem = cartItemRepository.findByIdAndCartId(cartItemId, cartId);
+		if(cartItem == null) {
+			throw new CartItemNotExistException();
+		}
+		return cartItem;
 	}
 
 	/**
@@ -180,23 +733,76 @@ public class ShoppingCartService {
 	 * @param id the id
 	 * @return the cart DTO
 	 */
+	@RetryOnConflict
 	public CartDTO deleteItem(Long id) {
+		return deleteItem(id, null);
+	}
+
+	/**
+	 * Delete item, if the cart still has one of the stamps.
+	 *
+	 * @param id the id
+	 * @param expectedStamps the stamps of the cart the deletion may be made from, null for any
+	 * @return the cart DTO
+	 * @throws CartModifiedException if the cart has another stamp
+	 */
+	@RetryOnConflict
+	public CartDTO deleteItem(Long id, Collection<String> expectedStamps) {
+		if (cartStateStore != null) {
+			return deleteStoredItem(id, expectedStamps);
+		}
 		CartItem cartItem = getCartItemOrThrow(id);
 		Cart cart = cartItem.getCart();
+		checkStamp(expectedStamps, stamp(cart));
+		cart.addToTotals(-cartItem.getQuantity(), cartItem.getLineTotal().negate());
 		cart.removeCartItem(cartItem);
+		touch(cart);
 		
 		doDeleteCartItem(cartItem);
 
-	    return doSaveAndMap(cart);
+	    return putViewAfterCommit(() -> stamp(cart), doSaveAndMap(cart));
+	}
+
+	/**
+	 * Find the cart of an item.
+	 *
+	 * @param id the item id
+	 * @return the cart id, or null if no cart has the item
+	 */
+	@Transactional(readOnly = true)
+	public Long findCartIdOfItem(Long id) {
+		Long cartId = cartItemRepository.findCartIdById(id);
+		// a line not written yet is only in the store
+		if (cartId == null && cartStateStore != null) {
+			cartId = cartStateStore.findCartIdOfLine(id);
+		}
+		return cartId;
+	}
+
+	private CartDTO deleteStoredItem(Long id, Collection<String> expectedStamps) {
+		Long cartId = findCartIdOfItem(id);
+		CartState cartState = cartId == null ? null : cartStateStore.get(cartId);
+		CartState.Line line = cartState == null ? null : cartState.getLine(id);
+		if (line == null) {
+			throw new CartItemNotExistException();
+		}
+		checkStamp(expectedStamps, stamp(cartState));
+		stockService.release(line.getProductId(), line.getQuantity());
+		return replaceCartState(cartState, cartState.withoutLines(Collections.singleton(line.getProductId())));
 	}
 
 	private void doDeleteCartItem(CartItem cartItem) {
-		Product product = cartItem.getProduct();
-		product.setQuantity(product.getQuantity() + cartItem.getQuantity());
-		productRepository.save(product);
+		stockService.release(cartItem.getProduct().getId(), cartItem.getQuantity());
 	    cartItemRepository.delete(cartItem);
 	}
 
+	private Instant holdExpiry() {
+		if (holdProperties.getTimeToLiveSeconds() <= 0) {
+			return null;
+		}
+		return Instant.now().plusSeconds(holdProperties.getTimeToLiveSeconds());
+	}
+
 	private Cart getCartOrThrow(Long id) {
 		Cart cart = cartRepository.findOne(id);
 		if(cart == null) {
@@ -205,6 +811,22 @@ public class ShoppingCartService {
 		return cart;
 	}
 
+	private Cart getCartWithItemsOrThrow(Long id) {
+		Cart cart = cartRepository.findOneWithEagerRelationships(id);
+		if(cart == null) {
+			throw new CartNotExistException();
+		}
+		return cart;
+	}
+
+	private CartState getCartStateOrThrow(Long id) {
+		CartState cartState = cartStateStore.get(id);
+		if(cartState == null) {
+			throw new CartNotExistException();
+		}
+		return cartState;
+	}
+
 	private CartItem getCartItemOrThrow(Long id) {
 		CartItem cartItem = cartItemRepository.getOne(id);
 		if(cartItem == null) {
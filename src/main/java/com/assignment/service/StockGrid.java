@@ -0,0 +1,192 @@
+package com.assignment.service;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+import com.assignment.config.ApplicationProperties;
+import com.hazelcast.config.InMemoryFormat;
+import com.hazelcast.config.MapConfig;
+import com.hazelcast.config.MapStoreConfig;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.MapStoreFactory;
+import com.hazelcast.map.AbstractEntryProcessor;
+
+
+/**
+ * The Class StockGrid.
+ * <p>
+ * Keeps the available quantity of products in a Hazelcast map shared by all the members of the
+ * cluster. Stock is reserved and released with entry processors, which run on the member owning the
+ * partition of the product, so a reservation is atomic cluster-wide without locking the product row.
+ * The map is loaded from and written behind to the product table by the {@link ProductStockMapStore}.
+ * <p>
+ * Enabled with {@code application.stock.grid.enabled}.
+ */
+@Component
+@ConditionalOnProperty(prefix = "application.stock.grid", name = "enabled", havingValue = "true")
+@DependsOn("productStockMapStore") // flushed before the map store is destroyed
+public class StockGrid {
+
+	/** The name of the stock map. */
+	public static final String MAP_NAME = "stock";
+
+	private final Logger log = LoggerFactory.getLogger(StockGrid.class);
+
+	private final IMap<Long, Integer> stock;
+
+	/**
+	 * Instantiates a new stock grid.
+	 *
+	 * @param hazelcastInstance the hazelcast instance, configured with {@link #mapConfig}
+	 */
+	public StockGrid(HazelcastInstance hazelcastInstance) {
+		this.stock = hazelcastInstance.getMap(MAP_NAME);
+	}
+
+	/**
+	 * Build the configuration of the stock map.
+	 *
+	 * @param grid the stock grid properties
+	 * @param mapStoreFactory the factory of the map store, called when the map is first used
+	 * @return the map config
+	 */
+	public static MapConfig mapConfig(ApplicationProperties.Stock.Grid grid, MapStoreFactory<Long, Integer> mapStoreFactory) {
+		MapConfig mapConfig = new MapConfig(MAP_NAME);
+		mapConfig.setBackupCount(grid.getBackupCount());
+		// entry processors work on the deserialized value
+		mapConfig.setInMemoryFormat(InMemoryFormat.OBJECT);
+		mapConfig.setMapStoreConfig(new MapStoreConfig()
+			.setEnabled(true)
+			.setFactoryImplementation(mapStoreFactory)
+			.setWriteDelaySeconds(grid.getWriteDelaySeconds())
+			.setInitialLoadMode(MapStoreConfig.InitialLoadMode.LAZY));
+		return mapConfig;
+	}
+
+	/**
+	 * Reserve.
+	 *
+	 * @param productId the product id
+	 * @param quantity the quantity
+	 * @return true, if enough stock was left
+	 */
+	public boolean reserve(Long productId, int quantity) {
+		return Boolean.TRUE.equals(stock.executeOnKey(productId, new ReserveStock(quantity)));
+	}
+
+	/**
+	 * Release.
+	 *
+	 * @param productId the product id
+	 * @param quantity the quantity
+	 */
+	public void release(Long productId, int quantity) {
+		stock.executeOnKey(productId, new ReleaseStock(quantity));
+	}
+
+	/**
+	 * Gets the available quantity.
+	 *
+	 * @param productId the product id
+	 * @return the available quantity, or null if the product does not exist
+	 */
+	public Integer getAvailable(Long productId) {
+		return stock.get(productId);
+	}
+
+	/**
+	 * Gets the available quantity of products.
+	 *
+	 * @param productIds the product ids
+	 * @return the available quantity per product id, missing for products which do not exist
+	 */
+	public Map<Long, Integer> getAvailable(Collection<Long> productIds) {
+		return stock.getAll(new HashSet<>(productIds));
+	}
+
+	/**
+	 * Overwrite the available quantity, after the product was saved.
+	 *
+	 * @param productId the product id
+	 * @param quantity the quantity
+	 */
+	public void set(Long productId, int quantity) {
+		stock.set(productId, quantity);
+	}
+
+	/**
+	 * Remove a product, after it was deleted.
+	 *
+	 * @param productId the product id
+	 */
+	public void remove(Long productId) {
+		stock.delete(productId);
+	}
+
+	/**
+	 * Write the pending quantities to the product table.
+	 */
+	@PreDestroy
+	public void flush() {
+		log.debug("Flushing the stock grid");
+		stock.flush();
+	}
+
+	/**
+	 * Takes the quantity when enough stock is left, the result tells whether it was taken.
+	 */
+	static final class ReserveStock extends AbstractEntryProcessor<Long, Integer> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int quantity;
+
+		ReserveStock(int quantity) {
+			this.quantity = quantity;
+		}
+
+		@Override
+		public Object process(Map.Entry<Long, Integer> entry) {
+			Integer available = entry.getValue();
+			if (available == null || available < quantity) {
+				return Boolean.FALSE;
+			}
+			entry.setValue(available - quantity);
+			return Boolean.TRUE;
+		}
+	}
+
+	/**
+	 * Gives back the quantity.
+	 */
+	static final class ReleaseStock extends AbstractEntryProcessor<Long, Integer> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int quantity;
+
+		ReleaseStock(int quantity) {
+			this.quantity = quantity;
+		}
+
+		@Override
+		public Object process(Map.Entry<Long, Integer> entry) {
+			Integer available = entry.getValue();
+			if (available != null) {
+				entry.setValue(available + quantity);
+			}
+			return null;
+		}
+	}
+
+}
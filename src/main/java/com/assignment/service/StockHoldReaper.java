@@ -0,0 +1,160 @@
+package com.assignment.service;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.assignment.config.ApplicationProperties;
+import com.assignment.repository.CartItemRepository;
+import com.assignment.repository.CartRepository;
+import com.codahale.metrics.CachedGauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+
+/**
+ * The Class StockHoldReaper.
+ * <p>
+ * Removes the cart items whose stock hold expired and gives their stock back. Each batch of
+ * expired items is found through the expiry index and locked, so a cart change cannot renew a hold
+ * between the read and the delete; its stock is restored and the totals of its carts reduced with
+ * set-based updates, and the items are deleted with one bulk delete. With a {@link CartStateStore}, the expired lines
+ * are removed from the carts the store gives to this node.
+ */
+@Service
+public class StockHoldReaper {
+
+	private final Logger log = LoggerFactory.getLogger(StockHoldReaper.class);
+
+	private final CartRepository cartRepository;
+
+	private final CartItemRepository cartItemRepository;
+
+	private final StockService stockService;
+
+	private final ApplicationProperties.Stock.Hold holdProperties;
+
+	private final MetricRegistry metricRegistry;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private Histogram reclaimedPerSweep;
+
+	private Meter reclaimed;
+
+	private CartStateStore cartStateStore;
+
+	/**
+	 * Instantiates a new stock hold reaper.
+	 *
+	 * @param cartRepository the cart repository
+	 * @param cartItemRepository the cart item repository
+	 * @param stockService the stock service
+	 * @param applicationProperties the application properties
+	 * @param metricRegistry the metric registry
+	 * @param transactionManager the transaction manager
+	 */
+	public StockHoldReaper(CartRepository cartRepository, CartItemRepository cartItemRepository,
+			StockService stockService, ApplicationProperties applicationProperties, MetricRegistry metricRegistry,
+			PlatformTransactionManager transactionManager) {
+		this.cartRepository = cartRepository;
+		this.cartItemRepository = cartItemRepository;
+		this.stockService = stockService;
+		this.holdProperties = applicationProperties.getStock().getHold();
+		this.metricRegistry = metricRegistry;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+
+	@Autowired(required = false)
+	public void setCartStateStore(CartStateStore cartStateStore) {
+		this.cartStateStore = cartStateStore;
+	}
+
+	@PostConstruct
+	public void registerMetrics() {
+		reclaimedPerSweep = metricRegistry.histogram(MetricRegistry.name(StockHoldReaper.class, "reclaimed-per-sweep"));
+		reclaimed = metricRegistry.meter(MetricRegistry.name(StockHoldReaper.class, "reclaimed"));
+		metricRegistry.register(MetricRegistry.name(StockHoldReaper.class, "outstanding"),
+				new CachedGauge<Long>(10, TimeUnit.SECONDS) {
+					@Override
+					protected Long loadValue() {
+						return cartItemRepository.countByExpiresAtAfter(Instant.now());
+					}
+				});
+	}
+
+	/**
+	 * Reap the expired holds, batch after batch.
+	 *
+	 * @return the number of reclaimed cart items
+	 */
+	public int reap() {
+		Instant now = Instant.now();
+		int total = 0;
+		if (cartStateStore != null) {
+			for (Long cartId : cartStateStore.findCartIdsWithExpiredLines(now)) {
+				total += transactionTemplate.execute(status -> reapCart(cartId, now));
+			}
+		} else {
+			int batch;
+			do {
+				batch = transactionTemplate.execute(status -> reapBatch(now));
+				total += batch;
+			} while (batch == holdProperties.getReaperBatchSize());
+		}
+		reclaimedPerSweep.update(total);
+		reclaimed.mark(total);
+		if (total > 0) {
+			log.info("Reclaimed the stock of {} expired cart items", total);
+		}
+		return total;
+	}
+
+	@Scheduled(fixedDelayString = "${application.stock.hold.reaper-interval:60000}")
+	public void scheduledReap() {
+		reap();
+	}
+
+	private int reapBatch(Instant now) {
+		List<Long> expiredIds = cartItemRepository.findExpiredIds(now, new PageRequest(0, holdProperties.getReaperBatchSize()));
+		if (expiredIds.isEmpty()) {
+			return 0;
+		}
+		stockService.releaseCartItems(expiredIds);
+		cartRepository.subtractCartItems(expiredIds);
+		cartItemRepository.deleteByIds(expiredIds);
+		return expiredIds.size();
+	}
+
+	// a cart changed since it was read is reaped by the next sweep
+	private int reapCart(Long cartId, Instant now) {
+		CartState cartState = cartStateStore.get(cartId);
+		if (cartState == null) {
+			return 0;
+		}
+		List<CartState.Line> expired = cartState.getLines().stream()
+			.filter(line -> line.isExpired(now))
+			.collect(Collectors.toList());
+		Set<Long> productIds = expired.stream().map(CartState.Line::getProductId).collect(Collectors.toSet());
+		if (expired.isEmpty() || !cartStateStore.replace(cartState, cartState.withoutLines(productIds))) {
+			return 0;
+		}
+		expired.forEach(line -> stockService.release(line.getProductId(), line.getQuantity()));
+		return expired.size();
+	}
+
+}
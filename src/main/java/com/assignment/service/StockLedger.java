@@ -0,0 +1,265 @@
+package com.assignment.service;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.assignment.domain.Product;
+import com.assignment.repository.ProductRepository;
+import com.hazelcast.core.HazelcastInstance;
+
+
+/**
+ * The Class StockLedger.
+ * <p>
+ * Keeps the available quantity of every product in memory and reserves stock with lock-free
+ * compare-and-set. The net quantity changes are written behind to the product table by a scheduled
+ * flush, the product table stays the source of truth for changes made outside of the ledger.
+ * <p>
+ * The counters are those of this member only: members each holding the whole stock would sell it
+ * several times, so the ledger refuses to start in a cluster of several members. Use the
+ * {@link StockGrid} there.
+ * <p>
+ * Enabled with {@code application.stock.ledger.enabled}.
+ */
+@Component
+@ConditionalOnProperty(prefix = "application.stock.ledger", name = "enabled", havingValue = "true")
+public class StockLedger {
+
+	private final Logger log = LoggerFactory.getLogger(StockLedger.class);
+
+	private final ConcurrentMap<Long, Counter> counters = new ConcurrentHashMap<>();
+
+	private final ProductRepository productRepository;
+
+	private final EntityManagerFactory entityManagerFactory;
+
+	private final TransactionTemplate transactionTemplate;
+
+	/**
+	 * Instantiates a new stock ledger.
+	 *
+	 * @param productRepository the product repository
+	 * @param entityManagerFactory the entity manager factory
+	 * @param transactionManager the transaction manager
+	 * @param hazelcastInstance the hazelcast instance, alone in its cluster
+	 * @throws IllegalStateException if the cluster has other members
+	 */
+	public StockLedger(ProductRepository productRepository, EntityManagerFactory entityManagerFactory,
+			PlatformTransactionManager transactionManager, HazelcastInstance hazelcastInstance) {
+		int members = hazelcastInstance.getCluster().getMembers().size();
+		if (members > 1) {
+			throw new IllegalStateException("The stock ledger keeps the stock of one member, it cannot be enabled in a cluster of "
+					+ members + " members, enable the stock grid instead");
+		}
+		this.productRepository = productRepository;
+		this.entityManagerFactory = entityManagerFactory;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+
+	/**
+	 * Load the quantity of all products, products missing at startup are loaded on first use.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void load() {
+		log.debug("Loading the stock ledger");
+		try {
+			for (Object[] productQuantity : productRepository.findAllQuantities()) {
+				counters.putIfAbsent((Long) productQuantity[0], new Counter((Integer) productQuantity[1]));
+			}
+			log.info("Stock ledger loaded with {} products", counters.size());
+		} catch (RuntimeException e) {
+			log.warn("Could not load the stock ledger, products will be loaded on first use", e);
+		}
+	}
+
+	/**
+	 * Reserve.
+	 *
+	 * @param productId the product id
+	 * @param quantity the quantity
+	 * @return true, if enough stock was left
+	 */
+	public boolean reserve(Long productId, int quantity) {
+		Counter counter = getCounter(productId);
+		return counter != null && counter.tryReserve(quantity);
+	}
+
+	/**
+	 * Release.
+	 *
+	 * @param productId the product id
+	 * @param quantity the quantity
+	 */
+	public void release(Long productId, int quantity) {
+		Counter counter = getCounter(productId);
+		if (counter != null) {
+			counter.add(quantity);
+		}
+	}
+
+	/**
+	 * Gets the available quantity.
+	 *
+	 * @param productId the product id
+	 * @return the available quantity, or null if the product does not exist
+	 */
+	public Long getAvailable(Long productId) {
+		Counter counter = getCounter(productId);
+		return counter == null ? null : counter.available;
+	}
+
+	/**
+	 * Write the net quantity changes to the product table, one statement per changed product.
+	 */
+	@Scheduled(fixedDelayString = "${application.stock.ledger.flush-interval:1000}")
+	public synchronized void flush() {
+		// product id order keeps the row locks in a deterministic order
+		Map<Long, Long> snapshots = new TreeMap<>();
+		counters.forEach((productId, counter) -> {
+			long available = counter.available;
+			if (available != counter.flushed) {
+				snapshots.put(productId, available);
+			}
+		});
+		if (snapshots.isEmpty()) {
+			return;
+		}
+		try {
+			transactionTemplate.execute(status -> {
+				snapshots.forEach((productId, available) -> productRepository.increaseQuantity(productId,
+					Math.toIntExact(available - counters.get(productId).flushed)));
+				return null;
+			});
+			// the reservations made since the snapshots are left to the next flush
+			snapshots.forEach((productId, available) -> counters.get(productId).flushed = available);
+			snapshots.keySet().forEach(productId -> entityManagerFactory.getCache().evict(Product.class, productId));
+			log.debug("Flushed the stock of {} products", snapshots.size());
+		} catch (RuntimeException e) {
+			log.warn("Could not flush the stock ledger, will retry on next flush", e);
+		}
+	}
+
+	/**
+	 * Compare the ledger with the product table and align the ledger on it. Once flushed, the
+	 * quantity of the ledger as last written must be the one of the product table, the difference is
+	 * a change made outside of the ledger; it is added to the available quantity, keeping the
+	 * reservations made meanwhile.
+	 *
+	 * @return the drift per product id, the ledger quantity minus the product table quantity
+	 */
+	public synchronized Map<Long, Long> reconcile() {
+		flush();
+		Map<Long, Long> drifts = new TreeMap<>();
+		transactionTemplate.execute(status -> {
+			for (Object[] productQuantity : productRepository.findAllQuantities()) {
+				Long productId = (Long) productQuantity[0];
+				Counter counter = counters.get(productId);
+				if (counter == null) {
+					continue;
+				}
+				long drift = counter.flushed - (Integer) productQuantity[1];
+				if (drift != 0) {
+					drifts.put(productId, drift);
+					counter.correct(-drift);
+				}
+			}
+			return null;
+		});
+		if (!drifts.isEmpty()) {
+			log.warn("Stock ledger drifted from the product table and was realigned : {}", drifts);
+		}
+		return drifts;
+	}
+
+	@Scheduled(fixedDelayString = "${application.stock.ledger.reconcile-interval:60000}")
+	public void scheduledReconcile() {
+		reconcile();
+	}
+
+	private Counter getCounter(Long productId) {
+		Counter counter = counters.get(productId);
+		if (counter != null) {
+			return counter;
+		}
+		Product product = productRepository.findOne(productId);
+		if (product == null) {
+			return null;
+		}
+		Counter loaded = new Counter(product.getQuantity());
+		counter = counters.putIfAbsent(productId, loaded);
+		return counter == null ? loaded : counter;
+	}
+
+	/**
+	 * Padding before the counter fields, see {@link Counter}.
+	 */
+	abstract static class LeftPadding {
+		long p1, p2, p3, p4, p5, p6, p7;
+	}
+
+	/**
+	 * The counter fields: the available quantity, and the one last written to the product table,
+	 * changed by the flush and the reconciliation only.
+	 */
+	abstract static class CounterFields extends LeftPadding {
+		volatile long available;
+		volatile long flushed;
+	}
+
+	/**
+	 * The stock counter of one product.
+	 * <p>
+	 * The fields are padded through the class hierarchy, the JVM does not reorder fields across
+	 * classes, so counters of hot products never share a cache line. A reservation changes the
+	 * available quantity only, so the change not flushed yet is always their difference.
+	 */
+	static final class Counter extends CounterFields {
+
+		private static final AtomicLongFieldUpdater<CounterFields> AVAILABLE =
+				AtomicLongFieldUpdater.newUpdater(CounterFields.class, "available");
+
+		long p9, p10, p11, p12, p13, p14, p15;
+
+		Counter(long available) {
+			this.available = available;
+			this.flushed = available;
+		}
+
+		boolean tryReserve(int quantity) {
+			long current;
+			do {
+				current = available;
+				if (current < quantity) {
+					return false;
+				}
+			} while (!AVAILABLE.compareAndSet(this, current, current - quantity));
+			return true;
+		}
+
+		void add(long quantity) {
+			AVAILABLE.addAndGet(this, quantity);
+		}
+
+		// a change made outside of the ledger, already in the product table
+		void correct(long delta) {
+			AVAILABLE.addAndGet(this, delta);
+			flushed += delta;
+		}
+	}
+
+}
@@ -0,0 +1,234 @@
+package com.assignment.service;
+
+import java.util.Collection;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.Hibernate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.assignment.domain.Product;
+import com.assignment.repository.CartItemRepository;
+import com.assignment.repository.ProductRepository;
+import com.assignment.web.rest.errors.NotEnoughProductQuantityException;
+
+
+/**
+ * The Class StockService.
+ * <p>
+ * Reserves and releases product stock with conditional set-based updates, so concurrent
+ * cart operations never read-modify-write the product row. When the {@link StockLedger} is enabled
+ * the stock is taken from the ledger instead, and given back if the transaction rolls back. The
+ * {@link StockGrid} is used the same way when it is enabled. When stock sharding is enabled the shards
+ * of a product are tried before its row.
+ */
+@Service
+@Transactional
+public class StockService {
+
+	private final Logger log = LoggerFactory.getLogger(StockService.class);
+
+	private final ProductRepository productRepository;
+
+	private final CartItemRepository cartItemRepository;
+
+	private final EntityManagerFactory entityManagerFactory;
+
+	private final EntityManager entityManager;
+
+	private StockLedger stockLedger;
+
+	private StockGrid stockGrid;
+
+	private ProductStockShardService productStockShardService;
+
+	/**
+	 * Instantiates a new stock service.
+	 *
+	 * @param productRepository the product repository
+	 * @param cartItemRepository the cart item repository
+	 * @param entityManagerFactory the entity manager factory
+	 * @param entityManager the entity manager
+	 */
+	public StockService(ProductRepository productRepository, CartItemRepository cartItemRepository,
+			EntityManagerFactory entityManagerFactory, EntityManager entityManager) {
+		this.productRepository = productRepository;
+		this.cartItemRepository = cartItemRepository;
+		this.entityManagerFactory = entityManagerFactory;
+		this.entityManager = entityManager;
+	}
+
+	@Autowired(required = false)
+	public void setStockLedger(StockLedger stockLedger) {
+		this.stockLedger = stockLedger;
+	}
+
+	@Autowired(required = false)
+	public void setStockGrid(StockGrid stockGrid) {
+		this.stockGrid = stockGrid;
+	}
+
+	@Autowired(required = false)
+	public void setProductStockShardService(ProductStockShardService productStockShardService) {
+		this.productStockShardService = productStockShardService;
+	}
+
+	/**
+	 * Reserve.
+	 *
+	 * @param productId the product id
+	 * @param quantity the quantity
+	 * @throws NotEnoughProductQuantityException if the product has not enough stock left
+	 */
+	public void reserve(Long productId, Integer quantity) {
+		if (!tryReserve(productId, quantity)) {
+			throw new NotEnoughProductQuantityException();
+		}
+	}
+
+	/**
+	 * Reserve, without failing the transaction when the stock is not enough.
+	 *
+	 * @param productId the product id
+	 * @param quantity the quantity
+	 * @return true, if enough stock was left
+	 */
+	public boolean tryReserve(Long productId, Integer quantity) {
+		log.debug("Request to reserve {} of Product : {}", quantity, productId);
+		if (stockLedger != null) {
+			if (!stockLedger.reserve(productId, quantity)) {
+				return false;
+			}
+			onRollback(() -> stockLedger.release(productId, quantity));
+			return true;
+		}
+		if (stockGrid != null) {
+			if (!stockGrid.reserve(productId, quantity)) {
+				return false;
+			}
+			onRollback(() -> stockGrid.release(productId, quantity));
+			return true;
+		}
+		if (productStockShardService != null && productStockShardService.reserve(productId, quantity)) {
+			return true;
+		}
+		if (productRepository.decreaseQuantity(productId, quantity) == 0) {
+			return false;
+		}
+		refresh(productId);
+		return true;
+	}
+
+	/**
+	 * Release.
+	 *
+	 * @param productId the product id
+	 * @param quantity the quantity
+	 */
+	public void release(Long productId, Integer quantity) {
+		log.debug("Request to release {} of Product : {}", quantity, productId);
+		if (stockLedger != null) {
+			stockLedger.release(productId, quantity);
+			onRollback(() -> stockLedger.reserve(productId, quantity));
+			return;
+		}
+		if (stockGrid != null) {
+			stockGrid.release(productId, quantity);
+			onRollback(() -> stockGrid.reserve(productId, quantity));
+			return;
+		}
+		if (productStockShardService != null && productStockShardService.release(productId, quantity)) {
+			return;
+		}
+		productRepository.increaseQuantity(productId, quantity);
+		refresh(productId);
+	}
+
+	/**
+	 * Release the quantity held by cart items, before the items are deleted.
+	 *
+	 * @param cartItemIds the cart item ids
+	 */
+	public void releaseCartItems(Collection<Long> cartItemIds) {
+		log.debug("Request to release the stock of {} cart items", cartItemIds.size());
+		if (cartItemIds.isEmpty()) {
+			return;
+		}
+		if (stockLedger != null || stockGrid != null) {
+			for (Object[] productQuantity : cartItemRepository.sumQuantityByProduct(cartItemIds)) {
+				release((Long) productQuantity[0], ((Long) productQuantity[1]).intValue());
+			}
+			return;
+		}
+		productRepository.increaseQuantityOfCartItems(cartItemIds);
+		entityManagerFactory.getCache().evict(Product.class);
+	}
+
+	/**
+	 * Release the quantity held by the items of carts, before the items are deleted.
+	 *
+	 * @param cartIds the cart ids
+	 */
+	public void releaseCarts(Collection<Long> cartIds) {
+		log.debug("Request to release the stock of {} carts", cartIds.size());
+		if (cartIds.isEmpty()) {
+			return;
+		}
+		if (stockLedger != null || stockGrid != null) {
+			for (Object[] productQuantity : cartItemRepository.sumQuantityByProductOfCarts(cartIds)) {
+				release((Long) productQuantity[0], ((Long) productQuantity[1]).intValue());
+			}
+			return;
+		}
+		productRepository.increaseQuantityOfCarts(cartIds);
+		entityManagerFactory.getCache().evict(Product.class);
+	}
+
+	/**
+	 * Reserve or release the difference between the new and the current quantity.
+	 *
+	 * @param productId the product id
+	 * @param delta the quantity to reserve, or to release when negative
+	 */
+	public void adjust(Long productId, Integer delta) {
+		if (delta > 0) {
+			reserve(productId, delta);
+		} else if (delta < 0) {
+			release(productId, -delta);
+		}
+	}
+
+	private void onRollback(Runnable compensation) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCompletion(int status) {
+				if (status == TransactionSynchronization.STATUS_ROLLED_BACK) {
+					compensation.run();
+				}
+			}
+		});
+	}
+
+	// bulk updates bypass the second-level cache and the persistence context, drop the stale cache
+	// entry and reload the product if the transaction already loaded it, the cart is mapped from it
+	private void refresh(Long productId) {
+		entityManagerFactory.getCache().evict(Product.class, productId);
+		Product product = entityManager.getReference(Product.class, productId);
+		if (Hibernate.isInitialized(product)) {
+			entityManager.refresh(product);
+		}
+	}
+
+}
@@ -3,9 +3,14 @@ package com.assignment.service.dto;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 
 import java.util.Objects;
 
@@ -23,6 +28,17 @@ public class CartDTO implements Serializable {
     
     private Set<CartItemDTO> cartItems = new HashSet<>();
 
+    private int itemCount;
+
+    private BigDecimal subtotal = BigDecimal.ZERO;
+
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private List<CartItemFailureDTO> failedItems = new ArrayList<>();
+
+    // answered as the ETag of a change
+    @JsonIgnore
+    private String stamp;
+
     public Long getId() {
         return id;
     }
@@ -38,13 +54,51 @@ public class CartDTO implements Serializable {
 	public void setCartItems(Set<CartItemDTO> cartItems) {
 		this.cartItems = cartItems;
 	}
+
+	public List<CartItemFailureDTO> getFailedItems() {
+		return failedItems;
+	}
+
+	public void setFailedItems(List<CartItemFailureDTO> failedItems) {
+		this.failedItems = failedItems;
+	}
 	
+	/**
+	 * Gets the stamp of the cart as changed, set on the result of a change.
+	 *
+	 * @return the stamp, or null if the cart was not changed
+	 */
+	public String getStamp() {
+		return stamp;
+	}
+
+	public void setStamp(String stamp) {
+		this.stamp = stamp;
+	}
+
+	public int getItemCount() {
+		return itemCount;
+	}
+
+	public void setItemCount(int itemCount) {
+		this.itemCount = itemCount;
+	}
+
+	public BigDecimal getSubtotal() {
+		return subtotal;
+	}
+
+	public void setSubtotal(BigDecimal subtotal) {
+		this.subtotal = subtotal;
+	}
+
+	/**
+	 * Gets the total price, the subtotal kept with the cart.
+	 *
+	 * @return the total price
+	 */
 	public BigDecimal getTotalPrice() {
-		BigDecimal totalPrice = BigDecimal.ZERO;
-		for(CartItemDTO cartItem: cartItems) {
-			totalPrice = totalPrice.add(cartItem.getProduct().getPrice().multiply(BigDecimal.valueOf(cartItem.getQuantity())));
-		}
-		return totalPrice;
+		return subtotal;
 	}
 
 	@Override
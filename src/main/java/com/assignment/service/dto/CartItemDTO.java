@@ -6,6 +6,7 @@ import javax.validation.constraints.*;
 import com.assignment.domain.Product;
 
 import java.io.Serializable;
+import java.time.Instant;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.Objects;
@@ -21,6 +22,8 @@ public class CartItemDTO implements Serializable {
     @Min(1)
     private Integer quantity;
 
+    private Instant expiresAt;
+
     @NotNull
     private ProductDTO product;
 
@@ -43,6 +46,14 @@ public class CartItemDTO implements Serializable {
         this.quantity = quantity;
     }
 
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Instant expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
     public Long getCartId() {
         return cartId;
     }
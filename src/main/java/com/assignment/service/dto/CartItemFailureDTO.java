@@ -0,0 +1,72 @@
+package com.assignment.service.dto;
+
+
+import java.io.Serializable;
+
+/**
+ * A DTO for a cart item which could not be added by a batch.
+ */
+public class CartItemFailureDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private int index;
+
+    private Long productId;
+
+    private Integer quantity;
+
+    private String errorKey;
+
+    public CartItemFailureDTO() {
+    }
+
+    public CartItemFailureDTO(int index, Long productId, Integer quantity, String errorKey) {
+        this.index = index;
+        this.productId = productId;
+        this.quantity = quantity;
+        this.errorKey = errorKey;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public void setProductId(Long productId) {
+        this.productId = productId;
+    }
+
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+
+    public String getErrorKey() {
+        return errorKey;
+    }
+
+    public void setErrorKey(String errorKey) {
+        this.errorKey = errorKey;
+    }
+
+    @Override
+    public String toString() {
+        return "CartItemFailureDTO{" +
+            "index=" + getIndex() +
+            ", productId=" + getProductId() +
+            ", quantity=" + getQuantity() +
+            ", errorKey='" + getErrorKey() + "'" +
+            "}";
+    }
+}
@@ -0,0 +1,74 @@
+package com.assignment.service.dto;
+
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Objects;
+
+/**
+ * A DTO for the totals of a Cart, without its items.
+ */
+public class CartSummaryDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+
+    private int itemCount;
+
+    private BigDecimal subtotal;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    public void setItemCount(int itemCount) {
+        this.itemCount = itemCount;
+    }
+
+    public BigDecimal getSubtotal() {
+        return subtotal;
+    }
+
+    public void setSubtotal(BigDecimal subtotal) {
+        this.subtotal = subtotal;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        CartSummaryDTO cartSummaryDTO = (CartSummaryDTO) o;
+        if(cartSummaryDTO.getId() == null || getId() == null) {
+            return false;
+        }
+        return Objects.equals(getId(), cartSummaryDTO.getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(getId());
+    }
+
+    @Override
+    public String toString() {
+        return "CartSummaryDTO{" +
+            "id=" + getId() +
+            ", itemCount=" + getItemCount() +
+            ", subtotal=" + getSubtotal() +
+            "}";
+    }
+}
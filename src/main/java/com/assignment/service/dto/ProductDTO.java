@@ -13,6 +13,8 @@ public class ProductDTO implements Serializable {
 
     private Long id;
 
+    private Long version;
+
     @NotNull
     @Size(min = 1, max = 256)
     private String name;
@@ -36,6 +38,14 @@ public class ProductDTO implements Serializable {
         this.id = id;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public String getName() {
         return name;
     }
@@ -15,6 +15,8 @@ public interface CartItemMapper extends EntityMapper<CartItemDTO, CartItem> {
     CartItemDTO toDto(CartItem cartItem);
 
     @Mapping(source = "cartId", target = "cart")
+    @Mapping(target = "version", ignore = true)
+    @Mapping(target = "lineTotal", ignore = true)
     CartItem toEntity(CartItemDTO cartItemDTO);
 
     default CartItem fromId(Long id) {
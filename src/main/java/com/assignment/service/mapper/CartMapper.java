@@ -2,9 +2,12 @@ package com.assignment.service.mapper;
 
 import com.assignment.domain.*;
 import com.assignment.service.dto.CartDTO;
+import com.assignment.service.dto.CartSummaryDTO;
 
 import org.mapstruct.*;
 
+import java.math.BigDecimal;
+
 /**
  * Mapper for the entity Cart and its DTO CartDTO.
  */
@@ -12,8 +15,23 @@ import org.mapstruct.*;
 public interface CartMapper extends EntityMapper<CartDTO, Cart> {
 
 
+    @Mapping(target = "failedItems", ignore = true)
+    @Mapping(target = "stamp", ignore = true)
+    CartDTO toDto(Cart cart);
+
     @Mapping(target = "cartItems", ignore = true)
+    @Mapping(target = "version", ignore = true)
+    @Mapping(target = "createdAt", ignore = true)
+    @Mapping(target = "lastModifiedAt", ignore = true)
+    @Mapping(target = "itemCount", ignore = true)
+    @Mapping(target = "subtotal", ignore = true)
     Cart toEntity(CartDTO cartDTO);
+
+    CartSummaryDTO toSummaryDto(Cart cart);
+
+    default BigDecimal fromMoney(Money money) {
+        return money == null ? null : money.toBigDecimal();
+    }
     
     default Cart fromId(Long id) {
         if (id == null) {
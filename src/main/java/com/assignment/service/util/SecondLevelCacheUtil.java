@@ -0,0 +1,60 @@
+package com.assignment.service.util;
+
+import java.io.Serializable;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.cache.spi.access.EntityRegionAccessStrategy;
+import org.hibernate.cache.spi.entry.CacheEntry;
+import org.hibernate.engine.internal.CacheHelper;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.TypeHelper;
+
+/**
+ * Utility class for reading entities from the second-level cache only.
+ */
+public final class SecondLevelCacheUtil {
+
+    private SecondLevelCacheUtil() {
+    }
+
+    /**
+     * Find an entity in its second-level cache region, without a statement: unlike a
+     * {@code contains} check followed by a {@code find}, an entry evicted in between is a miss,
+     * not a select. The entity is detached and its collections are not initialized.
+     *
+     * @param entityManagerFactory the entity manager factory
+     * @param entityClass the class of the entity, with basic properties only besides its collections
+     * @param id the id of the entity
+     * @param <T> the type of the entity
+     * @return the entity, or null if it is not cached
+     */
+    public static <T> T findCached(EntityManagerFactory entityManagerFactory, Class<T> entityClass, Serializable id) {
+        SessionFactoryImplementor sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        EntityPersister persister = sessionFactory.getMetamodel().entityPersister(entityClass);
+        EntityRegionAccessStrategy cacheAccess = persister.getCacheAccessStrategy();
+        if (cacheAccess == null) {
+            return null;
+        }
+        // the session only reads the region, it never acquires a connection
+        try (SessionImplementor session = (SessionImplementor) sessionFactory.openSession()) {
+            Object cacheKey = cacheAccess.generateCacheKey(id, persister, sessionFactory, session.getTenantIdentifier());
+            Serializable cached = CacheHelper.fromSharedCache(session, cacheKey, cacheAccess);
+            if (cached == null) {
+                return null;
+            }
+            CacheEntry entry = (CacheEntry) persister.getCacheEntryStructure().destructure(cached, sessionFactory);
+            if (entry.isReferenceEntry()) {
+                return null;
+            }
+            EntityPersister subclassPersister = sessionFactory.getMetamodel().entityPersister(entry.getSubclass());
+            Object entity = subclassPersister.instantiate(id, session);
+            Object[] values = TypeHelper.assemble(entry.getDisassembledState(), subclassPersister.getPropertyTypes(),
+                session, entity);
+            subclassPersister.setPropertyValues(entity, values);
+            return entityClass.cast(entity);
+        }
+    }
+}
@@ -3,12 +3,14 @@ package com.assignment.web.rest;
 import com.codahale.metrics.annotation.Timed;
 import com.assignment.service.ProductService;
 import com.assignment.web.rest.errors.BadRequestAlertException;
+import com.assignment.web.rest.util.AsyncUtil;
 import com.assignment.web.rest.util.HeaderUtil;
 import com.assignment.web.rest.util.PaginationUtil;
 import com.assignment.service.dto.ProductDTO;
 import io.github.jhipster.web.util.ResponseUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpHeaders;
@@ -22,6 +24,8 @@ import java.net.URISyntaxException;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * REST controller for managing Product.
@@ -36,8 +40,11 @@ public class ProductResource {
 
     private final ProductService productService;
 
-    public ProductResource(ProductService productService) {
+    private final Executor jdbcExecutor;
+
+    public ProductResource(ProductService productService, @Qualifier("jdbcExecutor") Executor jdbcExecutor) {
         this.productService = productService;
+        this.jdbcExecutor = jdbcExecutor;
     }
 
     /**
@@ -86,15 +93,17 @@ public class ProductResource {
      * GET  /products : get all the products.
      *
      * @param pageable the pagination information
-     * @return the ResponseEntity with status 200 (OK) and the list of products in body
+     * @return the future of the ResponseEntity with status 200 (OK) and the list of products in body
      */
     @GetMapping("/products")
     @Timed
-    public ResponseEntity<List<ProductDTO>> getAllProducts(Pageable pageable) {
+    public CompletableFuture<ResponseEntity<List<ProductDTO>>> getAllProducts(Pageable pageable) {
         log.debug("REST request to get a page of Products");
-        Page<ProductDTO> page = productService.findAll(pageable);
-        HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(page, "/api/products");
-        return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
+        return AsyncUtil.supplyAsync(() -> {
+            Page<ProductDTO> page = productService.findAll(pageable);
+            HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(page, "/api/products");
+            return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
+        }, jdbcExecutor);
     }
     
     /**
@@ -102,15 +111,17 @@ public class ProductResource {
      *
      * @param keyword the keyword
      * @param pageable the pageable
-     * @return the response entity
+     * @return the future of the response entity
      */
     @GetMapping("/products/search")
     @Timed
-    public ResponseEntity<List<ProductDTO>> searchForUser(@RequestParam String keyword, Pageable pageable) {
+    public CompletableFuture<ResponseEntity<List<ProductDTO>>> searchForUser(@RequestParam String keyword, Pageable pageable) {
         log.debug("REST request to search Products for user");
-        Page<ProductDTO> page = productService.searchForUser(keyword, pageable);
-        HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(page, "/api/products/search");
-        return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
+        return AsyncUtil.supplyAsync(() -> {
+            Page<ProductDTO> page = productService.searchForUser(keyword, pageable);
+            HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(page, "/api/products/search");
+            return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
+        }, jdbcExecutor);
     }
     
     /**
@@ -118,29 +129,53 @@ public class ProductResource {
      *
      * @param keyword the keyword
      * @param pageable the pageable
-     * @return the response entity
+     * @return the future of the response entity
      */
     @GetMapping("/products/search-for-admin")
     @Timed
-    public ResponseEntity<List<ProductDTO>> searchForAdmin(@RequestParam String keyword, Pageable pageable) {
+    public CompletableFuture<ResponseEntity<List<ProductDTO>>> searchForAdmin(@RequestParam String keyword, Pageable pageable) {
         log.debug("REST request to search Products for admin");
-        Page<ProductDTO> page = productService.searchForAdmin(keyword, pageable);
-        HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(page, "/api/products/search-for-admin");
-        return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
+        return AsyncUtil.supplyAsync(() -> {
+            Page<ProductDTO> page = productService.searchForAdmin(keyword, pageable);
+            HttpHeaders headers = PaginationUtil.generatePaginationHttpHeaders(page, "/api/products/search-for-admin");
+            return new ResponseEntity<>(page.getContent(), headers, HttpStatus.OK);
+        }, jdbcExecutor);
     }
 
     /**
      * GET  /products/:id : get the "id" product.
      *
      * @param id the id of the productDTO to retrieve
-     * @return the ResponseEntity with status 200 (OK) and with body the productDTO, or with status 404 (Not Found)
+     * @return the future of the ResponseEntity with status 200 (OK) and with body the productDTO, or with status 404 (Not Found);
+     *         answered at once when the product is cached
      */
     @GetMapping("/products/{id}")
     @Timed
-    public ResponseEntity<ProductDTO> getProduct(@PathVariable Long id) {
+    public CompletableFuture<ResponseEntity<ProductDTO>> getProduct(@PathVariable Long id) {
         log.debug("REST request to get Product : {}", id);
-        ProductDTO productDTO = productService.findOne(id);
-        return ResponseUtil.wrapOrNotFound(Optional.ofNullable(productDTO));
+        ProductDTO cachedProductDTO = productService.findCachedOne(id);
+        if (cachedProductDTO != null) {
+            return CompletableFuture.completedFuture(ResponseEntity.ok(cachedProductDTO));
+        }
+        return AsyncUtil.supplyAsync(() -> ResponseUtil.wrapOrNotFound(Optional.ofNullable(productService.findOne(id))), jdbcExecutor);
+    }
+
+    /**
+     * POST  /products/:id/stock-shards : split the quantity of the "id" product over stock shards.
+     *
+     * @param id the id of the productDTO to shard
+     * @param count the number of shards, the configured one if not set
+     * @return the ResponseEntity with status 200 (OK) and with body the productDTO,
+     * or with status 400 (Bad Request) if stock sharding is disabled or the product does not exist
+     */
+    @PostMapping("/products/{id}/stock-shards")
+    @Timed
+    public ResponseEntity<ProductDTO> shardProductStock(@PathVariable Long id, @RequestParam(required = false) Integer count) {
+        log.debug("REST request to shard the stock of Product : {}", id);
+        ProductDTO result = productService.shardStock(id, count);
+        return ResponseEntity.ok()
+            .headers(HeaderUtil.createEntityUpdateAlert(ENTITY_NAME, id.toString()))
+            .body(result);
     }
 
     /**
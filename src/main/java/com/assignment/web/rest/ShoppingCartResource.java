@@ -2,13 +2,20 @@ package com.assignment.web.rest;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import javax.annotation.Nonnull;
 import javax.validation.Valid;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -16,14 +23,24 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.assignment.service.CartMailboxes;
+import com.assignment.service.CartOwners;
+import com.assignment.service.IdempotentRequests;
 import com.assignment.service.ShoppingCartService;
 import com.assignment.service.dto.CartDTO;
 import com.assignment.service.dto.CartItemDTO;
+import com.assignment.service.dto.CartSummaryDTO;
 import com.assignment.web.rest.errors.BadRequestAlertException;
+import com.assignment.web.rest.util.AsyncUtil;
 import com.assignment.web.rest.util.HeaderUtil;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
 import com.codahale.metrics.annotation.Timed;
 
 import io.github.jhipster.web.util.ResponseUtil;
@@ -45,16 +62,79 @@ public class ShoppingCartResource {
 	/** The Constant ENTITY_CART_ITEM_NAME. */
 	private static final String ENTITY_CART_ITEM_NAME = "cartItem";
 	
+	/** The Constant IDEMPOTENCY_KEY_HEADER. */
+	static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+	/** The Constant IDEMPOTENT_REPLAYED_HEADER, set on the responses replayed to a retried request. */
+	static final String IDEMPOTENT_REPLAYED_HEADER = "Idempotent-Replayed";
+	
 	/** The shopping cart service. */
 	private final ShoppingCartService shoppingCartService;
 
+	/** The idempotent requests. */
+	private final IdempotentRequests idempotentRequests;
+
+	/** The JDBC executor, running the database work of the asynchronous endpoints. */
+	private final Executor jdbcExecutor;
+
+	/** The cart owners, changing each cart on the member owning it when enabled. */
+	private CartOwners cartOwners;
+
+	/** The cart mailboxes, applying the changes of each cart in turn when enabled. */
+	private CartMailboxes cartMailboxes;
+
+	/** The cart reads. */
+	private final Meter cartReads;
+
+	/** The cart reads answered as not modified. */
+	private final Meter cartsNotModified;
+
 	/**
 	 * Instantiates a new shopping cart resource.
 	 *
 	 * @param shoppingCartService the shopping cart service
+	 * @param idempotentRequests the idempotent requests
+	 * @param jdbcExecutor the JDBC executor
+	 * @param metricRegistry the metric registry
 	 */
-	public ShoppingCartResource(ShoppingCartService shoppingCartService) {
+	public ShoppingCartResource(ShoppingCartService shoppingCartService, IdempotentRequests idempotentRequests,
+			@Qualifier("jdbcExecutor") Executor jdbcExecutor, MetricRegistry metricRegistry) {
 		this.shoppingCartService = shoppingCartService;
+		this.idempotentRequests = idempotentRequests;
+		this.jdbcExecutor = jdbcExecutor;
+		this.cartReads = metricRegistry.meter(MetricRegistry.name(ShoppingCartResource.class, "cart-reads"));
+		this.cartsNotModified = metricRegistry.meter(MetricRegistry.name(ShoppingCartResource.class, "carts-not-modified"));
+		metricRegistry.gauge(MetricRegistry.name(ShoppingCartResource.class, "not-modified-ratio"), () -> new RatioGauge() {
+			@Override
+			protected Ratio getRatio() {
+				return Ratio.of(cartsNotModified.getFifteenMinuteRate(), cartReads.getFifteenMinuteRate());
+			}
+		});
+	}
+
+	@Autowired(required = false)
+	public void setCartOwners(CartOwners cartOwners) {
+		this.cartOwners = cartOwners;
+	}
+
+	@Autowired(required = false)
+	public void setCartMailboxes(CartMailboxes cartMailboxes) {
+		this.cartMailboxes = cartMailboxes;
+	}
+
+	// on the member owning the cart when the cart owners are enabled, the change must capture no
+	// more than the values of the request; else after the changes queued for the cart with the mailboxes
+	private CartDTO changeCart(Long cartId, CartOwners.Change change) {
+		if (cartId == null) {
+			return change.apply(shoppingCartService);
+		}
+		if (cartOwners != null) {
+			return cartOwners.execute(cartId, change);
+		}
+		if (cartMailboxes != null) {
+			return cartMailboxes.execute(cartId, change);
+		}
+		return change.apply(shoppingCartService);
 	}
 
 	/**
@@ -75,16 +155,76 @@ public class ShoppingCartResource {
 	
 	/**
 	 * GET  /shopping-carts/{id} : Gets the cart.
+	 * <p>
+	 * The response has the stamp of the cart as a weak ETag. A request whose If-None-Match has it is
+	 * answered with 304 Not Modified, from the stamp alone when it is cached. The stamp follows the
+	 * items, a change of the products they show does not change it. A cart whose stamp is cached is
+	 * read from its view of the stamp when the views are enabled.
+	 * <p>
+	 * A cart whose stamp is cached, and which is not modified or has a view, is answered at once;
+	 * the others are loaded with their stamp on the JDBC executor.
 	 *
 	 * @param id the id
-	 * @return the cart
+	 * @param ifNoneMatch the ETags of the carts the client has, optional
+	 * @return the future of the cart, without it if not modified
 	 */
 	@GetMapping("/shopping-carts/{id}")
     @Timed
-    public ResponseEntity<CartDTO> getCart(@PathVariable Long id) {
+    public CompletableFuture<ResponseEntity<CartDTO>> getCart(@PathVariable Long id,
+            @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         log.debug("REST request to get Cart : {}", id);
-        CartDTO cartDTO = shoppingCartService.findOne(id);
-        return ResponseUtil.wrapOrNotFound(Optional.ofNullable(cartDTO));
+        cartReads.mark();
+        String cachedStamp = shoppingCartService.findCachedStamp(id);
+        if (cachedStamp != null && HeaderUtil.matchesETag(ifNoneMatch, cachedStamp)) {
+            return CompletableFuture.completedFuture(notModified(cachedStamp));
+        }
+        CartDTO view = cachedStamp == null ? null : shoppingCartService.findView(id, cachedStamp);
+        if (view != null) {
+            return CompletableFuture.completedFuture(cartResponse(cachedStamp, view));
+        }
+        return AsyncUtil.supplyAsync(() -> {
+            // the stamp is the one of the loaded cart, read with it
+            CartDTO cartDTO = shoppingCartService.findOne(id);
+            if (cartDTO == null) {
+                return ResponseEntity.notFound().build();
+            }
+            if (HeaderUtil.matchesETag(ifNoneMatch, cartDTO.getStamp())) {
+                return notModified(cartDTO.getStamp());
+            }
+            return cartResponse(cartDTO.getStamp(), cartDTO);
+        }, jdbcExecutor);
+    }
+
+	private ResponseEntity<CartDTO> notModified(String stamp) {
+        cartsNotModified.mark();
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(HeaderUtil.createWeakETag(stamp)).build();
+    }
+
+	private ResponseEntity<CartDTO> cartResponse(String stamp, CartDTO cartDTO) {
+        if (cartDTO == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok().eTag(HeaderUtil.createWeakETag(stamp)).body(cartDTO);
+    }
+
+	/**
+	 * GET  /shopping-carts/{id}/summary : Gets the number of items of the cart and their price,
+	 * without the items.
+	 *
+	 * @param id the id
+	 * @return the future of the response entity with status 200 (OK) and the cart summary, or with
+	 *         status 404 (Not Found); answered at once when the cart is cached
+	 */
+	@GetMapping("/shopping-carts/{id}/summary")
+    @Timed
+    public CompletableFuture<ResponseEntity<CartSummaryDTO>> getCartSummary(@PathVariable Long id) {
+        log.debug("REST request to get the summary of Cart : {}", id);
+        CartSummaryDTO cachedSummaryDTO = shoppingCartService.findCachedSummary(id);
+        if (cachedSummaryDTO != null) {
+            return CompletableFuture.completedFuture(ResponseEntity.ok(cachedSummaryDTO));
+        }
+        return AsyncUtil.supplyAsync(
+            () -> ResponseUtil.wrapOrNotFound(Optional.ofNullable(shoppingCartService.findSummary(id))), jdbcExecutor);
     }
 	
 	 /**
@@ -101,60 +241,149 @@ public class ShoppingCartResource {
         return ResponseEntity.ok().headers(HeaderUtil.createEntityDeletionAlert(ENTITY_CART_NAME, id.toString())).build();
     }
 	
+	/**
+	 * POST  /shopping-carts/purge : Purge carts, for admin.
+	 *
+	 * @param ids the ids of the carts to delete
+	 * @return the response entity
+	 */
+	@PostMapping("/shopping-carts/purge")
+    @Timed
+    public ResponseEntity<Void> purgeCarts(@RequestBody List<Long> ids) {
+        log.debug("REST request to purge {} Carts", ids.size());
+        int purged = shoppingCartService.purge(ids);
+        return ResponseEntity.ok()
+            .headers(HeaderUtil.createAlert("A total of " + purged + " " + ENTITY_CART_NAME + " are purged", String.valueOf(purged)))
+            .build();
+    }
+
+	/**
+	 * POST  /shopping-carts/views/rebuild : Rebuild the views of all the carts, for admin.
+	 *
+	 * @return the response entity
+	 */
+	@PostMapping("/shopping-carts/views/rebuild")
+    @Timed
+    public ResponseEntity<Void> rebuildCartViews() {
+        log.debug("REST request to rebuild the Cart views");
+        int rebuilt = shoppingCartService.rebuildViews();
+        return ResponseEntity.ok()
+            .headers(HeaderUtil.createAlert("A total of " + rebuilt + " " + ENTITY_CART_NAME + " views are rebuilt", String.valueOf(rebuilt)))
+            .build();
+    }
+	
 	/**
 	 * POST  /shopping-carts/add-item : Creates the cart item.
+	 * <p>
+	 * With an Idempotency-Key header, the retries of the request are answered with its first response
+	 * without adding the item again.
 	 *
 	 * @param cartItemDTO the cart item DTO
+	 * @param idempotencyKey the idempotency key, optional
 	 * @return the response entity
 	 * @throws URISyntaxException the URI syntax exception
 	 */
 	@PostMapping("/shopping-carts/add-item")
     @Timed
-    public ResponseEntity<CartDTO> createCartItem(@Valid @RequestBody CartItemDTO cartItemDTO) throws URISyntaxException {
+    public ResponseEntity<CartDTO> createCartItem(@Valid @RequestBody CartItemDTO cartItemDTO,
+            @RequestHeader(name = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) throws URISyntaxException {
         log.debug("REST request to add item : {}", cartItemDTO);
         if (cartItemDTO.getId() != null) {
             throw new BadRequestAlertException("A new cartItem cannot already have an ID", ENTITY_CART_ITEM_NAME, "idexists");
         }
-        CartDTO result = shoppingCartService.addItem(cartItemDTO);
+        CartDTO result;
+        boolean replayed = false;
+        if (idempotencyKey == null) {
+            result = changeCart(cartItemDTO.getCartId(), service -> service.addItem(cartItemDTO));
+        } else {
+            IdempotentRequests.Result<CartDTO> idempotentResult = idempotentRequests.execute("add-item:" + idempotencyKey,
+                fingerprint(cartItemDTO), () -> changeCart(cartItemDTO.getCartId(), service -> service.addItem(cartItemDTO)));
+            result = idempotentResult.getValue();
+            replayed = idempotentResult.isReplayed();
+        }
+        HttpHeaders headers = HeaderUtil.createEntityCreationAlert(ENTITY_CART_ITEM_NAME, result.getId().toString());
+        if (replayed) {
+            headers.add(IDEMPOTENT_REPLAYED_HEADER, "true");
+        }
         return ResponseEntity.created(new URI("/api/cart-items/" + result.getId()))
-            .headers(HeaderUtil.createEntityCreationAlert(ENTITY_CART_ITEM_NAME, result.getId().toString()))
+            .headers(headers)
             .body(result);
     }
+
+	private String fingerprint(CartItemDTO cartItemDTO) {
+        Long productId = cartItemDTO.getProduct() == null ? null : cartItemDTO.getProduct().getId();
+        return cartItemDTO.getCartId() + ":" + productId + ":" + cartItemDTO.getQuantity();
+    }
 	
 	/**
-	 * PUT  /shopping-carts/update-item : Update cart item.
+	 * POST  /shopping-carts/{id}/items:batch : Adds cart items in one transaction.
 	 *
-	 * @param cartItemDTO the cart item DTO
+	 * @param id the cart id
+	 * @param cartItemDTOs the cart item DTOs
+	 * @param partial whether the items which cannot be added are reported in the response instead of failing the batch
 	 * @return the response entity
+	 */
+	@PostMapping("/shopping-carts/{id}/items:batch")
+    @Timed
+    public ResponseEntity<CartDTO> addCartItems(@PathVariable Long id, @RequestBody List<CartItemDTO> cartItemDTOs,
+            @RequestParam(defaultValue = "false") boolean partial) {
+        log.debug("REST request to add {} items to Cart : {}", cartItemDTOs.size(), id);
+        if (cartItemDTOs.stream().anyMatch(cartItemDTO -> cartItemDTO.getId() != null)) {
+            throw new BadRequestAlertException("A new cartItem cannot already have an ID", ENTITY_CART_ITEM_NAME, "idexists");
+        }
+        CartDTO result = changeCart(id, service -> service.addItems(id, cartItemDTOs, partial));
+        return ResponseEntity.ok()
+            .headers(HeaderUtil.createEntityUpdateAlert(ENTITY_CART_NAME, id.toString()))
+            .body(result);
+    }
+
+	/**
+	 * PUT  /shopping-carts/update-item : Update cart item, if the cart still has the ETag given in
+	 * If-Match.
+	 *
+	 * @param cartItemDTO the cart item DTO
+	 * @param ifMatch the ETags of the cart the update may be made from, optional
+	 * @return the response entity with status 200 (OK) and the new ETag of the cart, or with status
+	 *         412 (Precondition Failed) and its current ETag if the cart was changed since
 	 * @throws URISyntaxException the URI syntax exception
 	 */
 	@PutMapping("/shopping-carts/update-item")
     @Timed
-    public ResponseEntity<CartDTO> updateCartItem(@Valid @RequestBody CartItemDTO cartItemDTO) throws URISyntaxException {
+    public ResponseEntity<CartDTO> updateCartItem(@Valid @RequestBody CartItemDTO cartItemDTO,
+            @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) throws URISyntaxException {
         log.debug("REST request to update item : {}", cartItemDTO);
         if (cartItemDTO.getId() == null) {
-            return createCartItem(cartItemDTO);
+            return createCartItem(cartItemDTO, null);
         }
-        CartDTO result = shoppingCartService.updateItem(cartItemDTO);
+        List<String> expectedStamps = HeaderUtil.parseETags(ifMatch);
+        CartDTO result = changeCart(cartItemDTO.getCartId(), service -> service.updateItem(cartItemDTO, expectedStamps));
         return ResponseEntity.ok()
             .headers(HeaderUtil.createEntityUpdateAlert(ENTITY_CART_ITEM_NAME, cartItemDTO.getId().toString()))
+            .eTag(HeaderUtil.createWeakETag(result.getStamp()))
             .body(result);
     }
 	
 	/**
-	 * DELETE  /shopping-carts/delete-item/{id} : Delete cart item.
+	 * DELETE  /shopping-carts/delete-item/{id} : Delete cart item, if the cart still has the ETag
+	 * given in If-Match.
 	 *
 	 * @param id the id
-	 * @return the response entity
+	 * @param ifMatch the ETags of the cart the deletion may be made from, optional
+	 * @return the response entity with status 200 (OK) and the new ETag of the cart, or with status
+	 *         412 (Precondition Failed) and its current ETag if the cart was changed since
 	 * @throws URISyntaxException the URI syntax exception
 	 */
 	@DeleteMapping("/shopping-carts/delete-item/{id}")
     @Timed
-    public ResponseEntity<CartDTO> deleteCartItem(@Nonnull @PathVariable Long id) throws URISyntaxException {
+    public ResponseEntity<CartDTO> deleteCartItem(@Nonnull @PathVariable Long id,
+            @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) throws URISyntaxException {
         log.debug("REST request to delete item : {}", id);
-        CartDTO result = shoppingCartService.deleteItem(id);
+        List<String> expectedStamps = HeaderUtil.parseETags(ifMatch);
+        Long cartId = cartOwners == null && cartMailboxes == null ? null : shoppingCartService.findCartIdOfItem(id);
+        CartDTO result = changeCart(cartId, service -> service.deleteItem(id, expectedStamps));
         return ResponseEntity.ok()
             .headers(HeaderUtil.createEntityDeletionAlert(ENTITY_CART_ITEM_NAME, id.toString()))
+            .eTag(HeaderUtil.createWeakETag(result.getStamp()))
             .body(result);
     }
 	
@@ -0,0 +1,30 @@
+package com.assignment.web.rest.errors;
+
+import java.util.Collections;
+
+import org.zalando.problem.AbstractThrowableProblem;
+import org.zalando.problem.Status;
+
+/**
+ * A cart changed since the version a conditional request was made from, returns a Precondition
+ * Failed code with the current version.
+ */
+public class CartModifiedException extends AbstractThrowableProblem {
+
+    private final String stamp;
+
+    public CartModifiedException(String stamp) {
+        super(ErrorConstants.DEFAULT_TYPE, "Cart modified", Status.PRECONDITION_FAILED, null, null, null,
+            Collections.singletonMap("message", ErrorConstants.ERR_CART_MODIFIED));
+        this.stamp = stamp;
+    }
+
+    /**
+     * Gets the current stamp of the cart.
+     *
+     * @return the stamp
+     */
+    public String getStamp() {
+        return stamp;
+    }
+}
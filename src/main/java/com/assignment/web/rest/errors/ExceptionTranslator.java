@@ -3,6 +3,7 @@ package com.assignment.web.rest.errors;
 import com.assignment.web.rest.util.HeaderUtil;
 
 import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -20,6 +21,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.servlet.http.HttpServletRequest;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 /**
@@ -87,6 +89,13 @@ public class ExceptionTranslator implements ProblemHandling {
         return create(ex, request, HeaderUtil.createFailureAlert(ex.getEntityName(), ex.getErrorKey(), ex.getMessage()));
     }
 
+    @ExceptionHandler(CartModifiedException.class)
+    public ResponseEntity<Problem> handleCartModifiedException(CartModifiedException ex, NativeWebRequest request) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(HeaderUtil.createWeakETag(ex.getStamp()));
+        return create(ex, request, headers);
+    }
+
     @ExceptionHandler(ConcurrencyFailureException.class)
     public ResponseEntity<Problem> handleConcurrencyFailure(ConcurrencyFailureException ex, NativeWebRequest request) {
         Problem problem = Problem.builder()
@@ -95,4 +104,14 @@ public class ExceptionTranslator implements ProblemHandling {
             .build();
         return create(ex, problem, request);
     }
+
+    // the JDBC executor is full, the client may retry later
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<Problem> handleRejectedExecution(RejectedExecutionException ex, NativeWebRequest request) {
+        Problem problem = Problem.builder()
+            .withStatus(Status.SERVICE_UNAVAILABLE)
+            .with("message", ErrorConstants.ERR_OVERLOADED)
+            .build();
+        return create(ex, problem, request);
+    }
 }
@@ -0,0 +1,38 @@
+package com.assignment.web.rest.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Utility class for the asynchronous endpoints.
+ */
+public final class AsyncUtil {
+
+    private AsyncUtil() {
+    }
+
+    /**
+     * Run a call on an executor, such as the JDBC executor.
+     * <p>
+     * Unlike {@link CompletableFuture#supplyAsync}, the future fails with the exception of the call
+     * itself, not wrapped, so it is translated like the one of a synchronous endpoint. A call the
+     * executor rejects fails before any future is returned.
+     *
+     * @param call the call
+     * @param executor the executor
+     * @param <T> the type of the result
+     * @return the future of the result
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> call, Executor executor) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                future.complete(call.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+}
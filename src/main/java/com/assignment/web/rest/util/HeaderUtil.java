@@ -4,6 +4,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpHeaders;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Utility class for HTTP headers creation.
  */
@@ -40,4 +43,68 @@ public final class HeaderUtil {
         headers.add("X-assignmentApp-params", entityName);
         return headers;
     }
+
+    public static String createWeakETag(String stamp) {
+        return "W/\"" + stamp + "\"";
+    }
+
+    /**
+     * Parse the stamps of an If-Match header, a list of entity tags, weak or not.
+     *
+     * @param ifMatch the If-Match header
+     * @return the stamps, any of which matches, or null for any or none
+     */
+    public static List<String> parseETags(String ifMatch) {
+        if (ifMatch == null) {
+            return null;
+        }
+        List<String> stamps = new ArrayList<>();
+        for (String eTag : ifMatch.split(",")) {
+            String stamp = parseETag(eTag);
+            if (stamp == null) {
+                return null;
+            }
+            stamps.add(stamp);
+        }
+        return stamps;
+    }
+
+    /**
+     * Parse the stamp of an entity tag, weak or not.
+     *
+     * @param eTag the entity tag
+     * @return the stamp, or null for any or none
+     */
+    public static String parseETag(String eTag) {
+        if (eTag == null || eTag.trim().equals("*")) {
+            return null;
+        }
+        String stamp = eTag.trim();
+        if (stamp.startsWith("W/")) {
+            stamp = stamp.substring(2);
+        }
+        if (stamp.length() >= 2 && stamp.startsWith("\"") && stamp.endsWith("\"")) {
+            stamp = stamp.substring(1, stamp.length() - 1);
+        }
+        return stamp;
+    }
+
+    /**
+     * Whether an If-None-Match header matches a stamp, weakly.
+     *
+     * @param ifNoneMatch the If-None-Match header, a list of entity tags
+     * @param stamp the stamp
+     * @return true, if the header has the entity tag of the stamp or is "*"
+     */
+    public static boolean matchesETag(String ifNoneMatch, String stamp) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String eTag : ifNoneMatch.split(",")) {
+            if (eTag.trim().equals("*") || stamp.equals(parseETag(eTag))) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -0,0 +1,9 @@
+package com.assignment;
+
+/**
+ * JUnit category of the benchmarks. They are slow and report their measures in the logs, so they are
+ * left out of the build and run with the {@code benchmark} Maven profile, next to the {@code dev} one:
+ * {@code ./mvnw test -Pdev,benchmark}.
+ */
+public interface Benchmark {
+}
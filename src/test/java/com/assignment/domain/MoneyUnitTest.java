@@ -0,0 +1,120 @@
+package com.assignment.domain;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.assignment.Benchmark;
+
+/**
+ * Test class for the Money, with a benchmark of the cart totals against the BigDecimal arithmetic,
+ * run with the benchmark profile.
+ *
+ * @see Money
+ */
+public class MoneyUnitTest {
+
+    private static final int[] LINES = { 10, 100, 1000 };
+    private static final int WARMUP = 2_000;
+    private static final int RUNS = 2_000;
+
+    private final Logger log = LoggerFactory.getLogger(MoneyUnitTest.class);
+
+    @Test
+    public void arithmeticIsExact() {
+        Money price = Money.of(new BigDecimal("19.99"));
+
+        assertThat(price.getMinorUnits()).isEqualTo(1999);
+        assertThat(price.times(3).plus(Money.ofMinor(3)).toBigDecimal()).isEqualByComparingTo("60.00");
+        assertThat(price.minus(price)).isSameAs(Money.ZERO);
+        assertThat(price.negate().isNegative()).isTrue();
+        assertThat(price.times(new BigDecimal("0.15"), RoundingMode.HALF_EVEN)).isEqualTo(Money.ofMinor(300));
+        assertThat(price.toString()).isEqualTo("19.99");
+    }
+
+    @Test
+    public void roundingIsExplicit() {
+        assertThatThrownBy(() -> Money.of(new BigDecimal("1.005"))).isInstanceOf(ArithmeticException.class);
+        assertThat(Money.of(new BigDecimal("1.005"), RoundingMode.HALF_EVEN)).isEqualTo(Money.ofMinor(100));
+        assertThat(Money.of(new BigDecimal("1.005"), RoundingMode.HALF_UP)).isEqualTo(Money.ofMinor(101));
+        assertThat(Money.of(new BigDecimal("2.5"))).isEqualTo(Money.ofMinor(250));
+    }
+
+    @Test
+    public void overflowFails() {
+        Money max = Money.ofMinor(Long.MAX_VALUE);
+
+        assertThatThrownBy(() -> max.plus(Money.ofMinor(1))).isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> max.times(2)).isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> Money.of(new BigDecimal("1e30"))).isInstanceOf(ArithmeticException.class);
+    }
+
+    @Test
+    @Category(Benchmark.class)
+    public void benchmarkCartTotals() {
+        for (int lines : LINES) {
+            Random random = new Random(lines);
+            BigDecimal[] prices = new BigDecimal[lines];
+            Money[] unitPrices = new Money[lines];
+            int[] quantities = new int[lines];
+            for (int i = 0; i < lines; i++) {
+                prices[i] = BigDecimal.valueOf(random.nextInt(100_000), Money.SCALE);
+                unitPrices[i] = Money.of(prices[i]);
+                quantities[i] = 1 + random.nextInt(10);
+            }
+            Supplier<BigDecimal> decimal = () -> {
+                BigDecimal total = BigDecimal.ZERO;
+                for (int i = 0; i < lines; i++) {
+                    total = total.add(prices[i].multiply(BigDecimal.valueOf(quantities[i])));
+                }
+                return total;
+            };
+            Supplier<Money> money = () -> {
+                Money total = Money.ZERO;
+                for (int i = 0; i < lines; i++) {
+                    total = total.plus(unitPrices[i].times(quantities[i]));
+                }
+                return total;
+            };
+            assertThat(money.get().toBigDecimal()).isEqualByComparingTo(decimal.get());
+
+            long[] decimalRun = run(decimal);
+            long[] moneyRun = run(money);
+            log.info("{} lines: BigDecimal {} ns and {} bytes per cart, Money {} ns and {} bytes per cart",
+                lines, decimalRun[0], decimalRun[1], moneyRun[0], moneyRun[1]);
+        }
+    }
+
+    // the nanoseconds and the bytes allocated per call, the bytes are -1 where the JVM does not count them
+    private long[] run(Supplier<?> totals) {
+        for (int i = 0; i < WARMUP; i++) {
+            totals.get();
+        }
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            totals.get();
+        }
+        long nanos = (System.nanoTime() - start) / RUNS;
+        long allocated = bytes < 0 ? -1 : (allocatedBytes() - bytes) / RUNS;
+        return new long[] { nanos, allocated };
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,169 @@
+package com.assignment.domain.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.assignment.AssignmentApp;
+import com.assignment.config.IdSequenceCheck;
+import com.assignment.domain.Cart;
+import com.assignment.domain.CartItem;
+import com.assignment.domain.Product;
+import com.assignment.repository.CartRepository;
+import com.assignment.repository.ProductRepository;
+import com.assignment.web.rest.ProductResourceIntTest;
+
+/**
+ * Benchmark of the id generation of cart items, inserting the same cart items with a sequence call per
+ * id and with the pooled id generator.
+ *
+ * These tests commit their own transactions, so they clean up everything they create.
+ *
+ * @see PooledSequenceGenerator
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = AssignmentApp.class)
+public class PooledSequenceGeneratorIntTest {
+
+    private static final int CARTS = 1000;
+    private static final int PRODUCTS = 100;
+    private static final int ITEMS = CARTS * PRODUCTS;
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String INSERT_CART_ITEM =
+        "insert into cart_item (id, quantity, product_id, cart_id, version, expires_at) values (?, 1, ?, ?, 0, ?)";
+
+    private final Logger log = LoggerFactory.getLogger(PooledSequenceGeneratorIntTest.class);
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private IdSequenceCheck idSequenceCheck;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    private List<Product> products;
+
+    private List<Cart> carts;
+
+    @Before
+    public void initTest() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        products = new ArrayList<>();
+        for (int i = 0; i < PRODUCTS; i++) {
+            products.add(ProductResourceIntTest.createEntity(em).quantity(ITEMS));
+        }
+        products = productRepository.save(products);
+        carts = new ArrayList<>();
+        for (int i = 0; i < CARTS; i++) {
+            carts.add(new Cart());
+        }
+        carts = cartRepository.save(carts);
+    }
+
+    @After
+    public void cleanUp() {
+        jdbcTemplate.update("delete from cart_item where cart_id between ? and ?",
+            carts.get(0).getId(), carts.get(CARTS - 1).getId());
+        transactionTemplate.execute(status ->
+            cartRepository.deleteByIds(carts.stream().map(Cart::getId).collect(Collectors.toList())));
+        productRepository.delete(products);
+    }
+
+    @Test
+    public void pooledGeneratorCallsTheSequenceOncePerBlock() {
+        int allocationSize = idSequenceCheck.getAllocationSizes().get(PooledSequenceGenerator.SEQUENCE_NAME);
+        assertThat(allocationSize).isEqualTo(PooledSequenceGenerator.DEFAULT_ALLOCATION_SIZE);
+
+        // before: a sequence call per id, as with an allocation size of 1
+        long sequenceCalls = insertCartItems("sequence call per id", session ->
+            ((Number) session.createNativeQuery("select nextval('hibernate_sequence')").getSingleResult()).longValue());
+        assertThat(sequenceCalls).isEqualTo(ITEMS);
+        jdbcTemplate.update("delete from cart_item where cart_id between ? and ?",
+            carts.get(0).getId(), carts.get(CARTS - 1).getId());
+
+        // after: the id generator of the cart items
+        IdentifierGenerator generator = entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+            .getMetamodel().entityPersister(CartItem.class).getIdentifierGenerator();
+        assertThat(generator).isInstanceOf(PooledSequenceGenerator.class);
+        long pooledSequenceCalls = insertCartItems("pooled id generator", session ->
+            (Long) generator.generate(session, null));
+        assertThat(pooledSequenceCalls).isBetween((long) ITEMS / allocationSize - 1, (long) ITEMS / allocationSize + 1);
+
+        assertThat(jdbcTemplate.queryForObject("select count(distinct id) from cart_item where cart_id between ? and ?",
+            Long.class, carts.get(0).getId(), carts.get(CARTS - 1).getId())).isEqualTo(ITEMS);
+    }
+
+    /**
+     * Insert a cart item of each product in each cart, by JDBC batches, and log the throughput.
+     *
+     * @return the number of sequence calls made to generate the ids
+     */
+    private long insertCartItems(String name, Function<SessionImplementor, Long> idGenerator) {
+        long sequenceBefore = getSequenceValue();
+        long start = System.nanoTime();
+        Timestamp expiresAt = Timestamp.from(Instant.now());
+        for (int first = 0; first < ITEMS; first += BATCH_SIZE) {
+            int batchStart = first;
+            transactionTemplate.execute(status -> {
+                SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+                List<Object[]> rows = new ArrayList<>();
+                for (int i = batchStart; i < batchStart + BATCH_SIZE; i++) {
+                    rows.add(new Object[] { idGenerator.apply(session), products.get(i % PRODUCTS).getId(),
+                        carts.get(i / PRODUCTS).getId(), expiresAt });
+                }
+                return jdbcTemplate.batchUpdate(INSERT_CART_ITEM, rows);
+            });
+        }
+        long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        long sequenceCalls = (getSequenceValue() - sequenceBefore) / PooledSequenceGenerator.DEFAULT_ALLOCATION_SIZE;
+        log.info("Inserted {} cart items with the {} in {} ms, {} rows/s, {} sequence calls",
+            ITEMS, name, elapsedMillis, ITEMS * 1000L / elapsedMillis, sequenceCalls);
+        return sequenceCalls;
+    }
+
+    private long getSequenceValue() {
+        return jdbcTemplate.queryForObject(
+            "select current_value from information_schema.sequences where lower(sequence_name) = 'hibernate_sequence'",
+            Long.class);
+    }
+}
@@ -0,0 +1,97 @@
+package com.assignment.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import javax.persistence.EntityManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.assignment.AssignmentApp;
+import com.assignment.config.ApplicationProperties;
+import com.assignment.domain.Cart;
+import com.assignment.domain.CartItem;
+import com.assignment.domain.Product;
+import com.assignment.repository.CartRepository;
+import com.assignment.repository.ProductRepository;
+import com.assignment.web.rest.ProductResourceIntTest;
+
+/**
+ * Test class for the AbandonedCartSweeper.
+ *
+ * @see AbandonedCartSweeper
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = AssignmentApp.class)
+@Transactional
+public class AbandonedCartSweeperIntTest {
+
+    private static final Integer STOCK = 10;
+
+    @Autowired
+    private AbandonedCartSweeper abandonedCartSweeper;
+
+    @Autowired
+    private ApplicationProperties applicationProperties;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private EntityManager em;
+
+    private Product product;
+
+    private Cart abandonedCart;
+
+    private Cart activeCart;
+
+    @Before
+    public void initTest() {
+        product = ProductResourceIntTest.createEntity(em).quantity(STOCK);
+        em.persist(product);
+        Instant idle = Instant.now().minusSeconds(applicationProperties.getCart().getAbandoned().getIdleSeconds())
+            .minus(1, ChronoUnit.HOURS);
+        abandonedCart = new Cart().createdAt(idle).lastModifiedAt(idle);
+        em.persist(abandonedCart);
+        em.persist(new CartItem().quantity(3).product(product).cart(abandonedCart));
+        activeCart = new Cart().createdAt(idle);
+        em.persist(activeCart);
+        em.persist(new CartItem().quantity(2).product(product).cart(activeCart));
+        em.flush();
+    }
+
+    @Test
+    public void idleCartsAreDeletedWithTheirStockGivenBack() {
+        assertThat(abandonedCartSweeper.sweep()).isGreaterThanOrEqualTo(1);
+
+        assertThat(cartRepository.findOne(abandonedCart.getId())).isNull();
+        assertThat(cartRepository.findOne(activeCart.getId())).isNotNull();
+        assertThat(productRepository.findQuantity(product.getId())).isEqualTo(STOCK + 3);
+    }
+
+    @Test
+    public void sweepStopsWhileThePoolIsBusy() {
+        ApplicationProperties.Cart.Abandoned abandoned = applicationProperties.getCart().getAbandoned();
+        double maxPoolUsage = abandoned.getMaxPoolUsage();
+        // the test transaction holds a connection
+        abandoned.setMaxPoolUsage(0);
+        try {
+            assertThat(abandonedCartSweeper.sweep()).isZero();
+        } finally {
+            abandoned.setMaxPoolUsage(maxPoolUsage);
+        }
+        assertThat(cartRepository.findOne(abandonedCart.getId())).isNotNull();
+    }
+}
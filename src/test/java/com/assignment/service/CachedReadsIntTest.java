@@ -0,0 +1,135 @@
+package com.assignment.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.assignment.AssignmentApp;
+import com.assignment.domain.Cart;
+import com.assignment.domain.Product;
+import com.assignment.repository.ProductRepository;
+import com.assignment.service.dto.CartDTO;
+import com.assignment.service.dto.CartItemDTO;
+import com.assignment.service.dto.CartSummaryDTO;
+import com.assignment.service.dto.ProductDTO;
+import com.assignment.web.rest.ProductResourceIntTest;
+
+/**
+ * Test class for the reads answered from the second-level cache only.
+ *
+ * The second-level cache is disabled in the test configuration, so these tests enable it on the
+ * Hazelcast instance of the application. They commit their own transactions, so they clean up everything they create.
+ *
+ * @see ProductService#findCachedOne(Long)
+ * @see ShoppingCartService#findCachedSummary(Long)
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = AssignmentApp.class, properties = {
+    "spring.jpa.properties.hibernate.cache.use_second_level_cache=true",
+    "spring.jpa.properties.hibernate.cache.region.factory_class=com.hazelcast.hibernate.HazelcastCacheRegionFactory",
+    "spring.jpa.properties.hibernate.cache.hazelcast.instance_name=assignment"
+})
+public class CachedReadsIntTest {
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ShoppingCartService shoppingCartService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Product product;
+
+    private Long cartId;
+
+    private Statistics statistics;
+
+    @Before
+    public void initTest() {
+        product = productRepository.saveAndFlush(ProductResourceIntTest.createEntity(em)
+            .price(BigDecimal.TEN)
+            .quantity(100));
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @After
+    public void cleanUp() {
+        if (cartId != null) {
+            shoppingCartService.purge(Collections.singletonList(cartId));
+        }
+        productRepository.delete(product.getId());
+    }
+
+    @Test
+    public void cachedProductIsReadWithoutStatement() {
+        productService.findOne(product.getId());
+
+        statistics.clear();
+        ProductDTO productDTO = productService.findCachedOne(product.getId());
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(productDTO.getName()).isEqualTo(product.getName());
+        assertThat(productDTO.getPrice()).isEqualByComparingTo(BigDecimal.TEN);
+    }
+
+    @Test
+    public void evictedProductIsAMissWithoutStatement() {
+        productService.findOne(product.getId());
+        entityManagerFactory.getCache().evict(Product.class, product.getId());
+
+        statistics.clear();
+        assertThat(productService.findCachedOne(product.getId())).isNull();
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+    }
+
+    @Test
+    public void cachedCartSummaryIsReadWithoutStatement() {
+        cartId = shoppingCartService.save(new CartDTO()).getId();
+        shoppingCartService.addItem(createCartItemDTO(cartId, 2));
+        shoppingCartService.findSummary(cartId);
+
+        statistics.clear();
+        CartSummaryDTO summaryDTO = shoppingCartService.findCachedSummary(cartId);
+        String stamp = shoppingCartService.findCachedStamp(cartId);
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(summaryDTO.getItemCount()).isEqualTo(2);
+        assertThat(summaryDTO.getSubtotal()).isEqualByComparingTo("20.00");
+        assertThat(stamp).isEqualTo(shoppingCartService.findStamp(cartId));
+
+        entityManagerFactory.getCache().evict(Cart.class, cartId);
+        statistics.clear();
+        assertThat(shoppingCartService.findCachedSummary(cartId)).isNull();
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+    }
+
+    private CartItemDTO createCartItemDTO(Long cartId, int quantity) {
+        ProductDTO productDTO = new ProductDTO();
+        productDTO.setId(product.getId());
+        CartItemDTO cartItemDTO = new CartItemDTO();
+        cartItemDTO.setCartId(cartId);
+        cartItemDTO.setProduct(productDTO);
+        cartItemDTO.setQuantity(quantity);
+        return cartItemDTO;
+    }
+}
@@ -0,0 +1,216 @@
+package com.assignment.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.assignment.AssignmentApp;
+import com.assignment.Benchmark;
+import com.assignment.config.ApplicationProperties;
+import com.assignment.domain.CartEvent;
+import com.assignment.domain.CartSnapshot;
+import com.assignment.domain.Money;
+import com.assignment.domain.Product;
+import com.assignment.repository.CartEventRepository;
+import com.assignment.repository.CartRepository;
+import com.assignment.repository.CartSnapshotRepository;
+import com.assignment.repository.ProductRepository;
+import com.assignment.service.dto.CartDTO;
+import com.assignment.service.dto.CartItemDTO;
+import com.assignment.service.dto.ProductDTO;
+import com.assignment.web.rest.ProductResourceIntTest;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Test class for the carts kept in the CartEventLog, with a benchmark of the cart changes and reads
+ * against the cart and cart_item tables, run with the benchmark profile.
+ *
+ * The event log is disabled in the test configuration, so the shopping cart service is given one
+ * snapshotting every few events. These tests commit their own transactions, so they clean up
+ * everything they create.
+ *
+ * @see CartEventLog
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = AssignmentApp.class)
+public class CartEventLogIntTest {
+
+    private static final int STOCK = 1_000_000;
+    private static final int SNAPSHOT_INTERVAL = 10;
+    private static final int CHANGES = 500;
+    private static final int READS = 500;
+
+    private final Logger log = LoggerFactory.getLogger(CartEventLogIntTest.class);
+
+    @Autowired
+    private ShoppingCartService shoppingCartService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private CartEventRepository cartEventRepository;
+
+    @Autowired
+    private CartSnapshotRepository cartSnapshotRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private ApplicationProperties applicationProperties;
+
+    private CartEventLog cartEventLog;
+
+    private final List<Product> products = new ArrayList<>();
+
+    private final List<Long> cartIds = new ArrayList<>();
+
+    @Before
+    public void initTest() {
+        for (int i = 0; i < 3; i++) {
+            products.add(productRepository.saveAndFlush(ProductResourceIntTest.createEntity(em)
+                .price(BigDecimal.TEN)
+                .quantity(STOCK)));
+        }
+        applicationProperties = new ApplicationProperties();
+        applicationProperties.getCart().getEventLog().setSnapshotInterval(SNAPSHOT_INTERVAL);
+        cartEventLog = new CartEventLog(cartRepository, cartEventRepository, cartSnapshotRepository,
+            applicationProperties, new MetricRegistry(), transactionManager);
+        cartEventLog.registerMetrics();
+    }
+
+    @After
+    public void cleanUp() {
+        shoppingCartService.setCartStateStore(null);
+        shoppingCartService.purge(cartIds);
+        new TransactionTemplate(transactionManager).execute(status -> {
+            cartSnapshotRepository.delete(cartSnapshotRepository.findAll(cartIds));
+            return cartEventRepository.deleteByCartIds(cartIds);
+        });
+        products.forEach(product -> productRepository.delete(product.getId()));
+    }
+
+    @Test
+    public void cartIsRebuiltFromItsSnapshotAndTail() {
+        shoppingCartService.setCartStateStore(cartEventLog);
+        Long cartId = newCart();
+        Long lineId = shoppingCartService.addItem(createCartItemDTO(cartId, null, products.get(0), 1))
+            .getCartItems().iterator().next().getId();
+        for (int i = 2; i <= 12; i++) {
+            shoppingCartService.updateItem(createCartItemDTO(cartId, lineId, products.get(0), i));
+        }
+        shoppingCartService.addItem(createCartItemDTO(cartId, null, products.get(1), 4));
+
+        CartSnapshot snapshot = cartSnapshotRepository.findOneWithLines(cartId);
+        assertThat(snapshot.getSequence()).isEqualTo(SNAPSHOT_INTERVAL);
+        assertThat(cartEventRepository.findTail(cartId, snapshot.getSequence())).hasSize(3);
+        CartState cartState = cartEventLog.get(cartId);
+        assertThat(cartState.getRevision()).isEqualTo(13);
+        assertThat(cartState.getLineOfProduct(products.get(0).getId()).getQuantity()).isEqualTo(12);
+        assertThat(cartState.getLineOfProduct(products.get(1).getId()).getQuantity()).isEqualTo(4);
+        assertThat(productRepository.findQuantity(products.get(0).getId())).isEqualTo(STOCK - 12);
+        assertThat(cartRepository.findOne(cartId).getItemCount()).isEqualTo(16);
+        assertThat(cartRepository.findOne(cartId).getSubtotal()).isEqualTo(Money.ofMinor(16000));
+
+        // two changes from the same revision, only the first is appended
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        Boolean replaced = transactionTemplate.execute(status ->
+            cartEventLog.replace(cartState, cartState.withoutLines(Arrays.asList(products.get(1).getId()))));
+        assertThat(replaced).isTrue();
+        replaced = transactionTemplate.execute(status -> {
+            boolean conflicting = cartEventLog.replace(cartState, cartState.withoutLines(Arrays.asList(products.get(0).getId())));
+            status.setRollbackOnly();
+            return conflicting;
+        });
+        assertThat(replaced).isFalse();
+
+        applicationProperties.getCart().getEventLog().setRetentionDays(0);
+        assertThat(cartEventLog.compact()).isGreaterThanOrEqualTo(SNAPSHOT_INTERVAL);
+        assertThat(cartEventRepository.findTail(cartId, 0)).extracting(CartEvent::getSequence).containsExactly(11L, 12L, 13L, 14L);
+        assertThat(cartEventLog.findCartIdOfLine(lineId)).isEqualTo(cartId);
+        CartDTO cart = shoppingCartService.findOne(cartId);
+        assertThat(cart.getCartItems()).extracting(CartItemDTO::getId).containsExactly(lineId);
+        assertThat(cart.getCartItems().iterator().next().getQuantity()).isEqualTo(12);
+
+        shoppingCartService.deleteItem(lineId);
+        shoppingCartService.delete(cartId);
+        assertThat(shoppingCartService.findOne(cartId)).isNull();
+        assertThat(cartRepository.findOne(cartId)).isNull();
+        assertThat(productRepository.findQuantity(products.get(0).getId())).isEqualTo(STOCK);
+    }
+
+    @Test
+    @Category(Benchmark.class)
+    public void benchmarkAgainstCartTables() {
+        long[] tables = run();
+        shoppingCartService.setCartStateStore(cartEventLog);
+        long[] eventLog = run();
+        log.info("Cart tables: {} changes/s, {} us per read; event log: {} changes/s, {} us per read",
+            tables[0], tables[1], eventLog[0], eventLog[1]);
+    }
+
+    // the changes per second and the microseconds per read of a cart with a few lines
+    private long[] run() {
+        Long cartId = newCart();
+        List<Long> lineIds = new ArrayList<>();
+        for (Product product : products) {
+            CartDTO cart = shoppingCartService.addItem(createCartItemDTO(cartId, null, product, 1));
+            lineIds.add(cart.getCartItems().stream()
+                .filter(item -> item.getProduct().getId().equals(product.getId())).findFirst().get().getId());
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < CHANGES; i++) {
+            int line = i % products.size();
+            shoppingCartService.updateItem(createCartItemDTO(cartId, lineIds.get(line), products.get(line), 2 + i % 5));
+        }
+        long changesPerSecond = CHANGES * TimeUnit.SECONDS.toNanos(1) / (System.nanoTime() - start);
+        start = System.nanoTime();
+        for (int i = 0; i < READS; i++) {
+            assertThat(shoppingCartService.findOne(cartId).getCartItems()).hasSize(products.size());
+        }
+        long microsPerRead = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / READS;
+        return new long[] { changesPerSecond, microsPerRead };
+    }
+
+    private Long newCart() {
+        Long cartId = shoppingCartService.save(new CartDTO()).getId();
+        cartIds.add(cartId);
+        return cartId;
+    }
+
+    private CartItemDTO createCartItemDTO(Long cartId, Long id, Product product, int quantity) {
+        ProductDTO productDTO = new ProductDTO();
+        productDTO.setId(product.getId());
+        CartItemDTO cartItemDTO = new CartItemDTO();
+        cartItemDTO.setId(id);
+        cartItemDTO.setCartId(cartId);
+        cartItemDTO.setProduct(productDTO);
+        cartItemDTO.setQuantity(quantity);
+        return cartItemDTO;
+    }
+}
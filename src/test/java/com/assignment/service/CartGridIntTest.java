@@ -0,0 +1,258 @@
+package com.assignment.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.assignment.AssignmentApp;
+import com.assignment.config.ApplicationProperties;
+import com.assignment.domain.CartItem;
+import com.assignment.domain.Money;
+import com.assignment.domain.Product;
+import com.assignment.repository.CartItemRepository;
+import com.assignment.repository.CartRepository;
+import com.assignment.repository.ProductRepository;
+import com.assignment.service.dto.CartDTO;
+import com.assignment.service.dto.CartItemDTO;
+import com.assignment.service.dto.ProductDTO;
+import com.assignment.web.rest.ProductResourceIntTest;
+import com.codahale.metrics.MetricRegistry;
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+
+/**
+ * Test class for the carts kept in the CartGrid.
+ *
+ * The grid is disabled in the test configuration, so the shopping cart service is given a grid on a
+ * Hazelcast member started apart from the application one, writing behind after a long delay.
+ * These tests commit their own transactions, so they clean up everything they create.
+ *
+ * @see CartGrid
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = AssignmentApp.class)
+public class CartGridIntTest {
+
+    private static final int STOCK = 10;
+
+    @Autowired
+    private ShoppingCartService shoppingCartService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final List<HazelcastInstance> members = new ArrayList<>();
+
+    private MetricRegistry metricRegistry;
+
+    private ApplicationProperties applicationProperties;
+
+    private CartGrid cartGrid;
+
+    private Product product;
+
+    private Long cartId;
+
+    @Before
+    public void initTest() {
+        product = productRepository.saveAndFlush(ProductResourceIntTest.createEntity(em)
+            .price(BigDecimal.TEN)
+            .quantity(STOCK));
+        cartGrid = startMember();
+        shoppingCartService.setCartStateStore(cartGrid);
+        cartId = shoppingCartService.save(new CartDTO()).getId();
+    }
+
+    @After
+    public void cleanUp() {
+        shoppingCartService.setCartStateStore(null);
+        members.forEach(HazelcastInstance::shutdown);
+        shoppingCartService.purge(Collections.singletonList(cartId));
+        productRepository.delete(product.getId());
+    }
+
+    private CartGrid startMember() {
+        applicationProperties = new ApplicationProperties();
+        ApplicationProperties.Cart.Grid grid = applicationProperties.getCart().getGrid();
+        grid.setWriteDelaySeconds(60);
+        metricRegistry = new MetricRegistry();
+        CartStateMapStore mapStore = new CartStateMapStore(cartRepository, cartItemRepository, metricRegistry, transactionManager);
+        mapStore.registerMetrics();
+        Config config = new Config();
+        config.getGroupConfig().setName("cart-grid-test-" + members.size());
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        config.addMapConfig(CartGrid.mapConfig(grid, (mapName, properties) -> mapStore));
+        HazelcastInstance member = Hazelcast.newHazelcastInstance(config);
+        members.add(member);
+        return new CartGrid(member, applicationProperties, metricRegistry);
+    }
+
+    @Test
+    public void cartChangesAreWrittenBehind() {
+        CartDTO cart = shoppingCartService.addItem(createCartItemDTO(null, 3));
+        shoppingCartService.addItem(createCartItemDTO(null, 2));
+        CartItemDTO line = cart.getCartItems().iterator().next();
+        cart = shoppingCartService.findOne(cartId);
+
+        assertThat(cart.getCartItems()).hasSize(1);
+        assertThat(cart.getCartItems().iterator().next().getQuantity()).isEqualTo(5);
+        assertThat(cart.getTotalPrice()).isEqualByComparingTo(BigDecimal.valueOf(50));
+        assertThat(productRepository.findQuantity(product.getId())).isEqualTo(STOCK - 5);
+        assertThat(cartItemRepository.findLinesOfCarts(Collections.singleton(cartId))).isEmpty();
+        // a line not written yet is found on the index of the grid
+        assertThat(cartGrid.findCartIdOfLine(line.getId())).isEqualTo(cartId);
+        assertThat(cartGrid.findCartIdOfLine(Long.MAX_VALUE)).isNull();
+
+        cartGrid.flush();
+        CartItem stored = cartItemRepository.findOne(line.getId());
+        assertThat(stored.getQuantity()).isEqualTo(5);
+        assertThat(stored.getCart().getId()).isEqualTo(cartId);
+        assertThat(cartRepository.findOne(cartId).getSubtotal()).isEqualTo(Money.ofMinor(5000));
+        assertThat(metricRegistry.histogram(MetricRegistry.name(CartStateMapStore.class, "flush-lag")).getCount()).isEqualTo(1);
+
+        shoppingCartService.updateItem(createCartItemDTO(line.getId(), 1));
+        shoppingCartService.deleteItem(line.getId());
+        assertThat(shoppingCartService.findOne(cartId).getCartItems()).isEmpty();
+        assertThat(productRepository.findQuantity(product.getId())).isEqualTo(STOCK);
+        cartGrid.flush();
+        assertThat(cartItemRepository.findOne(line.getId())).isNull();
+    }
+
+    @Test
+    public void lineChangingProductGivesTheFormerStockBack() {
+        Product otherProduct = productRepository.saveAndFlush(ProductResourceIntTest.createEntity(em)
+            .price(BigDecimal.ONE)
+            .quantity(STOCK));
+        try {
+            Long lineId = shoppingCartService.addItem(createCartItemDTO(null, 3)).getCartItems().iterator().next().getId();
+            CartItemDTO moved = createCartItemDTO(lineId, 2);
+            moved.getProduct().setId(otherProduct.getId());
+
+            CartDTO cart = shoppingCartService.updateItem(moved);
+
+            assertThat(cart.getCartItems()).extracting(CartItemDTO::getId).containsExactly(lineId);
+            assertThat(cart.getTotalPrice()).isEqualByComparingTo(BigDecimal.valueOf(2));
+            assertThat(productRepository.findQuantity(product.getId())).isEqualTo(STOCK);
+            assertThat(productRepository.findQuantity(otherProduct.getId())).isEqualTo(STOCK - 2);
+
+            // moved to the product of another line, the lines are merged
+            Long otherLineId = shoppingCartService.addItem(createCartItemDTO(null, 1)).getCartItems().stream()
+                .filter(item -> item.getProduct().getId().equals(product.getId())).findFirst().get().getId();
+            CartItemDTO merged = createCartItemDTO(otherLineId, 4);
+            merged.getProduct().setId(otherProduct.getId());
+
+            cart = shoppingCartService.updateItem(merged);
+
+            assertThat(cart.getCartItems()).extracting(CartItemDTO::getId).containsExactly(lineId);
+            assertThat(cart.getCartItems().iterator().next().getQuantity()).isEqualTo(6);
+            assertThat(productRepository.findQuantity(product.getId())).isEqualTo(STOCK);
+            assertThat(productRepository.findQuantity(otherProduct.getId())).isEqualTo(STOCK - 6);
+        } finally {
+            shoppingCartService.delete(cartId);
+            productRepository.delete(otherProduct.getId());
+        }
+    }
+
+    @Test
+    public void changesArePublishedWhenCommitted() throws Exception {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        CartState[] seenMeanwhile = new CartState[1];
+        assertThatThrownBy(() -> transactionTemplate.execute(status -> {
+            shoppingCartService.addItem(createCartItemDTO(null, 3));
+            assertThat(cartGrid.get(cartId).getLines()).hasSize(1);
+            // another transaction does not see the change
+            Thread other = new Thread(() -> seenMeanwhile[0] = cartGrid.get(cartId));
+            other.start();
+            try {
+                other.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("rolled back");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(seenMeanwhile[0].getLines()).isEmpty();
+        assertThat(cartGrid.get(cartId).getRevision()).isEqualTo(seenMeanwhile[0].getRevision());
+        assertThat(productRepository.findQuantity(product.getId())).isEqualTo(STOCK);
+        // nothing is left locked
+        assertThat(shoppingCartService.addItem(createCartItemDTO(null, 2)).getItemCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void changesOutlivingTheLockLeaseAreRolledBack() {
+        applicationProperties.getCart().getGrid().setLockLeaseSeconds(1);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        assertThatThrownBy(() -> transactionTemplate.execute(status -> {
+            shoppingCartService.addItem(createCartItemDTO(null, 3));
+            try {
+                Thread.sleep(1500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        })).isInstanceOf(ObjectOptimisticLockingFailureException.class);
+
+        // the stock reservation is rolled back with the change it was made for
+        assertThat(cartGrid.get(cartId).getLines()).isEmpty();
+        assertThat(productRepository.findQuantity(product.getId())).isEqualTo(STOCK);
+        assertThat(metricRegistry.meter(MetricRegistry.name(CartGrid.class, "lost-changes")).getCount()).isZero();
+    }
+
+    @Test
+    public void storedCartsAreLoadedByANewMember() {
+        Long lineId = shoppingCartService.addItem(createCartItemDTO(null, 4)).getCartItems().iterator().next().getId();
+        cartGrid.flush();
+        members.get(0).shutdown();
+
+        shoppingCartService.setCartStateStore(startMember());
+
+        CartDTO cart = shoppingCartService.findOne(cartId);
+        assertThat(cart.getCartItems()).extracting(CartItemDTO::getId).containsExactly(lineId);
+        shoppingCartService.delete(cartId);
+        assertThat(productRepository.findQuantity(product.getId())).isEqualTo(STOCK);
+        members.get(1).getMap(CartGrid.MAP_NAME).flush();
+        assertThat(cartRepository.findOne(cartId)).isNull();
+    }
+
+    private CartItemDTO createCartItemDTO(Long id, int quantity) {
+        ProductDTO productDTO = new ProductDTO();
+        productDTO.setId(product.getId());
+        CartItemDTO cartItemDTO = new CartItemDTO();
+        cartItemDTO.setId(id);
+        cartItemDTO.setCartId(cartId);
+        cartItemDTO.setProduct(productDTO);
+        cartItemDTO.setQuantity(quantity);
+        return cartItemDTO;
+    }
+}
@@ -0,0 +1,380 @@
+package com.assignment.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.assignment.AssignmentApp;
+import com.assignment.Benchmark;
+import com.assignment.config.ApplicationProperties;
+import com.assignment.domain.Product;
+import com.assignment.repository.CartItemRepository;
+import com.assignment.repository.CartRepository;
+import com.assignment.repository.ProductRepository;
+import com.assignment.service.dto.CartDTO;
+import com.assignment.service.dto.CartItemDTO;
+import com.assignment.service.dto.ProductDTO;
+import com.assignment.web.rest.ProductResourceIntTest;
+import com.assignment.web.rest.errors.ProductNotExistException;
+import com.codahale.metrics.MetricRegistry;
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+
+/**
+ * Test class for the CartMailboxes, with a benchmark of the changes of a few hot carts with and
+ * without them, run with the benchmark profile.
+ *
+ * The mailboxes are disabled in the test configuration, so they are made apart from the application,
+ * around its shopping cart service. These tests commit their own transactions, so they clean up
+ * everything they create.
+ *
+ * @see CartMailboxes
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = AssignmentApp.class)
+public class CartMailboxesIntTest {
+
+    private static final int STOCK = 1_000_000;
+    private static final int CAPACITY = 64;
+    private static final int HOT_CARTS = 3;
+    private static final int THREADS = 12;
+    private static final int CHANGES = 300;
+
+    private final Logger log = LoggerFactory.getLogger(CartMailboxesIntTest.class);
+
+    @Autowired
+    private ShoppingCartService shoppingCartService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    private ApplicationProperties applicationProperties;
+
+    private MetricRegistry mailboxMetrics;
+
+    private CartMailboxes cartMailboxes;
+
+    private final List<Long> cartIds = new ArrayList<>();
+
+    private Product product;
+
+    @Before
+    public void initTest() {
+        product = productRepository.saveAndFlush(ProductResourceIntTest.createEntity(em)
+            .quantity(STOCK));
+        applicationProperties = new ApplicationProperties();
+        applicationProperties.getCart().getMailbox().setCapacity(CAPACITY);
+        applicationProperties.getCart().getMailbox().setIdleSeconds(0);
+        mailboxMetrics = new MetricRegistry();
+        cartMailboxes = new CartMailboxes(shoppingCartService, entityManager, transactionManager, applicationProperties, mailboxMetrics);
+        cartMailboxes.registerMetrics();
+    }
+
+    @After
+    public void cleanUp() {
+        cartMailboxes.shutdown();
+        shoppingCartService.purge(cartIds);
+        productRepository.delete(product.getId());
+    }
+
+    @Test
+    public void changesQueuedMeanwhileAreAppliedInOneBatch() throws Exception {
+        Long cartId = newCart();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<CartDTO> first = cartMailboxes.submit(cartId, service -> {
+            started.countDown();
+            await(release);
+            return service.addItem(createCartItemDTO(cartId, product.getId(), 1));
+        });
+        // the next changes are queued while the first one is applied
+        await(started);
+        CompletableFuture<CartDTO> second = cartMailboxes.submit(cartId, service -> service.addItem(createCartItemDTO(cartId, product.getId(), 2)));
+        CompletableFuture<CartDTO> third = cartMailboxes.submit(cartId, service -> service.addItem(createCartItemDTO(cartId, product.getId(), 3)));
+        release.countDown();
+
+        assertThat(first.get(10, TimeUnit.SECONDS).getItemCount()).isEqualTo(1);
+        assertThat(second.get(10, TimeUnit.SECONDS).getItemCount()).isEqualTo(3);
+        assertThat(third.get(10, TimeUnit.SECONDS).getItemCount()).isEqualTo(6);
+        assertThat(mailboxMetrics.histogram(MetricRegistry.name(CartMailboxes.class, "batch-size")).getSnapshot().getMax()).isEqualTo(2);
+        assertThat(shoppingCartService.findOne(cartId).getItemCount()).isEqualTo(6);
+    }
+
+    @Test
+    public void failedChangeOfBatchFailsAlone() throws Exception {
+        Long cartId = newCart();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<CartDTO> first = cartMailboxes.submit(cartId, service -> {
+            started.countDown();
+            await(release);
+            return service.findOne(cartId);
+        });
+        await(started);
+        CompletableFuture<CartDTO> added = cartMailboxes.submit(cartId, service -> service.addItem(createCartItemDTO(cartId, product.getId(), 2)));
+        CompletableFuture<CartDTO> failed = cartMailboxes.submit(cartId, service -> service.addItem(createCartItemDTO(cartId, Long.MAX_VALUE, 1)));
+        CompletableFuture<CartDTO> addedAfter = cartMailboxes.submit(cartId, service -> service.addItem(createCartItemDTO(cartId, product.getId(), 3)));
+        release.countDown();
+
+        first.get(10, TimeUnit.SECONDS);
+        assertThat(added.get(10, TimeUnit.SECONDS).getItemCount()).isEqualTo(2);
+        assertThatThrownBy(() -> failed.get(10, TimeUnit.SECONDS)).hasCauseInstanceOf(ProductNotExistException.class);
+        assertThat(addedAfter.get(10, TimeUnit.SECONDS).getItemCount()).isEqualTo(5);
+        assertThat(mailboxMetrics.meter(MetricRegistry.name(CartMailboxes.class, "fallbacks")).getCount()).isEqualTo(1);
+        // the stock taken by the rolled back batch is given back
+        assertThat(productRepository.findOne(product.getId()).getQuantity()).isEqualTo(STOCK - 5);
+    }
+
+    @Test
+    public void errorInBatchCompletesEveryChange() throws Exception {
+        Long cartId = newCart();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<CartDTO> first = cartMailboxes.submit(cartId, service -> {
+            started.countDown();
+            await(release);
+            return service.findOne(cartId);
+        });
+        await(started);
+        CompletableFuture<CartDTO> added = cartMailboxes.submit(cartId, service -> service.addItem(createCartItemDTO(cartId, product.getId(), 2)));
+        CompletableFuture<CartDTO> failed = cartMailboxes.submit(cartId, service -> {
+            throw new AssertionError("failed change");
+        });
+        release.countDown();
+
+        first.get(10, TimeUnit.SECONDS);
+        assertThat(added.get(10, TimeUnit.SECONDS).getItemCount()).isEqualTo(2);
+        assertThatThrownBy(() -> failed.get(10, TimeUnit.SECONDS)).hasCauseInstanceOf(AssertionError.class);
+    }
+
+    @Test
+    public void changeNotStartedWithinTheTimeoutIsDropped() throws Exception {
+        applicationProperties.getCart().getMailbox().setTimeoutSeconds(1);
+        Long cartId = newCart();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<CartDTO> first = cartMailboxes.submit(cartId, service -> {
+            started.countDown();
+            await(release);
+            return service.findOne(cartId);
+        });
+        await(started);
+
+        assertThatThrownBy(() -> cartMailboxes.execute(cartId, service -> service.addItem(createCartItemDTO(cartId, product.getId(), 2))))
+            .isInstanceOf(ConcurrencyFailureException.class)
+            .hasMessageContaining("dropped");
+        release.countDown();
+        first.get(10, TimeUnit.SECONDS);
+
+        assertThat(cartMailboxes.execute(cartId, service -> service.findOne(cartId)).getItemCount()).isZero();
+        assertThat(mailboxMetrics.meter(MetricRegistry.name(CartMailboxes.class, "timeouts")).getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void failedBatchOfGridCartIsRolledBackAsAWhole() throws Exception {
+        ApplicationProperties.Cart.Grid grid = new ApplicationProperties.Cart.Grid();
+        grid.setWriteDelaySeconds(60);
+        CartStateMapStore mapStore = new CartStateMapStore(cartRepository, cartItemRepository, new MetricRegistry(), transactionManager);
+        mapStore.registerMetrics();
+        Config config = new Config();
+        config.getGroupConfig().setName("cart-mailboxes-test");
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        config.addMapConfig(CartGrid.mapConfig(grid, (mapName, properties) -> mapStore));
+        HazelcastInstance member = Hazelcast.newHazelcastInstance(config);
+        CartGrid cartGrid = new CartGrid(member, new ApplicationProperties(), new MetricRegistry());
+        shoppingCartService.setCartStateStore(cartGrid);
+        try {
+            Long cartId = newCart();
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            CompletableFuture<CartDTO> first = cartMailboxes.submit(cartId, service -> {
+                started.countDown();
+                await(release);
+                return service.findOne(cartId);
+            });
+            await(started);
+            CompletableFuture<CartDTO> added = cartMailboxes.submit(cartId, service -> service.addItem(createCartItemDTO(cartId, product.getId(), 2)));
+            CompletableFuture<CartDTO> addedAgain = cartMailboxes.submit(cartId, service -> service.addItem(createCartItemDTO(cartId, product.getId(), 3)));
+            CompletableFuture<CartDTO> failed = cartMailboxes.submit(cartId, service -> service.addItem(createCartItemDTO(cartId, Long.MAX_VALUE, 1)));
+            release.countDown();
+
+            first.get(10, TimeUnit.SECONDS);
+            assertThatThrownBy(() -> failed.get(10, TimeUnit.SECONDS)).hasCauseInstanceOf(ProductNotExistException.class);
+            assertThat(added.get(10, TimeUnit.SECONDS).getItemCount()).isEqualTo(2);
+            assertThat(addedAgain.get(10, TimeUnit.SECONDS).getItemCount()).isEqualTo(5);
+            assertThat(mailboxMetrics.meter(MetricRegistry.name(CartMailboxes.class, "fallbacks")).getCount()).isEqualTo(1);
+            // the changes of the rolled back batch are applied once, from the state before the batch
+            CartState cartState = cartGrid.get(cartId);
+            assertThat(cartState.getRevision()).isEqualTo(2);
+            assertThat(cartState.getLines()).extracting(CartState.Line::getQuantity).containsExactly(5);
+            assertThat(productRepository.findQuantity(product.getId())).isEqualTo(STOCK - 5);
+        } finally {
+            shoppingCartService.setCartStateStore(null);
+            member.shutdown();
+        }
+    }
+
+    @Test
+    public void fullMailboxRejectsChangesAndIdleOnesAreEvicted() throws Exception {
+        Long cartId = newCart();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<CartDTO> first = cartMailboxes.submit(cartId, service -> {
+            started.countDown();
+            await(release);
+            return service.findOne(cartId);
+        });
+        await(started);
+        List<CompletableFuture<CartDTO>> queued = new ArrayList<>();
+        for (int i = 0; i < CAPACITY; i++) {
+            queued.add(cartMailboxes.submit(cartId, service -> service.findOne(cartId)));
+        }
+        assertThatThrownBy(() -> cartMailboxes.submit(cartId, service -> service.findOne(cartId)))
+            .isInstanceOf(RejectedExecutionException.class);
+        assertThat(mailboxMetrics.meter(MetricRegistry.name(CartMailboxes.class, "rejected")).getCount()).isEqualTo(1);
+        // the other carts are not held
+        Long otherCartId = newCart();
+        assertThat(cartMailboxes.execute(otherCartId, service -> service.addItem(createCartItemDTO(otherCartId, product.getId(), 1))).getItemCount())
+            .isEqualTo(1);
+        release.countDown();
+        first.get(10, TimeUnit.SECONDS);
+        CompletableFuture.allOf(queued.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        // the mailbox is released just after the change completes
+        Thread.sleep(100);
+        assertThat(cartMailboxes.evictIdle()).isEqualTo(2);
+        assertThat(mailboxMetrics.getGauges().get(MetricRegistry.name(CartMailboxes.class, "mailboxes")).getValue()).isEqualTo(0);
+    }
+
+    @Test
+    public void hotCartChangesThroughTheMailboxesNeverFail() throws Exception {
+        long[] queued = run(hotCartLines(), true);
+        assertThat(queued[2]).isZero();
+    }
+
+    @Test
+    @Category(Benchmark.class)
+    public void benchmarkHotCarts() throws Exception {
+        List<CartItemDTO> lines = hotCartLines();
+        long[] direct = run(lines, false);
+        long[] queued = run(lines, true);
+        log.info("{} hot carts on {} threads: direct {} changes/s with {} conflicts and {} failed, "
+            + "through the mailboxes {} changes/s with {} conflicts and {} failed", HOT_CARTS, THREADS,
+            direct[0], direct[1], direct[2], queued[0], queued[1], queued[2]);
+        assertThat(queued[2]).isZero();
+    }
+
+    private List<CartItemDTO> hotCartLines() {
+        List<CartItemDTO> lines = new ArrayList<>();
+        for (int i = 0; i < HOT_CARTS; i++) {
+            Long cartId = newCart();
+            CartDTO cart = shoppingCartService.addItem(createCartItemDTO(cartId, product.getId(), 1));
+            CartItemDTO line = createCartItemDTO(cartId, product.getId(), 1);
+            line.setId(cart.getCartItems().iterator().next().getId());
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    // the changes per second, the optimistic locking conflicts and the changes failed after the retries
+    private long[] run(List<CartItemDTO> lines, boolean queued) throws InterruptedException {
+        long conflicts = metricRegistry.meter(MetricRegistry.name(ShoppingCartService.class, "updateItem", "conflicts")).getCount();
+        List<Callable<CartDTO>> tasks = new ArrayList<>();
+        for (int i = 0; i < CHANGES; i++) {
+            CartItemDTO line = lines.get(i % lines.size());
+            CartItemDTO change = createCartItemDTO(line.getCartId(), product.getId(), 1 + i % 5);
+            change.setId(line.getId());
+            tasks.add(queued
+                ? () -> cartMailboxes.execute(change.getCartId(), service -> service.updateItem(change))
+                : () -> shoppingCartService.updateItem(change));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        long failed = 0;
+        long start = System.nanoTime();
+        try {
+            for (Future<CartDTO> result : executor.invokeAll(tasks)) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    assertThat(e.getCause()).isInstanceOf(ObjectOptimisticLockingFailureException.class);
+                    failed++;
+                }
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        long changesPerSecond = CHANGES * TimeUnit.SECONDS.toNanos(1) / (System.nanoTime() - start);
+        conflicts = metricRegistry.meter(MetricRegistry.name(ShoppingCartService.class, "updateItem", "conflicts")).getCount() - conflicts;
+        return new long[] { changesPerSecond, conflicts, failed };
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Long newCart() {
+        Long cartId = shoppingCartService.save(new CartDTO()).getId();
+        cartIds.add(cartId);
+        return cartId;
+    }
+
+    private CartItemDTO createCartItemDTO(Long cartId, Long productId, int quantity) {
+        ProductDTO productDTO = new ProductDTO();
+        productDTO.setId(productId);
+        CartItemDTO cartItemDTO = new CartItemDTO();
+        cartItemDTO.setCartId(cartId);
+        cartItemDTO.setProduct(productDTO);
+        cartItemDTO.setQuantity(quantity);
+        return cartItemDTO;
+    }
+}
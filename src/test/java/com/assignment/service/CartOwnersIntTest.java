@@ -0,0 +1,252 @@
+package com.assignment.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.assignment.AssignmentApp;
+import com.assignment.Benchmark;
+import com.assignment.config.ApplicationProperties;
+import com.assignment.domain.Product;
+import com.assignment.repository.CartItemRepository;
+import com.assignment.repository.CartRepository;
+import com.assignment.repository.ProductRepository;
+import com.assignment.service.dto.CartDTO;
+import com.assignment.service.dto.CartItemDTO;
+import com.assignment.service.dto.ProductDTO;
+import com.assignment.web.rest.ProductResourceIntTest;
+import com.assignment.web.rest.errors.CartModifiedException;
+import com.codahale.metrics.MetricRegistry;
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.Member;
+
+/**
+ * Test class for the carts changed on their owner by the CartOwners of a cluster of three members,
+ * with a benchmark of the changes of a few hot carts with and without them, run with the benchmark
+ * profile.
+ *
+ * The grid and the owners are disabled in the test configuration, so the members are started apart
+ * from the application one. They share the shopping cart service of the application, whose grid is
+ * the one of the first member: a change run on another member reads and replaces the cart through
+ * it. These tests commit their own transactions, so they clean up everything they create.
+ *
+ * @see CartOwners
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = AssignmentApp.class)
+public class CartOwnersIntTest {
+
+    private static final int MEMBERS = 3;
+    private static final int STOCK = 1_000_000;
+    private static final int HOT_CARTS = 3;
+    private static final int THREADS_PER_MEMBER = 4;
+    private static final int CHANGES = 300;
+
+    private final Logger log = LoggerFactory.getLogger(CartOwnersIntTest.class);
+
+    @Autowired
+    private ShoppingCartService shoppingCartService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    private final List<HazelcastInstance> members = new ArrayList<>();
+
+    private final List<CartOwners> cartOwners = new ArrayList<>();
+
+    private final List<MetricRegistry> memberMetrics = new ArrayList<>();
+
+    private final List<Long> cartIds = new ArrayList<>();
+
+    private Product product;
+
+    @Before
+    public void initTest() {
+        product = productRepository.saveAndFlush(ProductResourceIntTest.createEntity(em)
+            .quantity(STOCK));
+        ApplicationProperties.Cart.Grid grid = new ApplicationProperties.Cart.Grid();
+        grid.setWriteDelaySeconds(60);
+        grid.setOwnerPoolSize(THREADS_PER_MEMBER);
+        CartStateMapStore mapStore = new CartStateMapStore(cartRepository, cartItemRepository, new MetricRegistry(), transactionManager);
+        mapStore.registerMetrics();
+        for (int i = 0; i < MEMBERS; i++) {
+            Config config = new Config();
+            config.getGroupConfig().setName("cart-owners-test");
+            config.setProperty("hazelcast.wait.seconds.before.join", "0");
+            config.getNetworkConfig().setPort(5901).setPortAutoIncrement(true);
+            JoinConfig join = config.getNetworkConfig().getJoin();
+            join.getMulticastConfig().setEnabled(false);
+            join.getTcpIpConfig().setEnabled(true).addMember("127.0.0.1");
+            config.addMapConfig(CartGrid.mapConfig(grid, (mapName, properties) -> mapStore));
+            config.addExecutorConfig(CartOwners.executorConfig(grid));
+            HazelcastInstance member = Hazelcast.newHazelcastInstance(config);
+            members.add(member);
+            MetricRegistry metrics = new MetricRegistry();
+            CartOwners owners = new CartOwners(member, shoppingCartService, metrics);
+            owners.register();
+            memberMetrics.add(metrics);
+            cartOwners.add(owners);
+        }
+        assertThat(members.get(0).getCluster().getMembers()).hasSize(MEMBERS);
+        shoppingCartService.setCartStateStore(new CartGrid(members.get(0), new ApplicationProperties(), new MetricRegistry()));
+    }
+
+    @After
+    public void cleanUp() {
+        shoppingCartService.setCartStateStore(null);
+        members.forEach(HazelcastInstance::shutdown);
+        shoppingCartService.purge(cartIds);
+        productRepository.delete(product.getId());
+    }
+
+    @Test
+    public void changesRunOnTheOwnerOfTheCart() {
+        Long cartId = newCart();
+        int caller = (ownerIndex(cartId) + 1) % MEMBERS;
+        CartItemDTO newLine = createCartItemDTO(cartId, null, 2);
+
+        CartDTO cart = cartOwners.get(caller).execute(cartId, service -> service.addItem(newLine));
+
+        assertThat(cart.getCartItems()).extracting(CartItemDTO::getQuantity).containsExactly(2);
+        assertThat(memberMetrics.get(caller).meter(MetricRegistry.name(CartOwners.class, "routed")).getCount()).isEqualTo(1);
+        assertThat(shoppingCartService.findOne(cartId).getItemCount()).isEqualTo(2);
+
+        // the exceptions of the change are rethrown on the caller
+        CartItemDTO line = createCartItemDTO(cartId, cart.getCartItems().iterator().next().getId(), 3);
+        assertThatThrownBy(() -> cartOwners.get(caller).execute(cartId, service -> service.updateItem(line, Collections.singletonList("stale"))))
+            .isInstanceOf(CartModifiedException.class);
+        CartDTO updated = cartOwners.get(ownerIndex(cartId)).execute(cartId, service -> service.updateItem(line));
+        assertThat(updated.getItemCount()).isEqualTo(3);
+        assertThat(memberMetrics.get(ownerIndex(cartId)).meter(MetricRegistry.name(CartOwners.class, "local")).getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void hotCartChangesOnTheOwnersNeverFail() throws Exception {
+        long[] routed = run(hotCartLines(), true);
+        assertThat(routed[2]).isZero();
+    }
+
+    @Test
+    @Category(Benchmark.class)
+    public void benchmarkHotCarts() throws Exception {
+        List<CartItemDTO> lines = hotCartLines();
+        long[] direct = run(lines, false);
+        long[] routed = run(lines, true);
+        log.info("{} hot carts on {} members: direct {} changes/s with {} conflicts and {} failed, "
+            + "on the owners {} changes/s with {} conflicts and {} failed", HOT_CARTS, MEMBERS,
+            direct[0], direct[1], direct[2], routed[0], routed[1], routed[2]);
+        assertThat(routed[2]).isZero();
+    }
+
+    private List<CartItemDTO> hotCartLines() {
+        List<CartItemDTO> lines = new ArrayList<>();
+        for (int i = 0; i < HOT_CARTS; i++) {
+            Long cartId = newCart();
+            CartDTO cart = shoppingCartService.addItem(createCartItemDTO(cartId, null, 1));
+            lines.add(createCartItemDTO(cartId, cart.getCartItems().iterator().next().getId(), 1));
+        }
+        return lines;
+    }
+
+    // the changes per second, the optimistic locking conflicts and the changes failed after the retries
+    private long[] run(List<CartItemDTO> lines, boolean routed) throws InterruptedException {
+        long conflicts = metricRegistry.meter(MetricRegistry.name(ShoppingCartService.class, "updateItem", "conflicts")).getCount();
+        List<Callable<CartDTO>> tasks = new ArrayList<>();
+        for (int i = 0; i < CHANGES; i++) {
+            CartItemDTO line = lines.get(i % lines.size());
+            CartItemDTO change = createCartItemDTO(line.getCartId(), line.getId(), 1 + i % 5);
+            CartOwners owners = cartOwners.get(i % MEMBERS);
+            tasks.add(routed
+                ? () -> owners.execute(change.getCartId(), service -> service.updateItem(change))
+                : () -> shoppingCartService.updateItem(change));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(MEMBERS * THREADS_PER_MEMBER);
+        long failed = 0;
+        long start = System.nanoTime();
+        try {
+            for (Future<CartDTO> result : executor.invokeAll(tasks)) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    assertThat(e.getCause()).isInstanceOf(ObjectOptimisticLockingFailureException.class);
+                    failed++;
+                }
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        long changesPerSecond = CHANGES * TimeUnit.SECONDS.toNanos(1) / (System.nanoTime() - start);
+        conflicts = metricRegistry.meter(MetricRegistry.name(ShoppingCartService.class, "updateItem", "conflicts")).getCount() - conflicts;
+        return new long[] { changesPerSecond, conflicts, failed };
+    }
+
+    private int ownerIndex(Long cartId) {
+        Member owner = members.get(0).getPartitionService().getPartition(cartId).getOwner();
+        for (int i = 0; i < MEMBERS; i++) {
+            if (members.get(i).getCluster().getLocalMember().equals(owner)) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("No owner of cart " + cartId);
+    }
+
+    private Long newCart() {
+        Long cartId = shoppingCartService.save(new CartDTO()).getId();
+        cartIds.add(cartId);
+        return cartId;
+    }
+
+    private CartItemDTO createCartItemDTO(Long cartId, Long id, int quantity) {
+        ProductDTO productDTO = new ProductDTO();
+        productDTO.setId(product.getId());
+        CartItemDTO cartItemDTO = new CartItemDTO();
+        cartItemDTO.setId(id);
+        cartItemDTO.setCartId(cartId);
+        cartItemDTO.setProduct(productDTO);
+        cartItemDTO.setQuantity(quantity);
+        return cartItemDTO;
+    }
+}
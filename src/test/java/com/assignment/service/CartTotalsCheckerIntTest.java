@@ -0,0 +1,95 @@
+package com.assignment.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+
+import javax.persistence.EntityManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.assignment.AssignmentApp;
+import com.assignment.config.ApplicationProperties;
+import com.assignment.domain.Cart;
+import com.assignment.domain.CartItem;
+import com.assignment.domain.Money;
+import com.assignment.domain.Product;
+import com.assignment.repository.CartItemRepository;
+import com.assignment.repository.CartRepository;
+import com.assignment.web.rest.ProductResourceIntTest;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Test class for the CartTotalsChecker.
+ *
+ * The checker is given a sample covering all the carts, so the carts of the other tests are checked
+ * too: only the change of the number of drifted carts is asserted.
+ *
+ * @see CartTotalsChecker
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = AssignmentApp.class)
+@Transactional
+public class CartTotalsCheckerIntTest {
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EntityManager em;
+
+    private CartTotalsChecker cartTotalsChecker;
+
+    private Product product;
+
+    private Cart cart;
+
+    @Before
+    public void initTest() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getCart().getTotals().setCheckerSampleSize(Integer.MAX_VALUE);
+        cartTotalsChecker = new CartTotalsChecker(cartRepository, cartItemRepository, applicationProperties,
+            new MetricRegistry(), transactionManager);
+        cartTotalsChecker.registerMetrics();
+        product = ProductResourceIntTest.createEntity(em).price(new BigDecimal("1.50"));
+        em.persist(product);
+        cart = new Cart().itemCount(3).subtotal(Money.ofMinor(450));
+        em.persist(cart);
+        em.persist(new CartItem().quantity(3).lineTotal(Money.ofMinor(450)).product(product).cart(cart));
+        em.persist(new Cart());
+        em.flush();
+    }
+
+    @Test
+    public void driftedTotalsAreReported() {
+        int drifted = cartTotalsChecker.check();
+
+        cart.setSubtotal(Money.ofMinor(600));
+        em.flush();
+
+        assertThat(cartTotalsChecker.check()).isEqualTo(drifted + 1);
+    }
+
+    @Test
+    public void changedPriceIsNotADrift() {
+        int drifted = cartTotalsChecker.check();
+
+        product.setPrice(new BigDecimal("2.00"));
+        em.flush();
+
+        assertThat(cartTotalsChecker.check()).isEqualTo(drifted);
+    }
+}
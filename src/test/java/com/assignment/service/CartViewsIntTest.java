@@ -0,0 +1,125 @@
+package com.assignment.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.assignment.AssignmentApp;
+import com.assignment.domain.Product;
+import com.assignment.repository.ProductRepository;
+import com.assignment.service.dto.CartDTO;
+import com.assignment.service.dto.CartItemDTO;
+import com.assignment.service.dto.ProductDTO;
+import com.assignment.web.rest.ProductResourceIntTest;
+import com.codahale.metrics.MetricRegistry;
+import com.hazelcast.core.HazelcastInstance;
+
+/**
+ * Test class for the carts read from their CartViews.
+ *
+ * The views are disabled in the test configuration, so the shopping cart service is given some. These
+ * tests commit their own transactions, so they clean up everything they create.
+ *
+ * @see CartViews
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = AssignmentApp.class)
+public class CartViewsIntTest {
+
+    @Autowired
+    private ShoppingCartService shoppingCartService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private CartViews cartViews;
+
+    private Product product;
+
+    private final List<Long> cartIds = new ArrayList<>();
+
+    @Before
+    public void initTest() {
+        product = productRepository.saveAndFlush(ProductResourceIntTest.createEntity(em)
+            .price(BigDecimal.TEN)
+            .quantity(100));
+        cartViews = new CartViews(hazelcastInstance, new MetricRegistry());
+        cartViews.registerMetrics();
+        shoppingCartService.setCartViews(cartViews);
+    }
+
+    @After
+    public void cleanUp() {
+        shoppingCartService.purge(cartIds);
+        shoppingCartService.setCartViews(null);
+        cartViews.clear();
+        productRepository.delete(product.getId());
+    }
+
+    @Test
+    public void cartIsReadFromItsView() {
+        Long cartId = shoppingCartService.save(new CartDTO()).getId();
+        cartIds.add(cartId);
+        shoppingCartService.addItem(createCartItemDTO(cartId, 2));
+        String stamp = shoppingCartService.findStamp(cartId);
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        CartDTO cart = shoppingCartService.findOne(cartId, stamp);
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(cart.getItemCount()).isEqualTo(2);
+        assertThat(cart.getSubtotal()).isEqualByComparingTo("20.00");
+        assertThat(cart.getCartItems()).extracting(item -> item.getProduct().getName()).containsExactly(product.getName());
+
+        // a view of another stamp is not served, the cart read makes it again
+        CartItemDTO line = cart.getCartItems().iterator().next();
+        line.setCartId(cartId);
+        line.setQuantity(3);
+        shoppingCartService.updateItem(line, Collections.singletonList(stamp));
+        String changedStamp = shoppingCartService.findStamp(cartId);
+        assertThat(cartViews.get(cartId, stamp)).isNull();
+        assertThat(cartViews.get(cartId, changedStamp).getItemCount()).isEqualTo(3);
+
+        cartViews.clear();
+        assertThat(shoppingCartService.rebuildViews()).isGreaterThanOrEqualTo(1);
+        assertThat(cartViews.get(cartId, changedStamp).getSubtotal()).isEqualByComparingTo("30.00");
+
+        shoppingCartService.delete(cartId);
+        assertThat(cartViews.get(cartId, changedStamp)).isNull();
+    }
+
+    private CartItemDTO createCartItemDTO(Long cartId, int quantity) {
+        ProductDTO productDTO = new ProductDTO();
+        productDTO.setId(product.getId());
+        CartItemDTO cartItemDTO = new CartItemDTO();
+        cartItemDTO.setCartId(cartId);
+        cartItemDTO.setProduct(productDTO);
+        cartItemDTO.setQuantity(quantity);
+        return cartItemDTO;
+    }
+}
@@ -0,0 +1,69 @@
+package com.assignment.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import com.assignment.AssignmentApp;
+import com.assignment.config.ApplicationProperties;
+import com.codahale.metrics.MetricRegistry;
+import com.hazelcast.core.HazelcastInstance;
+
+/**
+ * Test class for the IdempotentRequests.
+ *
+ * @see IdempotentRequests
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = AssignmentApp.class)
+public class IdempotentRequestsIntTest {
+
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    private IdempotentRequests idempotentRequests;
+
+    @Before
+    public void initTest() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getCart().getIdempotency().setLockLeaseSeconds(1);
+        idempotentRequests = new IdempotentRequests(hazelcastInstance, applicationProperties, new MetricRegistry());
+        idempotentRequests.registerMetrics();
+    }
+
+    @Test
+    public void retryIsReplayed() {
+        String key = UUID.randomUUID().toString();
+
+        IdempotentRequests.Result<String> first = idempotentRequests.execute(key, "request", () -> "result");
+        IdempotentRequests.Result<String> retry = idempotentRequests.execute(key, "request", () -> "executed again");
+
+        assertThat(first.isReplayed()).isFalse();
+        assertThat(retry.isReplayed()).isTrue();
+        assertThat(retry.getValue()).isEqualTo("result");
+    }
+
+    @Test
+    public void requestOutlivingItsLeaseStillAnswers() {
+        String key = UUID.randomUUID().toString();
+
+        IdempotentRequests.Result<String> result = idempotentRequests.execute(key, "request", () -> {
+            try {
+                Thread.sleep(1500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "result";
+        });
+
+        assertThat(result.getValue()).isEqualTo("result");
+        assertThat(idempotentRequests.execute(key, "request", () -> "executed again").isReplayed()).isTrue();
+    }
+}
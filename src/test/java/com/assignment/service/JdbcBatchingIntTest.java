@@ -0,0 +1,165 @@
+package com.assignment.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.Session;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.assignment.AssignmentApp;
+import com.assignment.config.JdbcBatchingCheck;
+import com.assignment.domain.Cart;
+import com.assignment.domain.Product;
+import com.assignment.repository.CartRepository;
+import com.assignment.repository.ProductRepository;
+import com.assignment.service.dto.CartItemDTO;
+import com.assignment.service.dto.ProductDTO;
+import com.assignment.web.rest.ProductResourceIntTest;
+
+/**
+ * Benchmark of the statements and round-trips of the cart operations, with and without JDBC batching.
+ *
+ * These tests commit their own transactions, so they clean up everything they create.
+ *
+ * @see JdbcBatchingCheck
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = AssignmentApp.class)
+public class JdbcBatchingIntTest {
+
+    private static final int PRODUCTS = 40;
+    private static final int STOCK = 10;
+
+    private final Logger log = LoggerFactory.getLogger(JdbcBatchingIntTest.class);
+
+    @Autowired
+    private ShoppingCartService shoppingCartService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private JdbcBatchingCheck jdbcBatchingCheck;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private List<Product> products;
+
+    private List<Cart> carts;
+
+    @Before
+    public void initTest() {
+        products = new ArrayList<>();
+        for (int i = 0; i < PRODUCTS; i++) {
+            products.add(ProductResourceIntTest.createEntity(em).quantity(STOCK));
+        }
+        products = productRepository.save(products);
+        carts = cartRepository.save(Arrays.asList(new Cart(), new Cart()));
+    }
+
+    @After
+    public void cleanUp() {
+        shoppingCartService.purge(carts.stream().map(Cart::getId).collect(Collectors.toList()));
+        products.forEach(product -> productRepository.delete(product.getId()));
+    }
+
+    @Test
+    public void batchingSettingsAreConsistent() {
+        assertThat(jdbcBatchingCheck.getProblems()).isEmpty();
+    }
+
+    @Test
+    public void addItemsInsertsTheNewLinesByBatches() {
+        JdbcCounter unbatched = addItems(carts.get(0), 1);
+        JdbcCounter batched = addItems(carts.get(1), null);
+
+        // the reservations are one statement per product either way, the inserts and the touch of the
+        // cart are batched, and either run may take a new block of ids from the sequence
+        assertThat(unbatched.batches).isZero();
+        assertThat(batched.batches).isGreaterThan(0);
+        assertThat(batched.statements).isCloseTo(unbatched.statements - PRODUCTS - 1, within(1));
+        assertThat(batched.getRoundTrips()).isLessThanOrEqualTo(unbatched.getRoundTrips() - PRODUCTS + batched.batches + 1);
+    }
+
+    /**
+     * Add a line of each product to the cart, counting the JDBC calls.
+     *
+     * @param batchSize the JDBC batch size of the session, null for the configured one
+     */
+    private JdbcCounter addItems(Cart cart, Integer batchSize) {
+        List<CartItemDTO> cartItemDTOs = products.stream().map(product -> {
+            ProductDTO productDTO = new ProductDTO();
+            productDTO.setId(product.getId());
+            CartItemDTO cartItemDTO = new CartItemDTO();
+            cartItemDTO.setProduct(productDTO);
+            cartItemDTO.setQuantity(1);
+            return cartItemDTO;
+        }).collect(Collectors.toList());
+        JdbcCounter counter = new JdbcCounter();
+        long start = System.nanoTime();
+        new TransactionTemplate(transactionManager).execute(status -> {
+            Session session = entityManager.unwrap(Session.class);
+            session.setJdbcBatchSize(batchSize);
+            session.addEventListeners(counter);
+            return shoppingCartService.addItems(cart.getId(), cartItemDTOs, false);
+        });
+        log.info("Added {} cart items with a JDBC batch size of {} in {} ms: {} statements, {} batches, {} round-trips",
+            PRODUCTS, batchSize == null ? "default" : batchSize, (System.nanoTime() - start) / 1_000_000,
+            counter.statements, counter.batches, counter.getRoundTrips());
+        return counter;
+    }
+
+    /**
+     * Counts the statements executed alone and the batches sent by a session.
+     */
+    private static class JdbcCounter extends BaseSessionEventListener {
+
+        private static final long serialVersionUID = 1L;
+
+        private int statements;
+
+        private int batches;
+
+        @Override
+        public void jdbcExecuteStatementStart() {
+            statements++;
+        }
+
+        @Override
+        public void jdbcExecuteBatchStart() {
+            batches++;
+        }
+
+        int getRoundTrips() {
+            return statements + batches;
+        }
+    }
+}
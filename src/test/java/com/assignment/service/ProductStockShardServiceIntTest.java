@@ -0,0 +1,184 @@
+package com.assignment.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.assignment.AssignmentApp;
+import com.assignment.Benchmark;
+import com.assignment.domain.Product;
+import com.assignment.repository.ProductRepository;
+import com.assignment.repository.ProductStockShardRepository;
+import com.assignment.web.rest.ProductResourceIntTest;
+
+/**
+ * Test class for the ProductStockShardService.
+ *
+ * Stock sharding is disabled in the test configuration, so the service is created by hand.
+ * These tests commit their own transactions, so they clean up everything they create.
+ *
+ * @see ProductStockShardService
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = AssignmentApp.class)
+public class ProductStockShardServiceIntTest {
+
+    private static final int STOCK = 2000;
+    private static final int THREADS = 16;
+
+    private final Logger log = LoggerFactory.getLogger(ProductStockShardServiceIntTest.class);
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private ProductStockShardRepository productStockShardRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private ProductStockShardService productStockShardService;
+
+    private TransactionTemplate transactionTemplate;
+
+    private Product product;
+
+    @Before
+    public void initTest() {
+        product = productRepository.saveAndFlush(ProductResourceIntTest.createEntity(em)
+            .quantity(STOCK));
+        productStockShardService = new ProductStockShardService(productStockShardRepository, productRepository,
+            entityManagerFactory);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @After
+    public void cleanUp() {
+        transactionTemplate.execute(status -> productStockShardService.dropShards(product.getId()));
+        productRepository.delete(product.getId());
+    }
+
+    @Test
+    public void shardMovesTheQuantityIntoShards() {
+        int moved = transactionTemplate.execute(status -> productStockShardService.shard(product.getId(), 3));
+
+        assertThat(moved).isEqualTo(STOCK);
+        assertThat(productRepository.findOne(product.getId()).getQuantity()).isEqualTo(0);
+        assertThat(productStockShardRepository.findQuantities(product.getId()))
+            .extracting(shard -> shard[1])
+            .containsExactlyInAnyOrder(667, 667, 666);
+        assertThat(productStockShardService.sumQuantities(Collections.singletonList(product.getId())))
+            .containsEntry(product.getId(), (long) STOCK);
+    }
+
+    @Test
+    public void reserveTakesFromSeveralShards() {
+        transactionTemplate.execute(status -> productStockShardService.shard(product.getId(), 2));
+
+        // each shard holds 1000, a reservation takes what it lacks from the other one
+        assertThat(reserve(1500)).isTrue();
+        assertThat(reserve(501)).isFalse();
+        assertThat(productStockShardService.sumQuantities(Collections.singletonList(product.getId())))
+            .containsEntry(product.getId(), 500L);
+        assertThat(reserve(500)).isTrue();
+        assertThat(productStockShardService.sumQuantities(Collections.singletonList(product.getId())))
+            .containsEntry(product.getId(), 0L);
+    }
+
+    @Test
+    public void releaseGoesToTheShardsOfTheProduct() {
+        transactionTemplate.execute(status -> productStockShardService.shard(product.getId(), 1));
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(release(1)).isTrue();
+        }
+        assertThat(productStockShardService.sumQuantities(Collections.singletonList(product.getId())))
+            .containsEntry(product.getId(), STOCK + 10L);
+    }
+
+    @Test
+    public void resetShardsSpreadsTheNewQuantity() {
+        transactionTemplate.execute(status -> productStockShardService.shard(product.getId(), 3));
+
+        boolean sharded = transactionTemplate.execute(status -> productStockShardService.resetShards(product.getId(), 100));
+
+        assertThat(sharded).isTrue();
+        assertThat(productStockShardRepository.findQuantities(product.getId()))
+            .extracting(shard -> shard[1])
+            .containsExactlyInAnyOrder(34, 33, 33);
+    }
+
+    @Test
+    @Category(Benchmark.class)
+    public void compareOneAndSixteenShards() throws Exception {
+        long oneShard = reserveAll(1);
+        transactionTemplate.execute(status -> productStockShardService.dropShards(product.getId()));
+        transactionTemplate.execute(status -> productRepository.increaseQuantity(product.getId(), STOCK));
+        long sixteenShards = reserveAll(16);
+
+        log.info("Commit throughput for one hot product: 1 shard {} commits/s, 16 shards {} commits/s",
+            STOCK * 1000L / Math.max(oneShard, 1), STOCK * 1000L / Math.max(sixteenShards, 1));
+    }
+
+    private boolean reserve(int quantity) {
+        return transactionTemplate.execute(status -> productStockShardService.reserve(product.getId(), quantity));
+    }
+
+    private boolean release(int quantity) {
+        return transactionTemplate.execute(status -> productStockShardService.release(product.getId(), quantity));
+    }
+
+    private long reserveAll(int shardCount) throws Exception {
+        transactionTemplate.execute(status -> productStockShardService.shard(product.getId(), shardCount));
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        for (int i = 0; i < STOCK; i++) {
+            tasks.add(() -> transactionTemplate.execute(status -> productStockShardService.reserve(product.getId(), 1)));
+        }
+        ExecutorService executorService = Executors.newFixedThreadPool(THREADS);
+        try {
+            long start = System.nanoTime();
+            List<Future<Boolean>> futures = executorService.invokeAll(tasks);
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            long reserved = 0;
+            for (Future<Boolean> future : futures) {
+                reserved += future.get() ? 1 : 0;
+            }
+            // a reservation can only miss when every shard it read was drained
+            assertThat(reserved).isLessThanOrEqualTo(STOCK);
+            assertThat(productStockShardService.sumQuantities(Collections.singletonList(product.getId())))
+                .containsEntry(product.getId(), STOCK - reserved);
+            return elapsed;
+        } finally {
+            executorService.shutdown();
+        }
+    }
+}
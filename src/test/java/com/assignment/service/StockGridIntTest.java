@@ -0,0 +1,164 @@
+package com.assignment.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.assignment.AssignmentApp;
+import com.assignment.config.ApplicationProperties;
+import com.assignment.domain.Product;
+import com.assignment.repository.ProductRepository;
+import com.assignment.web.rest.ProductResourceIntTest;
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.Member;
+
+/**
+ * Test class for the StockGrid.
+ *
+ * The grid is disabled in the test configuration, so a cluster of several Hazelcast members is
+ * started on localhost, apart from the application one, with a stock grid per member.
+ *
+ * @see StockGrid
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = AssignmentApp.class)
+public class StockGridIntTest {
+
+    private static final int MEMBERS = 3;
+    private static final int STOCK = 100;
+    private static final int REQUESTS = 300;
+    private static final int THREADS = 12;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final List<HazelcastInstance> members = new ArrayList<>();
+
+    private final List<StockGrid> stockGrids = new ArrayList<>();
+
+    private Product product;
+
+    @Before
+    public void initTest() {
+        product = productRepository.saveAndFlush(ProductResourceIntTest.createEntity(em)
+            .quantity(STOCK));
+        ApplicationProperties.Stock.Grid grid = new ApplicationProperties.Stock.Grid();
+        grid.setWriteDelaySeconds(60);
+        ProductStockMapStore mapStore = new ProductStockMapStore(productRepository, entityManagerFactory, transactionManager);
+        for (int i = 0; i < MEMBERS; i++) {
+            Config config = new Config();
+            config.getGroupConfig().setName("stock-grid-test");
+            config.setProperty("hazelcast.wait.seconds.before.join", "0");
+            config.getNetworkConfig().setPort(5801).setPortAutoIncrement(true);
+            JoinConfig join = config.getNetworkConfig().getJoin();
+            join.getMulticastConfig().setEnabled(false);
+            join.getTcpIpConfig().setEnabled(true).addMember("127.0.0.1");
+            config.addMapConfig(StockGrid.mapConfig(grid, (mapName, properties) -> mapStore));
+            HazelcastInstance member = Hazelcast.newHazelcastInstance(config);
+            members.add(member);
+            stockGrids.add(new StockGrid(member));
+        }
+        assertThat(members.get(0).getCluster().getMembers()).hasSize(MEMBERS);
+    }
+
+    @After
+    public void cleanUp() {
+        members.forEach(HazelcastInstance::shutdown);
+        productRepository.delete(product.getId());
+    }
+
+    @Test
+    public void parallelReservationsOnAllMembersNeverOversell() throws Exception {
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            StockGrid stockGrid = stockGrids.get(i % MEMBERS);
+            tasks.add(() -> stockGrid.reserve(product.getId(), 1));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        int reserved = 0;
+        try {
+            for (Future<Boolean> result : executor.invokeAll(tasks)) {
+                reserved += result.get() ? 1 : 0;
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+
+        assertThat(reserved).isEqualTo(STOCK);
+        for (StockGrid stockGrid : stockGrids) {
+            assertThat(stockGrid.getAvailable(product.getId())).isZero();
+        }
+        // written behind, the product row is untouched until the grid is flushed
+        assertThat(productRepository.findQuantity(product.getId())).isEqualTo(STOCK);
+        stockGrids.get(0).flush();
+        assertThat(productRepository.findQuantity(product.getId())).isZero();
+    }
+
+    @Test
+    public void reservationsSurviveTheLossOfThePartitionOwner() {
+        assertThat(stockGrids.get(0).reserve(product.getId(), 30)).isTrue();
+        assertThat(stockGrids.get(1).reserve(product.getId(), 80)).isFalse();
+        stockGrids.get(2).release(product.getId(), 5);
+
+        Member owner = members.get(0).getPartitionService().getPartition(product.getId()).getOwner();
+        HazelcastInstance ownerMember = members.stream()
+            .filter(member -> member.getCluster().getLocalMember().equals(owner))
+            .findFirst().get();
+        int survivor = (members.indexOf(ownerMember) + 1) % MEMBERS;
+        ownerMember.getLifecycleService().terminate();
+
+        assertThat(stockGrids.get(survivor).getAvailable(product.getId())).isEqualTo(STOCK - 25);
+        stockGrids.get(survivor).flush();
+        assertThat(productRepository.findQuantity(product.getId())).isEqualTo(STOCK - 25);
+    }
+
+    @Test
+    public void flushWritesTheChangeOfQuantity() {
+        assertThat(stockGrids.get(0).reserve(product.getId(), 10)).isTrue();
+        // the quantity is changed outside of the grid before the write behind
+        new TransactionTemplate(transactionManager).execute(status ->
+            productRepository.increaseQuantity(product.getId(), 50));
+
+        stockGrids.get(1).flush();
+
+        assertThat(productRepository.findQuantity(product.getId())).isEqualTo(STOCK + 50 - 10);
+    }
+
+    @Test
+    public void unknownProductCannotBeReserved() {
+        assertThat(stockGrids.get(0).reserve(Long.MAX_VALUE, 1)).isFalse();
+        assertThat(stockGrids.get(1).getAvailable(Long.MAX_VALUE)).isNull();
+    }
+}
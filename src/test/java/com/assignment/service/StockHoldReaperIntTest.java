@@ -0,0 +1,117 @@
+package com.assignment.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+
+import javax.persistence.EntityManager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.assignment.AssignmentApp;
+import com.assignment.domain.Cart;
+import com.assignment.domain.CartItem;
+import com.assignment.domain.Money;
+import com.assignment.domain.Product;
+import com.assignment.repository.CartItemRepository;
+import com.assignment.repository.CartRepository;
+import com.assignment.repository.ProductRepository;
+import com.assignment.web.rest.ProductResourceIntTest;
+
+/**
+ * Test class for the StockHoldReaper.
+ *
+ * @see StockHoldReaper
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = AssignmentApp.class)
+@Transactional
+public class StockHoldReaperIntTest {
+
+    private static final Integer STOCK = 10;
+
+    @Autowired
+    private StockHoldReaper stockHoldReaper;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private EntityManager em;
+
+    private Product product;
+
+    private Cart cart;
+
+    @Before
+    public void initTest() {
+        product = ProductResourceIntTest.createEntity(em).quantity(STOCK);
+        em.persist(product);
+        cart = new Cart();
+        em.persist(cart);
+    }
+
+    @Test
+    public void reapExpiredHolds() {
+        Product other = ProductResourceIntTest.createEntity(em).quantity(STOCK);
+        em.persist(other);
+        CartItem expired = createCartItem(product, 3, Instant.now().minusSeconds(1));
+        CartItem otherExpired = createCartItem(other, 2, Instant.now().minusSeconds(60));
+        CartItem held = createCartItem(new Cart().itemCount(4).subtotal(Money.ofMinor(400)), product, 4,
+            Instant.now().plusSeconds(600));
+        cart.itemCount(5).subtotal(Money.ofMinor(500));
+        em.flush();
+
+        assertThat(stockHoldReaper.reap()).isGreaterThanOrEqualTo(2);
+        em.clear();
+
+        assertThat(cartItemRepository.findOne(expired.getId())).isNull();
+        assertThat(cartItemRepository.findOne(otherExpired.getId())).isNull();
+        assertThat(cartItemRepository.findOne(held.getId())).isNotNull();
+        assertThat(productRepository.findOne(product.getId()).getQuantity()).isEqualTo(STOCK + 3);
+        assertThat(productRepository.findOne(other.getId()).getQuantity()).isEqualTo(STOCK + 2);
+        Cart reaped = cartRepository.findOne(cart.getId());
+        assertThat(reaped.getItemCount()).isZero();
+        assertThat(reaped.getSubtotal()).isEqualTo(Money.ZERO);
+        assertThat(cartRepository.findOne(held.getCart().getId()).getItemCount()).isEqualTo(4);
+    }
+
+    @Test
+    public void keepHoldsWithoutExpiry() {
+        CartItem held = createCartItem(product, 3, null);
+        em.flush();
+
+        stockHoldReaper.reap();
+        em.clear();
+
+        assertThat(cartItemRepository.findOne(held.getId())).isNotNull();
+        assertThat(productRepository.findOne(product.getId()).getQuantity()).isEqualTo(STOCK);
+    }
+
+    private CartItem createCartItem(Product product, int quantity, Instant expiresAt) {
+        return createCartItem(cart, product, quantity, expiresAt);
+    }
+
+    private CartItem createCartItem(Cart cart, Product product, int quantity, Instant expiresAt) {
+        if (cart.getId() == null) {
+            em.persist(cart);
+        }
+        CartItem cartItem = new CartItem().quantity(quantity).lineTotal(product.getUnitPrice().times(quantity))
+            .expiresAt(expiresAt).product(product);
+        cart.addCartItem(cartItem);
+        em.persist(cartItem);
+        return cartItem;
+    }
+}
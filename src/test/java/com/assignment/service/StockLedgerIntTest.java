@@ -0,0 +1,215 @@
+package com.assignment.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.assignment.AssignmentApp;
+import com.assignment.Benchmark;
+import com.assignment.domain.Product;
+import com.assignment.repository.ProductRepository;
+import com.assignment.web.rest.ProductResourceIntTest;
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+
+/**
+ * Test class for the StockLedger.
+ *
+ * The ledger is disabled in the test configuration, so it is created by hand and flushed explicitly.
+ *
+ * @see StockLedger
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = AssignmentApp.class)
+public class StockLedgerIntTest {
+
+    private static final int STOCK = 10000;
+    private static final int REQUESTS = 30000;
+    private static final int THREADS = 16;
+
+    private final Logger log = LoggerFactory.getLogger(StockLedgerIntTest.class);
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    private StockLedger stockLedger;
+
+    private Product product;
+
+    @Before
+    public void initTest() {
+        product = productRepository.saveAndFlush(ProductResourceIntTest.createEntity(em)
+            .quantity(STOCK));
+        stockLedger = new StockLedger(productRepository, entityManagerFactory, transactionManager, hazelcastInstance);
+    }
+
+    @After
+    public void cleanUp() {
+        productRepository.delete(product.getId());
+    }
+
+    @Test
+    public void refusedInACluster() {
+        List<HazelcastInstance> members = new ArrayList<>();
+        try {
+            for (int i = 0; i < 2; i++) {
+                Config config = new Config();
+                config.getGroupConfig().setName("stock-ledger-test");
+                config.setProperty("hazelcast.wait.seconds.before.join", "0");
+                config.getNetworkConfig().setPort(5801).setPortAutoIncrement(true);
+                JoinConfig join = config.getNetworkConfig().getJoin();
+                join.getMulticastConfig().setEnabled(false);
+                join.getTcpIpConfig().setEnabled(true).addMember("127.0.0.1");
+                members.add(Hazelcast.newHazelcastInstance(config));
+            }
+            assertThat(members.get(0).getCluster().getMembers()).hasSize(2);
+
+            assertThatThrownBy(() -> new StockLedger(productRepository, entityManagerFactory, transactionManager, members.get(0)))
+                .isInstanceOf(IllegalStateException.class);
+        } finally {
+            members.forEach(HazelcastInstance::shutdown);
+        }
+    }
+
+    @Test
+    public void parallelReservationsNeverOversell() throws Exception {
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            tasks.add(() -> stockLedger.reserve(product.getId(), 1));
+        }
+        List<Boolean> results = new ArrayList<>();
+        long elapsed = runInParallel(tasks, results);
+        log.info("Stock ledger: {} reservations in {} ms", REQUESTS, elapsed);
+
+        assertThat(results.stream().filter(Boolean::booleanValue).count()).isEqualTo(STOCK);
+        assertThat(stockLedger.getAvailable(product.getId())).isEqualTo(0L);
+        // nothing is written before the flush
+        assertThat(productRepository.findOne(product.getId()).getQuantity()).isEqualTo(STOCK);
+
+        stockLedger.flush();
+        assertThat(productRepository.findOne(product.getId()).getQuantity()).isEqualTo(0);
+    }
+
+    @Test
+    public void flushWritesNetDelta() {
+        stockLedger.reserve(product.getId(), 5);
+        stockLedger.reserve(product.getId(), 3);
+        stockLedger.release(product.getId(), 2);
+        stockLedger.flush();
+
+        assertThat(productRepository.findOne(product.getId()).getQuantity()).isEqualTo(STOCK - 6);
+        assertThat(stockLedger.reconcile()).isEmpty();
+    }
+
+    @Test
+    public void reconcileRealignsOnProductTable() {
+        stockLedger.reserve(product.getId(), 1);
+        // the quantity is changed outside of the ledger
+        new TransactionTemplate(transactionManager).execute(status ->
+            productRepository.increaseQuantity(product.getId(), 100));
+
+        Map<Long, Long> drifts = stockLedger.reconcile();
+
+        assertThat(drifts).containsEntry(product.getId(), -100L);
+        assertThat(stockLedger.getAvailable(product.getId())).isEqualTo(STOCK - 1 + 100L);
+        assertThat(productRepository.findOne(product.getId()).getQuantity()).isEqualTo(STOCK - 1 + 100);
+    }
+
+    @Test
+    public void reconcileDuringReservationsFindsNoDrift() throws Exception {
+        stockLedger.reserve(product.getId(), 1);
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            if (i % 100 == 0) {
+                tasks.add(() -> stockLedger.reconcile().isEmpty());
+            } else {
+                tasks.add(() -> {
+                    if (stockLedger.reserve(product.getId(), 1)) {
+                        stockLedger.release(product.getId(), 1);
+                    }
+                    return true;
+                });
+            }
+        }
+        List<Boolean> results = new ArrayList<>();
+        runInParallel(tasks, results);
+
+        // a reservation not flushed yet is no drift
+        assertThat(results).doesNotContain(false);
+        assertThat(stockLedger.reconcile()).isEmpty();
+        assertThat(productRepository.findOne(product.getId()).getQuantity()).isEqualTo(STOCK - 1);
+    }
+
+    @Test
+    @Category(Benchmark.class)
+    public void compareWithConditionalUpdate() throws Exception {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        List<Callable<Boolean>> conditionalUpdate = new ArrayList<>();
+        List<Callable<Boolean>> ledger = new ArrayList<>();
+        for (int i = 0; i < STOCK / 10; i++) {
+            conditionalUpdate.add(() -> transactionTemplate.execute(status ->
+                productRepository.decreaseQuantity(product.getId(), 1) == 1));
+            ledger.add(() -> stockLedger.reserve(product.getId(), 1));
+        }
+        long ledgerElapsed = runInParallel(ledger, new ArrayList<>());
+        stockLedger.flush();
+        long conditionalUpdateElapsed = runInParallel(conditionalUpdate, new ArrayList<>());
+
+        log.info("Stock reservation of {} requests: conditional update {} ms, stock ledger {} ms",
+            STOCK / 10, conditionalUpdateElapsed, ledgerElapsed);
+        assertThat(productRepository.findOne(product.getId()).getQuantity()).isEqualTo(STOCK - STOCK / 5);
+    }
+
+    private long runInParallel(List<Callable<Boolean>> tasks, List<Boolean> results) throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(THREADS);
+        try {
+            long start = System.nanoTime();
+            List<Future<Boolean>> futures = executorService.invokeAll(tasks);
+            long elapsed = System.nanoTime() - start;
+            for (Future<Boolean> future : futures) {
+                results.add(future.get());
+            }
+            return TimeUnit.NANOSECONDS.toMillis(elapsed);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+}
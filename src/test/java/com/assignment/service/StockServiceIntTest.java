@@ -0,0 +1,273 @@
+package com.assignment.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.assignment.AssignmentApp;
+import com.assignment.Benchmark;
+import com.assignment.domain.Cart;
+import com.assignment.domain.CartItem;
+import com.assignment.domain.Product;
+import com.assignment.repository.CartItemRepository;
+import com.assignment.repository.CartRepository;
+import com.assignment.repository.ProductRepository;
+import com.assignment.service.dto.CartItemDTO;
+import com.assignment.service.dto.ProductDTO;
+import com.assignment.web.rest.ProductResourceIntTest;
+import com.assignment.web.rest.errors.NotEnoughProductQuantityException;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Test class for the concurrent stock reservation of the StockService.
+ *
+ * These tests commit their own transactions, so they clean up everything they create.
+ *
+ * @see StockService
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = AssignmentApp.class)
+public class StockServiceIntTest {
+
+    private static final int STOCK = 100;
+    private static final int REQUESTS = 300;
+    private static final int THREADS = 16;
+    private static final String ADD_ITEM_METRIC = MetricRegistry.name(ShoppingCartService.class, "addItem");
+
+    private final Logger log = LoggerFactory.getLogger(StockServiceIntTest.class);
+
+    @Autowired
+    private ShoppingCartService shoppingCartService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MetricRegistry metricRegistry;
+
+    private Product product;
+
+    private List<Cart> carts;
+
+    @Before
+    public void initTest() {
+        product = productRepository.saveAndFlush(ProductResourceIntTest.createEntity(em)
+            .quantity(STOCK));
+        carts = new ArrayList<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            carts.add(cartRepository.save(new Cart()));
+        }
+        cartRepository.flush();
+    }
+
+    @After
+    public void cleanUp() {
+        new TransactionTemplate(transactionManager).execute(status -> {
+            cartItemRepository.findAll().stream()
+                .filter(cartItem -> cartItem.getProduct().getId().equals(product.getId()))
+                .forEach(cartItemRepository::delete);
+            carts.forEach(cart -> cartRepository.delete(cart.getId()));
+            productRepository.delete(product.getId());
+            return null;
+        });
+    }
+
+    @Test
+    public void purgeGivesStockBack() {
+        for (Cart cart : carts.subList(0, STOCK / 2)) {
+            shoppingCartService.addItem(createCartItemDTO(cart));
+        }
+        assertThat(productRepository.findOne(product.getId()).getQuantity()).isEqualTo(STOCK / 2);
+
+        List<Long> ids = carts.stream().map(Cart::getId).collect(Collectors.toList());
+        assertThat(shoppingCartService.purge(ids)).isEqualTo(REQUESTS);
+        carts.clear();
+
+        assertThat(cartRepository.findAll(ids)).isEmpty();
+        assertThat(productRepository.findOne(product.getId()).getQuantity()).isEqualTo(STOCK);
+    }
+
+    @Test
+    public void parallelAddItemNeverOversells() throws Exception {
+        AtomicInteger rejected = new AtomicInteger();
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        for (Cart cart : carts) {
+            tasks.add(() -> {
+                try {
+                    shoppingCartService.addItem(createCartItemDTO(cart));
+                    return true;
+                } catch (NotEnoughProductQuantityException e) {
+                    rejected.incrementAndGet();
+                    return false;
+                }
+            });
+        }
+
+        long elapsed = runInParallel(tasks);
+        log.info("Conditional update: {} add-item calls in {} ms", REQUESTS, elapsed);
+
+        assertThat(rejected.get()).isEqualTo(REQUESTS - STOCK);
+        assertThat(productRepository.findOne(product.getId()).getQuantity()).isEqualTo(0);
+        assertThat(cartItemRepository.findAll().stream()
+            .filter(cartItem -> cartItem.getProduct().getId().equals(product.getId()))
+            .count()).isEqualTo(STOCK);
+    }
+
+    @Test
+    public void parallelAddItemOnOneCartKeepsStockConsistent() throws Exception {
+        Cart cart = carts.get(0);
+        // one line per product, the cart holds a product once
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < THREADS * 2; i++) {
+            products.add(productRepository.save(ProductResourceIntTest.createEntity(em)
+                .quantity(STOCK)));
+        }
+        productRepository.flush();
+        AtomicInteger failed = new AtomicInteger();
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        for (Product other : products) {
+            tasks.add(() -> {
+                try {
+                    shoppingCartService.addItem(createCartItemDTO(cart, other));
+                    return true;
+                } catch (ConcurrencyFailureException e) {
+                    failed.incrementAndGet();
+                    return false;
+                }
+            });
+        }
+        long callsBefore = metricRegistry.meter(ADD_ITEM_METRIC + ".calls").getCount();
+
+        try {
+            runInParallel(tasks);
+
+            List<CartItem> lines = cartItemRepository.findAll().stream()
+                .filter(cartItem -> cartItem.getCart().getId().equals(cart.getId()))
+                .collect(Collectors.toList());
+            log.info("Add item on one cart: {} retries, {} failures",
+                metricRegistry.meter(ADD_ITEM_METRIC + ".retries").getCount(), failed.get());
+            assertThat(lines).hasSize(products.size() - failed.get());
+            for (Product other : products) {
+                boolean added = lines.stream().anyMatch(cartItem -> cartItem.getProduct().getId().equals(other.getId()));
+                assertThat(productRepository.findOne(other.getId()).getQuantity()).isEqualTo(added ? STOCK - 1 : STOCK);
+            }
+            assertThat(metricRegistry.meter(ADD_ITEM_METRIC + ".calls").getCount() - callsBefore).isEqualTo(products.size());
+        } finally {
+            new TransactionTemplate(transactionManager).execute(status -> {
+                cartItemRepository.findAll().stream()
+                    .filter(cartItem -> cartItem.getCart().getId().equals(cart.getId()))
+                    .forEach(cartItemRepository::delete);
+                return null;
+            });
+            products.forEach(other -> productRepository.delete(other.getId()));
+        }
+    }
+
+    @Test
+    @Category(Benchmark.class)
+    public void compareWithLoadModifySave() throws Exception {
+        // the former path: read the quantity, then save it back, now rejected by the version check
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        AtomicInteger conflicts = new AtomicInteger();
+        List<Callable<Boolean>> loadModifySave = new ArrayList<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            loadModifySave.add(() -> {
+                try {
+                    return transactionTemplate.execute(status -> {
+                        Product current = productRepository.findOne(product.getId());
+                        current.setQuantity(current.getQuantity() - 1);
+                        productRepository.save(current);
+                        return true;
+                    });
+                } catch (ObjectOptimisticLockingFailureException e) {
+                    conflicts.incrementAndGet();
+                    return false;
+                }
+            });
+        }
+        long loadModifySaveElapsed = runInParallel(loadModifySave);
+
+        resetStock();
+        List<Callable<Boolean>> conditionalUpdate = new ArrayList<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            conditionalUpdate.add(() -> transactionTemplate.execute(status ->
+                productRepository.decreaseQuantity(product.getId(), 1) == 1));
+        }
+        long conditionalUpdateElapsed = runInParallel(conditionalUpdate);
+
+        log.info("Stock reservation of {} requests: load-modify-save {} ms with {} conflicts, conditional update {} ms",
+            REQUESTS, loadModifySaveElapsed, conflicts.get(), conditionalUpdateElapsed);
+        assertThat(productRepository.findOne(product.getId()).getQuantity()).isEqualTo(0);
+    }
+
+    private void resetStock() {
+        Product current = productRepository.findOne(product.getId());
+        current.setQuantity(STOCK);
+        productRepository.saveAndFlush(current);
+    }
+
+    private CartItemDTO createCartItemDTO(Cart cart) {
+        return createCartItemDTO(cart, product);
+    }
+
+    private CartItemDTO createCartItemDTO(Cart cart, Product product) {
+        ProductDTO productDTO = new ProductDTO();
+        productDTO.setId(product.getId());
+        CartItemDTO cartItemDTO = new CartItemDTO();
+        cartItemDTO.setCartId(cart.getId());
+        cartItemDTO.setProduct(productDTO);
+        cartItemDTO.setQuantity(1);
+        return cartItemDTO;
+    }
+
+    private long runInParallel(List<Callable<Boolean>> tasks) throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(THREADS);
+        try {
+            long start = System.nanoTime();
+            List<Future<Boolean>> futures = executorService.invokeAll(tasks);
+            for (Future<Boolean> future : futures) {
+                future.get();
+            }
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.assignment.web.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.context.embedded.LocalServerPort;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.web.client.RestTemplate;
+
+import com.assignment.AssignmentApp;
+import com.assignment.domain.Product;
+import com.assignment.repository.ProductRepository;
+
+/**
+ * Load test of the asynchronous endpoints under a slow database, on a server of a few worker
+ * threads and a JDBC executor of fewer threads.
+ *
+ * Every connection is taken from the pool after a delay, while pages of products, which need the
+ * database, are requested along with a product in the second-level cache. The cached product is
+ * answered on the worker threads without waiting for the slow requests, which queue on the JDBC
+ * executor. These tests commit their own transactions, so they clean up everything they create.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = { AssignmentApp.class, JdbcExecutorLoadIntTest.SlowDatabase.class },
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = { "server.undertow.worker-threads=" + JdbcExecutorLoadIntTest.WORKER_THREADS,
+        "application.jdbc-executor.pool-size=" + JdbcExecutorLoadIntTest.JDBC_THREADS,
+        "application.jdbc-executor.queue-capacity=1000", "security.basic.enabled=false",
+        "spring.jpa.properties.hibernate.cache.use_second_level_cache=true",
+        "spring.jpa.properties.hibernate.cache.region.factory_class=com.hazelcast.hibernate.HazelcastCacheRegionFactory",
+        "spring.jpa.properties.hibernate.cache.hazelcast.instance_name=assignment" })
+public class JdbcExecutorLoadIntTest {
+
+    static final int WORKER_THREADS = 8;
+    static final int JDBC_THREADS = 4;
+    private static final int CLIENTS = 16;
+    private static final int SLOW_REQUESTS = 64;
+    private static final int CACHED_REQUESTS = 200;
+    private static final long DELAY_MILLIS = 200;
+
+    private final Logger log = LoggerFactory.getLogger(JdbcExecutorLoadIntTest.class);
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    private final RestTemplate restTemplate = new RestTemplate();
+
+    private Product product;
+
+    @Before
+    public void initTest() {
+        product = productRepository.save(new Product()
+            .name("loaded product")
+            .price(BigDecimal.ONE)
+            .quantity(10)
+            .visible(true));
+    }
+
+    @After
+    public void cleanUp() {
+        SlowDatabase.delayMillis = 0;
+        productRepository.delete(product.getId());
+    }
+
+    @Test
+    public void cachedRequestsAreNotHeldBySlowDatabaseWork() throws Exception {
+        String cachedUrl = "http://localhost:" + port + "/api/products/" + product.getId();
+        String slowUrl = "http://localhost:" + port + "/api/products?size=5";
+        // loaded into the second-level cache, enabled for this test only
+        assertThat(restTemplate.getForEntity(cachedUrl, String.class).getStatusCode()).isEqualTo(HttpStatus.OK);
+        SlowDatabase.delayMillis = DELAY_MILLIS;
+
+        List<Long> cachedLatencies = Collections.synchronizedList(new ArrayList<>());
+        List<Long> slowLatencies = Collections.synchronizedList(new ArrayList<>());
+        List<Callable<HttpStatus>> requests = new ArrayList<>();
+        for (int i = 0; i < SLOW_REQUESTS + CACHED_REQUESTS; i++) {
+            // the slow requests first, so they hold everything they can
+            boolean slow = i < SLOW_REQUESTS;
+            requests.add(() -> get(slow ? slowUrl : cachedUrl, slow ? slowLatencies : cachedLatencies));
+        }
+        ThreadSampler sampler = new ThreadSampler();
+        Thread samplerThread = new Thread(sampler, "thread-sampler");
+        samplerThread.start();
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            for (Future<HttpStatus> status : clients.invokeAll(requests)) {
+                assertThat(status.get()).isEqualTo(HttpStatus.OK);
+            }
+        } finally {
+            clients.shutdown();
+            clients.awaitTermination(10, TimeUnit.SECONDS);
+            sampler.stop = true;
+            samplerThread.join();
+        }
+
+        long cachedP99 = percentile(cachedLatencies, 0.99);
+        long slowP50 = percentile(slowLatencies, 0.5);
+        log.info("Database delayed {} ms: cached p99 {} ms, slow p50 {} ms and p99 {} ms; at most {} worker threads, {} JDBC threads and {} threads in all",
+            DELAY_MILLIS, cachedP99, slowP50, percentile(slowLatencies, 0.99), sampler.workerThreads.get(), sampler.jdbcThreads.get(), sampler.allThreads.get());
+        // the latencies of a shared machine vary, the cached requests are still answered before the most of the slow ones
+        assertThat(cachedP99).isLessThan(slowP50);
+        assertThat(sampler.jdbcThreads.get()).isLessThanOrEqualTo(JDBC_THREADS);
+    }
+
+    private HttpStatus get(String url, List<Long> latencies) {
+        long start = System.nanoTime();
+        HttpStatus status = restTemplate.getForEntity(url, String.class).getStatusCode();
+        latencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return status;
+    }
+
+    private static long percentile(List<Long> latencies, double percentile) {
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        return sorted.get((int) Math.ceil(sorted.size() * percentile) - 1);
+    }
+
+    /**
+     * Samples the peak number of threads, by their names.
+     */
+    private static final class ThreadSampler implements Runnable {
+
+        private final AtomicInteger workerThreads = new AtomicInteger();
+
+        private final AtomicInteger jdbcThreads = new AtomicInteger();
+
+        private final AtomicInteger allThreads = new AtomicInteger();
+
+        private volatile boolean stop;
+
+        @Override
+        public void run() {
+            while (!stop) {
+                int workers = 0;
+                int jdbc = 0;
+                int all = 0;
+                for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                    all++;
+                    if (thread.getName().startsWith("XNIO-") && thread.getName().contains(" task-")) {
+                        workers++;
+                    } else if (thread.getName().startsWith("assignment-Jdbc-")) {
+                        jdbc++;
+                    }
+                }
+                workerThreads.accumulateAndGet(workers, Math::max);
+                jdbcThreads.accumulateAndGet(jdbc, Math::max);
+                allThreads.accumulateAndGet(all, Math::max);
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Delays the connections taken from the pool, when a delay is set.
+     */
+    @TestConfiguration
+    static class SlowDatabase {
+
+        static volatile long delayMillis;
+
+        @Bean
+        static BeanPostProcessor slowDataSource() {
+            return new BeanPostProcessor() {
+
+                @Override
+                public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                    return bean;
+                }
+
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (!(bean instanceof DataSource)) {
+                        return bean;
+                    }
+                    return new DelegatingDataSource((DataSource) bean) {
+                        @Override
+                        public Connection getConnection() throws SQLException {
+                            if (delayMillis > 0) {
+                                try {
+                                    Thread.sleep(delayMillis);
+                                } catch (InterruptedException e) {
+                                    Thread.currentThread().interrupt();
+                                }
+                            }
+                            return super.getConnection();
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
@@ -29,6 +29,7 @@ import java.math.BigDecimal;
 import java.util.List;
 
 import static com.assignment.web.rest.TestUtil.createFormattingConversionService;
+import static com.assignment.web.rest.TestUtil.performAsync;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.hasItem;
@@ -84,7 +85,7 @@ public class ProductResourceIntTest {
     @Before
     public void setup() {
         MockitoAnnotations.initMocks(this);
-        final ProductResource productResource = new ProductResource(productService);
+        final ProductResource productResource = new ProductResource(productService, Runnable::run);
         this.restProductMockMvc = MockMvcBuilders.standaloneSetup(productResource)
             .setCustomArgumentResolvers(pageableArgumentResolver)
             .setControllerAdvice(exceptionTranslator)
@@ -238,7 +239,7 @@ public class ProductResourceIntTest {
         productRepository.saveAndFlush(product);
 
         // Get all the productList
-        restProductMockMvc.perform(get("/api/products?sort=id,desc"))
+        performAsync(restProductMockMvc, get("/api/products?sort=id,desc"))
             .andExpect(status().isOk())
             .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
             .andExpect(jsonPath("$.[*].id").value(hasItem(product.getId().intValue())))
@@ -255,7 +256,7 @@ public class ProductResourceIntTest {
         productRepository.saveAndFlush(product);
 
         // Get the product
-        restProductMockMvc.perform(get("/api/products/{id}", product.getId()))
+        performAsync(restProductMockMvc, get("/api/products/{id}", product.getId()))
             .andExpect(status().isOk())
             .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
             .andExpect(jsonPath("$.id").value(product.getId().intValue()))
@@ -269,7 +270,7 @@ public class ProductResourceIntTest {
     @Transactional
     public void getNonExistingProduct() throws Exception {
         // Get the product
-        restProductMockMvc.perform(get("/api/products/{id}", Long.MAX_VALUE))
+        performAsync(restProductMockMvc, get("/api/products/{id}", Long.MAX_VALUE))
             .andExpect(status().isNotFound());
     }
 
@@ -306,6 +307,35 @@ public class ProductResourceIntTest {
         assertThat(testProduct.isVisible()).isEqualTo(UPDATED_VISIBLE);
     }
 
+    @Test
+    @Transactional
+    public void updateProductAfterReservation() throws Exception {
+        // Initialize the database
+        productRepository.saveAndFlush(product);
+        ProductDTO productDTO = productMapper.toDto(productRepository.findOne(product.getId()));
+        em.detach(product);
+
+        // A reservation does not make the product read before it stale
+        productRepository.decreaseQuantity(product.getId(), 1);
+        productDTO.setName(UPDATED_NAME);
+        restProductMockMvc.perform(put("/api/products")
+            .contentType(TestUtil.APPLICATION_JSON_UTF8)
+            .content(TestUtil.convertObjectToJsonBytes(productDTO)))
+            .andExpect(status().isOk());
+
+        // An update without a version is made from the current product
+        productDTO.setVersion(null);
+        productDTO.setPrice(UPDATED_PRICE);
+        restProductMockMvc.perform(put("/api/products")
+            .contentType(TestUtil.APPLICATION_JSON_UTF8)
+            .content(TestUtil.convertObjectToJsonBytes(productDTO)))
+            .andExpect(status().isOk());
+
+        Product testProduct = productRepository.findOne(product.getId());
+        assertThat(testProduct.getName()).isEqualTo(UPDATED_NAME);
+        assertThat(testProduct.getPrice()).isEqualTo(UPDATED_PRICE);
+    }
+
     @Test
     @Transactional
     public void updateNonExistingProduct() throws Exception {
@@ -390,7 +420,7 @@ public class ProductResourceIntTest {
         productRepository.saveAndFlush(productNotMatchName);
 
         // Get all the productList
-        restProductMockMvc.perform(get("/api/products/search").param("keyword", "A"))
+        performAsync(restProductMockMvc, get("/api/products/search").param("keyword", "A"))
             .andExpect(status().isOk())
             .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
             .andExpect(jsonPath("$.[*].id").value(hasItem(product.getId().intValue())))
@@ -421,7 +451,7 @@ public class ProductResourceIntTest {
         productRepository.saveAndFlush(product);
 
         // Get all the productList
-        restProductMockMvc.perform(get("/api/products/search").param("keyword", "CCCC"))
+        performAsync(restProductMockMvc, get("/api/products/search").param("keyword", "CCCC"))
             .andExpect(status().isOk())
             .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
             .andExpect(content().string("[]"));
@@ -437,7 +467,7 @@ public class ProductResourceIntTest {
         productRepository.saveAndFlush(productNotVisible);
 
         // Get all the productList
-        restProductMockMvc.perform(get("/api/products/search").param("keyword", "A"))
+        performAsync(restProductMockMvc, get("/api/products/search").param("keyword", "A"))
             .andExpect(status().isOk())
             .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
             .andExpect(jsonPath("$.[*].id").value(hasItem(product.getId().intValue())))
@@ -458,7 +488,7 @@ public class ProductResourceIntTest {
         productRepository.saveAndFlush(productNotMatchName);
 
         // Get all the productList
-        restProductMockMvc.perform(get("/api/products/search-for-admin").param("keyword", "A"))
+        performAsync(restProductMockMvc, get("/api/products/search-for-admin").param("keyword", "A"))
             .andExpect(status().isOk())
             .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
             .andExpect(jsonPath("$.[*].id").value(hasItem(product.getId().intValue())))
@@ -476,7 +506,7 @@ public class ProductResourceIntTest {
         productRepository.saveAndFlush(product);
 
         // Get all the productList
-        restProductMockMvc.perform(get("/api/products/search-for-admin").param("keyword", "CCCC"))
+        performAsync(restProductMockMvc, get("/api/products/search-for-admin").param("keyword", "CCCC"))
             .andExpect(status().isOk())
             .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
             .andExpect(content().string("[]"));
@@ -492,7 +522,7 @@ public class ProductResourceIntTest {
         productRepository.saveAndFlush(productNotVisible);
 
         // Get all the productList
-        restProductMockMvc.perform(get("/api/products/search-for-admin").param("keyword", "A"))
+        performAsync(restProductMockMvc, get("/api/products/search-for-admin").param("keyword", "A"))
             .andExpect(status().isOk())
             .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
             .andExpect(jsonPath("$.[*].id").value(hasItem(product.getId().intValue())))
@@ -1,6 +1,7 @@
 package com.assignment.web.rest;
 
 import static com.assignment.web.rest.TestUtil.createFormattingConversionService;
+import static com.assignment.web.rest.TestUtil.performAsync;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.not;
@@ -9,13 +10,19 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.List;
+import java.util.UUID;
 
 import javax.persistence.EntityManager;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -23,6 +30,7 @@ import org.mockito.MockitoAnnotations;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.web.PageableHandlerMethodArgumentResolver;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.test.context.junit4.SpringRunner;
@@ -36,10 +44,12 @@ import com.assignment.domain.CartItem;
 import com.assignment.domain.Product;
 import com.assignment.repository.CartItemRepository;
 import com.assignment.repository.CartRepository;
+import com.assignment.service.IdempotentRequests;
 import com.assignment.service.ShoppingCartService;
 import com.assignment.service.dto.CartItemDTO;
 import com.assignment.service.mapper.CartItemMapper;
 import com.assignment.web.rest.errors.ExceptionTranslator;
+import com.codahale.metrics.MetricRegistry;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(classes = AssignmentApp.class)
@@ -60,6 +70,9 @@ public class ShoppingCartResourceIntTest {
 	@Autowired
 	private ShoppingCartService shoppingCartService;
 
+	@Autowired
+	private IdempotentRequests idempotentRequests;
+
 	@Autowired
 	private MappingJackson2HttpMessageConverter jacksonMessageConverter;
 
@@ -81,7 +94,7 @@ public class ShoppingCartResourceIntTest {
 	@Before
 	public void setup() {
 		MockitoAnnotations.initMocks(this);
-		final ShoppingCartResource shoppingCartResource = new ShoppingCartResource(shoppingCartService);
+		final ShoppingCartResource shoppingCartResource = new ShoppingCartResource(shoppingCartService, idempotentRequests, Runnable::run, new MetricRegistry());
 		this.restShoppingCartMockMvc = MockMvcBuilders.standaloneSetup(shoppingCartResource)
 				.setCustomArgumentResolvers(pageableArgumentResolver).setControllerAdvice(exceptionTranslator)
 				.setConversionService(createFormattingConversionService()).setMessageConverters(jacksonMessageConverter)
@@ -141,16 +154,138 @@ public class ShoppingCartResourceIntTest {
 		cartRepository.saveAndFlush(cart);
 
 		// Get the cart
-		restShoppingCartMockMvc.perform(get("/api/shopping-carts/{id}", cart.getId())).andExpect(status().isOk())
+		performAsync(restShoppingCartMockMvc, get("/api/shopping-carts/{id}", cart.getId())).andExpect(status().isOk())
 				.andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8_VALUE))
 				.andExpect(jsonPath("$.id").value(cart.getId().intValue()));
 	}
 	
+	@Test
+	@Transactional
+	public void getCartLoadsItemsAndProductsInOneStatement() throws Exception {
+		// Initialize the database
+		Cart cart = cartItem.getCart();
+		cartItemRepository.saveAndFlush(cartItem);
+		for (int i = 0; i < 3; i++) {
+			Product product = ProductResourceIntTest.createEntity(em);
+			em.persist(product);
+			em.persist(new CartItem().quantity(DEFAULT_QUANTITY).product(product).cart(cart));
+		}
+		em.flush();
+		em.clear();
+		Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+
+		// Get the cart
+		performAsync(restShoppingCartMockMvc, get("/api/shopping-carts/{id}", cart.getId())).andExpect(status().isOk())
+				.andExpect(jsonPath("$.cartItems.length()").value(4))
+				.andExpect(jsonPath("$.cartItems.[*].product.name").value(hasItem(cartItem.getProduct().getName())));
+
+		// the stamp is taken from the cart loaded with its items and products
+		assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+	}
+
+	@Test
+	@Transactional
+	public void getCartNotModified() throws Exception {
+		// Initialize the database
+		Cart cart = cartItem.getCart();
+		cartItemRepository.saveAndFlush(cartItem);
+		String eTag = performAsync(restShoppingCartMockMvc, get("/api/shopping-carts/{id}", cart.getId()))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		assertThat(eTag).startsWith("W/");
+
+		// The same stamp is answered without the cart
+		performAsync(restShoppingCartMockMvc, get("/api/shopping-carts/{id}", cart.getId()).header(HttpHeaders.IF_NONE_MATCH, eTag))
+				.andExpect(status().isNotModified())
+				.andExpect(content().string(""));
+
+		// A change of the items changes the stamp
+		CartItemDTO cartItemDTO = cartItemMapper.toDto(cartItem);
+		cartItemDTO.setQuantity(UPDATED_QUANTITY);
+		shoppingCartService.updateItem(cartItemDTO);
+		em.flush();
+		em.clear();
+		performAsync(restShoppingCartMockMvc, get("/api/shopping-carts/{id}", cart.getId()).header(HttpHeaders.IF_NONE_MATCH, eTag))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.cartItems.[0].quantity").value(UPDATED_QUANTITY))
+				.andExpect(header().string(HttpHeaders.ETAG, not(eTag)));
+	}
+
+	@Test
+	@Transactional
+	public void getCartSummary() throws Exception {
+		// Initialize the database
+		Cart cart = cartItem.getCart();
+		cartItem.getProduct().setPrice(new BigDecimal("2.50"));
+		em.flush();
+		CartItemDTO cartItemDTO = cartItemMapper.toDto(cartItem);
+		cartItemDTO.setQuantity(3);
+		cartItemDTO.setId(shoppingCartService.addItem(cartItemDTO).getCartItems().iterator().next().getId());
+
+		// The totals follow the changes of the items
+		cartItemDTO.setQuantity(UPDATED_QUANTITY);
+		shoppingCartService.updateItem(cartItemDTO);
+		em.flush();
+		em.clear();
+		performAsync(restShoppingCartMockMvc, get("/api/shopping-carts/{id}/summary", cart.getId()))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.id").value(cart.getId().intValue()))
+				.andExpect(jsonPath("$.itemCount").value(UPDATED_QUANTITY))
+				.andExpect(jsonPath("$.subtotal").value(5.0));
+
+		shoppingCartService.deleteItem(cartItemDTO.getId());
+		em.flush();
+		em.clear();
+		performAsync(restShoppingCartMockMvc, get("/api/shopping-carts/{id}/summary", cart.getId()))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.itemCount").value(0))
+				.andExpect(jsonPath("$.subtotal").value(0.0));
+
+		performAsync(restShoppingCartMockMvc, get("/api/shopping-carts/{id}/summary", Long.MAX_VALUE))
+				.andExpect(status().isNotFound());
+	}
+
+	@Test
+	@Transactional
+	public void getCartSummaryAfterPriceChange() throws Exception {
+		// Initialize the database
+		Cart cart = cartItem.getCart();
+		cartItem.getProduct().setPrice(new BigDecimal("2.50"));
+		em.flush();
+		CartItemDTO cartItemDTO = cartItemMapper.toDto(cartItem);
+		cartItemDTO.setQuantity(2);
+		Long cartItemId = shoppingCartService.addItem(cartItemDTO).getCartItems().iterator().next().getId();
+
+		// The added quantity is priced at the new price, the line keeps the price of the first one
+		em.flush();
+		em.clear();
+		em.find(Product.class, cartItemDTO.getProduct().getId()).setPrice(new BigDecimal("4.00"));
+		em.flush();
+		cartItemDTO.setQuantity(1);
+		shoppingCartService.addItem(cartItemDTO);
+		em.flush();
+		em.clear();
+		performAsync(restShoppingCartMockMvc, get("/api/shopping-carts/{id}/summary", cart.getId()))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.itemCount").value(3))
+				.andExpect(jsonPath("$.subtotal").value(9.0));
+
+		// The deletion takes off what the line added
+		shoppingCartService.deleteItem(cartItemId);
+		em.flush();
+		em.clear();
+		performAsync(restShoppingCartMockMvc, get("/api/shopping-carts/{id}/summary", cart.getId()))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.itemCount").value(0))
+				.andExpect(jsonPath("$.subtotal").value(0.0));
+	}
+
 	@Test
 	@Transactional
 	public void getNonExistingCart() throws Exception {
 		// Get the cart
-		restShoppingCartMockMvc.perform(get("/api/shopping-carts/{id}", Long.MAX_VALUE)).andExpect(status().isNotFound());
+		performAsync(restShoppingCartMockMvc, get("/api/shopping-carts/{id}", Long.MAX_VALUE)).andExpect(status().isNotFound());
 	}
 
 	@Test
@@ -171,6 +306,37 @@ public class ShoppingCartResourceIntTest {
 		assertThat(cartList).hasSize(databaseSizeBeforeCreate);
 	}
 	
+	@Test
+	@Transactional
+	public void deleteCartGivesStockBack() throws Exception {
+		// Initialize the database
+		Product product = cartItem.getProduct();
+		Cart cart = cartItem.getCart();
+		cartItemRepository.saveAndFlush(cartItem);
+		Product otherProduct = ProductResourceIntTest.createEntity(em);
+		em.persist(otherProduct);
+		em.persist(new CartItem().quantity(UPDATED_QUANTITY).product(otherProduct).cart(cart));
+		em.flush();
+		int databaseSizeBeforeDelete = cartItemRepository.findAll().size();
+
+		// Delete the cart
+		restShoppingCartMockMvc.perform(delete("/api/shopping-carts/{id}", cart.getId())).andExpect(status().isOk());
+
+		// Validate the database, the held quantities are back to the products
+		assertThat(cartRepository.findOne(cart.getId())).isNull();
+		assertThat(cartItemRepository.findAll()).hasSize(databaseSizeBeforeDelete - 2);
+		em.clear();
+		assertThat(em.find(Product.class, product.getId()).getQuantity()).isEqualTo(product.getQuantity() + DEFAULT_QUANTITY);
+		assertThat(em.find(Product.class, otherProduct.getId()).getQuantity())
+			.isEqualTo(otherProduct.getQuantity() + UPDATED_QUANTITY);
+	}
+
+	@Test
+	@Transactional
+	public void deleteNonExistingCart() throws Exception {
+		restShoppingCartMockMvc.perform(delete("/api/shopping-carts/{id}", Long.MAX_VALUE)).andExpect(status().isBadRequest());
+	}
+
 	@Test
     @Transactional
     public void checkQuantityIsRequired() throws Exception {
@@ -228,6 +394,7 @@ public class ShoppingCartResourceIntTest {
 	@Transactional
 	public void addCartItem() throws Exception {
 		int databaseSizeBeforeCreate = cartItemRepository.findAll().size();
+		int productQuantityBefore = cartItem.getProduct().getQuantity();
 		// Create the CartItem
 		CartItemDTO cartItemDTO = cartItemMapper.toDto(cartItem);
 		restShoppingCartMockMvc.perform(post("/api/shopping-carts/add-item")
@@ -236,7 +403,9 @@ public class ShoppingCartResourceIntTest {
 				.andExpect(status().isCreated())
 				.andExpect(jsonPath("$.id").value(cartItem.getCart().getId().intValue()))
 	            .andExpect(jsonPath("$.cartItems.[*].quantity").value(hasItem(cartItem.getQuantity())))
-	            .andExpect(jsonPath("$.cartItems.[*].product.id").value(hasItem(cartItem.getProduct().getId().intValue())));
+	            .andExpect(jsonPath("$.cartItems.[*].product.id").value(hasItem(cartItem.getProduct().getId().intValue())))
+	            // the returned product shows the stock left after the reservation
+	            .andExpect(jsonPath("$.cartItems.[0].product.quantity").value(productQuantityBefore - DEFAULT_QUANTITY));
 
 		// Validate the CartItem in the database
 		List<CartItem> cartItemList = cartItemRepository.findAll();
@@ -245,6 +414,60 @@ public class ShoppingCartResourceIntTest {
 		assertThat(testCartItem.getQuantity()).isEqualTo(DEFAULT_QUANTITY);
 	}
 	
+	@Test
+	@Transactional
+	public void addCartItemRetriedWithIdempotencyKey() throws Exception {
+		int databaseSizeBeforeCreate = cartItemRepository.findAll().size();
+		int productQuantityBefore = cartItem.getProduct().getQuantity();
+		String idempotencyKey = UUID.randomUUID().toString();
+		CartItemDTO cartItemDTO = cartItemMapper.toDto(cartItem);
+		for (int attempt = 0; attempt < 2; attempt++) {
+			restShoppingCartMockMvc.perform(post("/api/shopping-carts/add-item")
+					.header("Idempotency-Key", idempotencyKey)
+					.contentType(TestUtil.APPLICATION_JSON_UTF8)
+					.content(TestUtil.convertObjectToJsonBytes(cartItemDTO)))
+					.andExpect(status().isCreated())
+					.andExpect(jsonPath("$.cartItems.length()").value(1))
+					.andExpect(jsonPath("$.cartItems.[0].quantity").value(DEFAULT_QUANTITY));
+		}
+
+		// The retry is answered without adding the item again
+		assertThat(cartItemRepository.findAll()).hasSize(databaseSizeBeforeCreate + 1);
+		em.clear();
+		assertThat(em.find(Product.class, cartItem.getProduct().getId()).getQuantity())
+			.isEqualTo(productQuantityBefore - DEFAULT_QUANTITY);
+
+		// The same key cannot be used for another request
+		cartItemDTO.setQuantity(UPDATED_QUANTITY);
+		restShoppingCartMockMvc.perform(post("/api/shopping-carts/add-item")
+				.header("Idempotency-Key", idempotencyKey)
+				.contentType(TestUtil.APPLICATION_JSON_UTF8)
+				.content(TestUtil.convertObjectToJsonBytes(cartItemDTO)))
+				.andExpect(status().isBadRequest());
+	}
+	
+	@Test
+	@Transactional
+	public void addCartItemOfProductAlreadyInCart() throws Exception {
+		// Initialize the database
+		cartItemRepository.saveAndFlush(cartItem);
+		int databaseSizeBeforeCreate = cartItemRepository.findAll().size();
+		// Add the same product again
+		CartItemDTO cartItemDTO = cartItemMapper.toDto(cartItem);
+		cartItemDTO.setId(null);
+		restShoppingCartMockMvc.perform(post("/api/shopping-carts/add-item")
+				.contentType(TestUtil.APPLICATION_JSON_UTF8)
+				.content(TestUtil.convertObjectToJsonBytes(cartItemDTO)))
+				.andExpect(status().isCreated())
+				.andExpect(jsonPath("$.cartItems.length()").value(1))
+				.andExpect(jsonPath("$.cartItems.[0].id").value(cartItem.getId().intValue()))
+				.andExpect(jsonPath("$.cartItems.[0].quantity").value(DEFAULT_QUANTITY * 2));
+
+		// Validate the CartItem in the database
+		List<CartItem> cartItemList = cartItemRepository.findAll();
+		assertThat(cartItemList).hasSize(databaseSizeBeforeCreate);
+	}
+
 	@Test
 	@Transactional
 	public void addCartItemNotEnoughProductQuantity() throws Exception {
@@ -279,6 +502,76 @@ public class ShoppingCartResourceIntTest {
 		assertThat(cartItemList).hasSize(databaseSizeBeforeCreate);
 	}
 	
+	@Test
+	@Transactional
+	public void addCartItemsBatch() throws Exception {
+		Product otherProduct = ProductResourceIntTest.createEntity(em);
+		em.persist(otherProduct);
+		em.flush();
+		int productQuantityBefore = cartItem.getProduct().getQuantity();
+		int otherProductQuantityBefore = otherProduct.getQuantity();
+		CartItemDTO cartItemDTO = cartItemMapper.toDto(cartItem);
+		CartItemDTO sameProductDTO = cartItemMapper.toDto(cartItem);
+		CartItemDTO otherProductDTO = cartItemMapper.toDto(cartItem);
+		otherProductDTO.getProduct().setId(otherProduct.getId());
+		otherProductDTO.setQuantity(UPDATED_QUANTITY);
+
+		restShoppingCartMockMvc.perform(post("/api/shopping-carts/{id}/items:batch", cartItem.getCart().getId())
+				.contentType(TestUtil.APPLICATION_JSON_UTF8)
+				.content(TestUtil.convertObjectToJsonBytes(Arrays.asList(otherProductDTO, cartItemDTO, sameProductDTO))))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.id").value(cartItem.getCart().getId().intValue()))
+				.andExpect(jsonPath("$.cartItems.length()").value(2))
+				.andExpect(jsonPath("$.cartItems.[*].quantity").value(hasItem(DEFAULT_QUANTITY * 2)))
+				.andExpect(jsonPath("$.cartItems.[*].quantity").value(hasItem(UPDATED_QUANTITY)))
+				.andExpect(jsonPath("$.failedItems").doesNotExist());
+
+		em.flush();
+		em.clear();
+		assertThat(em.find(Product.class, cartItem.getProduct().getId()).getQuantity())
+			.isEqualTo(productQuantityBefore - DEFAULT_QUANTITY * 2);
+		assertThat(em.find(Product.class, otherProduct.getId()).getQuantity())
+			.isEqualTo(otherProductQuantityBefore - UPDATED_QUANTITY);
+	}
+
+	@Test
+	@Transactional
+	public void addCartItemsBatchFailsOnOneLine() throws Exception {
+		int databaseSizeBeforeCreate = cartItemRepository.findAll().size();
+		CartItemDTO cartItemDTO = cartItemMapper.toDto(cartItem);
+		CartItemDTO notExistDTO = cartItemMapper.toDto(cartItem);
+		notExistDTO.getProduct().setId(Long.MAX_VALUE);
+
+		restShoppingCartMockMvc.perform(post("/api/shopping-carts/{id}/items:batch", cartItem.getCart().getId())
+				.contentType(TestUtil.APPLICATION_JSON_UTF8)
+				.content(TestUtil.convertObjectToJsonBytes(Arrays.asList(cartItemDTO, notExistDTO))))
+				.andExpect(status().isBadRequest());
+
+		List<CartItem> cartItemList = cartItemRepository.findAll();
+		assertThat(cartItemList).hasSize(databaseSizeBeforeCreate);
+	}
+
+	@Test
+	@Transactional
+	public void addCartItemsBatchPartial() throws Exception {
+		CartItemDTO notExistDTO = cartItemMapper.toDto(cartItem);
+		notExistDTO.getProduct().setId(Long.MAX_VALUE);
+		CartItemDTO notEnoughDTO = cartItemMapper.toDto(cartItem);
+		notEnoughDTO.setQuantity(Integer.MAX_VALUE);
+		CartItemDTO cartItemDTO = cartItemMapper.toDto(cartItem);
+
+		restShoppingCartMockMvc.perform(post("/api/shopping-carts/{id}/items:batch?partial=true", cartItem.getCart().getId())
+				.contentType(TestUtil.APPLICATION_JSON_UTF8)
+				.content(TestUtil.convertObjectToJsonBytes(Arrays.asList(notExistDTO, notEnoughDTO, cartItemDTO))))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.cartItems.length()").value(1))
+				.andExpect(jsonPath("$.cartItems.[0].quantity").value(DEFAULT_QUANTITY))
+				.andExpect(jsonPath("$.failedItems.[0].index").value(0))
+				.andExpect(jsonPath("$.failedItems.[0].errorKey").value("productNotExisted"))
+				.andExpect(jsonPath("$.failedItems.[1].index").value(1))
+				.andExpect(jsonPath("$.failedItems.[1].errorKey").value("notEnoughProductQuantity"));
+	}
+
 	@Test
 	@Transactional
 	public void updateCartItem() throws Exception {
@@ -309,6 +602,145 @@ public class ShoppingCartResourceIntTest {
         CartItem testCartItem = cartItemList.get(cartItemList.size() - 1);
         assertThat(testCartItem.getQuantity()).isEqualTo(UPDATED_QUANTITY);
 	}
+
+	@Test
+	@Transactional
+	public void updateCartItemToAnotherProduct() throws Exception {
+		// Initialize the database
+        cartItemRepository.saveAndFlush(cartItem);
+        Cart cart = cartItem.getCart();
+        cart.addCartItem(cartItem);
+        cartRepository.saveAndFlush(cart);
+        Product otherProduct = ProductResourceIntTest.createEntity(em);
+        em.persist(otherProduct);
+        em.flush();
+        Long productId = cartItem.getProduct().getId();
+        int productQuantityBefore = cartItem.getProduct().getQuantity();
+        int otherProductQuantityBefore = otherProduct.getQuantity();
+
+        // Move the line to the other product
+        CartItemDTO cartItemDTO = cartItemMapper.toDto(cartItemRepository.findOne(cartItem.getId()));
+        cartItemDTO.getProduct().setId(otherProduct.getId());
+        cartItemDTO.setQuantity(UPDATED_QUANTITY);
+        restShoppingCartMockMvc.perform(put("/api/shopping-carts/update-item")
+            .contentType(TestUtil.APPLICATION_JSON_UTF8)
+            .content(TestUtil.convertObjectToJsonBytes(cartItemDTO)))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.cartItems.length()").value(1))
+			.andExpect(jsonPath("$.cartItems.[0].id").value(cartItem.getId().intValue()))
+			.andExpect(jsonPath("$.cartItems.[0].product.id").value(otherProduct.getId().intValue()))
+			.andExpect(jsonPath("$.cartItems.[0].quantity").value(UPDATED_QUANTITY));
+
+        // The former product gets its whole quantity back
+        em.flush();
+        em.clear();
+        assertThat(em.find(Product.class, productId).getQuantity())
+            .isEqualTo(productQuantityBefore + DEFAULT_QUANTITY);
+        assertThat(em.find(Product.class, otherProduct.getId()).getQuantity())
+            .isEqualTo(otherProductQuantityBefore - UPDATED_QUANTITY);
+	}
+
+	@Test
+	@Transactional
+	public void updateCartItemToAProductAlreadyInCart() throws Exception {
+		// Initialize the database
+        cartItemRepository.saveAndFlush(cartItem);
+        Cart cart = cartItem.getCart();
+        cart.addCartItem(cartItem);
+        Product otherProduct = ProductResourceIntTest.createEntity(em);
+        em.persist(otherProduct);
+        CartItem otherCartItem = new CartItem().quantity(DEFAULT_QUANTITY).product(otherProduct);
+        cart.addCartItem(otherCartItem);
+        cartItemRepository.saveAndFlush(otherCartItem);
+        cartRepository.saveAndFlush(cart);
+        int productQuantityBefore = cartItem.getProduct().getQuantity();
+        int otherProductQuantityBefore = otherProduct.getQuantity();
+
+        // Move the line to the product the cart already has a line of
+        CartItemDTO cartItemDTO = cartItemMapper.toDto(cartItemRepository.findOne(cartItem.getId()));
+        cartItemDTO.getProduct().setId(otherProduct.getId());
+        cartItemDTO.setQuantity(UPDATED_QUANTITY);
+        restShoppingCartMockMvc.perform(put("/api/shopping-carts/update-item")
+            .contentType(TestUtil.APPLICATION_JSON_UTF8)
+            .content(TestUtil.convertObjectToJsonBytes(cartItemDTO)))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.cartItems.length()").value(1))
+			.andExpect(jsonPath("$.cartItems.[0].id").value(otherCartItem.getId().intValue()))
+			.andExpect(jsonPath("$.cartItems.[0].quantity").value(DEFAULT_QUANTITY + UPDATED_QUANTITY));
+
+        // The lines are merged, the former product gets its whole quantity back
+        em.flush();
+        em.clear();
+        assertThat(cartItemRepository.findOne(cartItem.getId())).isNull();
+        assertThat(em.find(Product.class, cartItem.getProduct().getId()).getQuantity())
+            .isEqualTo(productQuantityBefore + DEFAULT_QUANTITY);
+        assertThat(em.find(Product.class, otherProduct.getId()).getQuantity())
+            .isEqualTo(otherProductQuantityBefore - UPDATED_QUANTITY);
+	}
+
+	@Test
+	@Transactional
+	public void updateCartItemIfMatch() throws Exception {
+		// Initialize the database
+		Cart cart = cartItem.getCart();
+		cartItemRepository.saveAndFlush(cartItem);
+		String eTag = performAsync(restShoppingCartMockMvc, get("/api/shopping-carts/{id}", cart.getId()))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+		// The cart is changed by another client
+		CartItemDTO cartItemDTO = cartItemMapper.toDto(cartItem);
+		cartItemDTO.setQuantity(UPDATED_QUANTITY);
+		shoppingCartService.updateItem(cartItemDTO);
+		em.flush();
+		em.clear();
+		String currentETag = performAsync(restShoppingCartMockMvc, get("/api/shopping-carts/{id}", cart.getId()))
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+		// A change made from the previous cart is refused with its current ETag
+		cartItemDTO.setQuantity(DEFAULT_QUANTITY);
+		restShoppingCartMockMvc.perform(put("/api/shopping-carts/update-item").header(HttpHeaders.IF_MATCH, eTag)
+				.contentType(TestUtil.APPLICATION_JSON_UTF8)
+				.content(TestUtil.convertObjectToJsonBytes(cartItemDTO)))
+				.andExpect(status().isPreconditionFailed())
+				.andExpect(header().string(HttpHeaders.ETAG, currentETag));
+		restShoppingCartMockMvc.perform(delete("/api/shopping-carts/delete-item/{id}", cartItem.getId()).header(HttpHeaders.IF_MATCH, eTag))
+				.andExpect(status().isPreconditionFailed());
+		assertThat(cartItemRepository.findOne(cartItem.getId()).getQuantity()).isEqualTo(UPDATED_QUANTITY);
+
+		// A change made from any of the listed carts is applied, answered with the ETag of the change
+		String changedETag = restShoppingCartMockMvc.perform(put("/api/shopping-carts/update-item")
+				.header(HttpHeaders.IF_MATCH, eTag + ", " + currentETag)
+				.contentType(TestUtil.APPLICATION_JSON_UTF8)
+				.content(TestUtil.convertObjectToJsonBytes(cartItemDTO)))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.cartItems.[0].quantity").value(DEFAULT_QUANTITY))
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		assertThat(changedETag).isNotEqualTo(currentETag);
+		em.clear();
+		performAsync(restShoppingCartMockMvc, get("/api/shopping-carts/{id}", cart.getId()))
+				.andExpect(header().string(HttpHeaders.ETAG, changedETag));
+	}
+
+	@Test
+	@Transactional
+	public void updateCartItemOfAnotherCart() throws Exception {
+		// Initialize the database
+		cartItemRepository.saveAndFlush(cartItem);
+		Cart otherCart = cartRepository.saveAndFlush(createEntity(em));
+
+		// Update the cartItem through another cart
+		CartItemDTO cartItemDTO = cartItemMapper.toDto(cartItem);
+		cartItemDTO.setCartId(otherCart.getId());
+		cartItemDTO.setQuantity(UPDATED_QUANTITY);
+
+		restShoppingCartMockMvc.perform(put("/api/shopping-carts/update-item")
+			.contentType(TestUtil.APPLICATION_JSON_UTF8)
+			.content(TestUtil.convertObjectToJsonBytes(cartItemDTO)))
+			.andExpect(status().isBadRequest());
+
+		assertThat(cartItemRepository.findOne(cartItem.getId()).getQuantity()).isEqualTo(DEFAULT_QUANTITY);
+	}
 	
 	@Test
 	@Transactional
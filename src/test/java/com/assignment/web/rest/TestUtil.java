@@ -9,6 +9,10 @@ import org.springframework.format.datetime.standard.DateTimeFormatterRegistrar;
 import org.springframework.format.support.DefaultFormattingConversionService;
 import org.springframework.format.support.FormattingConversionService;
 import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -16,6 +20,7 @@ import java.time.ZonedDateTime;
 import java.time.format.DateTimeParseException;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 
 /**
  * Utility class for testing REST controllers.
@@ -133,4 +138,20 @@ public class TestUtil {
         registrar.registerFormatters(dfcs);
         return dfcs;
     }
+
+    /**
+     * Perform a request of an asynchronous endpoint, whose response is written by a second dispatch.
+     * The resources under test are given an executor running the calls in place, in the transaction
+     * of the test.
+     *
+     * @param mockMvc the MockMvc
+     * @param request the request
+     * @return the result actions of the response
+     */
+    public static ResultActions performAsync(MockMvc mockMvc, RequestBuilder request) throws Exception {
+        ResultActions actions = mockMvc.perform(request);
+        MvcResult result = actions.andReturn();
+        // an endpoint failing before returning a future answers at once
+        return result.getRequest().isAsyncStarted() ? mockMvc.perform(asyncDispatch(result)) : actions;
+    }
 }